@@ -0,0 +1,214 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.benchmarks;
+
+import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
+import static domainhealth.core.statistics.MonitorProperties.*;
+import static domainhealth.core.statistics.StatisticsStorage.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import domainhealth.backend.wldfcapture.data.DataRecordsCollection;
+import domainhealth.core.env.AppProperties;
+import domainhealth.core.statistics.MonitorProperties;
+import domainhealth.core.util.DateUtil;
+
+/**
+ * Builds the representative data the capture-to-output hot path benchmarks 
+ * work on (eg. WLDF data records of a server's core MBeans and of many 
+ * datasources), without needing a running WebLogic domain.
+ */
+public final class BenchmarkFixtures {
+	/**
+	 * Initialises the monitored attribute lists (must be called before any 
+	 * statistic capturer class is loaded, as the CSV header lines are built
+	 * from the lists when the class is loaded).
+	 */
+	public static synchronized void initMonitorProperties() {
+		if (SERVER_MBEAN_MONITOR_ATTR_LIST == null) {
+			MonitorProperties.setMetricDeep(METRIC_DEEP);
+		}
+	}
+
+	/**
+	 * Creates application properties from the given key/value pairs, using a
+	 * servlet context which holds no other context-params.
+	 * 
+	 * @param props The property values keyed by property name (eg. "dh_graphite_carbon_host")
+	 * @return The application properties
+	 */
+	public static AppProperties newAppProperties(Map<String, String> props) {
+		AppProperties appProps = new AppProperties(newServletContext());
+		
+		for (Map.Entry<String, String> prop : props.entrySet()) {
+			appProps.setProperty(prop.getKey(), prop.getValue());
+		}
+		
+		return appProps;
+	}
+
+	/**
+	 * Creates WLDF data records for the MBeans making up a server's core 
+	 * statistics (server, JVM, thread pool and JTA runtimes), as harvested 
+	 * at the given time.
+	 * 
+	 * @param serverName The name of the server
+	 * @param timestamp The date-time of the harvested records
+	 * @return The data records
+	 */
+	public static DataRecordsCollection newCoreDataRecords(String serverName, long timestamp) {
+		initMonitorProperties();
+		DataRecordsCollection dataRecords = new DataRecordsCollection();
+		addRecords(dataRecords, SERVER_RUNTIME, serverName, 1, timestamp, SERVER_MBEAN_MONITOR_ATTR_LIST);
+		dataRecords.addElement(String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_RUNTIME), newMBeanName(SERVER_RUNTIME, serverName, serverName), timestamp, SERVER_STATE, RUNNING_STATE);
+		addRecords(dataRecords, JVM_RUNTIME, serverName, 1, timestamp, JVM_MBEAN_MONITOR_ATTR_LIST);
+		addRecords(dataRecords, THREAD_POOL_RUNTIME, serverName, 1, timestamp, THREADPOOL_MBEAN_MONITOR_ATTR_LIST);
+		addRecords(dataRecords, JTA_RUNTIME, serverName, 1, timestamp, JTA_MBEAN_MONITOR_ATTR_LIST);
+		return dataRecords;
+	}
+
+	/**
+	 * Creates WLDF data records for a number of MBean objects of the given 
+	 * runtime MBean type, harvested at the given time.
+	 * 
+	 * @param runtimeType The runtime MBean type (eg. JDBCDataSourceRuntime)
+	 * @param serverName The name of the server
+	 * @param count The number of MBean objects
+	 * @param timestamp The date-time of the harvested records
+	 * @param attrList The attributes harvested for each MBean object
+	 * @return The data records
+	 */
+	public static DataRecordsCollection newResourceDataRecords(String runtimeType, String serverName, int count, long timestamp, String[] attrList) {
+		initMonitorProperties();
+		DataRecordsCollection dataRecords = new DataRecordsCollection();
+		addRecords(dataRecords, runtimeType, serverName, count, timestamp, attrList);
+		return dataRecords;
+	}
+
+	/**
+	 * Creates a full WebLogic MBean object name for an MBean object of the 
+	 * given runtime MBean type, as found in the harvested data archive.
+	 * 
+	 * @param runtimeType The runtime MBean type (eg. JDBCDataSourceRuntime)
+	 * @param serverName The name of the server
+	 * @param objectName The name of the MBean object
+	 * @return The full MBean object name
+	 */
+	public static String newMBeanName(String runtimeType, String serverName, String objectName) {
+		return String.format(MBEAN_NAME_TEMPLATE, objectName, serverName, runtimeType);
+	}
+
+	/**
+	 * Creates a CSV content line for the given header line, with a date-time
+	 * first column and a numeric value in each other column (apart from a 
+	 * server state column which holds the "RUNNING" state).
+	 * 
+	 * @param headerLine The CSV header line
+	 * @param dateTime The date-time of the line
+	 * @return The content line
+	 */
+	public static String newContentLine(String headerLine, Date dateTime) {
+		String[] columns = headerLine.split(SEPARATOR);
+		StringBuilder line = new StringBuilder(headerLine.length());
+		line.append(new SimpleDateFormat(DateUtil.DISPLAY_DATETIME_FORMAT).format(dateTime)).append(SEPARATOR);
+		
+		for (int i = 1; i < columns.length; i++) {
+			if (columns[i].equals(SERVER_STATE)) {
+				line.append(RUNNING_STATE);
+			} else {
+				line.append(i * ATTR_VALUE_STEP);
+			}
+			
+			line.append(SEPARATOR);
+		}
+		
+		return line.toString();
+	}
+
+	/**
+	 * Creates a new empty temporary directory to write statistics to, which 
+	 * is deleted when the JVM exits.
+	 * 
+	 * @return The directory path
+	 */
+	public static String newTempDirectory() {
+		try {
+			File dir = File.createTempFile(TEMP_DIR_PREFIX, "");
+			dir.delete();
+			dir.mkdirs();
+			dir.deleteOnExit();
+			return dir.getAbsolutePath();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to create temporary statistics directory", e);
+		}
+	}
+
+	/**
+	 * Adds records for a number of MBean objects of a runtime MBean type, 
+	 * with a different numeric value for each attribute.
+	 */
+	private static void addRecords(DataRecordsCollection dataRecords, String runtimeType, String serverName, int count, long timestamp, String[] attrList) {
+		String mbeanTypeName = String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, runtimeType);
+		
+		for (int objectNum = 0; objectNum < count; objectNum++) {
+			String objectName = (count == 1) ? serverName : (runtimeType + "_" + objectNum);
+			String mbeanName = newMBeanName(runtimeType, serverName, objectName);
+			long value = objectNum;
+			
+			for (String attr : attrList) {
+				value += ATTR_VALUE_STEP;
+				dataRecords.addElement(mbeanTypeName, mbeanName, timestamp, attr, new Long(value));
+			}
+		}
+	}
+
+	/**
+	 * Creates a servlet context, with no context-params, for constructing 
+	 * application properties outside of a web container.
+	 */
+	private static ServletContext newServletContext() {
+		return (ServletContext) Proxy.newProxyInstance(BenchmarkFixtures.class.getClassLoader(), new Class<?>[] {ServletContext.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getResourceAsStream")) {
+					return new ByteArrayInputStream(new byte[0]);
+				}
+				
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Not instantiable.
+	 */
+	private BenchmarkFixtures() {
+	}
+
+	// Constants
+	private final static String METRIC_DEEP = "extended";
+	private final static String RUNNING_STATE = "RUNNING";
+	private final static String MBEAN_NAME_TEMPLATE = "com.bea:Name=%s,ServerRuntime=%s,Type=%s";
+	private final static long ATTR_VALUE_STEP = 1024;
+	private final static String TEMP_DIR_PREFIX = "dh_benchmark";
+}
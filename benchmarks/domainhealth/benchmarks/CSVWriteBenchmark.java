@@ -0,0 +1,74 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.benchmarks;
+
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import domainhealth.backend.retriever.HeaderLine;
+import domainhealth.core.statistics.StatisticsStorage;
+
+/**
+ * Benchmarks appending a datasource's statistics row to its CSV file, in a
+ * temporary statistics directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CSVWriteBenchmark {
+	/**
+	 * Creates the CSV statistics storage and the row to append.
+	 */
+	@Setup
+	public void setup() {
+		BenchmarkFixtures.initMonitorProperties();
+		csvStats = new StatisticsStorage(BenchmarkFixtures.newTempDirectory(), CSV_FILE_OUTPUT);
+		dateTime = new Date();
+		headerLine = new HeaderLine(JDBC_MBEAN_MONITOR_ATTR_LIST).getString();
+		contentLine = BenchmarkFixtures.newContentLine(headerLine, dateTime);
+	}
+
+	/**
+	 * Appends the row to the datasource's CSV file.
+	 * 
+	 * @throws Exception Indicates the row could not be written
+	 */
+	@Benchmark
+	public void appendResourceRow() throws Exception {
+		csvStats.appendToResourceStatisticsCSV(dateTime, SERVER_NAME, DATASOURCE_RESOURCE_TYPE, RESOURCE_NAME, headerLine, contentLine, HOST_NAME);
+	}
+
+	// Constants
+	private final static String CSV_FILE_OUTPUT = "csvfile";
+	private final static String SERVER_NAME = "ManagedServer1";
+	private final static String HOST_NAME = "benchhost";
+	private final static String RESOURCE_NAME = "DataSource_0";
+
+	// Members
+	private StatisticsStorage csvStats;
+	private Date dateTime;
+	private String headerLine;
+	private String contentLine;
+}
@@ -0,0 +1,124 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.benchmarks;
+
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.string.StringEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import domainhealth.backend.retriever.HeaderLine;
+import domainhealth.backend.sender.GraphiteBackgroundSender;
+import domainhealth.backend.sender.GraphiteClientPipelineFactory;
+import domainhealth.core.env.AppProperties.PropKey;
+
+/**
+ * Benchmarks encoding the core and datasource CSV rows of a server into 
+ * Graphite plaintext protocol metric lines. The sender's channel is an 
+ * embedded channel which encodes the lines into buffers in memory, rather
+ * than a connection to a Carbon server, so only the encoding is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GraphiteEncodeBenchmark {
+	/**
+	 * Creates the sender, writing to an in memory channel, and the rows to 
+	 * send.
+	 */
+	@Setup
+	public void setup() {
+		BenchmarkFixtures.initMonitorProperties();
+		Map<String, String> props = new HashMap<String, String>();
+		props.put(PropKey.GRAPHITE_METRIC_FORCE_DOMAIN_NAME_PROP.toString(), DOMAIN_NAME);
+		gSender = new GraphiteBackgroundSender(BenchmarkFixtures.newAppProperties(props));
+		gSender.resetCounter(SERVER_NAME);
+		embedder = new EncoderEmbedder<ChannelBuffer>(new StringEncoder());
+		gSender.gpf = new GraphiteClientPipelineFactory(null, null) {
+			public ChannelPipeline getCurrentPipeline() {
+				return embedder.getPipeline();
+			}
+		};
+		dateTime = new Date();
+		coreHeaderLine = new HeaderLine(J_CORE_ALL).getString();
+		coreContentLine = BenchmarkFixtures.newContentLine(coreHeaderLine, dateTime);
+		resourceHeaderLine = new HeaderLine(JDBC_MBEAN_MONITOR_ATTR_LIST).getString();
+		resourceContentLine = BenchmarkFixtures.newContentLine(resourceHeaderLine, dateTime);
+	}
+
+	/**
+	 * Encodes a server's core statistics row.
+	 * 
+	 * @return The number of metric line buffers encoded (consumed by the harness)
+	 */
+	@Benchmark
+	public int coreMetricLines() {
+		gSender.sendData(dateTime, SERVER_NAME, CORE_RESOURCE_TYPE, CORE_RSC_DEFAULT_NAME, coreHeaderLine, coreContentLine, HOST_NAME);
+		return drainEncodedLines();
+	}
+
+	/**
+	 * Encodes a datasource's statistics row.
+	 * 
+	 * @return The number of metric line buffers encoded (consumed by the harness)
+	 */
+	@Benchmark
+	public int resourceMetricLines() {
+		gSender.sendData(dateTime, SERVER_NAME, DATASOURCE_RESOURCE_TYPE, RESOURCE_NAME, resourceHeaderLine, resourceContentLine, HOST_NAME);
+		return drainEncodedLines();
+	}
+
+	/**
+	 * Removes the encoded metric line buffers from the in memory channel.
+	 */
+	private int drainEncodedLines() {
+		int count = 0;
+
+		while (embedder.poll() != null) {
+			count++;
+		}
+
+		return count;
+	}
+
+	// Constants
+	private final static String DOMAIN_NAME = "benchdomain";
+	private final static String SERVER_NAME = "ManagedServer1";
+	private final static String HOST_NAME = "benchhost";
+	private final static String RESOURCE_NAME = "DataSource_0";
+
+	// Members
+	private GraphiteBackgroundSender gSender;
+	private EncoderEmbedder<ChannelBuffer> embedder;
+	private Date dateTime;
+	private String coreHeaderLine;
+	private String coreContentLine;
+	private String resourceHeaderLine;
+	private String resourceContentLine;
+}
@@ -0,0 +1,67 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.benchmarks;
+
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import domainhealth.backend.retriever.HeaderLine;
+
+/**
+ * Benchmarks creating the CSV header lines of the core and datasource 
+ * resource types.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeaderLineBenchmark {
+	/**
+	 * Initialises the monitored attribute lists the header lines are built 
+	 * from.
+	 */
+	@Setup
+	public void setup() {
+		BenchmarkFixtures.initMonitorProperties();
+	}
+
+	/**
+	 * Creates the core resource type's header line.
+	 * 
+	 * @return The header line (consumed by the harness)
+	 */
+	@Benchmark
+	public HeaderLine coreHeaderLine() {
+		return new HeaderLine(J_CORE_ALL);
+	}
+
+	/**
+	 * Creates the datasource resource type's header line.
+	 * 
+	 * @return The header line (consumed by the harness)
+	 */
+	@Benchmark
+	public HeaderLine resourceHeaderLine() {
+		return new HeaderLine(JDBC_MBEAN_MONITOR_ATTR_LIST);
+	}
+}
@@ -0,0 +1,109 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.benchmarks;
+
+import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import domainhealth.backend.wldfcapture.data.TypeDataRecord;
+import domainhealth.core.statistics.ResourceNameNormaliser;
+
+/**
+ * Benchmarks the per-record resource name handling: extracting an MBean 
+ * object's name from its full MBean name, and normalising JMS destination
+ * and web-app resource names, for a number of distinct resources. As the 
+ * names are cycled through, normalising measures the steady-state (cached)
+ * cost of a name seen in an earlier capture cycle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResourceNameBenchmark {
+	/**
+	 * Creates the names of the resources, which are cycled through.
+	 */
+	@Setup
+	public void setup() {
+		mbeanNames = new String[resourceCount];
+		destinationNames = new String[resourceCount];
+		webAppNames = new String[resourceCount];
+
+		for (int i = 0; i < resourceCount; i++) {
+			mbeanNames[i] = BenchmarkFixtures.newMBeanName(JDBC_DATASOURCE_RUNTIME, SERVER_NAME, "DataSource_" + i);
+			destinationNames[i] = "SystemModule_" + i + "!JMSServer_" + i + "@Dist/Queue " + i;
+			webAppNames[i] = SERVER_NAME + "_/app/context_" + i;
+		}
+	}
+
+	/**
+	 * Extracts the object name of the next MBean.
+	 * 
+	 * @return The object name (consumed by the harness)
+	 */
+	@Benchmark
+	public String extractMBeanObjectName() {
+		return TypeDataRecord.extractMBeanObjectName(mbeanNames[nextIndex()]);
+	}
+
+	/**
+	 * Normalises the name of the next JMS destination.
+	 * 
+	 * @return The normalised name (consumed by the harness)
+	 */
+	@Benchmark
+	public String normaliseDestinationName() {
+		return ResourceNameNormaliser.normalise(DESTINATION_RESOURCE_TYPE, destinationNames[nextIndex()]);
+	}
+
+	/**
+	 * Normalises the name of the next web-app.
+	 * 
+	 * @return The normalised name (consumed by the harness)
+	 */
+	@Benchmark
+	public String normaliseWebAppName() {
+		return ResourceNameNormaliser.normalise(WEBAPP_RESOURCE_TYPE, webAppNames[nextIndex()]);
+	}
+
+	/**
+	 * Gets the index of the next resource name to use.
+	 */
+	private int nextIndex() {
+		index = (index + 1) % resourceCount;
+		return index;
+	}
+
+	// Constants
+	private final static String SERVER_NAME = "ManagedServer1";
+
+	// Members
+	@Param({"10", "1000"})
+	public int resourceCount;
+	private String[] mbeanNames;
+	private String[] destinationNames;
+	private String[] webAppNames;
+	private int index = 0;
+}
@@ -0,0 +1,214 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.benchmarks;
+
+import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import domainhealth.backend.jmxpoll.StatisticCapturerJMXPoll;
+import domainhealth.backend.retriever.HeaderLine;
+import domainhealth.backend.retriever.RowEncoder;
+import domainhealth.backend.retriever.StatisticCapturer;
+import domainhealth.backend.wldfcapture.StatisticCapturerWLDFQuery;
+import domainhealth.backend.wldfcapture.data.DataRecordsCollection;
+import domainhealth.backend.wldfcapture.data.InstanceDataRecord;
+import domainhealth.core.jmx.DomainRuntimeServiceMBeanConnection;
+import domainhealth.core.jmx.WebLogicMBeanConnection;
+import domainhealth.core.statistics.MetricSchema;
+import domainhealth.tests.simulation.SimulatedDomain;
+
+/**
+ * Benchmarks the capturers' own row building of CSV content rows: from 
+ * WLDF harvested data records, for a server's core statistics and for a 
+ * datasource's statistics, and from JMX polling a datasource's MBean (of a
+ * simulated domain, with no call latency).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StatsLineBenchmark {
+	/**
+	 * Creates the capturers, the data records and the simulated domain the 
+	 * rows are built from.
+	 * 
+	 * @throws Exception Indicates the simulated domain could not be connected to
+	 */
+	@Setup
+	public void setup() throws Exception {
+		BenchmarkFixtures.initMonitorProperties();
+		long now = System.currentTimeMillis();
+		List<String> metricTypes = new ArrayList<String>(LEGAL_RESOURCE_TYPES);
+		coreDataRecords = BenchmarkFixtures.newCoreDataRecords(SERVER_NAME, now);
+		DataRecordsCollection jdbcDataRecords = BenchmarkFixtures.newResourceDataRecords(JDBC_DATASOURCE_RUNTIME, SERVER_NAME, 1, now, JDBC_MBEAN_MONITOR_ATTR_LIST);
+		String jdbcTypeName = String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JDBC_DATASOURCE_RUNTIME);
+		String jdbcObjectName = jdbcDataRecords.getTypeDataRecord(jdbcTypeName).getInstanceNames().next();
+		jdbcObjectRecord = jdbcDataRecords.getTypeDataRecord(jdbcTypeName).getInstanceDataRecord(jdbcObjectName);
+		Map<String, HeaderLine> headerLines = StatisticCapturer.getHeaderLines(MetricSchema.getCurrent());
+		jdbcRowEncoder = headerLines.get("JDBC").getRowEncoder();
+		wldfCapturer = new WLDFRowCapturer(SERVER_NAME, metricTypes);
+
+		domain = new SimulatedDomain(DOMAIN_NAME, 1, 1, 0);
+		domain.install();
+		conn = new DomainRuntimeServiceMBeanConnection();
+		ObjectName serverRuntime = conn.getAllServerRuntimes()[0];
+		jdbcDataSource = conn.getChildren(conn.getChild(serverRuntime, JDBC_SERVICE_RUNTIME), JDBC_DATA_SOURCE_RUNTIMES)[0];
+		jmxCapturer = new JMXRowCapturer(conn, serverRuntime, serverRuntime.getKeyProperty(NAME), metricTypes);
+		jmxCapturer.setCycleTimeMillis(now);
+	}
+
+	/**
+	 * Closes the connection to the simulated domain and uninstalls it.
+	 */
+	@TearDown
+	public void tearDown() {
+		conn.close();
+		domain.uninstall();
+	}
+
+	/**
+	 * Builds a server's core statistics row from WLDF data records.
+	 * 
+	 * @return The row (consumed by the harness)
+	 * @throws Exception Indicates the row could not be built
+	 */
+	@Benchmark
+	public String coreStatsLine() throws Exception {
+		return wldfCapturer.buildCoreStatsLine(coreDataRecords);
+	}
+
+	/**
+	 * Builds a datasource's statistics row from WLDF data records.
+	 * 
+	 * @return The row (consumed by the harness)
+	 */
+	@Benchmark
+	public String resourceStatsLine() {
+		return wldfCapturer.buildStatsLine(jdbcRowEncoder, jdbcObjectRecord, JDBC_MBEAN_MONITOR_ATTR_LIST);
+	}
+
+	/**
+	 * Builds a datasource's statistics row by JMX polling its MBean.
+	 * 
+	 * @return The row (consumed by the harness)
+	 * @throws Exception Indicates the row could not be built
+	 */
+	@Benchmark
+	public String jmxResourceStatsLine() throws Exception {
+		return jmxCapturer.buildStatsLine(jdbcRowEncoder, jdbcDataSource, JDBC_MBEAN_MONITOR_ATTR_LIST);
+	}
+
+	/**
+	 * WLDF capturer exposing its row building steps, with no server 
+	 * connection or statistics storage.
+	 */
+	private static class WLDFRowCapturer extends StatisticCapturerWLDFQuery {
+		/**
+		 * Creates the capturer
+		 * 
+		 * @param serverName Name of the server the rows are for
+		 * @param metricTypes The metric types captured
+		 */
+		WLDFRowCapturer(String serverName, List<String> metricTypes) {
+			super(null, null, null, serverName, QUERY_INTERVAL_MILLIS, metricTypes, WLS_VERSION, JVM_VERSION, null);
+		}
+
+		/**
+		 * Builds a server's core statistics row.
+		 * 
+		 * @param dataRecords The WLDF data records
+		 * @return The row
+		 * @throws Exception Indicates the row could not be built
+		 */
+		String buildCoreStatsLine(DataRecordsCollection dataRecords) throws Exception {
+			return getCoreStatsLine(dataRecords);
+		}
+
+		/**
+		 * Builds an MBean object's statistics row.
+		 * 
+		 * @param rowEncoder The encoder for rows of the resource type's CSV header
+		 * @param objectRecord MBean object data record
+		 * @param attrList List of attributes
+		 * @return The row
+		 */
+		String buildStatsLine(RowEncoder rowEncoder, InstanceDataRecord objectRecord, String[] attrList) {
+			return constructStatsLine(rowEncoder, objectRecord, attrList);
+		}
+	}
+
+	/**
+	 * JMX Poll capturer exposing its row building step, with no statistics
+	 * storage.
+	 */
+	private static class JMXRowCapturer extends StatisticCapturerJMXPoll {
+		/**
+		 * Creates the capturer
+		 * 
+		 * @param conn Connection to the domain
+		 * @param serverRuntime The server's main runtime MBean
+		 * @param serverName Name of the server the rows are for
+		 * @param metricTypes The metric types captured
+		 */
+		JMXRowCapturer(WebLogicMBeanConnection conn, ObjectName serverRuntime, String serverName, List<String> metricTypes) {
+			super(null, conn, serverRuntime, serverName, QUERY_INTERVAL_MILLIS, metricTypes, WLS_VERSION, JVM_VERSION);
+		}
+
+		/**
+		 * Builds an MBean's statistics row.
+		 * 
+		 * @param rowEncoder The encoder for rows of the resource type's CSV header
+		 * @param objectName The MBean polled
+		 * @param attrList List of attributes
+		 * @return The row
+		 * @throws Exception Indicates the row could not be built
+		 */
+		String buildStatsLine(RowEncoder rowEncoder, ObjectName objectName, String[] attrList) throws Exception {
+			return constructStatsLine(rowEncoder, objectName, attrList);
+		}
+	}
+
+	// Constants
+	private final static String SERVER_NAME = "ManagedServer1";
+	private final static String DOMAIN_NAME = "StatsLineBenchmarkDomain";
+	private final static int QUERY_INTERVAL_MILLIS = 60000;
+	private final static String WLS_VERSION = "12.1.3";
+	private final static String JVM_VERSION = "1.7";
+
+	// Members
+	private WLDFRowCapturer wldfCapturer;
+	private JMXRowCapturer jmxCapturer;
+	private DataRecordsCollection coreDataRecords;
+	private InstanceDataRecord jdbcObjectRecord;
+	private RowEncoder jdbcRowEncoder;
+	private SimulatedDomain domain;
+	private DomainRuntimeServiceMBeanConnection conn;
+	private ObjectName jdbcDataSource;
+}
@@ -24,6 +24,7 @@ import javax.management.ObjectName;
 import domainhealth.backend.retriever.DataRetrievalException;
 import domainhealth.backend.retriever.StatisticCapturer;
 import domainhealth.backend.retriever.HeaderLine;
+import domainhealth.backend.retriever.RowEncoder;
 import domainhealth.core.env.AppLog;
 import domainhealth.core.jmx.WebLogicMBeanConnection;
 import domainhealth.core.jmx.WebLogicMBeanException;
@@ -48,11 +49,10 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 	 * @param conn Connection to the server's MBean tree
 	 * @param serverRuntime Handle on the server's main runtime MBean
 	 * @param serverName Name of the server to retrieve statistics for
-	 * @param componentBlacklist Names of web-apps/ejbs than should not haves results collected/shown
 	 * @param wlsVersionNumber The version of the host WebLogic Domain
 	 */
-	public StatisticCapturerJMXPoll(StatisticsStorage csvStats, WebLogicMBeanConnection conn, ObjectName serverRuntime, String serverName, int queryIntervalMillis, List<String> componentBlacklist, List<String> metricTypeSet, String wlsVersionNumber,String jvmVersion) {
-		super(csvStats, conn, serverRuntime, serverName, queryIntervalMillis, componentBlacklist, metricTypeSet,wlsVersionNumber,jvmVersion);
+	public StatisticCapturerJMXPoll(StatisticsStorage csvStats, WebLogicMBeanConnection conn, ObjectName serverRuntime, String serverName, int queryIntervalMillis, List<String> metricTypeSet, String wlsVersionNumber,String jvmVersion) {
+		super(csvStats, conn, serverRuntime, serverName, queryIntervalMillis, metricTypeSet,wlsVersionNumber,jvmVersion);
 	}
 
 
@@ -62,11 +62,11 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 	protected void logCoreStats() throws DataRetrievalException {
 		try {
 		//	String headerLine = getCoreStatsHeaderLine();
-			HeaderLine hl=headerList.get("CORE");
+			HeaderLine hl=getHeaderLine("CORE");
 			String headerLine = hl.header_string;
 
 			String contentLine = getCoreStatsLine();
-			getCSVStats().appendToResourceStatisticsCSV(new Date(), getServerName(), CORE_RESOURCE_TYPE, CORE_RSC_DEFAULT_NAME, headerLine, contentLine,getHostName());
+			getCSVStats().appendToResourceStatisticsCSV(getCycleDate(), getServerName(), CORE_RESOURCE_TYPE, CORE_RSC_DEFAULT_NAME, headerLine, contentLine,getHostName());
 		} catch (Exception e) {
 			throw new DataRetrievalException("Problem logging " + CORE_RESOURCE_TYPE + " resources for server " + getServerName(), e);
 		}		
@@ -79,15 +79,13 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 	 * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the statistics
 	 */
 	private String getCoreStatsLine() throws WebLogicMBeanException {
-		StringBuilder line = new StringBuilder(DEFAULT_CONTENT_LINE_LEN);
-
 		// Date-time
-		line.append(formatSeconsdDateTime(new Date()) + SEPARATOR);
+		RowEncoder.Row row = getHeaderLine("CORE").getRowEncoder().startRow(getCycleDateText());
 
 		// Server attributes (not looping because state attr is not a num unlike all other attrs)
 		ObjectName serverRuntime = getServerRuntime();
-		line.append(getConn().getTextAttr(serverRuntime, SERVER_STATE) + SEPARATOR);
-		line.append(getConn().getNumberAttr(serverRuntime, OPEN_SOCKETS) + SEPARATOR);
+		row.appendText(getConn().getTextAttr(serverRuntime, SERVER_STATE));
+		row.appendNumber(getConn().getNumberAttr(serverRuntime, OPEN_SOCKETS));
 		
 		// JVM attributes (got to do these separately because changing some figures to MegaBytes and calculate heap size current)
 		boolean useJRockit=false;
@@ -98,10 +96,10 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 
 		long heap_size_current=(long)getConn().getNumberAttr(jvm, HEAP_SIZE_CURRENT);
 		long heap_free_current=(long)getConn().getNumberAttr(jvm, HEAP_FREE_CURRENT);
-		line.append((heap_size_current / BYTES_IN_MEGABYTE) + SEPARATOR);
-		line.append((heap_free_current / BYTES_IN_MEGABYTE) + SEPARATOR);
-		line.append(((heap_size_current - heap_free_current) / BYTES_IN_MEGABYTE) + SEPARATOR);
-		line.append(getConn().getNumberAttr(jvm, HEAP_FREE_PERCENT) + SEPARATOR);
+		row.appendNumber(heap_size_current / BYTES_IN_MEGABYTE);
+		row.appendNumber(heap_free_current / BYTES_IN_MEGABYTE);
+		row.appendNumber((heap_size_current - heap_free_current) / BYTES_IN_MEGABYTE);
+		row.appendNumber(getConn().getNumberAttr(jvm, HEAP_FREE_PERCENT));
 
 		if(useJRockit) {
 			double jvm_proc_load    =getConn().getNumberAttr(jvm,JVM_PROCESSOR_LOAD);
@@ -110,38 +108,49 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 			long total_nursery_size =(long)getConn().getNumberAttr(jvm,TOTAL_NURSERY_SIZE);
 			long heap_max_size      =(long)getConn().getNumberAttr(jvm,HEAP_SIZE_MAX);
 
-			line.append( ((double)Math.round(jvm_proc_load * 100 * 100) / 100.0) + SEPARATOR);
-			line.append( total_gc_count + SEPARATOR);
-			line.append( total_gc_time + SEPARATOR);
-			line.append( ( total_nursery_size / BYTES_IN_MEGABYTE) + SEPARATOR);
-			line.append( ( heap_max_size / BYTES_IN_MEGABYTE) + SEPARATOR);
+			row.appendNumber((double)Math.round(jvm_proc_load * 100 * 100) / 100.0);
+			row.appendNumber(total_gc_count);
+			row.appendNumber(total_gc_time);
+			row.appendNumber(total_nursery_size / BYTES_IN_MEGABYTE);
+			row.appendNumber(heap_max_size / BYTES_IN_MEGABYTE);
 
 		} else {
-			for (String attr : JROCKIT_MBEAN_MONITOR_ATTR_LIST) line.append(0 + SEPARATOR);
+			for (String attr : getMetricSchema().getJRockitAttrs()) row.appendNumber(0L);
 		}
 
 
 
 		// Thread Pool Attributes
 		ObjectName threadPool = getConn().getChild(serverRuntime, THREAD_POOL_RUNTIME);
+		double hoggingThreadCount = -1;
+		double idleThreadCount = -1;
 		
-		for (String attr : THREADPOOL_MBEAN_MONITOR_ATTR_LIST) {
+		for (String attr : getMetricSchema().getThreadPoolAttrs()) {
 			// If thread pool does not exist (Use81StyleExecuteQueues) can only put Zero into CSV as result
 			if (threadPool == null) {
-				line.append(0 + SEPARATOR);
+				row.appendNumber(0L);
 			} else {			
-				line.append(getConn().getNumberAttr(threadPool, attr) + SEPARATOR);
+				double value = getConn().getNumberAttr(threadPool, attr);
+				row.appendNumber(value);
+
+				if (attr.equals(HOGGING_THREAD_COUNT)) {
+					hoggingThreadCount = value;
+				} else if (attr.equals(EXECUTE_THREAD_IDLE_COUNT)) {
+					idleThreadCount = value;
+				}
 			}
 		}
+
+		recordThreadPoolLoad(hoggingThreadCount, idleThreadCount);
 		
 		// Transaction attributes
 		ObjectName txMgr = getConn().getChild(serverRuntime, JTA_RUNTIME);
 		
-		for (String attr : JTA_MBEAN_MONITOR_ATTR_LIST) {
-			line.append(getConn().getNumberAttr(txMgr, attr) + SEPARATOR);
+		for (String attr : getMetricSchema().getJtaAttrs()) {
+			row.appendNumber(getConn().getNumberAttr(txMgr, attr));
 		}			
 		
-		return line.toString();
+		return row.finish();
 	}
 
 	/**
@@ -152,19 +161,29 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 	 */
 	protected void logDataSourcesStats() throws DataRetrievalException {
 		try {
-			Date nowDate = new Date();
+			Date nowDate = getCycleDate();
 			String now = (new SimpleDateFormat(DATETIME_PARAM_FORMAT)).format(nowDate);
 			Properties artifactList = new Properties();
 			
 			//String headerLine = constructHeaderLine(JDBC_MBEAN_MONITOR_ATTR_LIST);
-			String headerLine=headerList.get("JDBC").getString();
+			String headerLine=getHeaderLine("JDBC").getString();
+			RowEncoder rowEncoder = getHeaderLine("JDBC").getRowEncoder();
 			ObjectName jdbcRuntime = getConn().getChild(getServerRuntime(), JDBC_SERVICE_RUNTIME);
 	
 			for (ObjectName ds : getConn().getChildren(jdbcRuntime, JDBC_DATA_SOURCE_RUNTIMES)) {
+				if (isCancelled()) {
+					break;
+				}
+
 				try {
 					String name = ResourceNameNormaliser.normalise(DATASOURCE_RESOURCE_TYPE, getConn().getTextAttr(ds, NAME));
-					String contentLine = constructStatsLine(ds, JDBC_MBEAN_MONITOR_ATTR_LIST);
-					getCSVStats().appendToResourceStatisticsCSV(new Date(), getServerName(), DATASOURCE_RESOURCE_TYPE, name, headerLine, contentLine,getHostName());
+
+					if (!isResourceCaptured(DATASOURCE_RESOURCE_TYPE, name)) {
+						continue;
+					}
+
+					String contentLine = constructDataSourceStatsLine(rowEncoder, ds, getMetricSchema().getJdbcAttrs());
+					getCSVStats().appendToResourceStatisticsCSV(getCycleDate(), getServerName(), DATASOURCE_RESOURCE_TYPE, name, headerLine, contentLine,getHostName());
 					artifactList.put(name, now);
 				} catch (Exception e) {
 					AppLog.getLogger().warning("Issue logging " + DATASOURCE_RESOURCE_TYPE + ":" + ds.getCanonicalName() + " for server " + getServerName() + ", reason=" + e.getLocalizedMessage());
@@ -185,20 +204,34 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 	 */
 	protected void logDestinationsStats() throws DataRetrievalException {
 		try {
-			Date nowDate = new Date();
+			Date nowDate = getCycleDate();
 			String now = (new SimpleDateFormat(DATETIME_PARAM_FORMAT)).format(nowDate);
 			Properties artifactList = new Properties();
 			//String headerLine = constructHeaderLine(JMS_DESTINATION_MBEAN_MONITOR_ATTR_LIST);
-			String headerLine =headerList.get("JMS").getString();
+			String headerLine =getHeaderLine("JMS").getString();
+			RowEncoder rowEncoder = getHeaderLine("JMS").getRowEncoder();
 		
 			ObjectName jmsRuntime = getConn().getChild(getServerRuntime(), JMS_RUNTIME);
 			
 			for (ObjectName jmsServer : getConn().getChildren(jmsRuntime, JMS_SERVERS)) { 
+				if (isCancelled()) {
+					break;
+				}
+
 				for (ObjectName destination : getConn().getChildren(jmsServer, DESTINATIONS)) {
+					if (isCancelled()) {
+						break;
+					}
+
 					try {
 						String name = ResourceNameNormaliser.normalise(DESTINATION_RESOURCE_TYPE, getConn().getTextAttr(destination, NAME));
-						String contentLine = constructStatsLine(destination, JMS_DESTINATION_MBEAN_MONITOR_ATTR_LIST);
-						getCSVStats().appendToResourceStatisticsCSV(new Date(), getServerName(), DESTINATION_RESOURCE_TYPE, name, headerLine, contentLine,getHostName());
+
+						if (!isResourceCaptured(DESTINATION_RESOURCE_TYPE, name)) {
+							continue;
+						}
+
+						String contentLine = constructStatsLine(rowEncoder, destination, getMetricSchema().getJmsDestinationAttrs());
+						getCSVStats().appendToResourceStatisticsCSV(getCycleDate(), getServerName(), DESTINATION_RESOURCE_TYPE, name, headerLine, contentLine,getHostName());
 						artifactList.put(name, now);
 					} catch (Exception e) {
 						AppLog.getLogger().warning("Issue logging " + DESTINATION_RESOURCE_TYPE + ":" + destination.getCanonicalName() + " for server " + getServerName() + ", reason=" + e.getLocalizedMessage());
@@ -220,14 +253,19 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 	 */
 	protected void logWebAppStats() throws DataRetrievalException {
 		try {
-			Date nowDate = new Date();
+			Date nowDate = getCycleDate();
 			String now = (new SimpleDateFormat(DATETIME_PARAM_FORMAT)).format(nowDate);
 			Properties artifactList = new Properties();
 			//String headerLine = constructHeaderLine(WEBAPP_MBEAN_MONITOR_ATTR_LIST);
-			String headerLine = headerList.get("WEBAPP").getString();
+			String headerLine = getHeaderLine("WEBAPP").getString();
+			RowEncoder rowEncoder = getHeaderLine("WEBAPP").getRowEncoder();
 			ObjectName[] appRuntimes = getConn().getChildren(getServerRuntime(), APPLICATION_RUNTIMES);
 
 			for (ObjectName appRuntime : appRuntimes) {
+				if (isCancelled()) {
+					break;
+				}
+
 				try {
 					ObjectName[] componentRuntimes = getConn().getChildren(appRuntime, COMPONENT_RUNTIMES);
 									
@@ -238,8 +276,8 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 							if (componentType.equals(WEBAPP_COMPONENT_RUNTIME)) {
 								String name = ResourceNameNormaliser.normalise(WEBAPP_RESOURCE_TYPE, getConn().getTextAttr(componentRuntime, NAME));
 								
-								if (!getComponentBlacklist().contains(name)) {						
-									String contentLine = constructStatsLine(componentRuntime, WEBAPP_MBEAN_MONITOR_ATTR_LIST);
+								if (isResourceCaptured(WEBAPP_RESOURCE_TYPE, name)) {						
+									String contentLine = constructStatsLine(rowEncoder, componentRuntime, getMetricSchema().getWebAppAttrs());
 									getCSVStats().appendToResourceStatisticsCSV(nowDate, getServerName(), WEBAPP_RESOURCE_TYPE, name, headerLine, contentLine,getHostName());
 									artifactList.put(name, now);
 								}
@@ -266,14 +304,19 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 	 */
 	protected void logEJBStats() throws DataRetrievalException {
 		try {
-			Date nowDate = new Date();
+			Date nowDate = getCycleDate();
 			String now = (new SimpleDateFormat(DATETIME_PARAM_FORMAT)).format(nowDate);
 			Properties artifactList = new Properties();
 			//String headerLine = constructHeaderLine(EJB_MBEAN_MONITOR_ATTR_LIST);
-			String headerLine = headerList.get("EJB").getString();
+			String headerLine = getHeaderLine("EJB").getString();
+			RowEncoder rowEncoder = getHeaderLine("EJB").getRowEncoder();
 			ObjectName[] appRuntimes = getConn().getChildren(getServerRuntime(), APPLICATION_RUNTIMES);
 
 			for (ObjectName appRuntime : appRuntimes) {
+				if (isCancelled()) {
+					break;
+				}
+
 				try {
 					ObjectName[] componentRuntimes = getConn().getChildren(appRuntime, COMPONENT_RUNTIMES);
 					
@@ -288,12 +331,14 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 									try { 
 										String name = ResourceNameNormaliser.normalise(EJB_RESOURCE_TYPE, getConn().getTextAttr(ejbRuntime, NAME));
 			
-										if (!getComponentBlacklist().contains(name)) {													
+										if (isResourceCaptured(EJB_RESOURCE_TYPE, name)) {													
 											ObjectName poolRuntime = getConn().getChild(ejbRuntime, POOL_RUNTIME);
 											ObjectName txRuntime = getConn().getChild(ejbRuntime, TRANSACTION_RUNTIME);
-											StringBuilder contentLine = new StringBuilder(constructStatsLine(poolRuntime, EJB_POOL_MBEAN_MONITOR_ATTR_LIST));
-											appendToStatsLine(contentLine, txRuntime, EJB_TRANSACTION_MBEAN_MONITOR_ATTR_LIST);							
-											getCSVStats().appendToResourceStatisticsCSV(new Date(), getServerName(), EJB_RESOURCE_TYPE, name, headerLine, contentLine.toString(),getHostName());
+											RowEncoder.Row row = rowEncoder.startRow(getCycleDateText());
+											appendToStatsLine(row, poolRuntime, getMetricSchema().getEjbPoolAttrs());
+											appendToStatsLine(row, txRuntime, getMetricSchema().getEjbTransactionAttrs());							
+											String contentLine = row.finish();
+											getCSVStats().appendToResourceStatisticsCSV(getCycleDate(), getServerName(), EJB_RESOURCE_TYPE, name, headerLine, contentLine,getHostName());
 											artifactList.put(name, now);
 										}
 									} catch (Exception e) {
@@ -323,18 +368,20 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 	 */
 	protected void logHostMachineStats() throws DataRetrievalException {
 		try {
-			Date nowDate = new Date();
+			Date nowDate = getCycleDate();
 			String now = (new SimpleDateFormat(DATETIME_PARAM_FORMAT)).format(nowDate);
 			Properties artifactList = new Properties();
 			//String headerLine = constructHeaderLine(HOST_MACHINE_STATS_MBEAN_MONITOR_ATTR_LIST);			
-			String headerLine = headerList.get("HOST").getString();
+			String headerLine = getHeaderLine("HOST").getString();
+			RowEncoder rowEncoder = getHeaderLine("HOST").getRowEncoder();
 			String hostMBeanName = String.format(HOST_MACHINE_MBEAN_FULLNAME_TEMPLATE, getServerName());
 			ObjectName remoteWLHostMachineStatsMBean = getConn().getCustomMBean(hostMBeanName);
 			
-			if (remoteWLHostMachineStatsMBean != null) {
-				String name = ResourceNameNormaliser.normalise(HOSTMACHINE_RESOURCE_TYPE, HOST_MACHINE_MBEAN_NAME);
-				String contentLine = constructStatsLine(remoteWLHostMachineStatsMBean, HOST_MACHINE_STATS_MBEAN_MONITOR_ATTR_LIST);
-				getCSVStats().appendToResourceStatisticsCSV(new Date(), getServerName(), HOSTMACHINE_RESOURCE_TYPE, name, headerLine, contentLine,getHostName());
+			String name = ResourceNameNormaliser.normalise(HOSTMACHINE_RESOURCE_TYPE, HOST_MACHINE_MBEAN_NAME);
+
+			if ((remoteWLHostMachineStatsMBean != null) && (isResourceCaptured(HOSTMACHINE_RESOURCE_TYPE, name))) {
+				String contentLine = constructStatsLine(rowEncoder, remoteWLHostMachineStatsMBean, getMetricSchema().getHostMachineAttrs());
+				getCSVStats().appendToResourceStatisticsCSV(getCycleDate(), getServerName(), HOSTMACHINE_RESOURCE_TYPE, name, headerLine, contentLine,getHostName());
 				artifactList.put(name, now);
 			} 
 
@@ -358,19 +405,51 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 	/**
 	 * Construct a single line of statistics to go in a CSV file, by querying 
 	 * an MBean object's specific attributes from a list of given attribute 
-	 * names.
+	 * names (protected so that the row building step can be driven on its 
+	 * own by subclasses, eg. benchmarks).
 	 * 
+	 * @param rowEncoder The encoder for rows of the resource type's CSV header
 	 * @param objectName MBean object name to query the statistics from
 	 * @param attrList List of attributes
-	 * @param estLength Approximate length of line
 	 * @return The new statistics text line
 	 * @throws WebLogicMBeanException Indicates problem occurred retrieving MBean properties
 	 */
-	private String constructStatsLine(ObjectName objectName, String[] attrList) throws WebLogicMBeanException {
-		StringBuilder line = new StringBuilder(DEFAULT_CONTENT_LINE_LEN);
-		line.append(formatSeconsdDateTime(new Date()) + SEPARATOR);
-		appendToStatsLine(line, objectName, attrList);
-		return line.toString();
+	protected String constructStatsLine(RowEncoder rowEncoder, ObjectName objectName, String[] attrList) throws WebLogicMBeanException {
+		RowEncoder.Row row = rowEncoder.startRow(getCycleDateText());
+		appendToStatsLine(row, objectName, attrList);
+		return row.finish();
+	}
+
+	/**
+	 * Construct a single line of a data source's statistics to go in a CSV 
+	 * file, as with constructStatsLine(), also recording the data source's 
+	 * connection delay as a server load figure.
+	 * 
+	 * @param rowEncoder The encoder for rows of the data source CSV header
+	 * @param objectName Data source MBean object name to query the statistics from
+	 * @param attrList List of attributes
+	 * @return The new statistics text line
+	 * @throws WebLogicMBeanException Indicates problem occurred retrieving MBean properties
+	 */
+	private String constructDataSourceStatsLine(RowEncoder rowEncoder, ObjectName objectName, String[] attrList) throws WebLogicMBeanException {
+		RowEncoder.Row row = rowEncoder.startRow(getCycleDateText());
+		double connectionDelayMillis = -1;
+
+		for (String attr : attrList) {
+			if (isCancelled()) {
+				throw new WebLogicMBeanException("Statistics capture for server '" + getServerName() + "' cancelled");
+			}
+
+			double value = getConn().getNumberAttr(objectName, attr);
+			row.appendNumber(value);
+
+			if (attr.equals(CONNECTION_DELAY_TIME)) {
+				connectionDelayMillis = value;
+			}
+		}
+
+		recordConnectionDelay(connectionDelayMillis);
+		return row.finish();
 	}
 
 	/**
@@ -378,14 +457,18 @@ public class StatisticCapturerJMXPoll extends StatisticCapturer {
 	 * an MBean object's specific attributes from a list of given attribute 
 	 * names.
 	 * 
-	 * @param line The line of text to add statistics info to
+	 * @param row The row of text to add statistics info to
 	 * @param objectName MBean object name to query the statistics from
 	 * @param attrList List of attributes
 	 * @throws WebLogicMBeanException Indicates problem occurred retrieving MBean properties
 	 */
-	private void appendToStatsLine(StringBuilder line, ObjectName objectName, String[] attrList) throws WebLogicMBeanException {		
+	private void appendToStatsLine(RowEncoder.Row row, ObjectName objectName, String[] attrList) throws WebLogicMBeanException {		
 		for (String attr : attrList) {
-			line.append(getConn().getNumberAttr(objectName, attr) + SEPARATOR);
+			if (isCancelled()) {
+				throw new WebLogicMBeanException("Statistics capture for server '" + getServerName() + "' cancelled");
+			}
+
+			row.appendNumber(getConn().getNumberAttr(objectName, attr));
 		}
 	}
 
@@ -0,0 +1,242 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.retriever;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import domainhealth.core.env.AppLog;
+
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+/**
+ * Adapts how often each server is polled to how loaded the server currently
+ * is. After each capture, the server's just-captured thread pool figures 
+ * (hogging and idle threads), its data sources' connection delay and the 
+ * time the capture itself took are checked. While the server shows signs of
+ * stress, its polling interval is doubled (up to a maximum factor of its 
+ * configured interval), and once healthy again, it is halved back down to 
+ * the configured interval. When a server is saturated (no idle threads left 
+ * whilst threads are hogged, or the capture itself takes as long as the 
+ * whole capture window), only its core statistics are captured until it 
+ * recovers (or all its due statistics, if core statistics are not due, so 
+ * that a server not configured to capture core statistics is not starved).
+ * A capture which times-out counts as saturated. A capture which did not 
+ * capture the thread pool figures (eg. core statistics were not due) and 
+ * shows no other sign of stress leaves the interval unchanged, as nothing 
+ * is known about the server's load, but clears the server's saturation as
+ * the capture finished in time.
+ */
+public class AdaptivePollController {
+	/**
+	 * Create a controller
+	 * 
+	 * @param enabled Flag indicating if polling should be adapted (if false, all servers are always polled at their configured intervals)
+	 * @param baseIntervalMillis The configured query interval which the effective interval is reported relative to
+	 * @param maxIntervalFactor The maximum factor that a server's interval can be stretched by
+	 */
+	public AdaptivePollController(boolean enabled, int baseIntervalMillis, int maxIntervalFactor) {
+		this.enabled = enabled;
+		this.baseIntervalMillis = baseIntervalMillis;
+		this.maxIntervalFactor = Math.max(maxIntervalFactor, 1);
+	}
+
+	/**
+	 * Returns the factor by which the server's configured intervals are 
+	 * currently stretched.
+	 * 
+	 * @param serverName The name of the server
+	 * @return The interval factor (1 if not stretched)
+	 */
+	public int getIntervalFactor(String serverName) {
+		ServerPollState state = serverStates.get(serverName);
+		return (state != null) ? state.getIntervalFactor() : 1;
+	}
+
+	/**
+	 * Returns the effective query interval of the server (the configured 
+	 * query interval multiplied by the server's current interval factor).
+	 * 
+	 * @param serverName The name of the server
+	 * @return The effective interval in milliseconds
+	 */
+	public long getEffectiveIntervalMillis(String serverName) {
+		return (long) baseIntervalMillis * getIntervalFactor(serverName);
+	}
+
+	/**
+	 * Removes the non-core metric types from those due for capture, if the 
+	 * server is currently saturated. If the core metric type is not due (eg.
+	 * it is not in the configured metric type set), all the due types are 
+	 * kept, so that the server is still captured and can recover.
+	 * 
+	 * @param serverName The name of the server
+	 * @param dueTypes The metric types due for capture in this cycle
+	 * @return The metric types which should actually be captured
+	 */
+	public List<String> filterDueTypes(String serverName, List<String> dueTypes) {
+		ServerPollState state = serverStates.get(serverName);
+
+		if ((state == null) || (!state.isSaturated())) {
+			return dueTypes;
+		}
+
+		List<String> coreTypes = new ArrayList<String>(1);
+
+		for (String type : dueTypes) {
+			if (type.equalsIgnoreCase(CORE_RESOURCE_TYPE)) {
+				coreTypes.add(type);
+			}
+		}
+
+		return coreTypes.isEmpty() ? dueTypes : coreTypes;
+	}
+
+	/**
+	 * Record the result of a server's capture, adapting the server's polling
+	 * interval to its current load.
+	 * 
+	 * @param serverName The name of the server
+	 * @param hoggingThreadCount The number of hogging threads just captured (-1 if not captured)
+	 * @param idleThreadCount The number of idle execute threads just captured (-1 if not captured)
+	 * @param connectionDelayMillis The highest data source connection delay just captured (-1 if not captured)
+	 * @param captureMillis The time the capture took
+	 * @param maxCaptureMillis The maximum time the capture was allowed to take
+	 */
+	public void recordCapture(String serverName, double hoggingThreadCount, double idleThreadCount, double connectionDelayMillis, long captureMillis, long maxCaptureMillis) {
+		if (!enabled) {
+			return;
+		}
+
+		boolean threadsCaptured = ((hoggingThreadCount >= 0) && (idleThreadCount >= 0));
+		ServerPollState state = serverStates.get(serverName);
+
+		if (state == null) {
+			state = new ServerPollState();
+			serverStates.put(serverName, state);
+		}
+
+		boolean threadsExhausted = ((idleThreadCount == 0) && (hoggingThreadCount > 0));
+		boolean saturated = (threadsExhausted || (captureMillis >= maxCaptureMillis));
+		boolean stressed = (saturated || (hoggingThreadCount > 0) || (idleThreadCount == 0) 
+			|| (captureMillis > (maxCaptureMillis * SLOW_CAPTURE_FACTOR)) 
+			|| state.isConnectionDelayRising(connectionDelayMillis));
+
+		if ((!stressed) && (!threadsCaptured)) {
+			state.clearSaturated();
+			return;
+		}
+
+		int previousFactor = state.getIntervalFactor();
+		int newFactor = state.update(stressed, saturated, connectionDelayMillis, maxIntervalFactor);
+
+		if (newFactor != previousFactor) {
+			AppLog.getLogger().info("Adaptive polling for server '" + serverName + "' changed effective query interval to " + (baseIntervalMillis * newFactor / ONE_SECOND_MILLIS) + " secs (hogging threads: " + hoggingThreadCount + ", idle threads: " + idleThreadCount + ", connection delay: " + connectionDelayMillis + " ms, capture time: " + captureMillis + " ms" + (saturated ? ", saturated - capturing core statistics only" : "") + ")");
+		}
+	}
+
+	/**
+	 * Record that a server's capture timed-out, which counts as the server 
+	 * being saturated.
+	 * 
+	 * @param serverName The name of the server
+	 * @param captureMillis The time the capture ran for before timing-out
+	 * @param maxCaptureMillis The maximum time the capture was allowed to take
+	 */
+	public void recordTimedOutCapture(String serverName, long captureMillis, long maxCaptureMillis) {
+		recordCapture(serverName, -1, -1, -1, Math.max(captureMillis, maxCaptureMillis), maxCaptureMillis);
+	}
+
+	/**
+	 * The current polling state of a single server.
+	 */
+	private static class ServerPollState {
+		/**
+		 * Returns the server's current interval factor
+		 * 
+		 * @return The interval factor
+		 */
+		public synchronized int getIntervalFactor() {
+			return intervalFactor;
+		}
+
+		/**
+		 * Indicates if the server was saturated on its last capture
+		 * 
+		 * @return True if saturated
+		 */
+		public synchronized boolean isSaturated() {
+			return saturated;
+		}
+
+		/**
+		 * Clears the server's saturation, leaving its interval factor as is
+		 */
+		public synchronized void clearSaturated() {
+			saturated = false;
+		}
+
+		/**
+		 * Indicates if the given connection delay has risen markedly since the
+		 * last capture.
+		 * 
+		 * @param connectionDelayMillis The connection delay just captured (-1 if not captured)
+		 * @return True if rising
+		 */
+		public synchronized boolean isConnectionDelayRising(double connectionDelayMillis) {
+			return ((lastConnectionDelayMillis >= 0) && (connectionDelayMillis > MIN_RISING_CONNECTION_DELAY_MILLIS) 
+				&& (connectionDelayMillis > (lastConnectionDelayMillis * CONNECTION_DELAY_RISING_FACTOR)));
+		}
+
+		/**
+		 * Double the interval factor if stressed, otherwise halve it.
+		 * 
+		 * @param stressed Flag indicating if the server is showing signs of stress
+		 * @param saturated Flag indicating if the server is saturated
+		 * @param connectionDelayMillis The connection delay just captured (-1 if not captured)
+		 * @param maxIntervalFactor The maximum allowed interval factor
+		 * @return The new interval factor
+		 */
+		public synchronized int update(boolean stressed, boolean saturated, double connectionDelayMillis, int maxIntervalFactor) {
+			intervalFactor = stressed ? Math.min(intervalFactor * 2, maxIntervalFactor) : Math.max(intervalFactor / 2, 1);
+			this.saturated = saturated;
+
+			if (connectionDelayMillis >= 0) {
+				lastConnectionDelayMillis = connectionDelayMillis;
+			}
+
+			return intervalFactor;
+		}
+
+		// Members
+		private int intervalFactor = 1;
+		private boolean saturated = false;
+		private double lastConnectionDelayMillis = -1;
+	}
+
+	// Constants
+	private final static float SLOW_CAPTURE_FACTOR = 0.5F;
+	private final static float CONNECTION_DELAY_RISING_FACTOR = 1.5F;
+	private final static int MIN_RISING_CONNECTION_DELAY_MILLIS = 100;
+	private final static int ONE_SECOND_MILLIS = 1000;
+
+	// Members
+	private final boolean enabled;
+	private final int baseIntervalMillis;
+	private final int maxIntervalFactor;
+	private final Map<String, ServerPollState> serverStates = new ConcurrentHashMap<String, ServerPollState>();
+}
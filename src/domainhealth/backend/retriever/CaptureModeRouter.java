@@ -0,0 +1,204 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.retriever;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import domainhealth.core.env.AppLog;
+
+/**
+ * Decides, per server and metric type, whether statistics are captured from 
+ * the WLDF harvester archive or by polling the server's MBeans directly, 
+ * parsed from the capture mode per type text (eg. "core:jmx,ejb:auto"). 
+ * Types not listed are captured using WLDF.
+ * 
+ * A type in 'auto' mode is captured with whichever mode has recently taken 
+ * the least time for the server, with the costlier mode still being tried 
+ * every so often so that its cost is kept up to date.
+ */
+public class CaptureModeRouter {
+	/**
+	 * Parse the capture mode per type text.
+	 * 
+	 * @param captureModeText The text containing comma separated list of types, each suffixed with ':' and the mode (wldf, jmx or auto)
+	 */
+	public CaptureModeRouter(String captureModeText) {
+		if ((captureModeText != null) && (captureModeText.trim().length() > 0)) {
+			for (String typeEntry : captureModeText.trim().split(TYPE_TOKENIZER_PATTERN)) {
+				int separatorPos = typeEntry.indexOf(MODE_SEPARATOR);
+				String type = (separatorPos >= 0) ? typeEntry.substring(0, separatorPos).trim() : typeEntry.trim();
+				String mode = (separatorPos >= 0) ? typeEntry.substring(separatorPos + 1).trim().toLowerCase() : "";
+
+				if ((!mode.equals(WLDF_MODE)) && (!mode.equals(JMX_MODE)) && (!mode.equals(AUTO_MODE))) {
+					AppLog.getLogger().warning("Ignoring invalid capture mode '" + typeEntry + "' - must be one of " + WLDF_MODE + ", " + JMX_MODE + " or " + AUTO_MODE);
+					continue;
+				}
+
+				typeModes.put(type.toLowerCase(), mode);
+				AppLog.getLogger().info("Capture mode for metric type '" + type + "': " + mode);
+			}
+		}
+	}
+
+	/**
+	 * Determines whether any metric type is, or may be, captured by polling 
+	 * rather than from the WLDF harvester archive.
+	 * 
+	 * @return True if capture modes are mixed; otherwise false
+	 */
+	public boolean isHybrid() {
+		for (String mode : typeModes.values()) {
+			if (!mode.equals(WLDF_MODE)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Get the metric types which may be captured from the WLDF harvester 
+	 * archive, and so need harvesting.
+	 * 
+	 * @param metricTypeSet All the metric types captured
+	 * @return The metric types not always captured by polling
+	 */
+	public List<String> getHarvestedTypes(List<String> metricTypeSet) {
+		List<String> harvestedTypes = new ArrayList<String>();
+
+		for (String type : metricTypeSet) {
+			if (!JMX_MODE.equals(typeModes.get(type.toLowerCase()))) {
+				harvestedTypes.add(type);
+			}
+		}
+
+		return harvestedTypes;
+	}
+
+	/**
+	 * Choose the capture mode of a metric type for a server, for this cycle.
+	 * 
+	 * @param serverName The name of the server
+	 * @param type The metric type
+	 * @return The mode to capture with: WLDF_MODE or JMX_MODE
+	 */
+	public String chooseMode(String serverName, String type) {
+		String mode = typeModes.get(type.toLowerCase());
+
+		if (mode == null) {
+			return WLDF_MODE;
+		} else if (!mode.equals(AUTO_MODE)) {
+			return mode;
+		}
+
+		long wldfCostMillis = getCostMillis(serverName, type, WLDF_MODE);
+		long jmxCostMillis = getCostMillis(serverName, type, JMX_MODE);
+
+		if (wldfCostMillis < 0) {
+			return WLDF_MODE;
+		} else if (jmxCostMillis < 0) {
+			return JMX_MODE;
+		}
+
+		String cheaperMode = (wldfCostMillis <= jmxCostMillis) ? WLDF_MODE : JMX_MODE;
+		String costlierMode = (wldfCostMillis <= jmxCostMillis) ? JMX_MODE : WLDF_MODE;
+		return (getChoiceCount(serverName, type) % REMEASURE_EVERY_CHOICES == 0) ? costlierMode : cheaperMode;
+	}
+
+	/**
+	 * Records how long a metric type took to capture for a server, using 
+	 * the given mode.
+	 * 
+	 * @param serverName The name of the server
+	 * @param type The metric type
+	 * @param mode The mode used: WLDF_MODE or JMX_MODE
+	 * @param captureMillis The capture time
+	 */
+	public void recordCost(String serverName, String type, String mode, long captureMillis) {
+		String key = getKey(serverName, type, mode);
+		Long previousCostMillis = costs.get(key);
+		long costMillis = (previousCostMillis == null) ? captureMillis : Math.round((SMOOTHING_FACTOR * captureMillis) + ((1 - SMOOTHING_FACTOR) * previousCostMillis));
+		costs.put(key, costMillis);
+	}
+
+	/**
+	 * Get the smoothed capture time of a metric type for a server and mode.
+	 * 
+	 * @param serverName The name of the server
+	 * @param type The metric type
+	 * @param mode The capture mode
+	 * @return The capture time in milliseconds (-1 if not measured yet)
+	 */
+	private long getCostMillis(String serverName, String type, String mode) {
+		Long costMillis = costs.get(getKey(serverName, type, mode));
+		return (costMillis != null) ? costMillis.longValue() : -1;
+	}
+
+	/**
+	 * Counts the 'auto' mode choices made for a server's metric type.
+	 * 
+	 * @param serverName The name of the server
+	 * @param type The metric type
+	 * @return The number of choices made, including this one
+	 */
+	private int getChoiceCount(String serverName, String type) {
+		String key = getKey(serverName, type, AUTO_MODE);
+		AtomicInteger choiceCount = choiceCounts.get(key);
+
+		if (choiceCount == null) {
+			choiceCount = new AtomicInteger();
+			AtomicInteger existingChoiceCount = choiceCounts.putIfAbsent(key, choiceCount);
+
+			if (existingChoiceCount != null) {
+				choiceCount = existingChoiceCount;
+			}
+		}
+
+		return choiceCount.incrementAndGet();
+	}
+
+	/**
+	 * Returns the key of a server's metric type and mode
+	 * 
+	 * @param serverName The name of the server
+	 * @param type The metric type
+	 * @param mode The capture mode
+	 * @return The key
+	 */
+	private String getKey(String serverName, String type, String mode) {
+		return serverName + KEY_SEPARATOR + type.toLowerCase() + KEY_SEPARATOR + mode;
+	}
+
+	// Constants
+	public final static String WLDF_MODE = "wldf";
+	public final static String JMX_MODE = "jmx";
+	public final static String AUTO_MODE = "auto";
+	private final static String TYPE_TOKENIZER_PATTERN = ",\\s*";
+	private final static String MODE_SEPARATOR = ":";
+	private final static String KEY_SEPARATOR = "|";
+	private final static float SMOOTHING_FACTOR = 0.3F;
+	private final static int REMEASURE_EVERY_CHOICES = 10;
+
+	// Members
+	private final Map<String, String> typeModes = new HashMap<String, String>();
+	private final ConcurrentMap<String, Long> costs = new ConcurrentHashMap<String, Long>();
+	private final ConcurrentMap<String, AtomicInteger> choiceCounts = new ConcurrentHashMap<String, AtomicInteger>();
+}
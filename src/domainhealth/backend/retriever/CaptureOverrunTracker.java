@@ -0,0 +1,213 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.retriever;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import domainhealth.core.env.AppLog;
+
+/**
+ * Keeps track of which servers have a capture in progress, so that a new 
+ * capture cycle never starts another capture of a server whose previous 
+ * capture is still running, and counts each server's overruns (captures 
+ * not finished by the end of their cycle) and the cycles skipped for the 
+ * server because of them.
+ */
+public class CaptureOverrunTracker {
+	/**
+	 * Indicates whether the server's previous capture is still running, in 
+	 * which case the server is counted as skipped for this cycle.
+	 * 
+	 * @param serverName The name of the server
+	 * @param nowMillis The current time
+	 * @return True if the previous capture is still running
+	 */
+	public boolean checkStillRunning(String serverName, long nowMillis) {
+		ServerCaptureState state = serverStates.get(serverName);
+
+		if ((state == null) || (!state.recordSkipIfRunning())) {
+			return false;
+		}
+
+		AppLog.getLogger().warning("Statistics capture for server '" + serverName + "' skipped for this iteration because its previous capture is still running after " + (nowMillis - state.getStartTimeMillis()) + " ms (skipped " + state.getSkippedCount() + " times so far)");
+		return true;
+	}
+
+	/**
+	 * Record that a capture of the server is starting.
+	 * 
+	 * @param serverName The name of the server
+	 * @param nowMillis The current time
+	 */
+	public void start(String serverName, long nowMillis) {
+		getOrCreateState(serverName).start(nowMillis);
+	}
+
+	/**
+	 * Record that the capture of the server has finished (successfully or 
+	 * not), logging how late it was if it had overrun its cycle.
+	 * 
+	 * @param serverName The name of the server
+	 * @param nowMillis The current time
+	 */
+	public void finish(String serverName, long nowMillis) {
+		ServerCaptureState state = serverStates.get(serverName);
+
+		if (state == null) {
+			return;
+		}
+
+		long startTimeMillis = state.getStartTimeMillis();
+
+		if (state.finish()) {
+			AppLog.getLogger().info("Overrunning statistics capture for server '" + serverName + "' finished after " + (nowMillis - startTimeMillis) + " ms");
+		}
+	}
+
+	/**
+	 * Record that the server's capture did not finish by the end of its 
+	 * cycle.
+	 * 
+	 * @param serverName The name of the server
+	 */
+	public void recordOverrun(String serverName) {
+		ServerCaptureState state = serverStates.get(serverName);
+
+		if (state != null) {
+			state.recordOverrun();
+		}
+	}
+
+	/**
+	 * Returns the number of captures of the server which have overrun their 
+	 * cycle.
+	 * 
+	 * @param serverName The name of the server
+	 * @return The overrun count
+	 */
+	public long getOverrunCount(String serverName) {
+		ServerCaptureState state = serverStates.get(serverName);
+		return (state != null) ? state.getOverrunCount() : 0;
+	}
+
+	/**
+	 * Returns the existing capture state of the server, or a new one 
+	 * 
+	 * @param serverName The name of the server
+	 * @return The server's capture state
+	 */
+	private ServerCaptureState getOrCreateState(String serverName) {
+		ServerCaptureState state = serverStates.get(serverName);
+
+		if (state == null) {
+			state = new ServerCaptureState();
+			ServerCaptureState existingState = serverStates.putIfAbsent(serverName, state);
+
+			if (existingState != null) {
+				state = existingState;
+			}
+		}
+
+		return state;
+	}
+
+	/**
+	 * The capture state of a single server.
+	 */
+	private static class ServerCaptureState {
+		/**
+		 * Mark a capture as running.
+		 * 
+		 * @param nowMillis The capture start time
+		 */
+		public synchronized void start(long nowMillis) {
+			startTimeMillis = nowMillis;
+			overrunning = false;
+		}
+
+		/**
+		 * Mark the running capture as finished.
+		 * 
+		 * @return True if the finished capture had overrun its cycle
+		 */
+		public synchronized boolean finish() {
+			boolean wasOverrunning = overrunning;
+			startTimeMillis = -1;
+			overrunning = false;
+			return wasOverrunning;
+		}
+
+		/**
+		 * Count the running capture as having overrun its cycle.
+		 */
+		public synchronized void recordOverrun() {
+			if ((startTimeMillis >= 0) && (!overrunning)) {
+				overrunning = true;
+				overrunCount++;
+			}
+		}
+
+		/**
+		 * Count a skipped cycle if a capture is still running.
+		 * 
+		 * @return True if a capture is still running
+		 */
+		public synchronized boolean recordSkipIfRunning() {
+			if (startTimeMillis < 0) {
+				return false;
+			}
+
+			skippedCount++;
+			return true;
+		}
+
+		/**
+		 * Returns the time the running capture started
+		 * 
+		 * @return The start time (-1 if no capture is running)
+		 */
+		public synchronized long getStartTimeMillis() {
+			return startTimeMillis;
+		}
+
+		/**
+		 * Returns the number of captures which have overrun
+		 * 
+		 * @return The overrun count
+		 */
+		public synchronized long getOverrunCount() {
+			return overrunCount;
+		}
+
+		/**
+		 * Returns the number of cycles skipped because of overruns
+		 * 
+		 * @return The skipped count
+		 */
+		public synchronized long getSkippedCount() {
+			return skippedCount;
+		}
+
+		// Members
+		private long startTimeMillis = -1;
+		private boolean overrunning = false;
+		private long overrunCount = 0;
+		private long skippedCount = 0;
+	}
+
+	// Members
+	private final ConcurrentMap<String, ServerCaptureState> serverStates = new ConcurrentHashMap<String, ServerCaptureState>();
+}
@@ -60,16 +60,27 @@ public class HeaderLine {
                         headerLine.append(attr + SEPARATOR);
                 }
                 header_string=headerLine.toString();
-
+                rowEncoder = new RowEncoder(attrList.length + 1, header_string.length());
         }
 
         private StringBuilder headerLine;
         public String   header_string;
+        private final RowEncoder rowEncoder;
 
         public String getString() {
                 return header_string;
         }
 
+        /**
+         * Returns the encoder for rows of statistics text matching this
+         * header's columns.
+         *
+         * @return The row encoder
+         */
+        public RowEncoder getRowEncoder() {
+                return rowEncoder;
+        }
+
         private static final int DEFAULT_HEADER_LINE_LEN = 100;
 
 
@@ -0,0 +1,445 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.retriever;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import domainhealth.core.env.AppLog;
+import domainhealth.core.jmx.WebLogicMBeanConnection;
+import domainhealth.core.jmx.WebLogicMBeanException;
+
+import static domainhealth.core.statistics.MonitorProperties.JVM_GC_RSC_PREFIX;
+import static domainhealth.core.statistics.MonitorProperties.JVM_MEMPOOL_RSC_PREFIX;
+
+/**
+ * The JVM platform MBeans (class loading, compilation, memory, threading, 
+ * garbage collectors and memory pools) of a server, as found in the Domain 
+ * Runtime MBean tree, with each garbage collector and memory pool 
+ * classified by its name.
+ * 
+ * The set of collectors and pools of a running JVM does not change, so it 
+ * is looked up and classified once per server and then kept for the 
+ * following capture cycles. If reading the cached MBeans fails (eg. the 
+ * server was restarted with different JVM settings), the server's entry 
+ * should be forgotten so that it is looked up again.
+ */
+public class JvmPlatformMBeans {
+	/**
+	 * The kinds of garbage collector which the JVM statistics distinguish
+	 */
+	public enum CollectorKind { OLD, YOUNG, OTHER }
+
+	/**
+	 * The kinds of memory pool which the JVM statistics distinguish
+	 */
+	public enum PoolKind { CLASS_MEMORY, CLASSBLOCK_MEMORY, NURSERY, OLD, OTHER }
+
+	/**
+	 * Returns the platform MBeans of a server, looking them up on first use 
+	 * or after the server's entry has been forgotten.
+	 * 
+	 * @param conn The connection to look up the MBeans with
+	 * @param serverName The name of the server
+	 * @return The server's JVM platform MBeans
+	 * @throws WebLogicMBeanException Indicates problem looking up the MBeans
+	 */
+	public static JvmPlatformMBeans getForServer(WebLogicMBeanConnection conn, String serverName) throws WebLogicMBeanException {
+		JvmPlatformMBeans mbeans = serverMBeans.get(serverName);
+		
+		if (mbeans == null) {
+			mbeans = new JvmPlatformMBeans(conn, serverName);
+
+			// Only keep a complete set, a server still starting up may not 
+			// have registered its collectors and pools yet
+			if ((!mbeans.collectors.isEmpty()) && (!mbeans.memoryPools.isEmpty())) {
+				serverMBeans.put(serverName, mbeans);
+			}
+		}
+		
+		return mbeans;
+	}
+
+	/**
+	 * Forgets the platform MBeans kept for a server, so that they are looked 
+	 * up again on next use.
+	 * 
+	 * @param serverName The name of the server
+	 */
+	public static void forgetServer(String serverName) {
+		serverMBeans.remove(serverName);
+	}
+
+	/**
+	 * Looks up and classifies the platform MBeans of a server.
+	 * 
+	 * @param conn The connection to look up the MBeans with
+	 * @param serverName The name of the server
+	 * @throws WebLogicMBeanException Indicates problem looking up the MBeans
+	 */
+	private JvmPlatformMBeans(WebLogicMBeanConnection conn, String serverName) throws WebLogicMBeanException {
+		classLoading = newPlatformObjectName(serverName, CLASSLOADING_TYPE);
+		compilation = newPlatformObjectName(serverName, COMPILATION_TYPE);
+		memory = newPlatformObjectName(serverName, MEMORY_TYPE);
+		threading = newPlatformObjectName(serverName, THREADING_TYPE);
+		List<Collector> foundCollectors = new ArrayList<Collector>();
+		List<MemoryPool> foundMemoryPools = new ArrayList<MemoryPool>();
+		Set<String> resourceNames = new HashSet<String>();
+
+		for (ObjectName objectName : conn.queryNames(newPlatformObjectName(serverName, GARBAGE_COLLECTOR_TYPE + ALL_NAMES))) {
+			String name = objectName.getKeyProperty(NAME_KEY);
+			foundCollectors.add(new Collector(objectName, name, toResourceName(JVM_GC_RSC_PREFIX, name, resourceNames), classifyCollector(name)));
+		}
+
+		for (ObjectName objectName : conn.queryNames(newPlatformObjectName(serverName, MEMORY_POOL_TYPE + ALL_NAMES))) {
+			String name = objectName.getKeyProperty(NAME_KEY);
+			foundMemoryPools.add(new MemoryPool(objectName, name, toResourceName(JVM_MEMPOOL_RSC_PREFIX, name, resourceNames), classifyPool(name)));
+		}
+
+		collectors = Collections.unmodifiableList(foundCollectors);
+		memoryPools = Collections.unmodifiableList(foundMemoryPools);
+		AppLog.getLogger().debug("Found JVM platform MBeans for server " + serverName + ", collectors=" + collectors + ", memory pools=" + memoryPools);
+	}
+
+	/**
+	 * Classifies a garbage collector by its name.
+	 * 
+	 * @param name The collector name (eg. PS MarkSweep)
+	 * @return The kind of collector
+	 */
+	static CollectorKind classifyCollector(String name) {
+		if (name == null) {
+			return CollectorKind.OTHER;
+		} else if (OLD_PATTERN.matcher(name).find()) {
+			return CollectorKind.OLD;
+		} else if (YOUNG_PATTERN.matcher(name).find()) {
+			return CollectorKind.YOUNG;
+		} else {
+			return CollectorKind.OTHER;
+		}
+	}
+
+	/**
+	 * Classifies a memory pool by its name.
+	 * 
+	 * @param name The pool name (eg. PS Old Gen)
+	 * @return The kind of pool
+	 */
+	static PoolKind classifyPool(String name) {
+		if (name == null) {
+			return PoolKind.OTHER;
+		} else if (CLASS_MEMORY_PATTERN.matcher(name).find()) {
+			return PoolKind.CLASS_MEMORY;
+		} else if (CLASSBLOCK_MEMORY_PATTERN.matcher(name).find()) {
+			return PoolKind.CLASSBLOCK_MEMORY;
+		} else if (NURSERY_PATTERN.matcher(name).find()) {
+			return PoolKind.NURSERY;
+		} else if (OLD_PATTERN.matcher(name).find()) {
+			return PoolKind.OLD;
+		} else {
+			return PoolKind.OTHER;
+		}
+	}
+
+	/**
+	 * Generates the 'jvm' sub-resource name of a collector or memory pool, 
+	 * replacing characters which are not safe in CSV file names or Graphite 
+	 * metric paths (eg. spaces in 'G1 Eden Space' and the quotes in 
+	 * 'CodeHeap 'profiled nmethods'').
+	 * 
+	 * @param prefix The sub-resource name prefix for the MBean type
+	 * @param name The collector or pool name
+	 * @param usedNames The sub-resource names already given out, to keep each name unique
+	 * @return The sub-resource name
+	 */
+	static String toResourceName(String prefix, String name, Set<String> usedNames) {
+		StringBuilder resourceName = new StringBuilder(prefix);
+		
+		if (name != null) {
+			for (int i = 0; i < name.length(); i++) {
+				char c = name.charAt(i);
+				
+				if ((c < 128) && Character.isLetterOrDigit(c)) {
+					resourceName.append(c);
+				} else if (resourceName.charAt(resourceName.length() - 1) != RESOURCE_NAME_GOOD_CHAR) {
+					// Runs of unsafe characters become a single good character
+					resourceName.append(RESOURCE_NAME_GOOD_CHAR);
+				}
+			}
+			
+			if ((resourceName.length() > prefix.length()) && (resourceName.charAt(resourceName.length() - 1) == RESOURCE_NAME_GOOD_CHAR)) {
+				resourceName.setLength(resourceName.length() - 1);
+			}
+		}
+		
+		String uniqueName = resourceName.toString();
+		
+		for (int count = 2; !usedNames.add(uniqueName); count++) {
+			uniqueName = resourceName.toString() + RESOURCE_NAME_GOOD_CHAR + count;
+		}
+		
+		return uniqueName;
+	}
+
+	/**
+	 * Creates the object name of one of a server's platform MBeans.
+	 * 
+	 * @param serverName The name of the server
+	 * @param typeAndName The platform MBean type and any further keys (eg. Memory)
+	 * @return The object name
+	 * @throws WebLogicMBeanException Indicates the name is not a legal object name
+	 */
+	private static ObjectName newPlatformObjectName(String serverName, String typeAndName) throws WebLogicMBeanException {
+		try {
+			return new ObjectName(PLATFORM_MBEAN_PREFIX + serverName + TYPE_KEY + typeAndName);
+		} catch (MalformedObjectNameException e) {
+			throw new WebLogicMBeanException(e.toString(), e);
+		}
+	}
+
+	/**
+	 * Returns the class loading MBean
+	 * 
+	 * @return The object name
+	 */
+	public ObjectName getClassLoading() {
+		return classLoading;
+	}
+
+	/**
+	 * Returns the compilation MBean
+	 * 
+	 * @return The object name
+	 */
+	public ObjectName getCompilation() {
+		return compilation;
+	}
+
+	/**
+	 * Returns the memory MBean
+	 * 
+	 * @return The object name
+	 */
+	public ObjectName getMemory() {
+		return memory;
+	}
+
+	/**
+	 * Returns the threading MBean
+	 * 
+	 * @return The object name
+	 */
+	public ObjectName getThreading() {
+		return threading;
+	}
+
+	/**
+	 * Returns the garbage collectors
+	 * 
+	 * @return The classified collectors
+	 */
+	public List<Collector> getCollectors() {
+		return collectors;
+	}
+
+	/**
+	 * Returns the memory pools
+	 * 
+	 * @return The classified memory pools
+	 */
+	public List<MemoryPool> getMemoryPools() {
+		return memoryPools;
+	}
+
+	/**
+	 * A garbage collector MBean, with its name and kind.
+	 */
+	public static class Collector {
+		/**
+		 * Creates a new classified collector.
+		 * 
+		 * @param objectName The MBean object name
+		 * @param name The collector name
+		 * @param resourceName The name of the 'jvm' sub-resource holding the collector's statistics
+		 * @param kind The kind of collector
+		 */
+		Collector(ObjectName objectName, String name, String resourceName, CollectorKind kind) {
+			this.objectName = objectName;
+			this.name = name;
+			this.resourceName = resourceName;
+			this.kind = kind;
+		}
+
+		/**
+		 * Returns the MBean object name
+		 * 
+		 * @return The object name
+		 */
+		public ObjectName getObjectName() {
+			return objectName;
+		}
+
+		/**
+		 * Returns the collector name
+		 * 
+		 * @return The name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the name of the 'jvm' sub-resource holding the collector's 
+		 * statistics (eg. gc_G1_Young_Generation)
+		 * 
+		 * @return The sub-resource name
+		 */
+		public String getResourceName() {
+			return resourceName;
+		}
+
+		/**
+		 * Returns the kind of collector
+		 * 
+		 * @return The kind
+		 */
+		public CollectorKind getKind() {
+			return kind;
+		}
+
+		/**
+		 * Returns the name and kind (for logging)
+		 * 
+		 * @return The text
+		 */
+		public String toString() {
+			return name + "(" + kind + ")";
+		}
+
+		// Members
+		private final ObjectName objectName;
+		private final String name;
+		private final String resourceName;
+		private final CollectorKind kind;
+	}
+
+	/**
+	 * A memory pool MBean, with its name and kind.
+	 */
+	public static class MemoryPool {
+		/**
+		 * Creates a new classified memory pool.
+		 * 
+		 * @param objectName The MBean object name
+		 * @param name The pool name
+		 * @param resourceName The name of the 'jvm' sub-resource holding the pool's statistics
+		 * @param kind The kind of pool
+		 */
+		MemoryPool(ObjectName objectName, String name, String resourceName, PoolKind kind) {
+			this.objectName = objectName;
+			this.name = name;
+			this.resourceName = resourceName;
+			this.kind = kind;
+		}
+
+		/**
+		 * Returns the MBean object name
+		 * 
+		 * @return The object name
+		 */
+		public ObjectName getObjectName() {
+			return objectName;
+		}
+
+		/**
+		 * Returns the pool name
+		 * 
+		 * @return The name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the name of the 'jvm' sub-resource holding the pool's 
+		 * statistics (eg. pool_G1_Eden_Space)
+		 * 
+		 * @return The sub-resource name
+		 */
+		public String getResourceName() {
+			return resourceName;
+		}
+
+		/**
+		 * Returns the kind of pool
+		 * 
+		 * @return The kind
+		 */
+		public PoolKind getKind() {
+			return kind;
+		}
+
+		/**
+		 * Returns the name and kind (for logging)
+		 * 
+		 * @return The text
+		 */
+		public String toString() {
+			return name + "(" + kind + ")";
+		}
+
+		// Members
+		private final ObjectName objectName;
+		private final String name;
+		private final String resourceName;
+		private final PoolKind kind;
+	}
+
+	// Constants
+	private final static String PLATFORM_MBEAN_PREFIX = "java.lang:Location=";
+	private final static String TYPE_KEY = ",type=";
+	private final static String NAME_KEY = "name";
+	private final static String ALL_NAMES = ",*";
+	private final static String CLASSLOADING_TYPE = "ClassLoading";
+	private final static String COMPILATION_TYPE = "Compilation";
+	private final static String MEMORY_TYPE = "Memory";
+	private final static String THREADING_TYPE = "Threading";
+	private final static String GARBAGE_COLLECTOR_TYPE = "GarbageCollector";
+	private final static String MEMORY_POOL_TYPE = "MemoryPool";
+	private final static char RESOURCE_NAME_GOOD_CHAR = '_';
+	private final static Pattern OLD_PATTERN = Pattern.compile("Old", Pattern.CASE_INSENSITIVE);
+	private final static Pattern YOUNG_PATTERN = Pattern.compile("Young", Pattern.CASE_INSENSITIVE);
+	private final static Pattern CLASS_MEMORY_PATTERN = Pattern.compile("Class Memory", Pattern.CASE_INSENSITIVE);
+	private final static Pattern CLASSBLOCK_MEMORY_PATTERN = Pattern.compile("ClassBlock Memory", Pattern.CASE_INSENSITIVE);
+	private final static Pattern NURSERY_PATTERN = Pattern.compile("Nursery", Pattern.CASE_INSENSITIVE);
+	private final static Map<String, JvmPlatformMBeans> serverMBeans = new ConcurrentHashMap<String, JvmPlatformMBeans>();
+
+	// Members
+	private final ObjectName classLoading;
+	private final ObjectName compilation;
+	private final ObjectName memory;
+	private final ObjectName threading;
+	private final List<Collector> collectors;
+	private final List<MemoryPool> memoryPools;
+}
@@ -0,0 +1,92 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.retriever;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import domainhealth.core.env.AppLog;
+import domainhealth.core.instrumentation.LatencyHistogram;
+import domainhealth.core.instrumentation.PipelineInstrumentation;
+import domainhealth.core.statistics.StatisticsStorage;
+import domainhealth.core.util.DateUtil;
+import static domainhealth.core.statistics.StatisticsStorage.*;
+
+/**
+ * Publishes the latencies of each capture pipeline stage, for the cycle 
+ * just finished, as a statistics row per stage to every configured output
+ * (CSV files and/or Graphite), under the 'dh_stats' server's 'pipeline'
+ * resource type.
+ */
+public class PipelineStatsPublisher {
+	/**
+	 * Create a publisher writing to the given statistics storage
+	 * 
+	 * @param statisticsStorage The storage of the configured outputs
+	 */
+	public PipelineStatsPublisher(StatisticsStorage statisticsStorage) {
+		this.statisticsStorage = statisticsStorage;
+	}
+
+	/**
+	 * Publish each stage's latencies recorded since the previous publish. 
+	 * Stages with nothing recorded since then are skipped.
+	 * 
+	 * @param cycleDate The time of the cycle being published
+	 */
+	public void publish(Date cycleDate) {
+		String dateTimeText = new SimpleDateFormat(DateUtil.DISPLAY_DATETIME_FORMAT).format(cycleDate);
+
+		for (Map.Entry<String, LatencyHistogram.Snapshot> entry : PipelineInstrumentation.snapshotStages().entrySet()) {
+			String stage = entry.getKey();
+			LatencyHistogram.Snapshot interval = entry.getValue().minus(previousSnapshots.get(stage));
+			previousSnapshots.put(stage, entry.getValue());
+
+			if (interval.getCount() <= 0) {
+				continue;
+			}
+
+			StringBuilder contentLine = new StringBuilder(CONTENT_LINE_LEN);
+			contentLine.append(dateTimeText).append(SEPARATOR);
+			contentLine.append(interval.getCount()).append(SEPARATOR);
+			contentLine.append(interval.getMeanMicros()).append(SEPARATOR);
+			contentLine.append(interval.getValueAtPercentile(50)).append(SEPARATOR);
+			contentLine.append(interval.getValueAtPercentile(90)).append(SEPARATOR);
+			contentLine.append(interval.getValueAtPercentile(99)).append(SEPARATOR);
+			contentLine.append(interval.getMaxMicros()).append(SEPARATOR);
+			contentLine.append(interval.getTotalMicros());
+			AppLog.getLogger().debug("Capture pipeline stage '" + stage + "' for cycle " + dateTimeText + ": " + interval);
+
+			try {
+				statisticsStorage.appendToResourceStatisticsCSV(cycleDate, PIPELINE_STATS_SERVER_NAME, PIPELINE_STATS_RESOURCE_TYPE, stage, HEADER_LINE, contentLine.toString(), null);
+			} catch (Exception e) {
+				AppLog.getLogger().warning("Unable to publish capture pipeline statistics for stage '" + stage + "'. Reason: " + e.toString());
+			}
+		}
+	}
+
+	// Constants
+	private final static String PIPELINE_STATS_SERVER_NAME = "dh_stats";
+	private final static String PIPELINE_STATS_RESOURCE_TYPE = "pipeline";
+	private final static String HEADER_LINE = "DateTime" + SEPARATOR + "Count" + SEPARATOR + "MeanMicros" + SEPARATOR + "P50Micros" + SEPARATOR 
+		+ "P90Micros" + SEPARATOR + "P99Micros" + SEPARATOR + "MaxMicros" + SEPARATOR + "TotalMicros";
+	private final static int CONTENT_LINE_LEN = 80;
+
+	// Members
+	private final StatisticsStorage statisticsStorage;
+	private final Map<String, LatencyHistogram.Snapshot> previousSnapshots = new HashMap<String, LatencyHistogram.Snapshot>();
+}
@@ -0,0 +1,245 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.retriever;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import domainhealth.core.env.AppLog;
+
+/**
+ * The collection cadence of each metric type, parsed from the metric type 
+ * set text (eg. "jvm:300,core:10,datasource,webapp:300"). A type listed 
+ * without an interval is collected every default query interval.
+ * 
+ * All intervals in use are whole multiples of a common tick interval 
+ * (their greatest common divisor), which is what the capture cycles are scheduled 
+ * at. On each cycle, only the types whose interval falls due for a server 
+ * are captured for that server, so slow-changing types are captured less 
+ * often than fast-changing ones.
+ */
+public class ResourceTypeSchedule {
+	/**
+	 * Parse the metric type set text into the list of types and their 
+	 * collection intervals.
+	 * 
+	 * @param metricTypeText The text containing comma separated list of types, each optionally suffixed with ':' and interval seconds
+	 * @param defaultIntervalMillis The interval to use for types not specifying their own
+	 */
+	public ResourceTypeSchedule(String metricTypeText, int defaultIntervalMillis) {
+		List<String> types = new ArrayList<String>();
+		Map<String, Integer> intervals = new HashMap<String, Integer>();
+		String[] typeEntries = null;
+
+		if (metricTypeText != null) {
+			typeEntries = metricTypeText.trim().split(TYPE_TOKENIZER_PATTERN);
+		}
+
+		if ((typeEntries == null) || (typeEntries.length == 0) || (typeEntries[0].length() == 0)) {
+			typeEntries = new String[] {DEFAULT_METRIC_TYPE};
+		}
+
+		for (String typeEntry : typeEntries) {
+			String type = typeEntry;
+			int intervalMillis = defaultIntervalMillis;
+			int separatorPos = typeEntry.indexOf(INTERVAL_SEPARATOR);
+
+			if (separatorPos >= 0) {
+				type = typeEntry.substring(0, separatorPos).trim();
+				intervalMillis = parseIntervalMillis(type, typeEntry.substring(separatorPos + 1).trim(), defaultIntervalMillis);
+			}
+
+			if (!intervals.containsKey(type)) {
+				types.add(type);
+			}
+
+			intervals.put(type, intervalMillis);
+		}
+
+		int tickMillis = 0;
+
+		for (Integer intervalMillis : intervals.values()) {
+			tickMillis = greatestCommonDivisor(tickMillis, intervalMillis);
+		}
+
+		if (tickMillis < (MINIMUM_INTERVAL_SECS * ONE_SECOND_MILLIS)) {
+			AppLog.getLogger().warning("Metric type intervals have no common interval of at least " + MINIMUM_INTERVAL_SECS + " seconds - some metric types will be captured up to " + MINIMUM_INTERVAL_SECS + " seconds late");
+			tickMillis = MINIMUM_INTERVAL_SECS * ONE_SECOND_MILLIS;
+		}
+
+		this.metricTypeSet = Collections.unmodifiableList(types);
+		this.typeIntervalsMillis = intervals;
+		this.tickIntervalMillis = tickMillis;
+	}
+
+	/**
+	 * Returns the list of all metric types to be collected
+	 * 
+	 * @return The metric type names
+	 */
+	public List<String> getMetricTypeSet() {
+		return metricTypeSet;
+	}
+
+	/**
+	 * Returns the collection interval of a metric type
+	 * 
+	 * @param type The metric type name
+	 * @return The interval in milliseconds
+	 */
+	public int getIntervalMillis(String type) {
+		Integer intervalMillis = typeIntervalsMillis.get(type);
+		return (intervalMillis != null) ? intervalMillis.intValue() : tickIntervalMillis;
+	}
+
+	/**
+	 * Returns the interval which capture cycles need to be run at, for every
+	 * metric type to be captured at its own interval
+	 * 
+	 * @return The tick interval in milliseconds
+	 */
+	public int getTickIntervalMillis() {
+		return tickIntervalMillis;
+	}
+
+	/**
+	 * Returns the longest collection interval of a list of metric types
+	 * 
+	 * @param types The metric type names
+	 * @return The longest interval in milliseconds (the tick interval if no types)
+	 */
+	public int getLongestIntervalMillis(List<String> types) {
+		int longestIntervalMillis = tickIntervalMillis;
+
+		for (String type : types) {
+			longestIntervalMillis = Math.max(longestIntervalMillis, getIntervalMillis(type));
+		}
+
+		return longestIntervalMillis;
+	}
+
+	/**
+	 * Returns the metric types due to be captured for a server in the cycle 
+	 * scheduled at the given time. A type is due when the cycle time falls 
+	 * on a whole multiple of the type's interval, when it has never been 
+	 * captured for the server or, if the cycle which should have captured it 
+	 * was skipped or its capture did not run, on the next cycle after that. 
+	 * The interval of every type can be stretched for a server (eg. to poll 
+	 * a heavily loaded server less often). Nothing is recorded until the 
+	 * capture has run and markCaptured() is called.
+	 * 
+	 * @param serverName The name of the server
+	 * @param cycleTimeMillis The scheduled (wall-clock aligned) time of the cycle
+	 * @param intervalFactor The factor to multiply each type's interval by for this server (1 for no stretching)
+	 * @return The metric types to capture for the server in this cycle
+	 */
+	public List<String> getDueTypes(String serverName, long cycleTimeMillis, int intervalFactor) {
+		List<String> dueTypes = new ArrayList<String>(metricTypeSet.size());
+
+		for (String type : metricTypeSet) {
+			long intervalMillis = (long) getIntervalMillis(type) * intervalFactor;
+			String key = serverName + KEY_SEPARATOR + type;
+			Long lastCaptureTimeMillis = lastCaptureTimesMillis.get(key);
+			boolean onSchedule = ((cycleTimeMillis % intervalMillis) == 0);
+			boolean overdue = ((lastCaptureTimeMillis == null) || ((cycleTimeMillis - lastCaptureTimeMillis.longValue()) >= intervalMillis));
+
+			if (onSchedule || overdue) {
+				dueTypes.add(type);
+			}
+		}
+
+		return dueTypes;
+	}
+
+	/**
+	 * Records that the given metric types have been captured for a server, 
+	 * in the cycle scheduled at the given time, so they are not due again 
+	 * until their interval has passed.
+	 * 
+	 * @param serverName The name of the server
+	 * @param types The metric types captured
+	 * @param cycleTimeMillis The scheduled (wall-clock aligned) time of the cycle which captured them
+	 */
+	public void markCaptured(String serverName, List<String> types, long cycleTimeMillis) {
+		Long captureTimeMillis = new Long(cycleTimeMillis);
+
+		for (String type : types) {
+			lastCaptureTimesMillis.put(serverName + KEY_SEPARATOR + type, captureTimeMillis);
+		}
+	}
+
+	/**
+	 * Parse the interval seconds text of a metric type entry, rounding it 
+	 * to the nearest allowed interval.
+	 * 
+	 * @param type The metric type name
+	 * @param intervalSecsText The interval seconds text
+	 * @param defaultIntervalMillis The interval to use if the text is not valid
+	 * @return The interval in milliseconds
+	 */
+	private int parseIntervalMillis(String type, String intervalSecsText, int defaultIntervalMillis) {
+		int intervalSecs;
+
+		try {
+			intervalSecs = Integer.parseInt(intervalSecsText);
+		} catch (NumberFormatException e) {
+			AppLog.getLogger().warning("Specified interval seconds of '" + intervalSecsText + "' for metric type '" + type + "' is not a number - using the default query interval");
+			return defaultIntervalMillis;
+		}
+
+		int roundedIntervalSecs = Math.max(MINIMUM_INTERVAL_SECS, Math.round((float) intervalSecs / MINIMUM_INTERVAL_SECS) * MINIMUM_INTERVAL_SECS);
+
+		if (roundedIntervalSecs != intervalSecs) {
+			AppLog.getLogger().warning("Specified interval seconds of '" + intervalSecs + "' for metric type '" + type + "' is not a multiple of " + MINIMUM_INTERVAL_SECS + " - changing to value '" + roundedIntervalSecs + "'");
+		}
+
+		return roundedIntervalSecs * ONE_SECOND_MILLIS;
+	}
+
+	/**
+	 * Returns the greatest common divisor of two positive numbers
+	 * 
+	 * @param a The first number
+	 * @param b The second number
+	 * @return The greatest common divisor
+	 */
+	private static int greatestCommonDivisor(int a, int b) {
+		while (b != 0) {
+			int remainder = a % b;
+			a = b;
+			b = remainder;
+		}
+
+		return a;
+	}
+
+	// Members
+	private final List<String> metricTypeSet;
+	private final Map<String, Integer> typeIntervalsMillis;
+	private final int tickIntervalMillis;
+	private final Map<String, Long> lastCaptureTimesMillis = new ConcurrentHashMap<String, Long>();
+
+	// Constants
+	private final static String DEFAULT_METRIC_TYPE = "core";
+	private final static String TYPE_TOKENIZER_PATTERN = ",\\s*";
+	private final static String INTERVAL_SEPARATOR = ":";
+	private final static String KEY_SEPARATOR = "|";
+	private final static int MINIMUM_INTERVAL_SECS = 5;
+	private final static int ONE_SECOND_MILLIS = 1000;
+}
@@ -16,26 +16,38 @@ package domainhealth.backend.retriever;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.ObjectName;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 
+import commonj.work.WorkException;
 import commonj.work.WorkItem;
 import commonj.work.WorkManager;
 import static domainhealth.core.env.AppProperties.*;
 import domainhealth.backend.jmxpoll.StatisticCapturerJMXPoll;
+import domainhealth.backend.wldfcapture.HarvestCalibrator;
 import domainhealth.backend.wldfcapture.HarvesterWLDFModuleCreator;
+import domainhealth.backend.wldfcapture.HarvesterWLDFQueryWatermarks;
 import domainhealth.backend.wldfcapture.StatisticCapturerWLDFQuery;
 import domainhealth.core.env.AppLog;
 import domainhealth.core.env.AppProperties;
 import domainhealth.core.env.ContextAwareWork;
+import domainhealth.core.env.VirtualThreadWorkManager;
+import domainhealth.core.instrumentation.PipelineInstrumentation;
 import domainhealth.core.jmx.DomainRuntimeServiceMBeanConnection;
 import domainhealth.core.jmx.WebLogicMBeanException;
 import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
+import domainhealth.core.statistics.MetricSchema;
+import domainhealth.core.statistics.MetricSchemaReloader;
 import domainhealth.core.statistics.StatisticsStorage;
+import domainhealth.core.util.DateUtil;
 import domainhealth.core.util.FileUtil;
 import domainhealth.core.util.ProductVersionUtil;
 
@@ -51,7 +63,9 @@ import domainhealth.backend.sender.GraphiteBackgroundSender;
  * 
  * In addition to rhe background daemon thread, the Work Manager API is used 
  * to enable each server in the domain to be queried in separate parallel 
- * threads.
+ * threads, and each server's resource types to be captured in parallel 
+ * using a second Work Manager. Optionally (dh_capture_executor=virtual), 
+ * both can instead be run on JVM virtual threads.
  */
 public class RetrieverBackgroundService {
 
@@ -66,6 +80,7 @@ public class RetrieverBackgroundService {
 		this.statisticsRetainNumDays = appProps.getIntProperty(PropKey.CSV_RETAIN_NUM_DAYS);
 		this.statisticsStorage = new StatisticsStorage(appProps.getProperty(PropKey.STATS_OUTPUT_PATH_PROP),
 							appProps.getProperty(PropKey.BACKEND_OUTPUT_PROP));		
+		this.wldfQueryWatermarks = new HarvesterWLDFQueryWatermarks(new File(statisticsStorage.getRootDirectoryPath(), WLDF_QUERY_WATERMARKS_FILENAME));
 		int queryIntervalSecs = appProps.getIntProperty(PropKey.QUERY_INTERVAL_SECS_PROP);
 
 		if (queryIntervalSecs < MINIMUM_SLEEP_SECS) {
@@ -74,23 +89,89 @@ public class RetrieverBackgroundService {
 		}
 
 		queryIntervalMillis 	= queryIntervalSecs * ONE_SECOND_MILLIS;
-		minPollIntervalMillis 	= (int) (MIN_POLL_FACTOR * queryIntervalMillis);
-		maxPollIntervalMillis 	= (int) (MAX_POLL_FACTOR * queryIntervalMillis);		
-		componentBlacklist 	= tokenizeBlacklistText(appProps.getProperty(PropKey.COMPONENT_BLACKLIST_PROP));
-		metricTypeSet 		= tokenizeTypesText(appProps.getProperty(PropKey.METRIC_TYPE_SET_PROP));
+		resourceTypeSchedule	= new ResourceTypeSchedule(appProps.getProperty(PropKey.METRIC_TYPE_SET_PROP), queryIntervalMillis);
+		cycleIntervalMillis	= resourceTypeSchedule.getTickIntervalMillis();
+		maxPollIntervalMillis 	= (int) (MAX_POLL_FACTOR * cycleIntervalMillis);		
+		metricTypeSet 		= resourceTypeSchedule.getMetricTypeSet();
                 for (String type : this.metricTypeSet) {
-                      AppLog.getLogger().info("initialized Statistic Capturer metric SET: " + type.toString());
+                      AppLog.getLogger().info("initialized Statistic Capturer metric SET: " + type.toString() + " (every " + resourceTypeSchedule.getIntervalMillis(type) / ONE_SECOND_MILLIS + " secs)");
                 }
+		AppLog.getLogger().info("Statistics capture cycles run every " + cycleIntervalMillis / ONE_SECOND_MILLIS + " secs");
+		int shortestTypeIntervalMillis = queryIntervalMillis;
+
+		for (String type : metricTypeSet) {
+			shortestTypeIntervalMillis = Math.min(shortestTypeIntervalMillis, resourceTypeSchedule.getIntervalMillis(type));
+		}
+
+		harvestCalibrator = new HarvestCalibrator(shortestTypeIntervalMillis);
+		captureModeRouter = new CaptureModeRouter(appProps.getProperty(PropKey.CAPTURE_MODE_PER_TYPE_PROP));
+		pipelineStatsPublisher = appProps.getBoolProperty(PropKey.PIPELINE_STATS_OUTPUT_PROP, false) ? new PipelineStatsPublisher(statisticsStorage) : null;
+
+		int maxIntervalFactor = appProps.getIntProperty(PropKey.ADAPTIVE_MAX_INTERVAL_FACTOR_PROP);
+		adaptivePollController = new AdaptivePollController(appProps.getBoolProperty(PropKey.ADAPTIVE_POLLING_PROP, false), queryIntervalMillis, 
+				(maxIntervalFactor > 0) ? maxIntervalFactor : DEFAULT_ADAPTIVE_MAX_INTERVAL_FACTOR);
+
+		int circuitFailures = appProps.getIntProperty(PropKey.CIRCUIT_BREAKER_FAILURES_PROP);
+		int circuitMaxBackoffSecs = appProps.getIntProperty(PropKey.CIRCUIT_BREAKER_MAX_BACKOFF_SECS_PROP);
+		circuitBreaker = new ServerCircuitBreaker((circuitFailures > 0) ? circuitFailures : DEFAULT_CIRCUIT_BREAKER_FAILURES, cycleIntervalMillis, 
+				(long) ((circuitMaxBackoffSecs > 0) ? circuitMaxBackoffSecs : DEFAULT_CIRCUIT_BREAKER_MAX_BACKOFF_SECS) * ONE_SECOND_MILLIS, maxPollIntervalMillis);
+
+		int typeConcurrency = appProps.getIntProperty(PropKey.CAPTURE_TYPE_CONCURRENCY_PROP);
+		captureTypeConcurrency = (typeConcurrency > 0) ? typeConcurrency : DEFAULT_CAPTURE_TYPE_CONCURRENCY;
+		int typeTimeoutSecs = appProps.getIntProperty(PropKey.CAPTURE_TYPE_TIMEOUT_SECS_PROP);
+		captureTypeTimeoutMillis = (typeTimeoutSecs > 0) ? typeTimeoutSecs * ONE_SECOND_MILLIS : 0;
+		AppLog.getLogger().info("Resource types captured in parallel per server: " + captureTypeConcurrency + " (timeout for each server's resource types: " + ((captureTypeTimeoutMillis > 0) ? captureTypeTimeoutMillis + " ms, or less if the types due have a shorter interval)" : "sized from the interval of the types due)"));
 
 		WorkManager localCaptureThreadsWkMgr = null;
+		WorkManager localCaptureTypeThreadsWkMgr = null;
+		VirtualThreadWorkManager localVirtualThreadWkMgr = null;
 
-		try {
-			localCaptureThreadsWkMgr = getWorkManager(CAPUTURE_THREADS_WORK_MGR_JNDI);
-		} catch (NamingException e) {
-			throw new IllegalStateException(getClass() + " cannot be instantiateed because Work Manager '" + CAPUTURE_THREADS_WORK_MGR_JNDI + "' cannot be located. " + e.getMessage());
+		if (VIRTUAL_THREADS_CAPTURE_EXECUTOR.equalsIgnoreCase(appProps.getProperty(PropKey.CAPTURE_EXECUTOR_PROP))) {
+			localVirtualThreadWkMgr = VirtualThreadWorkManager.createIfSupported();
+
+			if (localVirtualThreadWkMgr != null) {
+				AppLog.getLogger().notice("Server statistics captured using JVM virtual threads");
+				localCaptureThreadsWkMgr = localVirtualThreadWkMgr;
+				localCaptureTypeThreadsWkMgr = localVirtualThreadWkMgr;
+			} else {
+				AppLog.getLogger().warning("JVM virtual threads requested for statistics capture but not supported by this JVM - using Work Manager '" + CAPUTURE_THREADS_WORK_MGR_JNDI + "' instead");
+			}
+		}
+
+		if (localCaptureThreadsWkMgr == null) {
+			try {
+				localCaptureThreadsWkMgr = getWorkManager(CAPUTURE_THREADS_WORK_MGR_JNDI);
+			} catch (NamingException e) {
+				throw new IllegalStateException(getClass() + " cannot be instantiateed because Work Manager '" + CAPUTURE_THREADS_WORK_MGR_JNDI + "' cannot be located. " + e.getMessage());
+			}
+		}
+
+		if ((captureTypeConcurrency > 1) && (localCaptureTypeThreadsWkMgr == null)) {
+			try {
+				localCaptureTypeThreadsWkMgr = getWorkManager(CAPUTURE_TYPE_THREADS_WORK_MGR_JNDI);
+			} catch (NamingException e) {
+				AppLog.getLogger().warning("Work Manager '" + CAPUTURE_TYPE_THREADS_WORK_MGR_JNDI + "' cannot be located - each server's resource types will be captured in turn. " + e.getMessage());
+			}
+		}
+		
+		WorkManager localWLDFFetchWkMgr = null;
+
+		if (appProps.getBoolProperty(PropKey.WLDF_PIPELINED_FETCH_PROP, false)) {
+			if (localVirtualThreadWkMgr != null) {
+				localWLDFFetchWkMgr = localVirtualThreadWkMgr;
+			} else {
+				try {
+					localWLDFFetchWkMgr = getWorkManager(WLDF_FETCH_WORK_MGR_JNDI);
+				} catch (NamingException e) {
+					AppLog.getLogger().warning("Work Manager '" + WLDF_FETCH_WORK_MGR_JNDI + "' cannot be located - WLDF records will not be fetched pipelined. " + e.getMessage());
+				}
+			}
 		}
 		
 		this.captureThreadsWkMgr = localCaptureThreadsWkMgr;
+		this.captureTypeThreadsWkMgr = localCaptureTypeThreadsWkMgr;
+		this.wldfFetchWkMgr = localWLDFFetchWkMgr;
+		this.virtualThreadWkMgr = localVirtualThreadWkMgr;
 		
 		boolean dhstats=appProps.getBoolProperty(PropKey.GRAPHITE_REPORT_DHSTATS_PROP,true);
                 String backend_output=appProps.getProperty(PropKey.BACKEND_OUTPUT_PROP);
@@ -103,6 +184,16 @@ public class RetrieverBackgroundService {
 		this.gSender=gSender;
 		statisticsStorage.setSender(gSender);
 	}
+
+	/**
+	 * Sets the reloader which is asked, at the start of every capture cycle, 
+	 * to swap the metric schema if the DomainHealth config file has changed.
+	 * 
+	 * @param metricSchemaReloader The metric schema reloader (or null to not watch the config file)
+	 */
+	public void setMetricSchemaReloader(MetricSchemaReloader metricSchemaReloader) {
+		this.metricSchemaReloader = metricSchemaReloader;
+	}
 	
 	/**
 	 * Start the continuously repeating sleep-gather-schedule background 
@@ -113,6 +204,7 @@ public class RetrieverBackgroundService {
 			AppLog.getLogger().info("Statistics Retriever Background Service starting up");
 			File rootDir = FileUtil.createOrRetrieveDir(statisticsStorage.getRootDirectoryPath());
 			AppLog.getLogger().notice("Statistic CSV files location: " + rootDir.getCanonicalPath());			
+			nextCycleTimeMillis = DateUtil.getNextAlignedTimeMillis(System.currentTimeMillis() + INITIAL_SLEEP_DURATION, cycleIntervalMillis);
 			Thread backgroundThread = new Thread(new CaptureRunnable(gSender), this.getClass().getName());
 			backgroundThread.setDaemon(true);
 			backgroundThread.start();
@@ -129,6 +221,11 @@ public class RetrieverBackgroundService {
 	 */
 	public void shutdown() {
 		keepRunning = false;
+
+		if (virtualThreadWkMgr != null) {
+			virtualThreadWkMgr.shutdown();
+		}
+
 		AppLog.getLogger().info("Statistics Retriever Background Service shutting down");
 	}
 
@@ -156,9 +253,12 @@ public class RetrieverBackgroundService {
 	
 	/**
 	 * Main method responsible for running the statistics capture process. The
-	 * first thing this does, when run is sleep for 1 minute before waking up 
-	 * and initiating the statistics capture process to each server in the 
-	 * domain, in parallel.
+	 * first thing this does, when run is sleep until the next scheduled cycle
+	 * time before waking up and initiating the statistics capture process to 
+	 * each server in the domain, in parallel. Cycle times are aligned to 
+	 * whole multiples of the cycle interval on the wall-clock (eg. hh:mm:00,
+	 * hh:mm:30) so that the start of each cycle never drifts and every 
+	 * server's samples land on the same timestamp grid.
 	 *  
 	 * If this is the first time that an attempt has been made to run this 
 	 * process since the server was started or this app was deployed, on the 
@@ -175,13 +275,13 @@ public class RetrieverBackgroundService {
 
 		this.gSender=gSender;
 
-		startWorkTime = System.currentTimeMillis();		
-
 		if (keepRunning) {
-			try { Thread.sleep(sleepPeriodMillis); } catch (Exception e) {}			
+			sleepUntil(nextCycleTimeMillis);
 		}
 
-		long newSleepIntervalMillis = queryIntervalMillis;
+		long cycleTimeMillis = nextCycleTimeMillis;
+		long earliestNextCycleTimeMillis = cycleTimeMillis + 1;
+		boolean captureRan = false;
 		
 		if ((keepRunning) && (!firstTimeProcessingRanOK)) {
 			try {
@@ -190,25 +290,67 @@ public class RetrieverBackgroundService {
 			} catch (Exception e) {					
 				AppLog.getLogger().error("Statistics Retriever Background Service - first time processing initialisation failed - will attempt initialisation again after a pause (this can be caused if the server takes a while to start-up, in which case, the retry should sort things out). Cause: "  + e.toString());
 				AppLog.getLogger().debug("First time processing failure cause: + " + e.getMessage(), e);
-				newSleepIntervalMillis = INITIALISATION_ATTEMPT_AGAIN_SLEEP_DURATION;
+				earliestNextCycleTimeMillis = System.currentTimeMillis() + INITIALISATION_ATTEMPT_AGAIN_SLEEP_DURATION;
 			}
 		}
 			
 		if ((keepRunning) && (firstTimeProcessingRanOK)) {
-			runNormalProcessing();
+			applyMetricSchemaChanges();
+			runNormalProcessing(cycleTimeMillis);
+			captureRan = true;
 		}
 			
 		if (keepRunning) {
-			// Attempt to compensate for the fact that the start time of each 
-			// run will drift out a bit due to excess processing time consumed
-			// during each iteration 
-
-			long lagMillis = Math.max(System.currentTimeMillis() - startWorkTime - sleepPeriodMillis, 0);
-			sleepPeriodMillis = Math.max(minPollIntervalMillis, newSleepIntervalMillis - lagMillis);
+			scheduleNextCycle(cycleTimeMillis, earliestNextCycleTimeMillis, captureRan);
 		}
 		
 	}
 
+	/**
+	 * Works out the next wall-clock aligned cycle time. If the cycle that 
+	 * has just run took so long that one or more of the following cycle 
+	 * times have already passed, those cycles are skipped (rather than run 
+	 * late and off the timestamp grid) and the overrun is recorded.
+	 * 
+	 * @param cycleTimeMillis The scheduled time of the cycle which has just run
+	 * @param earliestNextCycleTimeMillis The earliest time the next cycle is allowed to start
+	 * @param captureRan Flag indicating if statistics capture was run for the cycle
+	 */
+	private void scheduleNextCycle(long cycleTimeMillis, long earliestNextCycleTimeMillis, boolean captureRan) {
+		long timeNowMillis = System.currentTimeMillis();
+		long nextTimeMillis = DateUtil.getNextAlignedTimeMillis(Math.max(timeNowMillis, earliestNextCycleTimeMillis), cycleIntervalMillis);
+		long missedCycles = ((nextTimeMillis - cycleTimeMillis) / cycleIntervalMillis) - 1;
+
+		if ((captureRan) && (missedCycles > 0)) {
+			overrunCycleCount++;
+			skippedCycleCount += missedCycles;
+			AppLog.getLogger().warning("Statistics Retriever Background Service cycle scheduled at " + cycleTimeMillis + " overran by " + (timeNowMillis - cycleTimeMillis - cycleIntervalMillis) + " ms - skipping " + missedCycles + " cycle(s) (total overrun cycles: " + overrunCycleCount + ", total skipped cycles: " + skippedCycleCount + ")");
+		}
+
+		if ((captureRan) && (sendDHStatsToGraphite)) {
+			gSender.resetCounter(SCHEDULER_DH_STATS_NAME);
+			gSender.sendDHData(SCHEDULER_DH_STATS_TYPE, SCHEDULER_DH_STATS_NAME, "overrun_cycles", Long.toString(overrunCycleCount));
+			gSender.sendDHData(SCHEDULER_DH_STATS_TYPE, SCHEDULER_DH_STATS_NAME, "skipped_cycles", Long.toString(skippedCycleCount));
+		}
+
+		nextCycleTimeMillis = nextTimeMillis;
+	}
+
+	/**
+	 * Sleep the current thread until the given wall-clock time, returning 
+	 * early if the service is signalled to stop.
+	 * 
+	 * @param wakeTimeMillis The time to wake up in milliseconds since the epoch
+	 */
+	private void sleepUntil(long wakeTimeMillis) {
+		long sleepMillis = wakeTimeMillis - System.currentTimeMillis();
+
+		while ((keepRunning) && (sleepMillis > 0)) {
+			try { Thread.sleep(Math.min(sleepMillis, cycleIntervalMillis)); } catch (Exception e) {}
+			sleepMillis = wakeTimeMillis - System.currentTimeMillis();
+		}
+	}
+
 	/**
 	 * First time processing. Runs to set up the monitoring environment. Does 
 	 * not run as part of application deployment / start-up because at that 
@@ -236,19 +378,25 @@ public class RetrieverBackgroundService {
 		}
 		
 		if (useWLDFHarvester) {				
-			HarvesterWLDFModuleCreator harvesterModule = new HarvesterWLDFModuleCreator(queryIntervalMillis, domainhealthVersionNumber, wlsVersionNumber);
+			// Harvest as often as the most frequently captured metric type needs
+			harvesterModule = new HarvesterWLDFModuleCreator(harvestCalibrator.getSamplePeriodMillis(), domainhealthVersionNumber, wlsVersionNumber, captureModeRouter.getHarvestedTypes(metricTypeSet), MetricSchema.getCurrent());
 			
 			if (harvesterModule.isDomainHealthAbleToUseWLDF()) {
 				useWLDFHarvester = true;					
 				harvesterModule.createIfNeeded();
+				lastHarvestModuleCheckTimeMillis = System.currentTimeMillis();
 			} else {
 				useWLDFHarvester = false;					
 				AppLog.getLogger().warning("WLDF module creation problems occurred. WLDF Capture mode can't be used - must use JMX Poll mode instead");
 			}
 		} 
 		
-		if (useWLDFHarvester) {				
+		if ((useWLDFHarvester) && (captureModeRouter.isHybrid())) {
+			AppLog.getLogger().notice("Server statistics retrieval mode: Hybrid WLDF Harvested Data Capture and JMX MBean Attribute Polling");
+			wldfQueryWatermarks.load();
+		} else if (useWLDFHarvester) {				
 			AppLog.getLogger().notice("Server statistics retrieval mode: WLDF Harvested Data Capture");
+			wldfQueryWatermarks.load();
 		} else {
 			AppLog.getLogger().notice("Server statistics retrieval mode: JMX MBean Attribute Polling");
 		}
@@ -260,55 +408,199 @@ public class RetrieverBackgroundService {
 	 * Runs the normal statistic capture process, by iterating through the 
 	 * list of currently running servers in the domain, and for each of 
 	 * these, schedule the query of the servers stats in a separate work item
-	 * to run in parallel in the WebLogic thread pool.
+	 * to run in parallel in the WebLogic thread pool. Every server's capturer
+	 * is prepared before any work is scheduled, so that all servers are 
+	 * queried at the same time.
+	 * 
+	 * @param cycleTimeMillis The scheduled (wall-clock aligned) time of this cycle
 	 */
-	private void runNormalProcessing() {
+	private void runNormalProcessing(final long cycleTimeMillis) {
 		DomainRuntimeServiceMBeanConnection conn = null;
+		// The connection is shared with every capture of the cycle, and is only closed once the cycle and all its captures have finished with it
+		final AtomicInteger connUserCount = new AtomicInteger(1);
 		
 		try {
 			AppLog.getLogger().debug("Statistics Retriever Background Service running another iteration to capture and log stats");
 			conn = new DomainRuntimeServiceMBeanConnection();
+			final DomainRuntimeServiceMBeanConnection cycleConn = conn;
 			ObjectName[] serverRuntimes = conn.getAllServerRuntimes();			
+			MetricSchema metricSchema = MetricSchema.getCurrent();
 			int length = serverRuntimes.length;
 			List<WorkItem> pollerWorkItemList = new ArrayList<WorkItem>();
+			List<StatisticCapturer> capturerList = new ArrayList<StatisticCapturer>();
+			final Set<String> completedServerNames = Collections.synchronizedSet(new HashSet<String>());
+			// Each capture's outcome (success or failure) is only recorded once, by whichever of its worker or the cycle timeout gets there first
+			final Set<String> outcomeRecordedServerNames = Collections.synchronizedSet(new HashSet<String>());
 			
 			for (int i = 0; i < length; i++) {
-				final String serverName = conn.getTextAttr(serverRuntimes[i], NAME);
-				final String serverHost = conn.getTextAttr(serverRuntimes[i],"CurrentMachine");
+				String serverName = serverRuntimes[i].getKeyProperty(NAME);
+
+				if (serverName == null) {
+					serverName = conn.getTextAttr(serverRuntimes[i], NAME);
+				}
+
+				if (!metricSchema.getResourceFilter().isServerCaptured(serverName)) {
+					continue;
+				}
+
+				if (!circuitBreaker.isCaptureAllowed(serverName)) {
+					probeServerIfDue(serverRuntimes[i], serverName);
+
+					if (sendDHStatsToGraphite) {
+						gSender.resetCounter(serverName);
+						gSender.sendDHData("servers",serverName,"circuit_state",Integer.toString(circuitBreaker.getState(serverName)));
+					}
+
+					continue;
+				}
+
+				List<String> dueTypes = adaptivePollController.filterDueTypes(serverName, 
+						resourceTypeSchedule.getDueTypes(serverName, cycleTimeMillis, adaptivePollController.getIntervalFactor(serverName)));
+
+				if ((dueTypes.isEmpty()) || (overrunTracker.checkStillRunning(serverName, System.currentTimeMillis()))) {
+					continue;
+				}
+
+				String serverHost = null;
+
+				try {
+					serverHost = conn.getTextAttr(serverRuntimes[i],"CurrentMachine");
+				} catch (WebLogicMBeanException e) {
+					circuitBreaker.recordFailure(serverName, e.toString(), System.currentTimeMillis());
+					AppLog.getLogger().error("Statistics Retriever Background Service - unable to contact specific server '" + serverName + "' for this iteration. Reason: " + e.toString());
+					continue;
+				}
+
 				if(( serverHost==null ) || ( serverHost.length() == 0 )) 
 					AppLog.getLogger().info("SERVER :"+serverName+" OVER MACHINE: "+serverHost);
 				else 
 					AppLog.getLogger().info("SERVER :"+serverName+" OVER MACHINE: <NOT SET IN CONFIG>");
 
-				final StatisticCapturer capturer = getStatisticCapturer(conn, serverRuntimes[i], serverName);
+				// A capture including slow-changing types is given longer than the cycle tick to finish
+				int captureTimeoutMillis = (int) (MAX_POLL_FACTOR * resourceTypeSchedule.getLongestIntervalMillis(dueTypes));
+				StatisticCapturer capturer = getStatisticCapturer(conn, serverRuntimes[i], serverName, dueTypes);
 				capturer.setHost(serverHost);
+				capturer.setResourceTypeCapture(captureTypeThreadsWkMgr, captureTypeConcurrency, 
+						(captureTypeTimeoutMillis > 0) ? Math.min(captureTypeTimeoutMillis, captureTimeoutMillis) : captureTimeoutMillis);
+				capturer.setCycleTimeMillis(cycleTimeMillis);
+				capturer.setCaptureDeadlineMillis(cycleTimeMillis + captureTimeoutMillis);
+				capturerList.add(capturer);
+			}
 
-				pollerWorkItemList.add(captureThreadsWkMgr.schedule(new ContextAwareWork() {
+			for (final StatisticCapturer capturer : capturerList) {
+				final String serverName = capturer.getServerName();
+				ContextAwareWork captureWork = new ContextAwareWork(CAPTURE_QUEUE_NAME) {
 					public void doRun() {
 						try {
 							if(sendDHStatsToGraphite) { 
 								//internal metric counters
 								gSender.resetCounter(serverName);
-								long start_time=System.currentTimeMillis();	
-								capturer.captureAndLogServerStats();
-								long end_time=System.currentTimeMillis();
+							}
+							long start_time=System.currentTimeMillis();	
+							int capturedTypeCount = capturer.captureAndLogServerStats();
+							long end_time=System.currentTimeMillis();
+
+							if (outcomeRecordedServerNames.add(serverName)) {
+								if (capturedTypeCount > 0) {
+									circuitBreaker.recordSuccess(serverName);
+								} else {
+									circuitBreaker.recordFailure(serverName, "no resource type captured", end_time);
+								}
+							}
+
+							if (capturedTypeCount > 0) {
+								resourceTypeSchedule.markCaptured(serverName, capturer.getMetricTypeSet(), cycleTimeMillis);
+							}
+
+							if ((useWLDFHarvester) && (harvestCalibrator.getHarvestLagMillis(serverName) >= 0)) {
+								PipelineInstrumentation.recordMicros(PipelineInstrumentation.WLDF_HARVEST_LAG_STAGE, serverName, harvestCalibrator.getHarvestLagMillis(serverName) * ONE_MILLI_MICROS);
+							}
+
+							adaptivePollController.recordCapture(serverName, capturer.getHoggingThreadCount(), capturer.getIdleThreadCount(), capturer.getMaxConnectionDelayMillis(), end_time-start_time, capturer.getCaptureDeadlineMillis()-cycleTimeMillis);
+
+							if(sendDHStatsToGraphite) { 
 								String elapsed=Long.toString(end_time-start_time);
+								String effectiveInterval=Long.toString(adaptivePollController.getEffectiveIntervalMillis(serverName)/ONE_SECOND_MILLIS);
 								//send gathering statistics metrics over the graphite backend 
 								gSender.sendDHData("servers",serverName,"retrieve_time",elapsed);
+								gSender.sendDHData("servers",serverName,"effective_interval",effectiveInterval);
+								gSender.sendDHData("servers",serverName,"circuit_state",Integer.toString(circuitBreaker.getState(serverName)));
+								gSender.sendDHData("servers",serverName,"overruns",Long.toString(overrunTracker.getOverrunCount(serverName)));
+
+								if ((useWLDFHarvester) && (harvestCalibrator.getHarvestLagMillis(serverName) >= 0)) {
+									gSender.sendDHData("servers",serverName,"harvest_lag",Long.toString(harvestCalibrator.getHarvestLagMillis(serverName)));
+								}
+
 								AppLog.getLogger().info("CAPTURER LOOP for server "+ serverName +" : complete :" +elapsed+ " ms");
 							}
-							else capturer.captureAndLogServerStats();
 
 						} catch (Exception e) {
+							if (outcomeRecordedServerNames.add(serverName)) {
+								circuitBreaker.recordFailure(serverName, e.toString(), System.currentTimeMillis());
+
+								if (e instanceof CaptureCancelledException) {
+									adaptivePollController.recordTimedOutCapture(serverName, System.currentTimeMillis()-cycleTimeMillis, capturer.getCaptureDeadlineMillis()-cycleTimeMillis);
+								}
+							}
+
 							AppLog.getLogger().error(e.toString(),e);
 							AppLog.getLogger().error("Statistics Retriever Background Service - unable to retrieve statistics for specific server '" + serverName + "' for this iteration");
-						}						
+						} finally {
+							completedServerNames.add(serverName);
+							overrunTracker.finish(serverName, System.currentTimeMillis());
+							releaseConnection(cycleConn, connUserCount);
+						}
 					}					
-				}));				
-			}			
+				};
+
+				overrunTracker.start(serverName, System.currentTimeMillis());
+				connUserCount.incrementAndGet();
+
+				try {
+					pollerWorkItemList.add(captureThreadsWkMgr.schedule(captureWork));
+				} catch (WorkException e) {
+					overrunTracker.finish(serverName, System.currentTimeMillis());
+					releaseConnection(cycleConn, connUserCount);
+					AppLog.getLogger().error("Statistics Retriever Background Service - unable to schedule statistics capture for specific server '" + serverName + "' for this iteration. Reason: " + e.toString());
+				}
+			}
 			
-			boolean allCompletedSuccessfully = captureThreadsWkMgr.waitForAll(pollerWorkItemList, maxPollIntervalMillis);
+			long waitMillis = Math.max(cycleTimeMillis + maxPollIntervalMillis - System.currentTimeMillis(), 0);
+			boolean allCompletedSuccessfully = captureThreadsWkMgr.waitForAll(pollerWorkItemList, waitMillis);
 			warnIfTimedOut(allCompletedSuccessfully);
+
+			if (!allCompletedSuccessfully) {
+				long timeNowMillis = System.currentTimeMillis();
+
+				for (StatisticCapturer capturer : capturerList) {
+					if (!completedServerNames.contains(capturer.getServerName())) {
+						overrunTracker.recordOverrun(capturer.getServerName());
+
+						if (timeNowMillis < capturer.getCaptureDeadlineMillis()) {
+							// Capture of slow-changing types stops itself at its own deadline, whilst later cycles skip the server
+							AppLog.getLogger().info("Statistics capture for server '" + capturer.getServerName() + "' allowed to continue after this iteration, for up to " + (capturer.getCaptureDeadlineMillis() - timeNowMillis) + " ms");
+							continue;
+						}
+
+						capturer.cancel();
+
+						if (outcomeRecordedServerNames.add(capturer.getServerName())) {
+							circuitBreaker.recordFailure(capturer.getServerName(), "capture timed-out after " + waitMillis + " ms", timeNowMillis);
+							adaptivePollController.recordTimedOutCapture(capturer.getServerName(), timeNowMillis - cycleTimeMillis, capturer.getCaptureDeadlineMillis() - cycleTimeMillis);
+						}
+					}
+				}
+			}
+
+			if (useWLDFHarvester) {
+				wldfQueryWatermarks.saveIfChanged();
+				checkHarvestCadence();
+			}
+
+			if (pipelineStatsPublisher != null) {
+				pipelineStatsPublisher.publish(new Date(cycleTimeMillis));
+			}
+
 			cleanupOldStatisticsIfNecessary();
 			AppLog.getLogger().info("Statistics Retriever Background Service completing another iteration successfully");
 		} catch (Exception e) {
@@ -316,29 +608,119 @@ public class RetrieverBackgroundService {
 			e.printStackTrace();
 			AppLog.getLogger().error("Statistics Retriever Background Service - unable to retrieve statistics for domain's servers for this iteration");
 		} finally {
-			if (conn != null) {
-				conn.close();
-			}
+			releaseConnection(conn, connUserCount);
+		}
+	}
+
+	/**
+	 * Gives up one user's hold on the cycle's shared server connection, 
+	 * closing the connection if this was the last user (so captures which 
+	 * overrun their cycle are not left with a closed connection).
+	 * 
+	 * @param conn The cycle's connection (null if never opened)
+	 * @param connUserCount The number of holders of the connection
+	 */
+	private void releaseConnection(DomainRuntimeServiceMBeanConnection conn, AtomicInteger connUserCount) {
+		if ((connUserCount.decrementAndGet() == 0) && (conn != null)) {
+			conn.close();
 		}
 	}
 
 	/**
 	 * Returns the implementation of the Statistics Capturer (eg. JMX Poll, 
-	 * WLDF Harvest).
+	 * WLDF Harvest). When WLDF is used but some of the due metric types are 
+	 * routed to JMX Poll for the server, a hybrid capturer is returned which
+	 * captures each type with the mode it has been routed to.
 	 * 
 	 * @param conn JMX Connection to domain runtime
 	 * @param serverRuntime Handle on the specific server runtime to do capturing for
 	 * @param serverName The name of the specific server runtime to do capturing for
+	 * @param dueTypes The metric types due to be captured for the server in this cycle
 	 * @return The new instance of the Statistics Capturer implementation
 	 */
-	private StatisticCapturer getStatisticCapturer(DomainRuntimeServiceMBeanConnection conn, ObjectName serverRuntime, String serverName) {
-		if (useWLDFHarvester) {
-			return new StatisticCapturerWLDFQuery(statisticsStorage, conn, serverRuntime, serverName, queryIntervalMillis, componentBlacklist, metricTypeSet,wlsVersionNumber,jvmVersion);
-		} else {
-			return new StatisticCapturerJMXPoll(statisticsStorage, conn, serverRuntime, serverName, queryIntervalMillis, componentBlacklist, metricTypeSet,wlsVersionNumber,jvmVersion);
+	private StatisticCapturer getStatisticCapturer(DomainRuntimeServiceMBeanConnection conn, ObjectName serverRuntime, String serverName, List<String> dueTypes) {
+		if (!useWLDFHarvester) {
+			return new StatisticCapturerJMXPoll(statisticsStorage, conn, serverRuntime, serverName, queryIntervalMillis, dueTypes,wlsVersionNumber,jvmVersion);
+		} else if (!captureModeRouter.isHybrid()) {
+			return getWLDFStatisticCapturer(conn, serverRuntime, serverName, dueTypes);
+		}
+
+		List<String> wldfTypes = new ArrayList<String>();
+		List<String> jmxTypes = new ArrayList<String>();
+
+		for (String type : dueTypes) {
+			if (CaptureModeRouter.JMX_MODE.equals(captureModeRouter.chooseMode(serverName, type))) {
+				jmxTypes.add(type);
+			} else {
+				wldfTypes.add(type);
+			}
 		}
+
+		StatisticCapturer jmxCapturer = new StatisticCapturerJMXPoll(statisticsStorage, conn, serverRuntime, serverName, queryIntervalMillis, jmxTypes,wlsVersionNumber,jvmVersion);
+		StatisticCapturerWLDFQuery wldfCapturer = getWLDFStatisticCapturer(conn, serverRuntime, serverName, wldfTypes);
+		return new StatisticCapturerHybrid(statisticsStorage, conn, serverRuntime, serverName, queryIntervalMillis, dueTypes, wlsVersionNumber, jvmVersion, 
+				wldfCapturer, jmxCapturer, captureModeRouter);
+	}
+
+	/**
+	 * Returns a WLDF Harvest Statistics Capturer for the given metric types.
+	 * 
+	 * @param conn JMX Connection to domain runtime
+	 * @param serverRuntime Handle on the specific server runtime to do capturing for
+	 * @param serverName The name of the specific server runtime to do capturing for
+	 * @param types The metric types to be captured from the WLDF harvester archive
+	 * @return The new instance of the WLDF Statistics Capturer
+	 */
+	private StatisticCapturerWLDFQuery getWLDFStatisticCapturer(DomainRuntimeServiceMBeanConnection conn, ObjectName serverRuntime, String serverName, List<String> types) {
+		StatisticCapturerWLDFQuery wldfCapturer = new StatisticCapturerWLDFQuery(statisticsStorage, conn, serverRuntime, serverName, queryIntervalMillis, types,wlsVersionNumber,jvmVersion, wldfQueryWatermarks);
+		wldfCapturer.setPipelinedFetch(wldfFetchWkMgr);
+		wldfCapturer.setHarvestCalibrator(harvestCalibrator);
+		return wldfCapturer;
 	}
 		
+	/**
+	 * If the server's circuit is open and its next probe is due, schedules a
+	 * cheap read of the server's state, in the background, to find out if 
+	 * capture of the server can be tried again. The probe is never waited 
+	 * for, so a still hung server holds back no capture cycle, and a probe 
+	 * not reporting back within a cycle is counted as failed by the circuit
+	 * breaker, so the server is still probed again later.
+	 * 
+	 * @param serverRuntime Handle on the server runtime to probe
+	 * @param serverName The name of the server to probe
+	 */
+	private void probeServerIfDue(final ObjectName serverRuntime, final String serverName) {
+		final long probeNumber = circuitBreaker.startProbeIfDue(serverName, System.currentTimeMillis());
+
+		if (probeNumber == ServerCircuitBreaker.NO_PROBE) {
+			return;
+		}
+
+		try {
+			captureThreadsWkMgr.schedule(new ContextAwareWork() {
+				public void doRun() {
+					DomainRuntimeServiceMBeanConnection probeConn = null;
+					String serverState = null;
+
+					try {
+						probeConn = new DomainRuntimeServiceMBeanConnection();
+						serverState = probeConn.getTextAttr(serverRuntime, SERVER_STATE);
+					} catch (Exception e) {
+						AppLog.getLogger().debug("Probe of server '" + serverName + "' failed. Reason: " + e.toString());
+					} finally {
+						if (probeConn != null) {
+							probeConn.close();
+						}
+
+						circuitBreaker.recordProbeResult(serverName, probeNumber, serverState, System.currentTimeMillis());
+					}
+				}
+			});
+		} catch (WorkException e) {
+			circuitBreaker.recordProbeResult(serverName, probeNumber, null, System.currentTimeMillis());
+		}
+	}
+
 	/**
 	 * If all Work Manager work items have not completed when timeout occurs, 
 	 * log warning
@@ -467,55 +849,75 @@ public class RetrieverBackgroundService {
 	}
 
 	/**
-	 * Gets list of types to   gather data
-	   statistics collected and shown.
-	 * 
-	 * @param metricTypeSet The text containing comma separated list of names to ignore
-	 * @return A strongly type list of types to g 
+	 * Picks up any change to the metric schema before a capture cycle starts:
+	 * reloads the config file if it has changed and, if the current schema is
+	 * no longer the one the WLDF Harvester Module was configured from, 
+	 * re-configures the module to harvest the new schema's attributes. The
+	 * cycle's capturers, CSV header lines and WLDF queries take the new 
+	 * schema up themselves.
 	 */
-	private List<String> tokenizeTypesText(String metricTypeText) {
-		List<String> typelist = new ArrayList<String>();
-		String[] typelistArray = null;
-		
-		if (metricTypeText != null) {
-			typelistArray = metricTypeText.split(BLACKLIST_TOKENIZER_PATTERN);
+	private void applyMetricSchemaChanges() {
+		if (metricSchemaReloader != null) {
+			metricSchemaReloader.reloadIfConfigFileChanged();
 		}
-		
-		if ((typelistArray != null) && (typelistArray.length > 0)) {
-			typelist = Arrays.asList(typelistArray);
-		} else {
-			typelist = new ArrayList<String>();
-			typelist.add("core");
+
+		MetricSchema currentSchema = MetricSchema.getCurrent();
+
+		if ((harvesterModule == null) || (harvesterModule.getMetricSchema() == currentSchema)) {
+			return;
 		}
-				
-		return typelist;
-	}
 
+		AppLog.getLogger().notice("Metric schema changed to " + currentSchema + " - re-checking WLDF Harvester Module configuration");
+		harvesterModule = new HarvesterWLDFModuleCreator(harvestCalibrator.getSamplePeriodMillis(), domainhealthVersionNumber, wlsVersionNumber, captureModeRouter.getHarvestedTypes(metricTypeSet), currentSchema);
+
+		try {
+			harvesterModule.createIfNeeded();
+			lastHarvestModuleCheckTimeMillis = System.currentTimeMillis();
+		} catch (WebLogicMBeanException e) {
+			AppLog.getLogger().error("Unable to re-configure WLDF Harvester Module for metric schema " + currentSchema + ". Reason: " + e.getMessage());
+		}
+	}
 
 	/**
-	 * Gets list of names of web-app and ejb components which should not have 
-	 * statistics collected and shown.
-	 * 
-	 * @param blacklistText The text containing comma separated list of names to ignore
-	 * @return A strongly type list of names to ignore
+	 * If most servers' WLDF harvests are not landing at the harvester 
+	 * module's sample period, re-checks the module's configuration (eg. 
+	 * re-creating it if its sample period has been changed), and if the 
+	 * calibrator has adjusted the sample period from the measured harvest 
+	 * cadence, re-creates the module with the adjusted sample period. Only 
+	 * checks once per hour, as a harvest cadence takes a while to settle 
+	 * after the module is re-configured.
 	 */
-	private List<String> tokenizeBlacklistText(String blacklistText) {
-		List<String> blacklist = new ArrayList<String>();
-		String[] blacklistArray = null;
-		
-		if (blacklistText != null) {
-			blacklistArray = blacklistText.split(BLACKLIST_TOKENIZER_PATTERN);
+	private void checkHarvestCadence() {
+		long timeNowMillis = System.currentTimeMillis(); 
+
+		if ((harvesterModule == null) || ((timeNowMillis - lastHarvestModuleCheckTimeMillis) <= HOURLY_HARVEST_MODULE_CHECK_IN_MILLIS)) {
+			return;
 		}
-		
-		if ((blacklistArray != null) && (blacklistArray.length > 0)) {
-			blacklist = Arrays.asList(blacklistArray);
+
+		boolean cadenceOff = harvestCalibrator.isHarvestCadenceOff();
+		int samplePeriodMillis = harvestCalibrator.calibrateSamplePeriod();
+		boolean samplePeriodAdjusted = (samplePeriodMillis != harvesterModule.getSamplePeriodMillis());
+
+		if ((!cadenceOff) && (!samplePeriodAdjusted)) {
+			return;
+		}
+
+		lastHarvestModuleCheckTimeMillis = timeNowMillis;
+
+		if (samplePeriodAdjusted) {
+			AppLog.getLogger().notice("Re-configuring WLDF Harvester Module with a sample period of " + samplePeriodMillis + " ms");
+			harvesterModule = new HarvesterWLDFModuleCreator(samplePeriodMillis, domainhealthVersionNumber, wlsVersionNumber, captureModeRouter.getHarvestedTypes(metricTypeSet), harvesterModule.getMetricSchema());
 		} else {
-			blacklist = new ArrayList<String>();
+			AppLog.getLogger().warning("WLDF harvests on most servers are not landing every " + samplePeriodMillis + " ms - re-checking WLDF Harvester Module configuration");
+		}
+
+		try {
+			harvesterModule.createIfNeeded();
+		} catch (WebLogicMBeanException e) {
+			AppLog.getLogger().error("Unable to re-check WLDF Harvester Module configuration. Reason: " + e.getMessage());
 		}
-				
-		return blacklist;
 	}
-	
+
 	/**
 	 * Clean up the old day statistics directories according to number of days
 	 * back the DH configuration settings indicates that statistics files 
@@ -544,31 +946,58 @@ public class RetrieverBackgroundService {
 	private final boolean alwaysUseJMXPoll;
 	private final int statisticsRetainNumDays;
 	private final int queryIntervalMillis;
-	private final int minPollIntervalMillis;
+	private final int cycleIntervalMillis;
 	private final int maxPollIntervalMillis;
-	private final List<String> componentBlacklist;
 	private final List<String> metricTypeSet;
+	private final ResourceTypeSchedule resourceTypeSchedule;
+	private final AdaptivePollController adaptivePollController;
 	private String wlsVersionNumber = null;
 	private String jvmVersion = null;
 	private boolean useWLDFHarvester = false;
 	private final StatisticsStorage statisticsStorage;
+	private final HarvesterWLDFQueryWatermarks wldfQueryWatermarks;
 	private final WorkManager captureThreadsWkMgr;
-	private long sleepPeriodMillis = INITIAL_SLEEP_DURATION;
-	private long startWorkTime = System.currentTimeMillis(); 
+	private final WorkManager captureTypeThreadsWkMgr;
+	private final WorkManager wldfFetchWkMgr;
+	private final VirtualThreadWorkManager virtualThreadWkMgr;
+	private final int captureTypeConcurrency;
+	private final int captureTypeTimeoutMillis;
+	private long nextCycleTimeMillis = 0L;
+	private long overrunCycleCount = 0L;
+	private long skippedCycleCount = 0L;
 	private volatile boolean keepRunning = true;
 	private boolean firstTimeProcessingRanOK = false;
 	private long lastCSVCleanupTimeMillis = 0L;
+	private final HarvestCalibrator harvestCalibrator;
+	private final CaptureModeRouter captureModeRouter;
+	private final ServerCircuitBreaker circuitBreaker;
+	private final CaptureOverrunTracker overrunTracker = new CaptureOverrunTracker();
+	private final PipelineStatsPublisher pipelineStatsPublisher;
+	private HarvesterWLDFModuleCreator harvesterModule = null;
+	private MetricSchemaReloader metricSchemaReloader = null;
+	private long lastHarvestModuleCheckTimeMillis = 0L;
 
 	// Constants
 	private final static String DEFAULTED_WLS_VERSION = "9.0.0";
 	private static final String WLS_MIN_VERSION_FOR_USING_WLDF_RELIABLY = "10.3";
 	private final static int ONE_SECOND_MILLIS = 1000;
+	private final static long ONE_MILLI_MICROS = 1000;
 	private final static int MINIMUM_SLEEP_SECS = 15;
-	private final static float MIN_POLL_FACTOR = 0.1F;
 	private final static float MAX_POLL_FACTOR = 0.9F;
 	private final static int INITIAL_SLEEP_DURATION = 30 * 1000;
 	private final static int INITIALISATION_ATTEMPT_AGAIN_SLEEP_DURATION = 90 * 1000;	
-	private final static String BLACKLIST_TOKENIZER_PATTERN = ",\\s*";
+	private final static String SCHEDULER_DH_STATS_TYPE = "retriever";
+	private final static String SCHEDULER_DH_STATS_NAME = "cycles";
 	private final static String CAPUTURE_THREADS_WORK_MGR_JNDI = "java:comp/env/DomainHealth_IndividualServerStatCapturerWorkMngr";
+	private final static String CAPUTURE_TYPE_THREADS_WORK_MGR_JNDI = "java:comp/env/DomainHealth_ResourceTypeStatCapturerWorkMngr";
+	private final static String CAPTURE_QUEUE_NAME = "capture";
+	private final static String WLDF_FETCH_WORK_MGR_JNDI = "java:comp/env/DomainHealth_WLDFFetchWorkMngr";
+	private final static int DEFAULT_CAPTURE_TYPE_CONCURRENCY = 4;
+	private final static String VIRTUAL_THREADS_CAPTURE_EXECUTOR = "virtual";
+	private final static int DEFAULT_ADAPTIVE_MAX_INTERVAL_FACTOR = 8;
+	private final static int DEFAULT_CIRCUIT_BREAKER_FAILURES = 3;
+	private final static int DEFAULT_CIRCUIT_BREAKER_MAX_BACKOFF_SECS = 15 * 60;
+	private final static String WLDF_QUERY_WATERMARKS_FILENAME = "wldf_query_watermarks.properties";
 	private final static long HOURLY_CSV_CLEANUP_CHECK_IN_MILLIS = 60 * 60 * 1000;
+	private final static long HOURLY_HARVEST_MODULE_CHECK_IN_MILLIS = 60 * 60 * 1000;
 }
@@ -0,0 +1,206 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.retriever;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static domainhealth.core.statistics.StatisticsStorage.SEPARATOR_CHAR;
+
+/**
+ * Encodes rows of statistics text for one CSV header (one resource type's 
+ * column layout), as consumed by the CSV file and Graphite outputs.
+ * 
+ * The encoder knows the number of columns up front, checking each finished 
+ * row has exactly that many, and sizes the row buffer from the longest row 
+ * it has produced so far. Rows are written into buffers taken from a small
+ * pool shared by all encoders and handed back when each row is finished, 
+ * so buffers are reused from row to row whichever thread builds the row 
+ * (capture work may run on a new virtual thread per work item, so a buffer
+ * per thread would never be reused). Numbers are written directly into the
+ * buffer rather than being turned into strings and concatenated with the 
+ * separator first. The text produced is the same as the text of 
+ * '(value + SEPARATOR)' for every column.
+ * 
+ * One encoder is shared by all capture threads. A row must not be used 
+ * once it has been finished. Only the number of columns is known up front,
+ * not each column's type, as the same header's columns are appended as 
+ * numbers or text depending on where the values are captured from.
+ */
+public class RowEncoder {
+	/**
+	 * Creates a new encoder for rows with the given number of columns.
+	 * 
+	 * @param columnCount The number of columns in a row, including the date-time column
+	 * @param initialCapacity The estimated length of a row in characters
+	 */
+	public RowEncoder(int columnCount, int initialCapacity) {
+		this.columnCount = columnCount;
+		this.rowCapacity = Math.max(initialCapacity, columnCount * MIN_CHARS_PER_COLUMN);
+	}
+
+	/**
+	 * Returns the number of columns in a row (including the date-time column)
+	 * 
+	 * @return The column count
+	 */
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Starts a new row on a pooled buffer (or a new one if none are free), 
+	 * with the date-time text as the row's first column.
+	 * 
+	 * @param dateTimeText The formatted date-time of the row
+	 * @return The row to append the remaining column values to
+	 */
+	public Row startRow(String dateTimeText) {
+		Row row = null;
+
+		for (int i = 0; (row == null) && (i < POOLED_ROWS); i++) {
+			row = pooledRows.getAndSet(i, null);
+		}
+
+		if (row == null) {
+			row = new Row();
+		}
+
+		row.start(this);
+		row.appendText(dateTimeText);
+		return row;
+	}
+
+	/**
+	 * Records the length of a finished row, so that buffers grow to fit the 
+	 * longest row seen once rather than on every row.
+	 * 
+	 * @param rowLength The length of the finished row
+	 */
+	private void rowFinished(int rowLength) {
+		if (rowLength > rowCapacity) {
+			rowCapacity = rowLength;
+		}
+	}
+
+	/**
+	 * Hands a finished row's buffer back to the pool, unless the pool is 
+	 * already full.
+	 * 
+	 * @param row The finished row
+	 */
+	private static void releaseRow(Row row) {
+		for (int i = 0; i < POOLED_ROWS; i++) {
+			if (pooledRows.compareAndSet(i, null, row)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * A row of statistics text being encoded. Every append writes one column
+	 * value followed by the separator.
+	 */
+	public static class Row {
+		/**
+		 * Resets the reused buffer for a new row of the given encoder.
+		 * 
+		 * @param encoder The encoder the row belongs to
+		 */
+		private void start(RowEncoder encoder) {
+			this.encoder = encoder;
+			appendedColumnCount = 0;
+			buffer.setLength(0);
+			buffer.ensureCapacity(encoder.rowCapacity);
+		}
+
+		/**
+		 * Appends an integral column value.
+		 * 
+		 * @param value The column value
+		 */
+		public void appendNumber(long value) {
+			appendedColumnCount++;
+			buffer.append(value).append(SEPARATOR_CHAR);
+		}
+
+		/**
+		 * Appends a floating point column value.
+		 * 
+		 * @param value The column value
+		 */
+		public void appendNumber(double value) {
+			appendedColumnCount++;
+			buffer.append(value).append(SEPARATOR_CHAR);
+		}
+
+		/**
+		 * Appends a single precision floating point column value.
+		 * 
+		 * @param value The column value
+		 */
+		public void appendNumber(float value) {
+			appendedColumnCount++;
+			buffer.append(value).append(SEPARATOR_CHAR);
+		}
+
+		/**
+		 * Appends a text column value ('null' for no value, as with string 
+		 * concatenation).
+		 * 
+		 * @param value The column value
+		 */
+		public void appendText(String value) {
+			appendedColumnCount++;
+			buffer.append(value).append(SEPARATOR_CHAR);
+		}
+
+		/**
+		 * Finishes the row, returning its text, and hands the row's buffer 
+		 * back to the pool.
+		 * 
+		 * @return The text data row (ready to be appended to a CSV)
+		 * @throws IllegalStateException Indicates the row does not have the same number of columns as its header
+		 */
+		public String finish() {
+			RowEncoder rowEncoder = encoder;
+			int rowColumnCount = appendedColumnCount;
+			String text = buffer.toString();
+			rowEncoder.rowFinished(buffer.length());
+			encoder = null;
+			releaseRow(this);
+
+			if (rowColumnCount != rowEncoder.columnCount) {
+				throw new IllegalStateException("Statistics row has " + rowColumnCount + " columns but its header has " + rowEncoder.columnCount + " columns");
+			}
+
+			return text;
+		}
+
+		// Members
+		private final StringBuilder buffer = new StringBuilder(DEFAULT_ROW_CAPACITY);
+		private RowEncoder encoder;
+		private int appendedColumnCount;
+	}
+
+	// Constants
+	private static final int MIN_CHARS_PER_COLUMN = 8;
+	private static final int DEFAULT_ROW_CAPACITY = 256;
+	private static final int POOLED_ROWS = 64;
+	private static final AtomicReferenceArray<Row> pooledRows = new AtomicReferenceArray<Row>(POOLED_ROWS);
+
+	// Members
+	private final int columnCount;
+	private volatile int rowCapacity;
+}
@@ -0,0 +1,343 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.retriever;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import domainhealth.core.env.AppLog;
+
+/**
+ * Stops a sick server (eg. hung or unreachable) from tying up capture 
+ * threads and holding back every capture cycle. Once a server's capture 
+ * has failed or timed-out a number of times in a row, its circuit is opened 
+ * and the server is no longer captured. Instead, the server is probed with 
+ * a cheap read of its state, at an exponentially backed-off rate. When a 
+ * probe finds the server running, the circuit is half-opened so that the 
+ * server is captured again on the next cycle: a successful capture closes 
+ * the circuit, whereas a further failure re-opens it straight away. A probe
+ * which does not report back within the probe timeout (eg. because the 
+ * server is hung) is counted as failed, so that the server is probed again
+ * later, and any late result of that probe is ignored.
+ */
+public class ServerCircuitBreaker {
+	/**
+	 * Create a circuit breaker
+	 * 
+	 * @param failureThreshold The number of consecutive failed or timed-out captures which opens a server's circuit
+	 * @param initialBackoffMillis The time to wait before first probing a server whose circuit has opened
+	 * @param maxBackoffMillis The maximum time to wait between probes
+	 * @param probeTimeoutMillis The maximum time to wait for a probe to report back
+	 */
+	public ServerCircuitBreaker(int failureThreshold, long initialBackoffMillis, long maxBackoffMillis, long probeTimeoutMillis) {
+		this.failureThreshold = Math.max(failureThreshold, 1);
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = Math.max(maxBackoffMillis, initialBackoffMillis);
+		this.probeTimeoutMillis = probeTimeoutMillis;
+	}
+
+	/**
+	 * Indicates whether the server should be captured in this cycle (ie. its
+	 * circuit is closed or half-open).
+	 * 
+	 * @param serverName The name of the server
+	 * @return True if the server should be captured
+	 */
+	public boolean isCaptureAllowed(String serverName) {
+		ServerCircuitState state = serverStates.get(serverName);
+		return (state == null) || (state.getState() != OPEN_STATE);
+	}
+
+	/**
+	 * Indicates whether the server's circuit is open and it is time for the 
+	 * server to be probed. If so, the probe is marked as in progress so that 
+	 * only one probe of a server is ever outstanding. A probe in progress for
+	 * longer than the probe timeout is first given up on, as a failed probe.
+	 * 
+	 * @param serverName The name of the server
+	 * @param nowMillis The current time
+	 * @return The number identifying the probe to run, to report its result against (NO_PROBE if the server should not be probed now)
+	 */
+	public long startProbeIfDue(String serverName, long nowMillis) {
+		ServerCircuitState state = serverStates.get(serverName);
+
+		if (state == null) {
+			return NO_PROBE;
+		}
+
+		if (state.abandonTimedOutProbe(probeTimeoutMillis, maxBackoffMillis, nowMillis)) {
+			AppLog.getLogger().warning("Circuit still open for server '" + serverName + "' - probe did not report back within " + probeTimeoutMillis + " ms, next probe in " + state.getBackoffMillis() + " ms");
+		}
+
+		return state.startProbeIfDue(nowMillis);
+	}
+
+	/**
+	 * Record that the server was captured successfully, closing its circuit.
+	 * 
+	 * @param serverName The name of the server
+	 */
+	public void recordSuccess(String serverName) {
+		ServerCircuitState state = serverStates.get(serverName);
+
+		if ((state != null) && (state.recordSuccess() != CLOSED_STATE)) {
+			AppLog.getLogger().notice("Circuit closed for server '" + serverName + "' - capture succeeded, server will be captured every cycle again");
+		}
+	}
+
+	/**
+	 * Record that the server's capture failed or timed-out, opening its 
+	 * circuit if it has now failed too many times in a row (or at once, if 
+	 * it was half-open).
+	 * 
+	 * @param serverName The name of the server
+	 * @param reason The description of the failure
+	 * @param nowMillis The current time
+	 */
+	public void recordFailure(String serverName, String reason, long nowMillis) {
+		ServerCircuitState state = getOrCreateState(serverName);
+		int previousState = state.getState();
+
+		if ((state.recordFailure(failureThreshold, initialBackoffMillis, maxBackoffMillis, nowMillis) == OPEN_STATE) && (previousState != OPEN_STATE)) {
+			AppLog.getLogger().warning("Circuit opened for server '" + serverName + "' after " + state.getConsecutiveFailures() + " consecutive failed captures (last: " + reason + ") - skipping server, next probe in " + state.getBackoffMillis() + " ms");
+		}
+	}
+
+	/**
+	 * Record the result of probing a server whose circuit is open. If the 
+	 * server is running, its circuit is half-opened, otherwise the time until
+	 * the next probe is doubled (up to the maximum backoff).
+	 * 
+	 * @param serverName The name of the server
+	 * @param probeNumber The number identifying the probe, as returned by startProbeIfDue()
+	 * @param serverState The state the server reported (null if the probe failed)
+	 * @param nowMillis The current time
+	 */
+	public void recordProbeResult(String serverName, long probeNumber, String serverState, long nowMillis) {
+		ServerCircuitState state = serverStates.get(serverName);
+
+		if (state == null) {
+			return;
+		}
+
+		if (RUNNING_SERVER_STATE.equals(serverState)) {
+			if (state.halfOpen(probeNumber)) {
+				AppLog.getLogger().notice("Circuit half-opened for server '" + serverName + "' - probe found server " + serverState + ", trying capture again next cycle");
+			}
+		} else if (state.backOff(probeNumber, maxBackoffMillis, nowMillis)) {
+			AppLog.getLogger().info("Circuit still open for server '" + serverName + "' - probe found server " + ((serverState != null) ? serverState : "unreachable") + ", next probe in " + state.getBackoffMillis() + " ms");
+		}
+	}
+
+	/**
+	 * Returns the server's current circuit state, as a number suitable for 
+	 * publishing as a metric.
+	 * 
+	 * @param serverName The name of the server
+	 * @return CLOSED_STATE, HALF_OPEN_STATE or OPEN_STATE
+	 */
+	public int getState(String serverName) {
+		ServerCircuitState state = serverStates.get(serverName);
+		return (state != null) ? state.getState() : CLOSED_STATE;
+	}
+
+	/**
+	 * Returns the existing circuit state of the server, or a new closed one 
+	 * 
+	 * @param serverName The name of the server
+	 * @return The server's circuit state
+	 */
+	private ServerCircuitState getOrCreateState(String serverName) {
+		ServerCircuitState state = serverStates.get(serverName);
+
+		if (state == null) {
+			state = new ServerCircuitState();
+			ServerCircuitState existingState = serverStates.putIfAbsent(serverName, state);
+
+			if (existingState != null) {
+				state = existingState;
+			}
+		}
+
+		return state;
+	}
+
+	/**
+	 * The current circuit state of a single server.
+	 */
+	private static class ServerCircuitState {
+		/**
+		 * Returns the circuit state
+		 * 
+		 * @return CLOSED_STATE, HALF_OPEN_STATE or OPEN_STATE
+		 */
+		public synchronized int getState() {
+			return state;
+		}
+
+		/**
+		 * Returns the number of consecutive failed captures
+		 * 
+		 * @return The failure count
+		 */
+		public synchronized int getConsecutiveFailures() {
+			return consecutiveFailures;
+		}
+
+		/**
+		 * Returns the current time between probes
+		 * 
+		 * @return The backoff in milliseconds
+		 */
+		public synchronized long getBackoffMillis() {
+			return backoffMillis;
+		}
+
+		/**
+		 * Close the circuit and reset the failure count and backoff.
+		 * 
+		 * @return The state before closing
+		 */
+		public synchronized int recordSuccess() {
+			int previousState = state;
+			state = CLOSED_STATE;
+			consecutiveFailures = 0;
+			backoffMillis = 0;
+			probeInProgress = false;
+			return previousState;
+		}
+
+		/**
+		 * Count the failure, opening the circuit if half-open or if the 
+		 * threshold has been reached. A half-open circuit re-opens with 
+		 * double its previous backoff.
+		 * 
+		 * @param failureThreshold The consecutive failures which open the circuit
+		 * @param initialBackoffMillis The backoff when first opening
+		 * @param maxBackoffMillis The maximum backoff
+		 * @param nowMillis The current time
+		 * @return The new state
+		 */
+		public synchronized int recordFailure(int failureThreshold, long initialBackoffMillis, long maxBackoffMillis, long nowMillis) {
+			consecutiveFailures++;
+
+			if (state == HALF_OPEN_STATE) {
+				state = OPEN_STATE;
+				backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+				nextProbeTimeMillis = nowMillis + backoffMillis;
+			} else if ((state == CLOSED_STATE) && (consecutiveFailures >= failureThreshold)) {
+				state = OPEN_STATE;
+				backoffMillis = initialBackoffMillis;
+				nextProbeTimeMillis = nowMillis + backoffMillis;
+			}
+
+			return state;
+		}
+
+		/**
+		 * Marks a probe as in progress if the circuit is open, the probe time
+		 * has been reached and no probe is already in progress.
+		 * 
+		 * @param nowMillis The current time
+		 * @return The number identifying the new probe (NO_PROBE if a probe should not be run now)
+		 */
+		public synchronized long startProbeIfDue(long nowMillis) {
+			if ((state != OPEN_STATE) || (probeInProgress) || (nowMillis < nextProbeTimeMillis)) {
+				return NO_PROBE;
+			}
+
+			probeInProgress = true;
+			probeStartTimeMillis = nowMillis;
+			return ++probeNumber;
+		}
+
+		/**
+		 * Give up on the probe in progress if it has not reported back within
+		 * the probe timeout, backing off as for a failed probe.
+		 * 
+		 * @param probeTimeoutMillis The maximum time to wait for a probe
+		 * @param maxBackoffMillis The maximum backoff
+		 * @param nowMillis The current time
+		 * @return True if a probe was given up on
+		 */
+		public synchronized boolean abandonTimedOutProbe(long probeTimeoutMillis, long maxBackoffMillis, long nowMillis) {
+			if ((!probeInProgress) || ((nowMillis - probeStartTimeMillis) < probeTimeoutMillis)) {
+				return false;
+			}
+
+			return backOff(probeNumber, maxBackoffMillis, nowMillis);
+		}
+
+		/**
+		 * Half-open the circuit after a successful probe, unless the probe 
+		 * has already been given up on.
+		 * 
+		 * @param reportingProbeNumber The number identifying the probe reporting back
+		 * @return True if half-opened
+		 */
+		public synchronized boolean halfOpen(long reportingProbeNumber) {
+			if ((!probeInProgress) || (reportingProbeNumber != probeNumber)) {
+				return false;
+			}
+
+			state = HALF_OPEN_STATE;
+			probeInProgress = false;
+			return true;
+		}
+
+		/**
+		 * Double the backoff after a failed probe, scheduling the next probe,
+		 * unless the probe has already been given up on.
+		 * 
+		 * @param reportingProbeNumber The number identifying the probe reporting back
+		 * @param maxBackoffMillis The maximum backoff
+		 * @param nowMillis The current time
+		 * @return True if backed off
+		 */
+		public synchronized boolean backOff(long reportingProbeNumber, long maxBackoffMillis, long nowMillis) {
+			if ((!probeInProgress) || (reportingProbeNumber != probeNumber)) {
+				return false;
+			}
+
+			backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+			nextProbeTimeMillis = nowMillis + backoffMillis;
+			probeInProgress = false;
+			return true;
+		}
+
+		// Members
+		private int state = CLOSED_STATE;
+		private int consecutiveFailures = 0;
+		private long backoffMillis = 0;
+		private long nextProbeTimeMillis = 0;
+		private boolean probeInProgress = false;
+		private long probeStartTimeMillis = 0;
+		private long probeNumber = 0;
+	}
+
+	// Constants
+	public final static int CLOSED_STATE = 0;
+	public final static int HALF_OPEN_STATE = 1;
+	public final static int OPEN_STATE = 2;
+	public final static long NO_PROBE = -1;
+	private final static String RUNNING_SERVER_STATE = "RUNNING";
+
+	// Members
+	private final int failureThreshold;
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+	private final long probeTimeoutMillis;
+	private final ConcurrentMap<String, ServerCircuitState> serverStates = new ConcurrentHashMap<String, ServerCircuitState>();
+}
@@ -17,10 +17,14 @@ package domainhealth.backend.retriever;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Properties;
 
 import javax.management.ObjectName;
 
@@ -29,9 +33,18 @@ import java.lang.management.MemoryUsage;
 
 import java.util.Set;
 import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import commonj.work.WorkException;
+import commonj.work.WorkItem;
+import commonj.work.WorkManager;
 
 
 import domainhealth.core.env.AppLog;
+import domainhealth.core.env.ContextAwareWork;
 import domainhealth.core.jmx.WebLogicMBeanConnection;
 import domainhealth.core.jmx.WebLogicMBeanException;
 
@@ -39,6 +52,7 @@ import static domainhealth.core.jmx.JavaMBeanPropConstants.*;
 import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
 import static domainhealth.core.statistics.StatisticsStorage.*;
 import static domainhealth.core.statistics.MonitorProperties.*;
+import domainhealth.core.statistics.MetricSchema;
 import domainhealth.core.statistics.StatisticsStorage;
 import domainhealth.core.util.DateUtil;
 import domainhealth.backend.retriever.HeaderLine;
@@ -62,21 +76,20 @@ public abstract class StatisticCapturer {
 	 * @param conn Connection to the server's MBean tree
 	 * @param serverRuntime Handle on the server's main runtime MBean
 	 * @param serverName Name of the server to retrieve statistics for
-	 * @param componentBlacklist Names of web-apps/ejbs than should not haves results collected/shown
 	 * @param metricTypeSet metric types to collect
 	 * @param wlsVersionNumber The version of the host WebLogic Domain
 	 */
-	public StatisticCapturer(StatisticsStorage csvStats, WebLogicMBeanConnection conn, ObjectName serverRuntime, String serverName, int queryIntervalMillis, List<String> componentBlacklist, List<String> metricTypeSet,String wlsVersionNumber,String jvmVersion) {
+	public StatisticCapturer(StatisticsStorage csvStats, WebLogicMBeanConnection conn, ObjectName serverRuntime, String serverName, int queryIntervalMillis, List<String> metricTypeSet,String wlsVersionNumber,String jvmVersion) {
 		this.csvStats = csvStats;
 		this.conn = conn;
 		this.serverRuntime = serverRuntime;
 		this.serverName = serverName;
 		this.queryIntervalMillis = queryIntervalMillis;
-		this.componentBlacklist = componentBlacklist;
 		this.wlsVersionNumber = wlsVersionNumber;
 		this.metricTypeSet = metricTypeSet;
 		this.jvmVersion	= jvmVersion;
-		/*TODO array de strings con cabecceras de cada tipo preparadas.., para no construirlas cada vez, SON ESTATICAS!!*/
+		this.metricSchema = MetricSchema.getCurrent();
+		this.headerLines = getHeaderLines(metricSchema);
 
 	}
 
@@ -85,39 +98,307 @@ public abstract class StatisticCapturer {
 	 * implementation class methods for obtaining each category of statistic (
 	 * eg. JDBC, JMS).
 	 * 
+	 * If a resource type Work Manager has been provided and more than one 
+	 * resource type may be captured at a time, each resource type is captured
+	 * as a separate work item in parallel, otherwise each resource type is 
+	 * captured in turn by the calling thread, cancelling the capture if its 
+	 * deadline passes.
+	 * 
+	 * @return The number of resource types captured successfully (0 if every resource type failed)
+	 * @throws CaptureCancelledException Indicates the capture was cancelled (or timed-out) before it finished
 	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
 	 */
-	public final void captureAndLogServerStats() throws DataRetrievalException, IOException {
-		try {
+	public final int captureAndLogServerStats() throws DataRetrievalException, IOException {
 		AppLog.getLogger().debug(getClass() + " initiated to collect stats for server:" + serverName);
-		//TODO: execute reflected methods ?
-		for (String type : metricTypeSet) {
- 		   if(type.equalsIgnoreCase("jvm")){
+
+		if ((typeCaptureWkMgr == null) || (maxConcurrentTypes <= 1) || (metricTypeSet.size() <= 1)) {
+			for (String type : metricTypeSet) {
+				if ((captureDeadlineMillis > 0) && (System.currentTimeMillis() >= captureDeadlineMillis)) {
+					cancel();
+				}
+
+				if (isCancelled()) {
+					AppLog.getLogger().warning("Statistics capture for server '" + serverName + "' cancelled before capturing resource type '" + type + "'");
+					break;
+				}
+
+				try {
+					captureResourceTypeStats(type);
+					capturedTypeCount.incrementAndGet();
+				} catch (DataRetrievalException e) { 
+					/*this avoid exceptions on the main application server systemout.log as we want only log in our log4j logger*/
+				} 
+			}
+		} else {
+			captureResourceTypeStatsInParallel();
+		}
+
+		if (isCancelled()) {
+			throw new CaptureCancelledException("Statistics capture for server '" + serverName + "' was cancelled before it finished");
+		}
+
+		return capturedTypeCount.get();
+	}
+
+	/**
+	 * Asks the capture to stop as soon as possible. Capture is stopped 
+	 * cooperatively: the capture checks whether it has been cancelled between
+	 * reads from the server, so a read already in progress is not cut short.
+	 */
+	public void cancel() {
+		cancelled.set(true);
+	}
+
+	/**
+	 * Indicates whether the capture has been asked to stop.
+	 * 
+	 * @return True if cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled.get();
+	}
+
+	/**
+	 * Returns the flag which is set when the capture is cancelled, for 
+	 * handing to helpers which read from the server on the capture's behalf.
+	 * 
+	 * @return The cancelled flag
+	 */
+	protected AtomicBoolean getCancelledFlag() {
+		return cancelled;
+	}
+
+	/**
+	 * Sets the scheduled time of the capture cycle that this capturer is 
+	 * running for. Statistics captured directly (rather than harvested with 
+	 * their own timestamp) are all recorded against this time so that every 
+	 * server's samples for the cycle land on the same timestamp.
+	 * 
+	 * @param cycleTimeMillis The scheduled cycle time in milliseconds since the epoch
+	 */
+	public void setCycleTimeMillis(long cycleTimeMillis) {
+		this.cycleTimeMillis = cycleTimeMillis;
+	}
+
+	/**
+	 * Sets the time by which the capture of the server should have finished,
+	 * sized from the intervals of the resource types being captured.
+	 * 
+	 * @param captureDeadlineMillis The deadline in milliseconds since the epoch (0 for none)
+	 */
+	public void setCaptureDeadlineMillis(long captureDeadlineMillis) {
+		this.captureDeadlineMillis = captureDeadlineMillis;
+	}
+
+	/**
+	 * Returns the time by which the capture of the server should have 
+	 * finished.
+	 * 
+	 * @return The deadline in milliseconds since the epoch (0 for none)
+	 */
+	public long getCaptureDeadlineMillis() {
+		return captureDeadlineMillis;
+	}
+
+	/**
+	 * Sets the Work Manager and limits to use for capturing each of the 
+	 * server's resource types in parallel.
+	 * 
+	 * @param typeCaptureWkMgr The Work Manager to schedule each resource type capture on (null to capture sequentially)
+	 * @param maxConcurrentTypes The maximum number of resource types of this server to capture at the same time
+	 * @param typeTimeoutMillis The maximum time to wait for the server's resource types to be captured, all together
+	 */
+	public final void setResourceTypeCapture(WorkManager typeCaptureWkMgr, int maxConcurrentTypes, int typeTimeoutMillis) {
+		this.typeCaptureWkMgr = typeCaptureWkMgr;
+		this.maxConcurrentTypes = maxConcurrentTypes;
+		this.typeTimeoutMillis = typeTimeoutMillis;
+	}
+
+	/**
+	 * Capture and persist the statistics of one resource type (eg. "core", 
+	 * "datasource") for the server.
+	 * 
+	 * @param type The metric type name, as listed in the metric type set
+	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
+	 */
+	protected void captureResourceTypeStats(String type) throws DataRetrievalException, IOException {
+		if (type.equalsIgnoreCase("jvm")) {
 			//Only for JVM 1.5 /1.6 and avobe 
-			if(Integer.parseInt(jvmVersion)>=5)	logJvmStats();
- 		   } else if(type.equalsIgnoreCase("core")){
+			if (Integer.parseInt(jvmVersion) >= 5) logJvmStats();
+		} else if (type.equalsIgnoreCase("core")) {
 			logCoreStats();
-    		   } else if (type.equalsIgnoreCase("datasource")) {
+		} else if (type.equalsIgnoreCase("datasource")) {
 			logDataSourcesStats();	
-		   } else if (type.equalsIgnoreCase("jmsdestination")) {
+		} else if (type.equalsIgnoreCase("jmsdestination")) {
 			logDestinationsStats();
-		   } else if (type.equalsIgnoreCase("webapp")) {
+		} else if (type.equalsIgnoreCase("webapp")) {
 			logWebAppStats();
-		   } else if (type.equalsIgnoreCase("ejb")) {
+		} else if (type.equalsIgnoreCase("ejb")) {
 			logEJBStats();
-		   } else if(type.equalsIgnoreCase("hostmachine")) {
+		} else if (type.equalsIgnoreCase("hostmachine")) {
 			logHostMachineStats();
-		   } else if(type.equalsIgnoreCase("extended")) {
+		} else if (type.equalsIgnoreCase("extended")) {
 			logExtendedStats();
-		   }
-			
 		}
-		} catch ( DataRetrievalException  e) { 
-		/*this avoid exceptions on the main application server systemout.log as we want only log in our log4j logger*/
-		} 
 	}
 
-	public final void setHost(String hostName)  {
+	/**
+	 * Schedules a work item per resource type, never allowing more than the 
+	 * maximum number of concurrent types for this server to be in progress, 
+	 * then waits for the types to complete. Waiting for concurrency permits
+	 * and waiting for the types share one deadline for the server (the type 
+	 * timeout from the start of the capture, but no later than the capture's 
+	 * deadline), so the capture never takes longer than the timeout however
+	 * many types there are.
+	 * 
+	 * If any resource type times out, the capture is cancelled and this 
+	 * method then waits, for a short grace period, for every resource type's
+	 * work to finish (having seen the cancel). Work still stuck after the 
+	 * grace period (eg. a read from a hung server which never returns) is 
+	 * abandoned, so that the capture is reported as failed and the overrun 
+	 * and circuit breaker logic can act on the server, rather than the 
+	 * server's capture never finishing.
+	 */
+	private void captureResourceTypeStatsInParallel() {
+		Semaphore typePermits = new Semaphore(maxConcurrentTypes);
+		List<ResourceTypeCaptureWork> typeWorkList = new ArrayList<ResourceTypeCaptureWork>();
+		long startMillis = System.currentTimeMillis();
+		long deadlineMillis = startMillis + typeTimeoutMillis;
+
+		if (captureDeadlineMillis > 0) {
+			deadlineMillis = Math.min(deadlineMillis, captureDeadlineMillis);
+		}
+
+		try {
+			for (String type : metricTypeSet) {
+				if (isCancelled()) {
+					AppLog.getLogger().warning("Statistics capture for server '" + serverName + "' cancelled before capturing resource type '" + type + "'");
+					break;
+				}
+
+				if (!typePermits.tryAcquire(Math.max(deadlineMillis - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS)) {
+					AppLog.getLogger().warning("Statistics capture for server '" + serverName + "' skipping resource type '" + type + "' for this iteration because previous resource types have not completed");
+					continue;
+				}
+
+				ResourceTypeCaptureWork typeWork = new ResourceTypeCaptureWork(type, typePermits);
+
+				try {
+					typeWork.setWorkItem(typeCaptureWkMgr.schedule(typeWork));
+					typeWorkList.add(typeWork);
+				} catch (WorkException e) {
+					typePermits.release();
+					AppLog.getLogger().warning("Unable to schedule capture of resource type '" + type + "' for server '" + serverName + "'. Reason: " + e.toString());
+				}
+			}
+
+			List<WorkItem> timedOutWorkItems = new ArrayList<WorkItem>();
+
+			for (ResourceTypeCaptureWork typeWork : typeWorkList) {
+				long remainingMillis = deadlineMillis - System.currentTimeMillis();
+
+				if ((!typeWork.isCompleted()) && (remainingMillis > 0)) {
+					typeCaptureWkMgr.waitForAll(Collections.singletonList(typeWork.getWorkItem()), remainingMillis);
+				}
+
+				if (!typeWork.isCompleted()) {
+					AppLog.getLogger().warning("Statistics capture for server '" + serverName + "' timed-out retrieving resource type '" + typeWork.getType() + "' after " + (System.currentTimeMillis() - startMillis) + " ms");
+					timedOutWorkItems.add(typeWork.getWorkItem());
+				}
+			}
+
+			if (!timedOutWorkItems.isEmpty()) {
+				cancel();
+				AppLog.getLogger().warning("Statistics capture for server '" + serverName + "' cancelled - waiting for " + timedOutWorkItems.size() + " timed-out resource type(s) to stop");
+
+				if (!typeCaptureWkMgr.waitForAll(timedOutWorkItems, CANCELLED_TYPE_GRACE_MILLIS)) {
+					AppLog.getLogger().warning("Statistics capture for server '" + serverName + "' abandoning resource type work still running " + CANCELLED_TYPE_GRACE_MILLIS + " ms after being cancelled");
+				}
+			}
+		} catch (InterruptedException e) {
+			AppLog.getLogger().warning("Statistics capture for server '" + serverName + "' interrupted whilst waiting for resource types to complete");
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Work item capturing a single resource type for the server, releasing 
+	 * its concurrency permit and flagging completion when finished.
+	 */
+	private class ResourceTypeCaptureWork extends ContextAwareWork {
+		/**
+		 * Create the work for the given resource type
+		 * 
+		 * @param type The metric type name to capture
+		 * @param typePermits The per-server concurrency permits to release when done
+		 */
+		public ResourceTypeCaptureWork(String type, Semaphore typePermits) {
+			super(TYPE_CAPTURE_QUEUE_NAME);
+			this.type = type;
+			this.typePermits = typePermits;
+		}
+
+		/**
+		 * Capture the resource type's statistics
+		 */
+		public void doRun() {
+			try {
+				captureResourceTypeStats(type);
+				capturedTypeCount.incrementAndGet();
+			} catch (DataRetrievalException e) {
+				/*already logged by the exception itself*/
+			} catch (Exception e) {
+				AppLog.getLogger().error("Statistics capture for server '" + serverName + "' failed for resource type '" + type + "'. Reason: " + e.toString(), e);
+			} finally {
+				completed = true;
+				typePermits.release();
+			}
+		}
+
+		/**
+		 * Returns the metric type name being captured
+		 * 
+		 * @return The metric type name
+		 */
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * Indicates whether the capture has finished (successfully or not)
+		 * 
+		 * @return True if finished
+		 */
+		public boolean isCompleted() {
+			return completed;
+		}
+
+		/**
+		 * Returns the Work Manager's handle on this work
+		 * 
+		 * @return The work item
+		 */
+		public WorkItem getWorkItem() {
+			return workItem;
+		}
+
+		/**
+		 * Sets the Work Manager's handle on this work, once scheduled
+		 * 
+		 * @param workItem The work item
+		 */
+		public void setWorkItem(WorkItem workItem) {
+			this.workItem = workItem;
+		}
+
+		// Members
+		private final String type;
+		private final Semaphore typePermits;
+		private volatile boolean completed = false;
+		private WorkItem workItem;
+	}
+
+	public void setHost(String hostName)  {
 		if( (hostName == null) || (hostName.length()==0))  AppLog.getLogger().info(getClass() + " initiated to collect stats for machine server: <HOSTNAME_NOT_SET_IN_CONFIG>");
 		else AppLog.getLogger().info(getClass() + " initiated to collect stats for machine server:" + hostName);
 		this.hostName=hostName;
@@ -133,16 +414,55 @@ public abstract class StatisticCapturer {
 
        protected void logJvmStats() throws DataRetrievalException {
                 try {
-                        String headerLine = getJvmStatsHeaderLine();
-                        String contentLine = getJvmStatsLine();
-                        getCSVStats().appendToResourceStatisticsCSV(new Date(), getServerName(), JVM_RESOURCE_TYPE, CORE_RSC_DEFAULT_NAME, headerLine, contentLine,getHostName()); } catch (Exception e) {
+                        String headerLine = getHeaderLine("JVM").getString();
+                        Map<String, String> gcLines = new LinkedHashMap<String, String>();
+                        Map<String, String> poolLines = new LinkedHashMap<String, String>();
+                        String contentLine = getJvmStatsLine(gcLines, poolLines);
+                        Date nowDate = getCycleDate();
+                        getCSVStats().appendToResourceStatisticsCSV(nowDate, getServerName(), JVM_RESOURCE_TYPE, CORE_RSC_DEFAULT_NAME, headerLine, contentLine,getHostName());
+
+                        // Per garbage collector and per memory pool sub-resources
+                        if ((!gcLines.isEmpty()) || (!poolLines.isEmpty())) {
+                                String now = (new SimpleDateFormat(DateUtil.DATETIME_PARAM_FORMAT)).format(nowDate);
+                                Properties artifactList = new Properties();
+                                appendJvmSubResourceStats(nowDate, getHeaderLine("JVMGC").getString(), gcLines, now, artifactList);
+                                appendJvmSubResourceStats(nowDate, getHeaderLine("JVMPOOL").getString(), poolLines, now, artifactList);
+                                getCSVStats().appendSavedOneDayResourceNameList(nowDate, JVM_RESOURCE_TYPE, artifactList);
+                        }
+                } catch (Exception e) {
                         throw new DataRetrievalException("Problem logging " + CORE_RESOURCE_TYPE + " resources for server " + getServerName(), e);
                 }
         }
 
-        protected String getJvmStatsLine() throws WebLogicMBeanException {
-                StringBuilder line = new StringBuilder(DEFAULT_CONTENT_LINE_LEN);
+        /**
+         * Appends the rows of a set of 'jvm' sub-resources (eg. the memory
+         * pools) to the output.
+         *
+         * @param nowDate The capture cycle date-time
+         * @param headerLine The CSV header of the sub-resources
+         * @param lines The rows keyed by sub-resource name
+         * @param now The capture cycle date-time text, to record against each sub-resource name
+         * @param artifactList The list of captured resource names to add the sub-resource names to
+         * @throws IOException Indicates problem writing the statistics
+         */
+        private void appendJvmSubResourceStats(Date nowDate, String headerLine, Map<String, String> lines, String now, Properties artifactList) throws IOException {
+                for (Map.Entry<String, String> line : lines.entrySet()) {
+                        getCSVStats().appendToResourceStatisticsCSV(nowDate, getServerName(), JVM_RESOURCE_TYPE, line.getKey(), headerLine, line.getValue(), getHostName());
+                        artifactList.put(line.getKey(), now);
+                }
+        }
 
+        /**
+         * Use the server's JVM platform MBeans to retrieve the JVM stats and
+         * create a row of text data, also creating a row for each garbage
+         * collector and each memory pool.
+         *
+         * @param gcLines Map to add the row of each garbage collector to, keyed by sub-resource name
+         * @param poolLines Map to add the row of each memory pool to, keyed by sub-resource name
+         * @return The text data row (ready to be appended to a CSV)
+         * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the statistics
+         */
+        protected String getJvmStatsLine(Map<String, String> gcLines, Map<String, String> poolLines) throws WebLogicMBeanException {
                 //cl
                 long j_current_loaded_class_count=0;
                 long j_total_loaded_class_count=0;
@@ -191,192 +511,183 @@ public abstract class StatisticCapturer {
                 long j_total_started_thread_count=0;
 
 
-                // Date-time
-                line.append(formatSeconsdDateTime(new Date()) + SEPARATOR);
-
                 // Server attributes (not looping because state attr is not a num unlike all other attrs)
 
                 String curServer=getServerName();
 		AppLog.getLogger().info("Begin JVM data gather process for server: "+curServer);
 
                 try  {
-
-                        String clName = String.format("java.lang:Location=%s,type=ClassLoading", curServer);
-                        ObjectName clMBean = new ObjectName(clName);
-			AppLog.getLogger().info("ClassLoading Objectname : "+clMBean.toString());
-
-
-                        if(clMBean != null ) {
-                                j_current_loaded_class_count=(long)getConn().getNumberAttr(clMBean,"LoadedClassCount");
-                                j_total_loaded_class_count=(long)getConn().getNumberAttr(clMBean,"TotalLoadedClassCount");
-                                j_total_unloaded_class_count=(long) getConn().getNumberAttr(clMBean,"UnloadedClassCount");
-                                 AppLog.getLogger().debug("Class Loaded:"+j_current_loaded_class_count +" Total:"+ j_total_loaded_class_count+ " Unloaded:" +j_total_unloaded_class_count );
-                        }
-
-
-
-                        String compName = String.format("java.lang:Location=%s,type=Compilation", curServer);
-                        ObjectName compMBean = new ObjectName(compName);
-                        if(compMBean != null ) {
-                                j_total_compilation_time_class=(long)getConn().getNumberAttr(compMBean,"TotalCompilationTime");
-                                 AppLog.getLogger().debug("COMPILED TIME:"+j_total_compilation_time_class);
-                        }
-
-
-
-                        //String gcName = String.format("java.lang:Location=%s,type=GarbageCollector,name=*", curServer);
-			String gcName = String.format("java.lang:Location=%s,type=GarbageCollector,*", curServer);
-                        Set<ObjectName> gcSet = getConn().queryNames(new ObjectName(gcName));
-
-                        AppLog.getLogger().debug("Query Garbage Collector size:"+gcSet.size());
-
-                        for (ObjectName objName : gcSet ) {
-                                String name = objName.getKeyProperty("name");
-                                AppLog.getLogger().debug("GC Query NAme :"+name+ "Canonical Name: "+ objName.getCanonicalName());
-                                long cc=(long)getConn().getNumberAttr(objName,"CollectionCount"); //#collections count (-1 if undefinded)
-                                long ct=(long)getConn().getNumberAttr(objName,"CollectionTime");
-                                 AppLog.getLogger().debug("Found GC"+name+ "COUNT: "+cc+ " TIME: "+ct);
-                                if(name.matches("(?i).*Old.*")) {
-                                        j_old_collection_count=cc;
-                                        j_old_collection_time=ct;
-                                         AppLog.getLogger().debug("Found GC OLD:"+name+ "COUNT: "+cc+ " TIME: "+ct);
-
-                                } else if (name.matches("(?i).*Young.*")) {
-                                        j_young_collection_count=cc;
-                                        j_young_collection_time=ct;
-                                         AppLog.getLogger().debug("Found GC Young:"+name+ "COUNT: "+cc+ " TIME: "+ct);
-                                }
-                        }
-                        String memName = String.format("java.lang:Location=%s,type=Memory", curServer);
-                        ObjectName memMBean = new ObjectName(memName);
-                        long finalize_pending   =(long)getConn().getNumberAttr(memMBean,"ObjectPendingFinalizationCount");
-                        CompositeData heap      =(CompositeData)getConn().getObjectAttr(memMBean,"HeapMemoryUsage");
-                        CompositeData non_heap  =(CompositeData)getConn().getObjectAttr(memMBean,"NonHeapMemoryUsage");
-
-                        MemoryUsage mh  =MemoryUsage.from(heap);
-                        j_heap_committed=((double) mh.getCommitted() /BYTES_IN_MEGABYTE);
-                        j_heap_init     =((double) mh.getInit() /BYTES_IN_MEGABYTE);
-                        j_heap_max      =((double) mh.getMax() /BYTES_IN_MEGABYTE);
-                        j_heap_used     =((double) mh.getUsed() /BYTES_IN_MEGABYTE);
-                        AppLog.getLogger().debug("HEAP init:"+j_heap_init+ " max: "+j_heap_max+ " used: "+j_heap_used+ " committed: "+j_heap_committed);
-
-                        MemoryUsage mn  =MemoryUsage.from(non_heap);
-                        j_not_heap_committed	=((double)mn.getCommitted() /BYTES_IN_MEGABYTE);
-                        j_not_heap_init 	=((double)mn.getInit()/BYTES_IN_MEGABYTE);
-                        j_not_heap_max  	=((double)mn.getMax()/BYTES_IN_MEGABYTE);
-                        j_not_heap_used 	=((double)mn.getUsed()/BYTES_IN_MEGABYTE);
-                        AppLog.getLogger().debug("NON HEAP init:"+j_not_heap_init+ " max: "+j_not_heap_max+ " used: "+j_not_heap_used+ " committed: "+j_not_heap_committed);
-
-                        //String mpName = String.format("java.lang:Location=%s,type=MemoryPool,name=*", curServer);
-			String mpName = String.format("java.lang:Location=%s,type=MemoryPool,*", curServer);
-                        Set<ObjectName> mpSet = getConn().queryNames(new ObjectName(mpName));
-                        AppLog.getLogger().debug("Query Memory Pool size:"+mpSet.size());
-
-                        for (ObjectName objName : mpSet ) {
-                                String name = objName.getKeyProperty("name");
-                                AppLog.getLogger().debug("Memory Pool Name :"+name+ "Canonical Name: "+ objName.getCanonicalName());
-
-                                CompositeData usage     =(CompositeData) getConn().getObjectAttr(objName,"Usage");
-                                MemoryUsage mu  = MemoryUsage.from(usage);
-                                long usage_committed    =mu.getCommitted();
-                                long usage_init         =mu.getInit();
-                                long usage_max          =mu.getMax();
-                                long usage_used         =mu.getUsed();
-
-                                 AppLog.getLogger().debug("Found MEMPOOL:"+name+ "INIT: "+usage_init+" USED: "+usage_used+" Committed: "+ usage_committed + "MAX  "+usage_max);
-                                if(name.matches("(?i).*Class Memory.*")) {
-                                        j_mempool_cm_committed  =((double)usage_committed/BYTES_IN_MEGABYTE);
-                                        j_mempool_cm_init       =((double)usage_init/BYTES_IN_MEGABYTE);
-                                        j_mempool_cm_max        =((double)usage_max/BYTES_IN_MEGABYTE);
-                                        j_mempool_cm_used       =((double)usage_used/BYTES_IN_MEGABYTE);
-
-                                } else if (name.matches("(?i).*ClassBlock Memory.*")) {
-                                        j_mempool_cb_committed  =((double)usage_committed/BYTES_IN_MEGABYTE);
-                                        j_mempool_cb_init       =((double)usage_init/BYTES_IN_MEGABYTE);
-                                        j_mempool_cb_max        =((double)usage_max/BYTES_IN_MEGABYTE);
-                                        j_mempool_cb_used       =((double)usage_used/BYTES_IN_MEGABYTE);
-                                } else if (name.matches("(?i).*Nursery.*")) {
-                                        j_mempool_nursery_committed     =((double)usage_committed/BYTES_IN_MEGABYTE);
-                                        j_mempool_nursery_init          =((double)usage_init/BYTES_IN_MEGABYTE);
-                                        j_mempool_nursery_max           =((double)usage_max/BYTES_IN_MEGABYTE);
-                                        j_mempool_nursery_used          =((double)usage_used/BYTES_IN_MEGABYTE);
-
-                                }else if (name.matches("(?i).*Old.*")) {
-                                        j_mempool_old_committed         =((double)usage_committed/BYTES_IN_MEGABYTE);
-                                        j_mempool_old_init              =((double)usage_init/BYTES_IN_MEGABYTE);
-                                        j_mempool_old_max               =((double)usage_max/BYTES_IN_MEGABYTE);
-                                        j_mempool_old_used              =((double)usage_used/BYTES_IN_MEGABYTE);
-
+                        // The platform MBeans are looked up once per server and kept, if
+                        // reading them fails they are looked up again and read once more
+                        String dateText = getCycleDateText();
+                        RowEncoder gcEncoder = getHeaderLine("JVMGC").getRowEncoder();
+                        RowEncoder poolEncoder = getHeaderLine("JVMPOOL").getRowEncoder();
+
+                        for (int attempt = 1; ; attempt++) {
+                                JvmPlatformMBeans jvmMBeans = JvmPlatformMBeans.getForServer(getConn(), curServer);
+                                gcLines.clear();
+                                poolLines.clear();
+
+                                try {
+                                        Object[] cl = getConn().getAttrs(jvmMBeans.getClassLoading(), CLASSLOADING_ATTRS);
+                                        j_current_loaded_class_count    =toLong(cl[0]);
+                                        j_total_loaded_class_count      =toLong(cl[1]);
+                                        j_total_unloaded_class_count    =toLong(cl[2]);
+                                        AppLog.getLogger().debug("Class Loaded:"+j_current_loaded_class_count +" Total:"+ j_total_loaded_class_count+ " Unloaded:" +j_total_unloaded_class_count );
+
+                                        Object[] comp = getConn().getAttrs(jvmMBeans.getCompilation(), COMPILATION_ATTRS);
+                                        j_total_compilation_time_class  =toLong(comp[0]);
+                                        AppLog.getLogger().debug("COMPILED TIME:"+j_total_compilation_time_class);
+
+                                        for (JvmPlatformMBeans.Collector collector : jvmMBeans.getCollectors()) {
+                                                Object[] gc = getConn().getAttrs(collector.getObjectName(), GARBAGE_COLLECTOR_ATTRS);
+                                                long cc=toLong(gc[0]); //#collections count (-1 if undefinded)
+                                                long ct=toLong(gc[1]);
+                                                AppLog.getLogger().debug("Found GC "+collector+ " COUNT: "+cc+ " TIME: "+ct);
+                                                RowEncoder.Row gcRow = gcEncoder.startRow(dateText);
+                                                gcRow.appendNumber(cc);
+                                                gcRow.appendNumber(ct);
+                                                gcLines.put(collector.getResourceName(), gcRow.finish());
+
+                                                if (collector.getKind() == JvmPlatformMBeans.CollectorKind.OLD) {
+                                                        j_old_collection_count=cc;
+                                                        j_old_collection_time=ct;
+                                                } else if (collector.getKind() == JvmPlatformMBeans.CollectorKind.YOUNG) {
+                                                        j_young_collection_count=cc;
+                                                        j_young_collection_time=ct;
+                                                }
+                                        }
+
+                                        Object[] mem = getConn().getAttrs(jvmMBeans.getMemory(), MEMORY_ATTRS);
+                                        MemoryUsage mh  =toMemoryUsage(mem[0]);
+                                        j_heap_committed=((double) mh.getCommitted() /BYTES_IN_MEGABYTE);
+                                        j_heap_init     =((double) mh.getInit() /BYTES_IN_MEGABYTE);
+                                        j_heap_max      =((double) mh.getMax() /BYTES_IN_MEGABYTE);
+                                        j_heap_used     =((double) mh.getUsed() /BYTES_IN_MEGABYTE);
+                                        AppLog.getLogger().debug("HEAP init:"+j_heap_init+ " max: "+j_heap_max+ " used: "+j_heap_used+ " committed: "+j_heap_committed);
+
+                                        MemoryUsage mn  =toMemoryUsage(mem[1]);
+                                        j_not_heap_committed	=((double)mn.getCommitted() /BYTES_IN_MEGABYTE);
+                                        j_not_heap_init 	=((double)mn.getInit()/BYTES_IN_MEGABYTE);
+                                        j_not_heap_max  	=((double)mn.getMax()/BYTES_IN_MEGABYTE);
+                                        j_not_heap_used 	=((double)mn.getUsed()/BYTES_IN_MEGABYTE);
+                                        AppLog.getLogger().debug("NON HEAP init:"+j_not_heap_init+ " max: "+j_not_heap_max+ " used: "+j_not_heap_used+ " committed: "+j_not_heap_committed);
+
+                                        for (JvmPlatformMBeans.MemoryPool pool : jvmMBeans.getMemoryPools()) {
+                                                MemoryUsage mu  =toMemoryUsage(getConn().getAttrs(pool.getObjectName(), MEMORY_POOL_ATTRS)[0]);
+                                                RowEncoder.Row poolRow = poolEncoder.startRow(dateText);
+                                                poolRow.appendNumber(toKiloBytes(mu.getUsed()));
+                                                poolRow.appendNumber(toKiloBytes(mu.getCommitted()));
+                                                poolRow.appendNumber(toKiloBytes(mu.getMax()));
+                                                poolLines.put(pool.getResourceName(), poolRow.finish());
+                                                double usage_committed  =((double)mu.getCommitted()/BYTES_IN_MEGABYTE);
+                                                double usage_init       =((double)mu.getInit()/BYTES_IN_MEGABYTE);
+                                                double usage_max        =((double)mu.getMax()/BYTES_IN_MEGABYTE);
+                                                double usage_used       =((double)mu.getUsed()/BYTES_IN_MEGABYTE);
+                                                AppLog.getLogger().debug("Found MEMPOOL:"+pool+ " INIT: "+usage_init+" USED: "+usage_used+" Committed: "+ usage_committed + " MAX: "+usage_max);
+
+                                                switch (pool.getKind()) {
+                                                        case CLASS_MEMORY:
+                                                                j_mempool_cm_committed  =usage_committed;
+                                                                j_mempool_cm_init       =usage_init;
+                                                                j_mempool_cm_max        =usage_max;
+                                                                j_mempool_cm_used       =usage_used;
+                                                                break;
+                                                        case CLASSBLOCK_MEMORY:
+                                                                j_mempool_cb_committed  =usage_committed;
+                                                                j_mempool_cb_init       =usage_init;
+                                                                j_mempool_cb_max        =usage_max;
+                                                                j_mempool_cb_used       =usage_used;
+                                                                break;
+                                                        case NURSERY:
+                                                                j_mempool_nursery_committed     =usage_committed;
+                                                                j_mempool_nursery_init          =usage_init;
+                                                                j_mempool_nursery_max           =usage_max;
+                                                                j_mempool_nursery_used          =usage_used;
+                                                                break;
+                                                        case OLD:
+                                                                j_mempool_old_committed         =usage_committed;
+                                                                j_mempool_old_init              =usage_init;
+                                                                j_mempool_old_max               =usage_max;
+                                                                j_mempool_old_used              =usage_used;
+                                                                break;
+                                                        default:
+                                                                break;
+                                                }
+                                        }
+
+                                        Object[] thr = getConn().getAttrs(jvmMBeans.getThreading(), THREADING_ATTRS);
+                                        j_cur_daemon_thread_count       =toLong(thr[0]);
+                                        j_cur_total_thread_count        =toLong(thr[1]);
+                                        j_cur_non_daemon_thread_count   =j_cur_total_thread_count-j_cur_daemon_thread_count;
+                                        j_total_started_thread_count    =toLong(thr[2]);
+                                        AppLog.getLogger().debug(" Thread  count: TOTAL: "+j_cur_total_thread_count+" DAEMON: "+j_cur_daemon_thread_count+ "STARTED: "+j_total_started_thread_count);
+                                        break;
+                                } catch (WebLogicMBeanException e) {
+                                        JvmPlatformMBeans.forgetServer(curServer);
+
+                                        if (attempt >= MAX_JVM_MBEAN_READ_ATTEMPTS) {
+                                                throw e;
+                                        }
                                 }
-
                         }
-                        String thrName = String.format("java.lang:Location=%s,type=Threading", curServer);
-                        ObjectName thrMBean = new ObjectName(thrName);
-
-                        j_cur_daemon_thread_count       =(long) getConn().getNumberAttr(thrMBean,"DaemonThreadCount");
-                        j_cur_total_thread_count        =(long) getConn().getNumberAttr(thrMBean,"ThreadCount");
-                        j_cur_non_daemon_thread_count   =j_cur_total_thread_count-j_cur_daemon_thread_count;
-                        j_total_started_thread_count    =(long) getConn().getNumberAttr(thrMBean,"TotalStartedThreadCount");
-
-                         AppLog.getLogger().debug(" Thread  count: TOTAL: "+j_cur_total_thread_count+" DAEMON: "+j_cur_daemon_thread_count+ "STARTED: "+j_total_started_thread_count);
-
-
-
-
                 } catch (Exception e) {
 			 AppLog.getLogger().error("ERROR on get getJvmStatsLine data in server :"+curServer);
                          AppLog.getLogger().error(e.toString(),e);
                 }
 
+                // Date-time
+                RowEncoder.Row row = getHeaderLine("JVM").getRowEncoder().startRow(getCycleDateText());
+
                 //class loader
-                line.append(j_current_loaded_class_count + SEPARATOR); //J_CURRENT_LOADED_CLASS_COUNT
-                line.append(j_total_loaded_class_count + SEPARATOR); //J_TOTAL_LOADED_CLASS_COUNT
-                line.append(j_total_unloaded_class_count + SEPARATOR); //J_TOTAL_UNLOADED_CLASS_COUNT
+                row.appendNumber(j_current_loaded_class_count); //J_CURRENT_LOADED_CLASS_COUNT
+                row.appendNumber(j_total_loaded_class_count); //J_TOTAL_LOADED_CLASS_COUNT
+                row.appendNumber(j_total_unloaded_class_count); //J_TOTAL_UNLOADED_CLASS_COUNT
                 //comp
-                line.append(j_total_compilation_time_class + SEPARATOR); //J_TOTAL_COMPILATION_TIME_CLASS
+                row.appendNumber(j_total_compilation_time_class); //J_TOTAL_COMPILATION_TIME_CLASS
                 //GC
-                line.append(j_old_collection_count + SEPARATOR); //J_OLD_COLLECTION_COUNT
-                line.append(j_old_collection_time + SEPARATOR); //J_OLD_COLLECTION_TIME
-                line.append(j_young_collection_count + SEPARATOR); //J_YOUNG_COLLECTION_COUNT
-                line.append(j_young_collection_time + SEPARATOR); //J_YOUNG_COLLECTION_TIME
+                row.appendNumber(j_old_collection_count); //J_OLD_COLLECTION_COUNT
+                row.appendNumber(j_old_collection_time); //J_OLD_COLLECTION_TIME
+                row.appendNumber(j_young_collection_count); //J_YOUNG_COLLECTION_COUNT
+                row.appendNumber(j_young_collection_time); //J_YOUNG_COLLECTION_TIME
                 //Mem
-                line.append(j_heap_committed + SEPARATOR); //J_HEAP_COMMITTED
-                line.append(j_heap_init + SEPARATOR); //J_HEAP_INIT
-                line.append(j_heap_max + SEPARATOR); //J_HEAP_MAX
-                line.append(j_heap_used + SEPARATOR); //J_HEAP_USED
-
-                line.append(j_not_heap_committed + SEPARATOR); //J_NOT_HEAP_COMMITTED
-                line.append(j_not_heap_init + SEPARATOR); //J_NOT_HEAP_INIT
-                line.append(j_not_heap_max + SEPARATOR); //J_NOT_HEAP_MAX
-                line.append(j_not_heap_used + SEPARATOR); //J_NOT_HEAP_USED
+                row.appendNumber(j_heap_committed); //J_HEAP_COMMITTED
+                row.appendNumber(j_heap_init); //J_HEAP_INIT
+                row.appendNumber(j_heap_max); //J_HEAP_MAX
+                row.appendNumber(j_heap_used); //J_HEAP_USED
+
+                row.appendNumber(j_not_heap_committed); //J_NOT_HEAP_COMMITTED
+                row.appendNumber(j_not_heap_init); //J_NOT_HEAP_INIT
+                row.appendNumber(j_not_heap_max); //J_NOT_HEAP_MAX
+                row.appendNumber(j_not_heap_used); //J_NOT_HEAP_USED
                 //MemPool
-                line.append(j_mempool_cm_committed + SEPARATOR); //J_MEMPOOL_CM_COMMITTED
-                line.append(j_mempool_cm_init + SEPARATOR); //J_MEMPOOL_CM_INIT
-                line.append(j_mempool_cm_max + SEPARATOR); //J_MEMPOOL_CM_MAX
-                line.append(j_mempool_cm_used + SEPARATOR); //J_MEMPOOL_CM_USED
-
-                line.append(j_mempool_cb_committed + SEPARATOR); //J_MEMPOOL_CB_COMMITTED
-                line.append(j_mempool_cb_init + SEPARATOR); //J_MEMPOOL_CB_INIT
-                line.append(j_mempool_cb_max + SEPARATOR); //J_MEMPOOL_CB_MAX
-                line.append(j_mempool_cb_used + SEPARATOR); //J_MEMPOOL_CB_USED
-
-                line.append(j_mempool_nursery_committed + SEPARATOR); //J_MEMPOOL_NURSERY_COMMITTED
-                line.append(j_mempool_nursery_init + SEPARATOR); //J_MEMPOOL_NURSERY_INIT
-                line.append(j_mempool_nursery_max + SEPARATOR); //J_MEMPOOL_NURSERY_MAX
-                line.append(j_mempool_nursery_used + SEPARATOR); //J_MEMPOOL_NURSERY_USED
-
-                line.append(j_mempool_old_committed + SEPARATOR); //J_MEMPOOL_OLD_COMMITTED
-                line.append(j_mempool_old_init + SEPARATOR); //J_MEMPOOL_OLD_INIT
-                line.append(j_mempool_old_max + SEPARATOR); //J_MEMPOOL_OLD_MAX
-                line.append(j_mempool_old_used + SEPARATOR); //J_MEMPOOL_OLD_USED
+                row.appendNumber(j_mempool_cm_committed); //J_MEMPOOL_CM_COMMITTED
+                row.appendNumber(j_mempool_cm_init); //J_MEMPOOL_CM_INIT
+                row.appendNumber(j_mempool_cm_max); //J_MEMPOOL_CM_MAX
+                row.appendNumber(j_mempool_cm_used); //J_MEMPOOL_CM_USED
+
+                row.appendNumber(j_mempool_cb_committed); //J_MEMPOOL_CB_COMMITTED
+                row.appendNumber(j_mempool_cb_init); //J_MEMPOOL_CB_INIT
+                row.appendNumber(j_mempool_cb_max); //J_MEMPOOL_CB_MAX
+                row.appendNumber(j_mempool_cb_used); //J_MEMPOOL_CB_USED
+
+                row.appendNumber(j_mempool_nursery_committed); //J_MEMPOOL_NURSERY_COMMITTED
+                row.appendNumber(j_mempool_nursery_init); //J_MEMPOOL_NURSERY_INIT
+                row.appendNumber(j_mempool_nursery_max); //J_MEMPOOL_NURSERY_MAX
+                row.appendNumber(j_mempool_nursery_used); //J_MEMPOOL_NURSERY_USED
+
+                row.appendNumber(j_mempool_old_committed); //J_MEMPOOL_OLD_COMMITTED
+                row.appendNumber(j_mempool_old_init); //J_MEMPOOL_OLD_INIT
+                row.appendNumber(j_mempool_old_max); //J_MEMPOOL_OLD_MAX
+                row.appendNumber(j_mempool_old_used); //J_MEMPOOL_OLD_USED
 
                 //thread
-                line.append(j_cur_daemon_thread_count + SEPARATOR); //J_CUR_DAEMON_THREAD_COUNT
-                line.append(j_cur_non_daemon_thread_count + SEPARATOR); //J_CUR_NON_DAEMON_THREAD_COUNT
-                line.append(j_cur_total_thread_count + SEPARATOR); //J_CUR_TOTAL_THREAD_COUNT
-                line.append(j_total_started_thread_count + SEPARATOR); //J_TOTAL_STARTED_THREAD_COUNT
+                row.appendNumber(j_cur_daemon_thread_count); //J_CUR_DAEMON_THREAD_COUNT
+                row.appendNumber(j_cur_non_daemon_thread_count); //J_CUR_NON_DAEMON_THREAD_COUNT
+                row.appendNumber(j_cur_total_thread_count); //J_CUR_TOTAL_THREAD_COUNT
+                row.appendNumber(j_total_started_thread_count); //J_TOTAL_STARTED_THREAD_COUNT
 
-                return line.toString();
+                return row.finish();
 
 
         }
@@ -450,28 +761,28 @@ public abstract class StatisticCapturer {
 		StringBuilder headerLine = new StringBuilder(DEFAULT_HEADER_LINE_LEN);
 		headerLine.append(DATE_TIME + SEPARATOR);	
 
-		for (String attr : J_CLASSLOADING_MBEAN_ATTR_LIST ) {
+		for (String attr : metricSchema.getClassLoadingAttrs()) {
 			headerLine.append(attr + SEPARATOR);
 		}			
 
 		// Got to do these separately because adding calculated filed for heap size current
-                for (String attr : J_COMPILATION_MBEAN_ATTR_LIST) {
+                for (String attr : metricSchema.getCompilationAttrs()) {
                         headerLine.append(attr + SEPARATOR);
                 }
 		
-		for (String attr : J_GARBAGECOLLECTOR_MBEAN_ATTR_LIST ) {
+		for (String attr : metricSchema.getGarbageCollectorAttrs()) {
 			headerLine.append(attr + SEPARATOR);
 		}			
 
-		for (String attr : J_MEMORY_MBEAN_ATTR_LIST) {
+		for (String attr : metricSchema.getMemoryAttrs()) {
 			headerLine.append(attr + SEPARATOR);
 		}			
 
-		for (String attr : J_MEMORYPOOL_MBEAN_ATTR_LIST ) {
+		for (String attr : metricSchema.getMemoryPoolAttrs()) {
 			headerLine.append(attr + SEPARATOR);
 		}			
 
-		for (String attr : J_TREAD_MBEAN_ATTR_LIST) {
+		for (String attr : metricSchema.getThreadAttrs()) {
 			headerLine.append(attr + SEPARATOR);
 		}			
 
@@ -492,7 +803,7 @@ public abstract class StatisticCapturer {
 		StringBuilder headerLine = new StringBuilder(DEFAULT_HEADER_LINE_LEN);
 		headerLine.append(DATE_TIME + SEPARATOR);	
 
-		for (String attr : SERVER_MBEAN_MONITOR_ATTR_LIST) {
+		for (String attr : metricSchema.getServerAttrs()) {
 			headerLine.append(attr + SEPARATOR);
 		}			
 
@@ -502,16 +813,16 @@ public abstract class StatisticCapturer {
 		headerLine.append(HEAP_USED_CURRENT + SEPARATOR); 
 		headerLine.append(HEAP_FREE_PERCENT + SEPARATOR);
 		
-                for (String attr : JROCKIT_MBEAN_MONITOR_ATTR_LIST) {
+                for (String attr : metricSchema.getJRockitAttrs()) {
                         headerLine.append(attr + SEPARATOR);
                 }
 		
 		
-		for (String attr : THREADPOOL_MBEAN_MONITOR_ATTR_LIST) {
+		for (String attr : metricSchema.getThreadPoolAttrs()) {
 			headerLine.append(attr + SEPARATOR);
 		}			
 
-		for (String attr : JTA_MBEAN_MONITOR_ATTR_LIST) {
+		for (String attr : metricSchema.getJtaAttrs()) {
 			headerLine.append(attr + SEPARATOR);
 		}			
 
@@ -537,6 +848,46 @@ public abstract class StatisticCapturer {
 		return headerLine.toString();
 	}
 
+	/**
+	 * Returns the metric schema which this capture uses from start to finish
+	 * 
+	 * @return The metric schema
+	 */
+	protected MetricSchema getMetricSchema() {
+		return metricSchema;
+	}
+
+	/**
+	 * Returns the CSV header line of a resource type (eg. "JDBC") for this 
+	 * capture's metric schema
+	 * 
+	 * @param key The header line key
+	 * @return The header line
+	 */
+	protected HeaderLine getHeaderLine(String key) {
+		return headerLines.get(key);
+	}
+
+	/**
+	 * Returns the CSV header lines of each resource type for a metric 
+	 * schema. The header lines of the most recently used schema are cached,
+	 * so they are only rebuilt on the first capture after the current schema
+	 * has been swapped.
+	 * 
+	 * @param schema The metric schema
+	 * @return The header lines keyed by resource type (eg. "JDBC")
+	 */
+	public static Map<String, HeaderLine> getHeaderLines(MetricSchema schema) {
+		SchemaHeaderLines cached = schemaHeaderLines;
+
+		if ((cached == null) || (cached.schema != schema)) {
+			cached = new SchemaHeaderLines(schema);
+			schemaHeaderLines = cached;
+		}
+
+		return cached.headerLines;
+	}
+
 	/**
 	 * Returns the Meta-data about the server statistics CSV file being generated
 	 * 
@@ -582,6 +933,77 @@ public abstract class StatisticCapturer {
 	}
 
 
+	/**
+	 * Returns the scheduled time of the current capture cycle, or the current 
+	 * time if no cycle time has been set.
+	 * 
+	 * @return The capture cycle date-time
+	 */
+	protected Date getCycleDate() {
+		return (cycleTimeMillis > 0) ? new Date(cycleTimeMillis) : new Date();
+	}
+
+	/**
+	 * Returns the text of the current capture cycle's date-time (including 
+	 * seconds), as used as the first column of each statistics row.
+	 * 
+	 * @return Text representation of the capture cycle date-time
+	 */
+	protected String getCycleDateText() {
+		return (cycleTimeMillis > 0) ? formatSecondsDateTime(cycleTimeMillis) : formatSeconsdDateTime(new Date());
+	}
+
+	/**
+	 * Records the server's just-captured thread pool figures, for use in 
+	 * adapting how often the server is polled.
+	 * 
+	 * @param hoggingThreadCount The number of hogging threads (-1 if not captured)
+	 * @param idleThreadCount The number of idle execute threads (-1 if not captured)
+	 */
+	protected void recordThreadPoolLoad(double hoggingThreadCount, double idleThreadCount) {
+		this.hoggingThreadCount = hoggingThreadCount;
+		this.idleThreadCount = idleThreadCount;
+	}
+
+	/**
+	 * Records a data source's just-captured connection delay, for use in 
+	 * adapting how often the server is polled. The highest value seen across
+	 * all data sources is kept.
+	 * 
+	 * @param connectionDelayMillis The data source's connection delay (-1 if not captured)
+	 */
+	protected void recordConnectionDelay(double connectionDelayMillis) {
+		maxConnectionDelayMillis = Math.max(maxConnectionDelayMillis, connectionDelayMillis);
+	}
+
+	/**
+	 * Returns the number of hogging threads captured for the server
+	 * 
+	 * @return The hogging thread count (-1 if not captured)
+	 */
+	public double getHoggingThreadCount() {
+		return hoggingThreadCount;
+	}
+
+	/**
+	 * Returns the number of idle execute threads captured for the server
+	 * 
+	 * @return The idle thread count (-1 if not captured)
+	 */
+	public double getIdleThreadCount() {
+		return idleThreadCount;
+	}
+
+	/**
+	 * Returns the highest data source connection delay captured for the 
+	 * server
+	 * 
+	 * @return The connection delay in milliseconds (-1 if not captured)
+	 */
+	public double getMaxConnectionDelayMillis() {
+		return maxConnectionDelayMillis;
+	}
+
 	/**
 	 * Returns the statistic poll/query interval in milliseconds 
 	 * 
@@ -592,12 +1014,25 @@ public abstract class StatisticCapturer {
 	}
 
 	/**
-	 * Returns the list of component names to be ignored (the blacklist) 
+	 * Returns the metric types (eg. "core", "datasource") to be captured 
+	 * 
+	 * @return The metric type names
+	 */
+	protected List<String> getMetricTypeSet() {
+		return metricTypeSet;
+	}
+
+	/**
+	 * Determines whether a resource should have its statistics captured, 
+	 * according to the component blacklist and resource include/exclude 
+	 * rules of the capture's metric schema.
 	 * 
-	 * @return The blacklist of component names
+	 * @param resourceType The type of resource (eg. "datasource")
+	 * @param name The (normalised) name of the resource
+	 * @return True if the resource is captured; otherwise false
 	 */
-	protected List<String> getComponentBlacklist() {
-		return componentBlacklist;
+	protected boolean isResourceCaptured(String resourceType, String name) {
+		return metricSchema.getResourceFilter().isResourceCaptured(resourceType, name);
 	}
 
 	/**
@@ -610,23 +1045,116 @@ public abstract class StatisticCapturer {
 	}
 	
 	/**
-	 * Single-threaded utility method to generate a data-time string from a 
-	 * given date (including seconds in format)
+	 * Thread-safe utility method to generate a data-time string from a 
+	 * given date (including seconds in format). Resource types of the same 
+	 * server may be captured in parallel, sharing the one date formatter.
 	 * 
 	 * @return Text representation of given date-time including seconds
 	 */
 	protected String formatSeconsdDateTime(Date dateTime) {
-		return secondDateFormat.format(dateTime);
+		synchronized (secondDateFormat) {
+			return secondDateFormat.format(dateTime);
+		}
 	}
 
 	/**
-	 * Single-threaded utility method to generate a data-time string from a 
+	 * Thread-safe utility method to generate a data-time string from a 
 	 * given milli-seconds version of a date (including seconds in format)
 	 * 
 	 * @return Text representation of given date-time including seconds
 	 */
 	protected String formatSecondsDateTime(long dateTimeMillis) {
-		return secondDateFormat.format(new Date(dateTimeMillis));
+		FormattedDateTime lastFormatted = lastFormattedDateTime;
+
+		if ((lastFormatted != null) && (lastFormatted.dateTimeMillis == dateTimeMillis)) {
+			return lastFormatted.text;
+		}
+
+		String text = formatSeconsdDateTime(new Date(dateTimeMillis));
+		lastFormattedDateTime = new FormattedDateTime(dateTimeMillis, text);
+		return text;
+	}
+
+	/**
+	 * A date-time and its formatted text, kept so that the many rows of a 
+	 * capture cycle which share a date-time do not each format it again.
+	 */
+	private static class FormattedDateTime {
+		/**
+		 * Creates a new date-time and text pair.
+		 * 
+		 * @param dateTimeMillis The date-time in milliseconds since the epoch
+		 * @param text The formatted date-time
+		 */
+		FormattedDateTime(long dateTimeMillis, String text) {
+			this.dateTimeMillis = dateTimeMillis;
+			this.text = text;
+		}
+
+		// Members
+		final long dateTimeMillis;
+		final String text;
+	}
+
+	/**
+	 * The CSV header lines derived from one metric schema.
+	 */
+	private static class SchemaHeaderLines {
+		/**
+		 * Builds the header line of every resource type from the schema.
+		 * 
+		 * @param schema The metric schema
+		 */
+		SchemaHeaderLines(MetricSchema schema) {
+			Map<String, HeaderLine> lines = new HashMap<String, HeaderLine>();
+			lines.put("JVM",new HeaderLine(schema.getJvmAllAttrs()));
+			lines.put("JVMGC",new HeaderLine(schema.getGCResourceAttrs()));
+			lines.put("JVMPOOL",new HeaderLine(schema.getMemPoolResourceAttrs()));
+			lines.put("CORE",new HeaderLine(schema.getCoreAllAttrs()));
+			lines.put("JDBC",new HeaderLine(schema.getJdbcAttrs()));
+			lines.put("JMS",new HeaderLine(schema.getJmsDestinationAttrs()));
+			lines.put("WEBAPP",new HeaderLine(schema.getWebAppAttrs()));
+			lines.put("EJB",new HeaderLine(schema.getEjbAttrs()));
+			lines.put("HOST",new HeaderLine(schema.getHostMachineAttrs()));
+			lines.put("WKMGR",new HeaderLine(schema.getWorkManagerAttrs()));
+			lines.put("SRVCHN",new HeaderLine(schema.getServerChannelAttrs()));
+			this.schema = schema;
+			this.headerLines = Collections.unmodifiableMap(lines);
+		}
+
+		// Members
+		final MetricSchema schema;
+		final Map<String, HeaderLine> headerLines;
+	}
+
+	/**
+	 * Converts a retrieved JMX number property value to a long
+	 * 
+	 * @param value The property value
+	 * @return The number (zero if no value was retrieved)
+	 */
+	private static long toLong(Object value) {
+		return (value instanceof Number) ? ((Number) value).longValue() : 0;
+	}
+
+	/**
+	 * Converts a memory size to whole KiloBytes
+	 * 
+	 * @param bytes The size in bytes
+	 * @return The size in KiloBytes (-1 if the size is undefined)
+	 */
+	private static long toKiloBytes(long bytes) {
+		return (bytes < 0) ? -1 : (bytes / BYTES_IN_KILOBYTE);
+	}
+
+	/**
+	 * Converts a retrieved JMX memory usage property value
+	 * 
+	 * @param value The property value
+	 * @return The memory usage (all zero if no value was retrieved)
+	 */
+	private static MemoryUsage toMemoryUsage(Object value) {
+		return (value instanceof CompositeData) ? MemoryUsage.from((CompositeData) value) : NO_MEMORY_USAGE;
 	}
 
 	/**
@@ -649,7 +1177,19 @@ public abstract class StatisticCapturer {
         protected static final int DEFAULT_CONTENT_LINE_LEN = 100;
 
 	private static final int DEFAULT_HEADER_LINE_LEN = 100;
+	private static final String TYPE_CAPTURE_QUEUE_NAME = "type_capture";
+	private static final long CANCELLED_TYPE_GRACE_MILLIS = 5000;
 	protected static final long BYTES_IN_MEGABYTE = 1024 * 1024;
+	private static final long BYTES_IN_KILOBYTE = 1024;
+	private static final int MAX_JVM_MBEAN_READ_ATTEMPTS = 2;
+	private static final String[] CLASSLOADING_ATTRS = {"LoadedClassCount", "TotalLoadedClassCount", "UnloadedClassCount"};
+	private static final String[] COMPILATION_ATTRS = {"TotalCompilationTime"};
+	private static final String[] GARBAGE_COLLECTOR_ATTRS = {"CollectionCount", "CollectionTime"};
+	private static final String[] MEMORY_ATTRS = {"HeapMemoryUsage", "NonHeapMemoryUsage"};
+	private static final String[] MEMORY_POOL_ATTRS = {"Usage"};
+	private static final String[] THREADING_ATTRS = {"DaemonThreadCount", "ThreadCount", "TotalStartedThreadCount"};
+	private static final MemoryUsage NO_MEMORY_USAGE = new MemoryUsage(0, 0, 0, 0);
+	private static volatile SchemaHeaderLines schemaHeaderLines = null;
 	
 	// Members
 	private final StatisticsStorage csvStats;
@@ -658,25 +1198,21 @@ public abstract class StatisticCapturer {
 	private final String serverName;
 	private String hostName;
 	private final int queryIntervalMillis;
-	private final List<String> componentBlacklist;
 	private final List<String> metricTypeSet;
 	private final String wlsVersionNumber;
 	private final String jvmVersion;
+	private final MetricSchema metricSchema;
+	private final Map<String, HeaderLine> headerLines;
 	private final DateFormat secondDateFormat = new SimpleDateFormat(DateUtil.DISPLAY_DATETIME_FORMAT);
-
-	public final static Map<String, HeaderLine> headerList= new HashMap<String, HeaderLine>();
-
-	static {
-		headerList.put("JVM",new HeaderLine(J_MBEAN_ALL));
-		headerList.put("CORE",new HeaderLine(J_CORE_ALL));
-		headerList.put("JDBC",new HeaderLine(JDBC_MBEAN_MONITOR_ATTR_LIST));
-		headerList.put("JMS",new HeaderLine(JMS_DESTINATION_MBEAN_MONITOR_ATTR_LIST));
-		headerList.put("WEBAPP",new HeaderLine(WEBAPP_MBEAN_MONITOR_ATTR_LIST));
-		headerList.put("EJB",new HeaderLine(EJB_MBEAN_MONITOR_ATTR_LIST));
-		headerList.put("HOST",new HeaderLine(HOST_MACHINE_STATS_MBEAN_MONITOR_ATTR_LIST));
-		headerList.put("WKMGR",new HeaderLine(WKMGR_MBEAN_MONITOR_ATTR_LIST));
-		headerList.put("SRVCHN",new HeaderLine(SVR_CHANNEL_MBEAN_MONITOR_ATTR_LIST));
-	}
+	private volatile FormattedDateTime lastFormattedDateTime = null;
+	private long cycleTimeMillis = 0;
+	private long captureDeadlineMillis = 0;
+	private volatile double hoggingThreadCount = -1;
+	private volatile double idleThreadCount = -1;
+	private volatile double maxConnectionDelayMillis = -1;
+	private WorkManager typeCaptureWkMgr = null;
+	private int maxConcurrentTypes = 1;
+	private int typeTimeoutMillis = 0;
+	private final AtomicBoolean cancelled = new AtomicBoolean(false);
+	private final AtomicInteger capturedTypeCount = new AtomicInteger(0);
 }
-
-
@@ -0,0 +1,267 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.retriever;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import domainhealth.backend.wldfcapture.StatisticCapturerWLDFQuery;
+import domainhealth.core.env.AppLog;
+import domainhealth.core.jmx.WebLogicMBeanConnection;
+import domainhealth.core.statistics.StatisticsStorage;
+
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+/**
+ * Captures a server's statistics using a mix of WLDF harvested data and 
+ * direct JMX MBean polling, routing each metric type to the capturer 
+ * chosen for it by the capture mode router. Each metric type is captured 
+ * by the same logic as in a pure WLDF or pure JMX Poll capture, with the 
+ * time each type takes being fed back to the router so that types in 
+ * 'auto' mode can move to whichever mode is cheaper for the server. The 
+ * single WLDF query serving all the WLDF types is run before any of them 
+ * is timed, and its time is split evenly across those types, so the type 
+ * which happens to be captured first does not carry the whole query cost.
+ */
+public class StatisticCapturerHybrid extends StatisticCapturer {
+	/**
+	 * Create new hybrid capturer from the WLDF and JMX Poll capturers, each 
+	 * constructed for just the metric types to be captured with their mode.
+	 * 
+	 * @param csvStats Meta-data about the server statistics CSV file being generated
+	 * @param conn Connection to the server's MBean tree
+	 * @param serverRuntime Handle on the server's main runtime MBean
+	 * @param serverName Name of the server to retrieve statistics for
+	 * @param queryIntervalMillis The query interval in milliseconds
+	 * @param metricTypeSet All the metric types to collect
+	 * @param wlsVersionNumber The version of the host WebLogic Domain
+	 * @param jvmVersion The major version of the server's JVM
+	 * @param wldfCapturer The capturer of the metric types routed to WLDF
+	 * @param jmxCapturer The capturer of the metric types routed to JMX Poll
+	 * @param captureModeRouter The router to record each metric type's capture time against
+	 */
+	public StatisticCapturerHybrid(StatisticsStorage csvStats, WebLogicMBeanConnection conn, ObjectName serverRuntime, String serverName, int queryIntervalMillis, List<String> metricTypeSet, String wlsVersionNumber, String jvmVersion, 
+			StatisticCapturerWLDFQuery wldfCapturer, StatisticCapturer jmxCapturer, CaptureModeRouter captureModeRouter) {
+		super(csvStats, conn, serverRuntime, serverName, queryIntervalMillis, metricTypeSet, wlsVersionNumber, jvmVersion);
+		this.wldfCapturer = wldfCapturer;
+		this.jmxCapturer = jmxCapturer;
+		this.captureModeRouter = captureModeRouter;
+
+		for (String type : wldfCapturer.getMetricTypeSet()) {
+			typeCapturers.put(type.toLowerCase(), wldfCapturer);
+		}
+
+		for (String type : jmxCapturer.getMetricTypeSet()) {
+			typeCapturers.put(type.toLowerCase(), jmxCapturer);
+		}
+	}
+
+	/**
+	 * Sets the host on both the WLDF and JMX Poll capturers.
+	 * 
+	 * @param hostName The name of the server's machine
+	 */
+	public void setHost(String hostName) {
+		super.setHost(hostName);
+		wldfCapturer.setHost(hostName);
+		jmxCapturer.setHost(hostName);
+	}
+
+	/**
+	 * Sets the scheduled cycle time on both the WLDF and JMX Poll capturers.
+	 * 
+	 * @param cycleTimeMillis The scheduled cycle time in milliseconds since the epoch
+	 */
+	public void setCycleTimeMillis(long cycleTimeMillis) {
+		super.setCycleTimeMillis(cycleTimeMillis);
+		wldfCapturer.setCycleTimeMillis(cycleTimeMillis);
+		jmxCapturer.setCycleTimeMillis(cycleTimeMillis);
+	}
+
+	/**
+	 * Cancels the capture, including that of both the WLDF and JMX Poll 
+	 * capturers.
+	 */
+	public void cancel() {
+		super.cancel();
+		wldfCapturer.cancel();
+		jmxCapturer.cancel();
+	}
+
+	/**
+	 * Capture the resource type with the capturer it has been routed to, 
+	 * recording how long it took against the mode used.
+	 * 
+	 * @param type The metric type name, as listed in the metric type set
+	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
+	 */
+	protected void captureResourceTypeStats(String type) throws DataRetrievalException, IOException {
+		StatisticCapturer capturer = typeCapturers.get(type.toLowerCase());
+
+		if (capturer == null) {
+			AppLog.getLogger().debug("No capturer routed for metric type '" + type + "' on server " + getServerName());
+			return;
+		}
+
+		long queryShareMillis = 0;
+
+		if (capturer == wldfCapturer) {
+			wldfCapturer.prefetchDataRecords();
+			queryShareMillis = wldfCapturer.getQueryShareMillis(type);
+		}
+
+		long startTimeMillis = System.currentTimeMillis();
+		capturer.captureResourceTypeStats(type);
+		captureModeRouter.recordCost(getServerName(), type, getMode(capturer), System.currentTimeMillis() - startTimeMillis + queryShareMillis);
+	}
+
+	/**
+	 * Implements abstract method to capture core server statistics with the 
+	 * capturer routed for them.
+	 * 
+	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
+	 */
+	protected void logCoreStats() throws DataRetrievalException {
+		captureRoutedResourceTypeStats(CORE_RESOURCE_TYPE);
+	}
+
+	/**
+	 * Implements abstract method to capture data source statistics with the 
+	 * capturer routed for them.
+	 * 
+	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
+	 */
+	protected void logDataSourcesStats() throws DataRetrievalException {
+		captureRoutedResourceTypeStats(DATASOURCE_RESOURCE_TYPE);
+	}
+
+	/**
+	 * Implements abstract method to capture JMS destination statistics with 
+	 * the capturer routed for them.
+	 * 
+	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
+	 */
+	protected void logDestinationsStats() throws DataRetrievalException {
+		captureRoutedResourceTypeStats(JMS_DESTINATION_METRIC_TYPE);
+	}
+
+	/**
+	 * Implements abstract method to capture web application statistics with 
+	 * the capturer routed for them.
+	 * 
+	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
+	 */
+	protected void logWebAppStats() throws DataRetrievalException {
+		captureRoutedResourceTypeStats(WEBAPP_RESOURCE_TYPE);
+	}
+
+	/**
+	 * Implements abstract method to capture EJB statistics with the capturer 
+	 * routed for them.
+	 * 
+	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
+	 */
+	protected void logEJBStats() throws DataRetrievalException {
+		captureRoutedResourceTypeStats(EJB_RESOURCE_TYPE);
+	}
+
+	/**
+	 * Implements abstract method to capture host machine statistics with the 
+	 * capturer routed for them.
+	 * 
+	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
+	 */
+	protected void logHostMachineStats() throws DataRetrievalException {
+		captureRoutedResourceTypeStats(HOSTMACHINE_RESOURCE_TYPE);
+	}
+
+	/**
+	 * Implements abstract method to capture extended (work manager and 
+	 * server channel) statistics with the capturer routed for them.
+	 * 
+	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
+	 */
+	protected void logExtendedStats() throws DataRetrievalException, IOException {
+		captureRoutedResourceTypeStats(EXTENDED_METRIC_TYPE);
+	}
+
+	/**
+	 * Returns the number of hogging threads captured for the server, by 
+	 * whichever capturer captured the core statistics.
+	 * 
+	 * @return The hogging thread count (-1 if not captured)
+	 */
+	public double getHoggingThreadCount() {
+		StatisticCapturer capturer = typeCapturers.get(CORE_RESOURCE_TYPE);
+		return (capturer != null) ? capturer.getHoggingThreadCount() : -1;
+	}
+
+	/**
+	 * Returns the number of idle execute threads captured for the server, by 
+	 * whichever capturer captured the core statistics.
+	 * 
+	 * @return The idle thread count (-1 if not captured)
+	 */
+	public double getIdleThreadCount() {
+		StatisticCapturer capturer = typeCapturers.get(CORE_RESOURCE_TYPE);
+		return (capturer != null) ? capturer.getIdleThreadCount() : -1;
+	}
+
+	/**
+	 * Returns the highest data source connection delay captured for the 
+	 * server, by whichever capturer captured the data source statistics.
+	 * 
+	 * @return The connection delay in milliseconds (-1 if not captured)
+	 */
+	public double getMaxConnectionDelayMillis() {
+		StatisticCapturer capturer = typeCapturers.get(DATASOURCE_RESOURCE_TYPE);
+		return (capturer != null) ? capturer.getMaxConnectionDelayMillis() : -1;
+	}
+
+	/**
+	 * Capture a resource type with the capturer routed for it, for when a 
+	 * log method is invoked directly rather than via the capture of its type.
+	 * 
+	 * @param type The metric type name
+	 * @throws DataRetrievalException Indicates problem occurred in trying to obtain and persist the server's statistics
+	 */
+	private void captureRoutedResourceTypeStats(String type) throws DataRetrievalException {
+		try {
+			captureResourceTypeStats(type);
+		} catch (IOException e) {
+			throw new DataRetrievalException("Problem logging " + type + " resources for server " + getServerName(), e);
+		}
+	}
+
+	/**
+	 * Returns the capture mode of the given capturer
+	 * 
+	 * @param capturer The WLDF or JMX Poll capturer
+	 * @return The capture mode name
+	 */
+	private String getMode(StatisticCapturer capturer) {
+		return (capturer == wldfCapturer) ? CaptureModeRouter.WLDF_MODE : CaptureModeRouter.JMX_MODE;
+	}
+
+	// Members
+	private final StatisticCapturerWLDFQuery wldfCapturer;
+	private final StatisticCapturer jmxCapturer;
+	private final CaptureModeRouter captureModeRouter;
+	private final Map<String, StatisticCapturer> typeCapturers = new HashMap<String, StatisticCapturer>();
+}
@@ -29,6 +29,8 @@ import static domainhealth.core.env.AppProperties.*;
 import domainhealth.core.env.AppLog;
 import domainhealth.core.env.AppProperties;
 import domainhealth.core.env.ContextAwareWork;
+import domainhealth.core.instrumentation.PipelineInstrumentation;
+import domainhealth.core.statistics.MetricSchema;
 
 //netty imports
 import java.io.BufferedReader;
@@ -92,8 +94,12 @@ public class GraphiteBackgroundSender {
     		put("FORCE_SUSPENDING",new Integer(8));
 	}};
 
-	//counter MAP
-	private Map<String,Integer> counterMap;
+	//counter MAP (updated concurrently by the resource types of each server)
+	private ConcurrentMap<String,AtomicInteger> counterMap;
+
+	//metric names of each CSV header line, for the current metric schema
+	private final ConcurrentMap<String,String[]> metricNamesCache = new ConcurrentHashMap<String,String[]>();
+	private volatile int metricNamesSchemaVersion = -1;
 
 	//netty objects
 	private Executor bossPool;
@@ -155,7 +161,7 @@ public class GraphiteBackgroundSender {
 		}
 
 		//initializing hashMap
-		this.counterMap=new HashMap<String,Integer>();
+		this.counterMap=new ConcurrentHashMap<String,AtomicInteger>();
 
 	}
 
@@ -232,25 +238,24 @@ public class GraphiteBackgroundSender {
 
 	public void counterInc(String serverName)
 	{
-		Integer val=counterMap.get(serverName);
+		AtomicInteger val=counterMap.get(serverName);
 		if(val !=null ) {
-			
-			counterMap.put(serverName,new Integer(val.intValue()+1));
+			val.incrementAndGet();
 		}
 	}
 
 	public void counterAdd(String serverName,int plus)
 	{
-		Integer val=counterMap.get(serverName);
+		AtomicInteger val=counterMap.get(serverName);
 		if(val !=null ) {
-			counterMap.put(serverName,new Integer(val.intValue()+plus));
+			val.addAndGet(plus);
 		}
 	}
 
 
 	public void resetCounter(String serverName)
 	{
-		counterMap.put(serverName,new Integer(0));
+		counterMap.put(serverName,new AtomicInteger(0));
 	}
 
 	private String getMetricPathBase(String hostName,String serverName,String resourceType,String resourceName)
@@ -337,6 +342,8 @@ public class GraphiteBackgroundSender {
 		}
 
 
+		long startNanos=PipelineInstrumentation.startTiming();
+		long writeNanos=0;
 		String metric_path_base=getMetricPathBase(hostName,serverName,resourceType,resourceName);	
 		String metric_path;
 		String value;
@@ -344,27 +351,27 @@ public class GraphiteBackgroundSender {
 		DateFormat formatter=new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
 		Date date;
 
-		List<String> metricItems = Arrays.asList(headerLine.split(","));
+		String[] metricItems = getMetricNames(headerLine);
 		List<String> contentItems = Arrays.asList(contentLine.split(","));
 		try {
    			date = formatter.parse(contentItems.get(0));
 			timestamp=date.getTime()/1000;
-			int size=metricItems.size();
+			int size=metricItems.length;
 			//Core Resoutce Type Status
 			if(resourceType.equals("core")) { 
 				if(this.map_server_stats) {
 					//Status set as first Metric
 					int status=serverStatusMap.get(contentItems.get(1)).intValue();
-					metric_path=metric_path_base+"."+metricItems.get(1); //State
-					channel.write(metric_path+" "+Integer.toString(status)+" "+timestamp+"\n");
+					metric_path=metric_path_base+"."+metricItems[1]; //State
+					writeNanos+=writeMetricLine(channel,metric_path+" "+Integer.toString(status)+" "+timestamp+"\n");
 					counterInc(serverName);
 				} 
 				for(int i=2;i< size; i++) {
                 			//Metric Name is set by us if needed we can place "." to organize graphite tree, so we prefer not to replace dots.
 					//metric_path=metric_path_base+"."+metricItems.get(i).replace('.','_');
-					metric_path=metric_path_base+"."+metricItems.get(i);
+					metric_path=metric_path_base+"."+metricItems[i];
 					value=contentItems.get(i);
-					channel.write(metric_path+" "+value+" "+timestamp+"\n");
+					writeNanos+=writeMetricLine(channel,metric_path+" "+value+" "+timestamp+"\n");
 				}
 				counterAdd(serverName,size-2);
 				
@@ -373,12 +380,18 @@ public class GraphiteBackgroundSender {
 				for(int i=1;i< size; i++) {
 					//Metric Name is set by us if needed we can place "." to organize graphite tree, so we prefer not to replace dots.
 					//metric_path=metric_path_base+"."+metricItems.get(i).replace('.','_');
-					metric_path=metric_path_base+"."+metricItems.get(i);
+					metric_path=metric_path_base+"."+metricItems[i];
 					value=contentItems.get(i);
-					channel.write(metric_path+" "+value+" "+timestamp+"\n");
+					writeNanos+=writeMetricLine(channel,metric_path+" "+value+" "+timestamp+"\n");
 				}
 				counterAdd(serverName,size-1); // not counting DateTime column
 			}
+
+			if(startNanos!=0) {
+				long totalNanos=System.nanoTime()-startNanos;
+				PipelineInstrumentation.recordMicros(PipelineInstrumentation.GRAPHITE_WRITE_STAGE,writeNanos/NANOS_IN_MICRO);
+				PipelineInstrumentation.recordMicros(PipelineInstrumentation.GRAPHITE_ENCODE_STAGE,(totalNanos-writeNanos)/NANOS_IN_MICRO);
+			}
 		} catch (Exception e) {
                         AppLog.getLogger().error("error on parse date: " + e.toString(),e);
 		}
@@ -388,4 +401,45 @@ public class GraphiteBackgroundSender {
 	
 	}
 
+	/**
+	 * Returns the metric names (columns) of a CSV header line. The names of 
+	 * each header line are split out once and cached until the metric schema
+	 * is swapped, when the header lines of the new schema replace them.
+	 *
+	 * @param headerLine The CSV header line
+	 * @return The metric names, starting with the date-time column
+	 */
+	private String[] getMetricNames(String headerLine) {
+		int schemaVersion = MetricSchema.getCurrent().getVersion();
+
+		if (schemaVersion != metricNamesSchemaVersion) {
+			metricNamesCache.clear();
+			metricNamesSchemaVersion = schemaVersion;
+		}
+
+		String[] metricNames = metricNamesCache.get(headerLine);
+
+		if (metricNames == null) {
+			metricNames = headerLine.split(",");
+			metricNamesCache.put(headerLine, metricNames);
+		}
+
+		return metricNames;
+	}
+
+	/**
+	 * Writes a metric line to the Graphite channel, timing the write.
+	 *
+	 * @param channel The channel to the Graphite server
+	 * @param metricLine The metric line text
+	 * @return The time the write took in nanoseconds (0 if instrumentation is disabled)
+	 */
+	private long writeMetricLine(Channel channel,String metricLine) {
+		long startNanos=PipelineInstrumentation.startTiming();
+		channel.write(metricLine);
+		return (startNanos!=0) ? (System.nanoTime()-startNanos) : 0;
+	}
+
+	private final static long NANOS_IN_MICRO=1000;
+
 }
@@ -0,0 +1,389 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.wldfcapture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import domainhealth.core.env.AppLog;
+
+/**
+ * Measures, per server, when the WLDF harvester actually harvests, from the 
+ * timestamps of the records returned by each WLDF query, together with how 
+ * long the queries take. From these it determines each server's harvest 
+ * period and harvest lag (how old the newest harvested record is when 
+ * queried), detects servers harvesting more or less often than the 
+ * configured sample period, and derives each server's WLDF query timeout 
+ * and (when not reading from a watermark) query window. When most servers
+ * keep harvesting less often than the sample period, even after the 
+ * harvester module has been re-checked, the sample period is stretched 
+ * towards the measured harvest period, so the module can be re-created to
+ * harvest at a cadence the servers can keep up with.
+ */
+public class HarvestCalibrator {
+	/**
+	 * Create a new calibrator for the harvester's configured sample period.
+	 * 
+	 * @param samplePeriodMillis The WLDF harvester module's configured sample period
+	 */
+	public HarvestCalibrator(int samplePeriodMillis) {
+		this.configuredSamplePeriodMillis = samplePeriodMillis;
+		this.samplePeriodMillis = samplePeriodMillis;
+	}
+
+	/**
+	 * Records the outcome of a successful WLDF query against a server.
+	 * 
+	 * @param serverName The name of the server queried
+	 * @param queryTimeMillis The time the query was started
+	 * @param queryDurationMillis The time the query took, including fetching all the records
+	 * @param latestTimestamp The timestamp of the newest record returned (-1 if no records)
+	 * @param harvestSeconds The timestamps of the returned records in ascending order (repeats allowed), in whole seconds since the epoch
+	 * @param harvestSecondCount The number of timestamps held at the start of the array
+	 */
+	public void recordQuery(String serverName, long queryTimeMillis, long queryDurationMillis, long latestTimestamp, long[] harvestSeconds, int harvestSecondCount) {
+		getServerState(serverName).recordQuery(queryTimeMillis, queryDurationMillis, latestTimestamp, harvestSeconds, harvestSecondCount);
+	}
+
+	/**
+	 * Get the observed harvest lag of a server, being the age of the newest 
+	 * harvested record when last queried.
+	 * 
+	 * @param serverName The name of the server
+	 * @return The harvest lag in milliseconds (-1 if not known yet)
+	 */
+	public long getHarvestLagMillis(String serverName) {
+		ServerHarvestState state = serverStates.get(serverName);
+		return (state != null) ? state.getLagMillis() : -1;
+	}
+
+	/**
+	 * Get the observed harvest period of a server (smoothed over recent 
+	 * harvests).
+	 * 
+	 * @param serverName The name of the server
+	 * @return The harvest period in milliseconds (-1 if not known yet)
+	 */
+	public long getHarvestPeriodMillis(String serverName) {
+		ServerHarvestState state = serverStates.get(serverName);
+		return (state != null) ? state.getPeriodMillis() : -1;
+	}
+
+	/**
+	 * Get the timeout for the next WLDF query on a server, allowing a 
+	 * multiple of the recent query times, but within fixed proportions of 
+	 * the query interval.
+	 * 
+	 * @param serverName The name of the server
+	 * @param defaultTimeoutMillis The timeout to use until query times have been measured
+	 * @param queryIntervalMillis The query interval
+	 * @return The query timeout in milliseconds
+	 */
+	public int getQueryTimeoutMillis(String serverName, int defaultTimeoutMillis, int queryIntervalMillis) {
+		ServerHarvestState state = serverStates.get(serverName);
+		long queryDurationMillis = (state != null) ? state.getQueryDurationMillis() : -1;
+
+		if (queryDurationMillis < 0) {
+			return defaultTimeoutMillis;
+		}
+
+		long minTimeoutMillis = (long) (MIN_QUERY_TIMEOUT_FACTOR * queryIntervalMillis);
+		long maxTimeoutMillis = (long) (MAX_QUERY_TIMEOUT_FACTOR * queryIntervalMillis);
+		return (int) Math.max(minTimeoutMillis, Math.min(QUERY_TIMEOUT_HEADROOM * queryDurationMillis, maxTimeoutMillis));
+	}
+
+	/**
+	 * Get how far back a WLDF query for a server should look, when not 
+	 * reading from a watermark, so that a harvest running late is not 
+	 * missed: the query interval, stretched to the observed harvest period 
+	 * plus lag, up to a limited number of query intervals.
+	 * 
+	 * @param serverName The name of the server
+	 * @param queryIntervalMillis The query interval
+	 * @return The query window in milliseconds
+	 */
+	public long getQueryWindowMillis(String serverName, int queryIntervalMillis) {
+		long periodMillis = getHarvestPeriodMillis(serverName);
+		long lagMillis = getHarvestLagMillis(serverName);
+
+		if ((periodMillis < 0) || (lagMillis < 0)) {
+			return queryIntervalMillis;
+		}
+
+		return Math.max(queryIntervalMillis, Math.min(periodMillis + lagMillis, MAX_QUERY_WINDOW_INTERVALS * (long) queryIntervalMillis));
+	}
+
+	/**
+	 * Determines whether most of the servers with a measured harvest period 
+	 * are harvesting noticeably more or less often than the configured 
+	 * sample period (eg. the module has been changed, or the servers are too
+	 * loaded to harvest on time).
+	 * 
+	 * @return True if the harvest cadence is off for most servers; otherwise false
+	 */
+	public boolean isHarvestCadenceOff() {
+		int measuredCount = 0;
+		int offCount = 0;
+		Iterator<ServerHarvestState> states = serverStates.values().iterator();
+
+		while (states.hasNext()) {
+			long periodMillis = states.next().getPeriodMillis();
+
+			if (periodMillis >= 0) {
+				measuredCount++;
+
+				if (isPeriodOff(periodMillis)) {
+					offCount++;
+				}
+			}
+		}
+
+		return ((measuredCount > 0) && (offCount * 2 > measuredCount));
+	}
+
+	/**
+	 * Adjusts the sample period from the measured harvest cadence, to be 
+	 * called each time the harvester module is about to be re-checked. The
+	 * first time most servers are found to be under-harvesting, the sample
+	 * period is left alone so the module can be re-checked (eg. its sample 
+	 * period may have been changed). If most servers are still 
+	 * under-harvesting on the next call, the sample period is stretched to
+	 * the median of their measured harvest periods (rounded up to whole 
+	 * seconds and limited to a multiple of the configured sample period). 
+	 * Once harvests land at a stretched sample period, the configured 
+	 * sample period is tried again.
+	 * 
+	 * @return The sample period to configure the harvester module with, in milliseconds
+	 */
+	public synchronized int calibrateSamplePeriod() {
+		int measuredCount = 0;
+		List<Long> underPeriods = new ArrayList<Long>();
+		Iterator<ServerHarvestState> states = serverStates.values().iterator();
+
+		while (states.hasNext()) {
+			long periodMillis = states.next().getPeriodMillis();
+
+			if (periodMillis >= 0) {
+				measuredCount++;
+
+				if ((periodMillis > samplePeriodMillis) && (isPeriodOff(periodMillis))) {
+					underPeriods.add(periodMillis);
+				}
+			}
+		}
+
+		if ((measuredCount > 0) && (underPeriods.size() * 2 > measuredCount)) {
+			underHarvestChecks++;
+
+			if (underHarvestChecks > 1) {
+				Collections.sort(underPeriods);
+				long medianPeriodMillis = underPeriods.get(underPeriods.size() / 2);
+				long roundedPeriodMillis = ((medianPeriodMillis + ONE_SECOND_MILLIS - 1) / ONE_SECOND_MILLIS) * ONE_SECOND_MILLIS;
+				int stretchedPeriodMillis = (int) Math.min(roundedPeriodMillis, MAX_SAMPLE_PERIOD_FACTOR * (long) configuredSamplePeriodMillis);
+
+				if (stretchedPeriodMillis > samplePeriodMillis) {
+					AppLog.getLogger().warning("WLDF harvesters on most servers cannot keep up with a " + samplePeriodMillis + " ms sample period - stretching it to " + stretchedPeriodMillis + " ms");
+					samplePeriodMillis = stretchedPeriodMillis;
+				}
+
+				underHarvestChecks = 0;
+			}
+		} else {
+			underHarvestChecks = 0;
+
+			if ((samplePeriodMillis != configuredSamplePeriodMillis) && (!isHarvestCadenceOff())) {
+				AppLog.getLogger().notice("WLDF harvesters keeping up with the stretched " + samplePeriodMillis + " ms sample period - trying the configured " + configuredSamplePeriodMillis + " ms sample period again");
+				samplePeriodMillis = configuredSamplePeriodMillis;
+			}
+		}
+
+		return samplePeriodMillis;
+	}
+
+	/**
+	 * Get the harvester sample period being calibrated against, being the
+	 * configured sample period unless stretched by calibrateSamplePeriod().
+	 * 
+	 * @return The sample period in milliseconds
+	 */
+	public int getSamplePeriodMillis() {
+		return samplePeriodMillis;
+	}
+
+	/**
+	 * Determines whether an observed harvest period is too far from the 
+	 * configured sample period.
+	 * 
+	 * @param periodMillis The observed harvest period
+	 * @return True if more than the allowed proportion away from the sample period; otherwise false
+	 */
+	private boolean isPeriodOff(long periodMillis) {
+		return (Math.abs(periodMillis - samplePeriodMillis) > (PERIOD_TOLERANCE_FACTOR * samplePeriodMillis));
+	}
+
+	/**
+	 * Get the harvest state of a server, creating it if not seen before.
+	 * 
+	 * @param serverName The name of the server
+	 * @return The server's harvest state
+	 */
+	private ServerHarvestState getServerState(String serverName) {
+		ServerHarvestState state = serverStates.get(serverName);
+
+		if (state == null) {
+			state = new ServerHarvestState(serverName);
+			ServerHarvestState existingState = serverStates.putIfAbsent(serverName, state);
+
+			if (existingState != null) {
+				state = existingState;
+			}
+		}
+
+		return state;
+	}
+
+	/**
+	 * The measured harvest timings of a single server.
+	 */
+	private class ServerHarvestState {
+		/**
+		 * Create the state for the server
+		 * 
+		 * @param serverName The name of the server
+		 */
+		public ServerHarvestState(String serverName) {
+			this.serverName = serverName;
+		}
+
+		/**
+		 * Records the outcome of a query. Record timestamps within a couple 
+		 * of seconds of each other are taken to be part of the same harvest, 
+		 * and the gap from one harvest to the next is the harvest period.
+		 * 
+		 * @param queryTimeMillis The time the query was started
+		 * @param queryDurationMillis The time the query took
+		 * @param latestTimestamp The timestamp of the newest record returned (-1 if no records)
+		 * @param harvestSeconds The timestamps of the returned records in ascending order (repeats allowed), in whole seconds
+		 * @param harvestSecondCount The number of timestamps held at the start of the array
+		 */
+		public synchronized void recordQuery(long queryTimeMillis, long queryDurationMillis, long latestTimestamp, long[] harvestSeconds, int harvestSecondCount) {
+			this.queryDurationMillis = smooth(this.queryDurationMillis, queryDurationMillis);
+
+			for (int i = 0; i < harvestSecondCount; i++) {
+				long harvestTimeMillis = harvestSeconds[i] * ONE_SECOND_MILLIS;
+
+				if (harvestTimeMillis - lastSecondSeenMillis > SAME_HARVEST_GAP_MILLIS) {
+					if ((lastHarvestTimeMillis >= 0) && (harvestTimeMillis > lastHarvestTimeMillis)) {
+						periodMillis = smooth(periodMillis, harvestTimeMillis - lastHarvestTimeMillis);
+					}
+
+					lastHarvestTimeMillis = harvestTimeMillis;
+				}
+
+				lastSecondSeenMillis = Math.max(lastSecondSeenMillis, harvestTimeMillis);
+			}
+
+			if (latestTimestamp >= 0) {
+				lagMillis = Math.max(queryTimeMillis - latestTimestamp, 0);
+			} else if (lastHarvestTimeMillis >= 0) {
+				lagMillis = Math.max(queryTimeMillis - lastHarvestTimeMillis, 0);
+			}
+
+			boolean periodOff = ((periodMillis >= 0) && (isPeriodOff(periodMillis)));
+
+			if (periodOff != cadenceOffLogged) {
+				cadenceOffLogged = periodOff;
+
+				if (periodOff) {
+					AppLog.getLogger().warning("WLDF harvester for server '" + serverName + "' is " + ((periodMillis < samplePeriodMillis) ? "over" : "under") + "-harvesting - harvests every " + periodMillis + " ms, instead of every " + samplePeriodMillis + " ms (harvest lag " + lagMillis + " ms)");
+				} else {
+					AppLog.getLogger().notice("WLDF harvester for server '" + serverName + "' harvesting every " + periodMillis + " ms again");
+				}
+			}
+		}
+
+		/**
+		 * Get the smoothed harvest period.
+		 * 
+		 * @return The harvest period in milliseconds (-1 if not known yet)
+		 */
+		public synchronized long getPeriodMillis() {
+			return periodMillis;
+		}
+
+		/**
+		 * Get the latest harvest lag.
+		 * 
+		 * @return The harvest lag in milliseconds (-1 if not known yet)
+		 */
+		public synchronized long getLagMillis() {
+			return lagMillis;
+		}
+
+		/**
+		 * Get the smoothed query duration.
+		 * 
+		 * @return The query duration in milliseconds (-1 if not known yet)
+		 */
+		public synchronized long getQueryDurationMillis() {
+			return queryDurationMillis;
+		}
+
+		/**
+		 * Blends a new sample into a smoothed value.
+		 * 
+		 * @param smoothedValue The current smoothed value (-1 if no samples yet)
+		 * @param sample The new sample
+		 * @return The new smoothed value
+		 */
+		private long smooth(long smoothedValue, long sample) {
+			if (smoothedValue < 0) {
+				return sample;
+			}
+
+			return Math.round((SMOOTHING_FACTOR * sample) + ((1 - SMOOTHING_FACTOR) * smoothedValue));
+		}
+
+		// Members
+		private final String serverName;
+		private long lastHarvestTimeMillis = -1;
+		private long lastSecondSeenMillis = -1;
+		private long periodMillis = -1;
+		private long lagMillis = -1;
+		private long queryDurationMillis = -1;
+		private boolean cadenceOffLogged = false;
+	}
+
+	// Constants
+	private final static long ONE_SECOND_MILLIS = 1000;
+	private final static long SAME_HARVEST_GAP_MILLIS = 2000;
+	private final static float SMOOTHING_FACTOR = 0.3F;
+	private final static float PERIOD_TOLERANCE_FACTOR = 0.5F;
+	private final static int QUERY_TIMEOUT_HEADROOM = 4;
+	private final static float MIN_QUERY_TIMEOUT_FACTOR = 0.1F;
+	private final static float MAX_QUERY_TIMEOUT_FACTOR = 0.9F;
+	private final static int MAX_QUERY_WINDOW_INTERVALS = 3;
+	private final static int MAX_SAMPLE_PERIOD_FACTOR = 4;
+
+	// Members
+	private final int configuredSamplePeriodMillis;
+	private volatile int samplePeriodMillis;
+	private int underHarvestChecks = 0;
+	private final ConcurrentMap<String, ServerHarvestState> serverStates = new ConcurrentHashMap<String, ServerHarvestState>();
+}
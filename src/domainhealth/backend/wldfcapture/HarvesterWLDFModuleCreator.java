@@ -14,6 +14,12 @@
 //POSSIBILITY OF SUCH DAMAGE.
 package domainhealth.backend.wldfcapture;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,6 +29,7 @@ import domainhealth.core.env.AppLog;
 import domainhealth.core.jmx.DomainRuntimeServiceMBeanConnection;
 import domainhealth.core.jmx.EditServiceMBeanConnection;
 import domainhealth.core.jmx.WebLogicMBeanException;
+import domainhealth.core.statistics.MetricSchema;
 import domainhealth.core.util.ProductVersionUtil;
 import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
 import static domainhealth.core.statistics.MonitorProperties.*;
@@ -31,6 +38,12 @@ import static domainhealth.core.statistics.MonitorProperties.*;
  * Responsible for creating a WLDF Module in the WebLogic domain, configured
  * to log a set of required statistics into a Harvester Archive for the Domain
  * Health application to subsequently query.
+ * 
+ * The MBean types and attributes harvested are derived from the metric types
+ * being captured and the attribute lists of the current metric deep set, so 
+ * that managed servers only harvest what is queried. A signature of these 
+ * harvested metrics is recorded in the module's description, and the module 
+ * is re-created whenever the signature no longer matches.
  */
 public class HarvesterWLDFModuleCreator {
 	/**
@@ -41,12 +54,68 @@ public class HarvesterWLDFModuleCreator {
 	 * @param wlsVersionNumber The version of the host WebLogic Domain
 	 */
 	public HarvesterWLDFModuleCreator(int queryIntervalMillis, String domainhealthVersionNumber, String wlsVersionNumber) {
+		this(queryIntervalMillis, domainhealthVersionNumber, wlsVersionNumber, null);
+	}
+
+	/**
+	 * Harvester module constructor.
+	 * 
+	 * @param queryIntervalMillis The interval in milliseconds between successive statistic collecitons
+	 * @param domainhealthVersionNumber The version number of DomainHealth and the WLDF module which should be present or created
+	 * @param wlsVersionNumber The version of the host WebLogic Domain
+	 * @param metricTypeSet The metric types being captured (eg. "core", "datasource") or null to harvest the metrics of all types
+	 */
+	public HarvesterWLDFModuleCreator(int queryIntervalMillis, String domainhealthVersionNumber, String wlsVersionNumber, List<String> metricTypeSet) {
+		this(queryIntervalMillis, domainhealthVersionNumber, wlsVersionNumber, metricTypeSet, MetricSchema.getCurrent());
+	}
+
+	/**
+	 * Harvester module constructor.
+	 * 
+	 * @param queryIntervalMillis The interval in milliseconds between successive statistic collecitons
+	 * @param domainhealthVersionNumber The version number of DomainHealth and the WLDF module which should be present or created
+	 * @param wlsVersionNumber The version of the host WebLogic Domain
+	 * @param metricTypeSet The metric types being captured (eg. "core", "datasource") or null to harvest the metrics of all types
+	 * @param metricSchema The metric schema listing the attributes to harvest for each metric type
+	 */
+	public HarvesterWLDFModuleCreator(int queryIntervalMillis, String domainhealthVersionNumber, String wlsVersionNumber, List<String> metricTypeSet, MetricSchema metricSchema) {
 		this.queryIntervalMillis = queryIntervalMillis;
 		this.domainhealthVersionNumber = domainhealthVersionNumber;
 		this.wlsVersionNumber = wlsVersionNumber;
-		moduleDescription = String.format(MODULE_DESC_TMPLT, domainhealthVersionNumber);
+		this.metricSchema = metricSchema;
+		this.harvestedMetrics = getHarvestedMetrics(metricTypeSet, metricSchema);
+		this.harvestedMetricsSignature = getHarvestedMetricsSignature(harvestedMetrics, queryIntervalMillis);
+		moduleDescription = String.format(MODULE_DESC_TMPLT, harvestedMetricsSignature, domainhealthVersionNumber);
 	}
 	
+	/**
+	 * Gets the metric schema which the module harvests the attributes of.
+	 * 
+	 * @return The metric schema
+	 */
+	public MetricSchema getMetricSchema() {
+		return metricSchema;
+	}
+
+	/**
+	 * Gets the sample period the module is configured to harvest at.
+	 * 
+	 * @return The sample period in milliseconds
+	 */
+	public int getSamplePeriodMillis() {
+		return queryIntervalMillis;
+	}
+
+	/**
+	 * Gets the description given to the module, holding the module's version
+	 * and the signature of its harvested metrics.
+	 * 
+	 * @return The module description
+	 */
+	public String getModuleDescription() {
+		return moduleDescription;
+	}
+
 	/**
 	 * Determines whether the current WebLogic domain is capable of using WLDF
 	 * statistic harvesting to drive Domain Health. Specifically, sees if there
@@ -191,7 +260,8 @@ public class HarvesterWLDFModuleCreator {
 		if (wldfResource != null) {
 			String description = conn.getTextAttr(wldfResource, DESCRIPTION);
 
-			if (doesModuleDescriptionContainCurrentModuleVersion(description)) {
+			if ((doesModuleDescriptionContainCurrentModuleVersion(description)) && (doesModuleDescriptionContainCurrentHarvestedMetrics(description)) 
+					&& (isModuleSamplePeriodCurrent(conn, wldfResource))) {
 				if (isModuleTargettedToAllServers(conn, wldfResource)) {
 					return ExistingDHModuleType.CURRENT_MODULE;
 				} else {
@@ -205,6 +275,28 @@ public class HarvesterWLDFModuleCreator {
 		}
 	}
 
+	/**
+	 * Determine if the current Domain Health harvester module's harvester is
+	 * still configured with the required sample period (it may have been 
+	 * changed since the module was created, eg. using the admin console).
+	 * 
+	 * @param conn Domain MBean server connection
+	 * @param wldfResource Existing DomainHealth havester module resource
+	 * @return True if the harvester sample period is the required one, otherwise false
+	 * @throws WebLogicMBeanException Indicates that there was a problem querying the domain's config
+	 */
+	private boolean isModuleSamplePeriodCurrent(DomainRuntimeServiceMBeanConnection conn, ObjectName wldfResource) throws WebLogicMBeanException {
+		ObjectName harvester = conn.getChild(conn.getChild(wldfResource, WLDF_RESOURCE), HARVESTER);
+		long samplePeriodMillis = (long) conn.getNumberAttr(harvester, SAMPLE_PERIOD);
+		
+		if (samplePeriodMillis != queryIntervalMillis) {
+			AppLog.getLogger().notice("DomainHealth WLDF Harvester Module sample period is " + samplePeriodMillis + " ms rather than the required " + queryIntervalMillis + " ms");
+			return false;
+		}
+
+		return true;
+	}
+
 	/**
 	 * Determine if the current Domain Health harvester module is targetted to
 	 * all current configured servers in the domain.
@@ -243,6 +335,143 @@ public class HarvesterWLDFModuleCreator {
 		}
 	}
 
+	/**
+	 * Utility method determining whether a WLDF Module description string 
+	 * contains a harvested metrics signature which is equal to the signature
+	 * of the metrics currently required.
+	 *  
+	 * @param description The module description text
+	 * @return True if signature matches; false if no signature found or signature is not same 
+	 */
+	public boolean doesModuleDescriptionContainCurrentHarvestedMetrics(String description) {
+		Matcher matcher = MODULE_SIGNATURE_EXTRACTOR_PATTERN.matcher(description);
+		return ((matcher.find()) && (matcher.group(1).equals(harvestedMetricsSignature)));
+	}
+
+	/**
+	 * Derives the MBean types and attributes to harvest from the metric types
+	 * being captured, using the attribute lists of a metric schema. The 
+	 * "jvm" metric type is read from the platform MBeans directly and so 
+	 * needs nothing harvested.
+	 * 
+	 * @param metricTypeSet The metric types being captured or null for all types
+	 * @param schema The metric schema
+	 * @return The attribute names to harvest keyed by MBean type, in a fixed order
+	 */
+	static Map<String, String[]> getHarvestedMetrics(List<String> metricTypeSet, MetricSchema schema) {
+		Map<String, String[]> metrics = new LinkedHashMap<String, String[]>();
+
+		if (isMetricTypeCaptured(metricTypeSet, CORE_RESOURCE_TYPE)) {
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_RUNTIME), schema.getServerAttrs());
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JVM_RUNTIME), schema.getJvmAttrs());
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JROCKIT_RUNTIME), schema.getJRockitFullAttrs());
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, THREAD_POOL_RUNTIME), schema.getThreadPoolAttrs());
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JTA_RUNTIME), schema.getJtaAttrs());
+		}
+
+		if (isMetricTypeCaptured(metricTypeSet, DATASOURCE_RESOURCE_TYPE)) {
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JDBC_DATASOURCE_RUNTIME), schema.getJdbcAttrs());
+		}
+
+		if (isMetricTypeCaptured(metricTypeSet, JMS_DESTINATION_METRIC_TYPE)) {
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JMS_DESTINATION_RUNTIME), schema.getJmsDestinationAttrs());
+		}
+
+		if (isMetricTypeCaptured(metricTypeSet, WEBAPP_RESOURCE_TYPE)) {
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WEBAPP_COMPONENT_RUNTIME), schema.getWebAppAttrs());
+		}
+
+		if (isMetricTypeCaptured(metricTypeSet, EJB_RESOURCE_TYPE)) {
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, EJB_POOL_RUNTIME), schema.getEjbPoolAttrs());
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, EJB_TRANSACTION_RUNTIME), schema.getEjbTransactionAttrs());
+		}
+
+		if (isMetricTypeCaptured(metricTypeSet, EXTENDED_METRIC_TYPE)) {
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WORK_MANAGER_RUNTIME), schema.getWorkManagerAttrs());
+			putMetric(metrics, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_CHANNEL_RUNTIME), schema.getServerChannelAttrs());
+		}
+
+		if (isMetricTypeCaptured(metricTypeSet, HOSTMACHINE_RESOURCE_TYPE)) {
+			putMetric(metrics, HOST_MACHINE_MBEAN, schema.getHostMachineAttrs());
+		}
+
+		return metrics;
+	}
+
+	/**
+	 * Adds an MBean type's attributes to the metrics to harvest, ignoring 
+	 * MBean types with no attribute list set for the metric deep set.
+	 * 
+	 * @param metrics The attribute names to harvest keyed by MBean type
+	 * @param mbeanType The MBean type to harvest
+	 * @param attrNames The attribute names to harvest
+	 */
+	private static void putMetric(Map<String, String[]> metrics, String mbeanType, String[] attrNames) {
+		if (attrNames != null) {
+			metrics.put(mbeanType, attrNames);
+		}
+	}
+
+	/**
+	 * Determines whether a metric type is one of those being captured.
+	 * 
+	 * @param metricTypeSet The metric types being captured or null for all types
+	 * @param metricType The metric type to look for
+	 * @return True if the metric type is captured; otherwise false
+	 */
+	private static boolean isMetricTypeCaptured(List<String> metricTypeSet, String metricType) {
+		if (metricTypeSet == null) {
+			return true;
+		}
+
+		for (String type : metricTypeSet) {
+			if (type.equalsIgnoreCase(metricType)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Generates a signature of the harvested MBean types, attributes and 
+	 * sample period, which changes whenever any of these change. The 
+	 * signature is a SHA-256 digest, so that a change is never missed (and a
+	 * needed re-create skipped) because two different sets of harvested 
+	 * metrics happen to have the same signature.
+	 * 
+	 * @param metrics The attribute names to harvest keyed by MBean type
+	 * @param samplePeriodMillis The harvester sample period
+	 * @return The signature text (hex digits)
+	 */
+	static String getHarvestedMetricsSignature(Map<String, String[]> metrics, int samplePeriodMillis) {
+		StringBuilder metricsText = new StringBuilder(1024);
+		metricsText.append(samplePeriodMillis);
+
+		for (Map.Entry<String, String[]> metric : metrics.entrySet()) {
+			metricsText.append(';').append(metric.getKey()).append('=');
+
+			for (String attrName : metric.getValue()) {
+				metricsText.append(attrName).append(',');
+			}
+		}
+
+		try {
+			byte[] digest = MessageDigest.getInstance(SIGNATURE_DIGEST_ALGORITHM).digest(metricsText.toString().getBytes(SIGNATURE_TEXT_ENCODING));
+			StringBuilder signature = new StringBuilder(digest.length * 2);
+
+			for (byte digestByte : digest) {
+				signature.append(HEX_DIGITS[(digestByte >> 4) & 0xF]).append(HEX_DIGITS[digestByte & 0xF]);
+			}
+
+			return signature.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java platform is required to support " + SIGNATURE_DIGEST_ALGORITHM, e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("Every Java platform is required to support " + SIGNATURE_TEXT_ENCODING, e);
+		}
+	}
+
 	/**
 	 * Delete an old version of the Domain Health WLDF Harvesting module from 
 	 * the domain, if it exists, and also any old Domain Health retirement 
@@ -306,26 +535,18 @@ public class HarvesterWLDFModuleCreator {
 		ObjectName harvester = conn.getChild(wldfRsc, HARVESTER);
 		conn.setBooleanAttr(harvester, ENABLED, true);
 		conn.setNumberAttr(harvester, SAMPLE_PERIOD, queryIntervalMillis);
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_RUNTIME), SERVER_MBEAN_MONITOR_ATTR_LIST, true);
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JVM_RUNTIME), JVM_MBEAN_MONITOR_ATTR_LIST, true);		
-		//addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JROCKIT_RUNTIME), JVM_MBEAN_MONITOR_ATTR_LIST, true);		
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JROCKIT_RUNTIME), JROCKIT_FULL_MBEAN_MONITOR_ATTR_LIST, true);		
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, THREAD_POOL_RUNTIME), THREADPOOL_MBEAN_MONITOR_ATTR_LIST, true);
 		/* Example of restricting mbean type query to a fixed set of known mbean instance names
 		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WORK_MANAGER_RUNTIME), 
 				getDefaultWorkManagerServerTextObjectNames(serverNames), WKMGR_MBEAN_MONITOR_ATTR_LIST, true);
 		*/
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JTA_RUNTIME), JTA_MBEAN_MONITOR_ATTR_LIST, true);
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JDBC_DATASOURCE_RUNTIME), JDBC_MBEAN_MONITOR_ATTR_LIST, true);
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JMS_DESTINATION_RUNTIME), JMS_DESTINATION_MBEAN_MONITOR_ATTR_LIST, true);
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WEBAPP_COMPONENT_RUNTIME), WEBAPP_MBEAN_MONITOR_ATTR_LIST, true);
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, EJB_POOL_RUNTIME), EJB_POOL_MBEAN_MONITOR_ATTR_LIST, true);
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, EJB_TRANSACTION_RUNTIME), EJB_TRANSACTION_MBEAN_MONITOR_ATTR_LIST, true);		
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WORK_MANAGER_RUNTIME), WKMGR_MBEAN_MONITOR_ATTR_LIST, true);
-		addMetric(conn, harvester, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_CHANNEL_RUNTIME), SVR_CHANNEL_MBEAN_MONITOR_ATTR_LIST, true);
-		addMetric(conn, harvester, HOST_MACHINE_MBEAN, HOST_MACHINE_STATS_MBEAN_MONITOR_ATTR_LIST, false);
+
+		for (Map.Entry<String, String[]> metric : harvestedMetrics.entrySet()) {
+			// WLHostMachine MBean is a custom (not a WebLogic) MBean type
+			addMetric(conn, harvester, metric.getKey(), metric.getValue(), !metric.getKey().equals(HOST_MACHINE_MBEAN));
+		}
+
 		createNewRetirementPolicy(conn, domainConfig);
-		AppLog.getLogger().notice("Created new DomainHealth WLDF Harvester Module called: " + HARVESTER_MODULE_NAME + " (" + domainhealthVersionNumber + ")");
+		AppLog.getLogger().notice("Created new DomainHealth WLDF Harvester Module called: " + HARVESTER_MODULE_NAME + " (" + domainhealthVersionNumber + ", harvesting " + harvestedMetrics.size() + " MBean types, metrics signature " + harvestedMetricsSignature + ")");
 	}
 
 	/**
@@ -447,13 +668,20 @@ public class HarvesterWLDFModuleCreator {
 	private final String domainhealthVersionNumber;
 	private final String wlsVersionNumber;
 	private final String moduleDescription;
+	private final MetricSchema metricSchema;
+	private final Map<String, String[]> harvestedMetrics;
+	private final String harvestedMetricsSignature;
 	
 	// Constants
 	private static final String WLS_MIN_VERSION_FOR_MULTI_WLDF_MODULES = "12.1.2";
 	private final static String HARVESTER_MODULE_NAME = "DomainHealth_NG_WLDFHarvesterModule";
 	private final static String RETIRE_POLICY_NAME_TEMPLATE = "DomainHealth_NG_WLDFRetirePolicy_%s";
-	private final static String MODULE_DESC_TMPLT = "WLDF Module for the 'DomainHealth NG' monitoring application. Harvests important Core, JDBC. JMS, WebApp, EJB, Work Manager and Server Channel statistics for each server in the domain, ready to be queried by the DomainHealth web application running on the domain's Admin Server. v%s.";
+	private final static String MODULE_DESC_TMPLT = "WLDF Module for the 'DomainHealth NG' monitoring application. Harvests important Core, JDBC. JMS, WebApp, EJB, Work Manager and Server Channel statistics for each server in the domain, ready to be queried by the DomainHealth web application running on the domain's Admin Server. Harvested metrics #%s. v%s.";
 	private final static Pattern MODULE_VERSION_EXTRACTOR_PATTERN = Pattern.compile(".*\\. v(\\d+\\.\\d+\\.?\\d*[a-zA-Z]*\\d*)\\.$");
+	private final static String SIGNATURE_DIGEST_ALGORITHM = "SHA-256";
+	private final static String SIGNATURE_TEXT_ENCODING = "UTF-8";
+	private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private final static Pattern MODULE_SIGNATURE_EXTRACTOR_PATTERN = Pattern.compile("Harvested metrics #([0-9a-f]+)\\.");
 	private final static String HAVESTER_ARCHIVE_NAME = "HarvestedDataArchive";
 	private final static int OLD_DATA_AGE_HOURS = 1;
 	private final static int DATA_RETIREMENT_START_HOUR_OF_DAY = 2;	
@@ -14,10 +14,23 @@
 //POSSIBILITY OF SUCH DAMAGE.
 package domainhealth.backend.wldfcapture;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.management.ObjectName;
 
+import commonj.work.WorkException;
+import commonj.work.WorkManager;
 import domainhealth.backend.wldfcapture.data.DataRecordsCollection;
 import domainhealth.core.env.AppLog;
+import domainhealth.core.env.ContextAwareWork;
+import domainhealth.core.instrumentation.PipelineInstrumentation;
 import domainhealth.core.jmx.WebLogicMBeanConnection;
 import domainhealth.core.jmx.WebLogicMBeanException;
 
@@ -25,6 +38,23 @@ import domainhealth.core.jmx.WebLogicMBeanException;
  * Locates the JMX Runtime for a specific Server's WLDF Harvester Archive and 
  * executes the provided WLDF query on this archive, collecting the rows of
  * results together and passing this result set back to the caller. 
+ * 
+ * If query watermarks are provided, the query only reads the records 
+ * harvested after the latest record read by the previous run of the same 
+ * query for the server, otherwise it reads the records harvested in the 
+ * last query interval. A query combining several named queries (eg. one 
+ * per resource type) reads from the oldest of their watermarks and then
+ * advances all of them. If the query name of each MBean type is known, 
+ * records of an MBean type older than its own query's watermark are 
+ * dropped, so that a query with a newer watermark does not read the same 
+ * records again.
+ * 
+ * The number of records fetched per round trip is sized from the number of
+ * records the same query returned last time for the server, so that usually
+ * the whole result comes back in one fetch. A fetch returning fewer records 
+ * than asked for is known to be the last one, without having to ask the 
+ * server if there is more data. Optionally, the next chunk of a large 
+ * result is fetched on another thread whilst the current chunk is decoded.
  */
 public class HarvesterWLDFQueryRunner {
 	/**
@@ -35,11 +65,42 @@ public class HarvesterWLDFQueryRunner {
 	 * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the data
 	 */
 	public HarvesterWLDFQueryRunner(WebLogicMBeanConnection conn, String serverName, String wldfQuery, int queryIntervalMillis) throws WebLogicMBeanException {
+		this(conn, serverName, Collections.<String>emptyList(), wldfQuery, queryIntervalMillis, null);
+	}
+
+	/**
+	 * 
+	 * @param conn Connection to the admin server's MBean tree
+	 * @param serverName The name of the server to perform the WLDF query on
+	 * @param queryName The name identifying the query for the server's watermark (eg. the resource type)
+	 * @param wldfQuery The text of the WLDF query to run
+	 * @param queryIntervalMillis The query interval
+	 * @param watermarks The latest record read per server and query (null to always read the last query interval)
+	 * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the data
+	 */
+	public HarvesterWLDFQueryRunner(WebLogicMBeanConnection conn, String serverName, String queryName, String wldfQuery, int queryIntervalMillis, HarvesterWLDFQueryWatermarks watermarks) throws WebLogicMBeanException {
+		this(conn, serverName, Collections.singletonList(queryName), wldfQuery, queryIntervalMillis, watermarks);
+	}
+
+	/**
+	 * 
+	 * @param conn Connection to the admin server's MBean tree
+	 * @param serverName The name of the server to perform the WLDF query on
+	 * @param queryNames The names identifying each of the queries combined in the WLDF query, for the server's watermarks
+	 * @param wldfQuery The text of the WLDF query to run
+	 * @param queryIntervalMillis The query interval
+	 * @param watermarks The latest record read per server and query (null to always read the last query interval)
+	 * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the data
+	 */
+	public HarvesterWLDFQueryRunner(WebLogicMBeanConnection conn, String serverName, List<String> queryNames, String wldfQuery, int queryIntervalMillis, HarvesterWLDFQueryWatermarks watermarks) throws WebLogicMBeanException {
 		this.conn = conn;
 		this.wldfQuery = wldfQuery;
 		this.serverName = serverName;
+		this.queryNames = queryNames;
+		this.watermarks = watermarks;
 		this.queryIntervalMillis = queryIntervalMillis;
-		this.queryTimeoutMillis = (int) (QUERY_TIMEOUT_FACTOR * queryIntervalMillis);
+		this.defaultQueryTimeoutMillis = (int) (QUERY_TIMEOUT_FACTOR * queryIntervalMillis);
+		this.queryTimeoutMillis = defaultQueryTimeoutMillis;
 		ObjectName newHarvesterArchiveRuntime = null;
 		
 		try {
@@ -51,6 +112,48 @@ public class HarvesterWLDFQueryRunner {
 		this.harvesterArchiveRuntime = newHarvesterArchiveRuntime;
 	}
 
+	/**
+	 * Sets the calibrator which is told the timings of each query against 
+	 * the server, and which then decides the query's timeout and window.
+	 * 
+	 * @param calibrator The harvest calibrator (null to use a fixed timeout and window)
+	 */
+	public void setHarvestCalibrator(HarvestCalibrator calibrator) {
+		this.calibrator = calibrator;
+		this.queryTimeoutMillis = (calibrator != null) ? calibrator.getQueryTimeoutMillis(serverName, defaultQueryTimeoutMillis, queryIntervalMillis) : defaultQueryTimeoutMillis;
+	}
+
+	/**
+	 * Sets the flag which, once set, stops the query before fetching its 
+	 * next chunk of records.
+	 * 
+	 * @param cancelledFlag The flag set when the capture is cancelled (null if the query cannot be cancelled)
+	 */
+	public void setCancelledFlag(AtomicBoolean cancelledFlag) {
+		this.cancelledFlag = cancelledFlag;
+	}
+
+	/**
+	 * Sets the query name of each MBean type returned by the WLDF query, so 
+	 * that each MBean type's records are filtered by the watermark of its 
+	 * own query, rather than by the oldest watermark of the combined query.
+	 * 
+	 * @param mbeanTypeQueryNames The query name keyed by MBean type (null to keep all the records read)
+	 */
+	public void setMBeanTypeQueryNames(Map<String, String> mbeanTypeQueryNames) {
+		this.mbeanTypeQueryNames = mbeanTypeQueryNames;
+	}
+
+	/**
+	 * Sets the Work Manager to fetch the next chunk of records on whilst the 
+	 * current chunk is being decoded.
+	 * 
+	 * @param fetchWkMgr The Work Manager to fetch on (null to fetch each chunk in turn)
+	 */
+	public void setPipelinedFetch(WorkManager fetchWkMgr) {
+		this.fetchWkMgr = fetchWkMgr;
+	}
+
 	/**
 	 * Runs the WLDF query against the Server's Harvester Archive, collecting 
 	 * together the results set.
@@ -74,44 +177,284 @@ public class HarvesterWLDFQueryRunner {
 	public DataRecordsCollection retrieveDataRecords() throws WebLogicMBeanException {
 		DataRecordsCollection dataRecords = new DataRecordsCollection();
 		String cursorId = null;
+		DataChunkFetchWork pendingChunkFetch = null;
+		int fetchedRecordCount = 0;
+		long latestTimestamp = -1;
+		// Latest record timestamp of each query, held in a one element array so runs of one MBean type update it without a lookup
+		Map<String, long[]> queryLatestTimestamps = new HashMap<String, long[]>();
+		long[] recordQueryLatestTimestamp = null;
+		String recordMBeanType = null;
+		long recordBeginTime = Long.MIN_VALUE;
+		// Records of one harvest arrive together, so a new second is only noted when it differs from the last one seen
+		long[] harvestSeconds = new long[INITIAL_HARVEST_SECONDS_CAPACITY];
+		int harvestSecondCount = 0;
+		long lastHarvestSecond = -1;
+		int fetchSize = getFetchSize();
+		long queryStartTime = System.currentTimeMillis();
 		
 		try {
 			cursorId = createCursor();
+			Object[] setOfRecords = getNextDataChunk(cursorId, fetchSize);
+
+			while (setOfRecords != null) {
+				if ((cancelledFlag != null) && (cancelledFlag.get())) {
+					throw new WebLogicMBeanException("WLDF Query for server '" + serverName + "' cancelled after " + dataRecords.getTotalNumberReocrds() + " results");
+				}
 
-			while (checkHasMoreData(cursorId)) {
-				Object[] setOfRecords = getNextDataChunk(cursorId);
+				// Only a full chunk can be followed by more records
+				boolean fullChunk = (setOfRecords.length >= fetchSize);
+				DataChunkFetchWork nextChunkFetch = (fullChunk) ? scheduleNextDataChunk(cursorId, fetchSize) : null;
+				pendingChunkFetch = nextChunkFetch;
+				long decodeStartNanos = PipelineInstrumentation.startTiming();
 				
 				for (Object record : setOfRecords) {
 					Object[] recordElements = (Object[]) record;
-					dataRecords.addElement((String) recordElements[POSTN_TYPE], (String) recordElements[POSTN_NAME],
-							(Long)recordElements[POSTN_TIMESTAMP], (String) recordElements[POSTN_ATTRNAME],
-							recordElements[POSTN_ATTRVAL].toString());
+					String mbeanType = (String) recordElements[POSTN_TYPE];
+					long timestamp = (Long) recordElements[POSTN_TIMESTAMP];
+
+					// Records usually arrive in runs of the same MBean type
+					if (!mbeanType.equals(recordMBeanType)) {
+						recordMBeanType = mbeanType;
+						recordBeginTime = getRecordBeginTime(mbeanType);
+						recordQueryLatestTimestamp = getQueryLatestTimestamp(queryLatestTimestamps, mbeanType);
+					}
+
+					if (timestamp >= recordBeginTime) {
+						dataRecords.addElement(mbeanType, (String) recordElements[POSTN_NAME],
+								timestamp, (String) recordElements[POSTN_ATTRNAME],
+								recordElements[POSTN_ATTRVAL]);
+					}
+
+					latestTimestamp = Math.max(latestTimestamp, timestamp);
+
+					if (recordQueryLatestTimestamp != null) {
+						recordQueryLatestTimestamp[0] = Math.max(recordQueryLatestTimestamp[0], timestamp);
+					}
+
+					long harvestSecond = timestamp / ONE_SECOND_MILLIS;
+
+					if (harvestSecond != lastHarvestSecond) {
+						if (harvestSecondCount == harvestSeconds.length) {
+							long[] newHarvestSeconds = new long[harvestSecondCount * 2];
+							System.arraycopy(harvestSeconds, 0, newHarvestSeconds, 0, harvestSecondCount);
+							harvestSeconds = newHarvestSeconds;
+						}
+
+						harvestSeconds[harvestSecondCount++] = harvestSecond;
+						lastHarvestSecond = harvestSecond;
+					}
 				}
+
+				fetchedRecordCount += setOfRecords.length;
+				PipelineInstrumentation.recordTiming(PipelineInstrumentation.WLDF_DECODE_STAGE, decodeStartNanos);
+
+				if (!fullChunk) {
+					setOfRecords = null;
+				} else if (nextChunkFetch != null) {
+					long waitStartNanos = PipelineInstrumentation.startTiming();
+
+					try {
+						setOfRecords = nextChunkFetch.waitForRecords(queryTimeoutMillis);
+					} finally {
+						// A fetch already waited on for the whole timeout is not waited on again before closing its cursor
+						pendingChunkFetch = null;
+					}
+
+					PipelineInstrumentation.recordTiming(PipelineInstrumentation.WLDF_FETCH_WAIT_STAGE, waitStartNanos);
+				} else if (checkHasMoreData(cursorId)) {
+					setOfRecords = getNextDataChunk(cursorId, fetchSize);
+				} else {
+					setOfRecords = null;
+				}
+			}
+
+			lastResultSizes.put(getResultSizeKey(), fetchedRecordCount);
+
+			if (calibrator != null) {
+				Arrays.sort(harvestSeconds, 0, harvestSecondCount);
+				calibrator.recordQuery(serverName, queryStartTime, System.currentTimeMillis() - queryStartTime, latestTimestamp, harvestSeconds, harvestSecondCount);
+			}
+
+			if ((watermarks != null) && (latestTimestamp >= 0)) {
+				advanceWatermarks(queryLatestTimestamps, latestTimestamp);
 			}
 		} catch (WebLogicMBeanException e) {
 			AppLog.getLogger().debug("ERROR - For server '" + serverName + "', WLDF Query captured " + dataRecords.getTotalNumberReocrds() + " results with query: " + wldfQuery + "  --Exception message: " + e);
 			throw e;
 		} finally {
 			if (cursorId != null) {
+				// Never close the cursor underneath a pipelined fetch still reading from it
+				if ((pendingChunkFetch != null) && (!pendingChunkFetch.waitForFinish(queryTimeoutMillis))) {
+					AppLog.getLogger().warning("For server '" + serverName + "', pipelined WLDF fetch still running after " + queryTimeoutMillis + " ms - closing its cursor anyway");
+				}
+
 				closeCursor(cursorId);
 			}
 		}
 				
-		AppLog.getLogger().debug("For server '" + serverName + "', WLDF Query captured " + dataRecords.getTotalNumberReocrds() + " results with query: " + wldfQuery);
+		AppLog.getLogger().debug("For server '" + serverName + "', WLDF Query captured " + dataRecords.getTotalNumberReocrds() + " of " + fetchedRecordCount + " results (fetching " + fetchSize + " at a time) with query: " + wldfQuery);
 		return dataRecords;
 	}
+
+	/**
+	 * Returns the earliest timestamp of the records of an MBean type to keep, 
+	 * being the begin time of the MBean type's own query (the records before
+	 * which were read by a previous run of that query).
+	 * 
+	 * @param mbeanType The MBean type of the records
+	 * @return The earliest timestamp to keep (Long.MIN_VALUE to keep all the records)
+	 */
+	private long getRecordBeginTime(String mbeanType) {
+		if (mbeanTypeQueryNames == null) {
+			return Long.MIN_VALUE;
+		}
+
+		String queryName = mbeanTypeQueryNames.get(mbeanType);
+		Long queryBeginTime = (queryName != null) ? queryBeginTimes.get(queryName) : null;
+		return (queryBeginTime != null) ? queryBeginTime.longValue() : Long.MIN_VALUE;
+	}
+
+	/**
+	 * Returns the holder of the latest record timestamp read for the query 
+	 * of an MBean type, creating it on the MBean type's first record.
+	 * 
+	 * @param queryLatestTimestamps The holders keyed by query name
+	 * @param mbeanType The MBean type of the records
+	 * @return The query's holder (null if the MBean type's query is not known)
+	 */
+	private long[] getQueryLatestTimestamp(Map<String, long[]> queryLatestTimestamps, String mbeanType) {
+		String queryName = (mbeanTypeQueryNames != null) ? mbeanTypeQueryNames.get(mbeanType) : null;
+
+		if (queryName == null) {
+			return null;
+		}
+
+		long[] queryLatestTimestamp = queryLatestTimestamps.get(queryName);
+
+		if (queryLatestTimestamp == null) {
+			queryLatestTimestamp = new long[] {-1};
+			queryLatestTimestamps.put(queryName, queryLatestTimestamp);
+		}
+
+		return queryLatestTimestamp;
+	}
+
+	/**
+	 * Moves each query's watermark forward to the latest record read of its
+	 * own MBean types, so that a query whose records are older than another
+	 * query's is not moved past records it has not read yet. If the query 
+	 * of each MBean type is not known, every query is moved forward to the 
+	 * latest record read of any type.
+	 * 
+	 * @param queryLatestTimestamps The latest record timestamp read keyed by query name
+	 * @param latestTimestamp The latest record timestamp read of any MBean type
+	 */
+	private void advanceWatermarks(Map<String, long[]> queryLatestTimestamps, long latestTimestamp) {
+		for (String queryName : queryNames) {
+			if (mbeanTypeQueryNames == null) {
+				watermarks.advanceWatermark(serverName, queryName, latestTimestamp);
+			} else {
+				long[] queryLatestTimestamp = queryLatestTimestamps.get(queryName);
+
+				if ((queryLatestTimestamp != null) && (queryLatestTimestamp[0] >= 0)) {
+					watermarks.advanceWatermark(serverName, queryName, queryLatestTimestamp[0]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of records to fetch per round trip, being a bit 
+	 * more than the number of records returned by the last run of the same
+	 * query for the server (within fixed lower and upper limits).
+	 * 
+	 * @return The number of records to fetch at a time
+	 */
+	private int getFetchSize() {
+		Integer lastResultSize = lastResultSizes.get(getResultSizeKey());
+		
+		if (lastResultSize == null) {
+			return MIN_RECORDS_FETCH;
+		}
+
+		int headroomSize = lastResultSize + (lastResultSize / FETCH_HEADROOM_DIVISOR);
+		return Math.min(((headroomSize / MIN_RECORDS_FETCH) + 1) * MIN_RECORDS_FETCH, MAX_RECORDS_FETCH);
+	}
+
+	/**
+	 * Returns the key the last result size of this query for the server is 
+	 * recorded against.
+	 * 
+	 * @return The key
+	 */
+	private String getResultSizeKey() {
+		return serverName + RESULT_SIZE_KEY_SEPARATOR + wldfQuery;
+	}
+
+	/**
+	 * If pipelined fetching is enabled, schedules the fetch of the next 
+	 * chunk of records on the fetch Work Manager.
+	 * 
+	 * @param cursorId The id of the current cursor containing the query results
+	 * @param fetchSize The maximum number of records to fetch
+	 * @return The scheduled fetch work (null if not pipelining, and the next chunk should be fetched in turn)
+	 */
+	private DataChunkFetchWork scheduleNextDataChunk(String cursorId, int fetchSize) {
+		if (fetchWkMgr == null) {
+			return null;
+		}
+
+		DataChunkFetchWork fetchWork = new DataChunkFetchWork(cursorId, fetchSize);
+
+		try {
+			fetchWkMgr.schedule(fetchWork);
+			return fetchWork;
+		} catch (WorkException e) {
+			AppLog.getLogger().debug("For server '" + serverName + "', unable to schedule pipelined WLDF fetch - fetching in turn instead. Reason: " + e);
+			return null;
+		}
+	}
 	
 	/**
-	 * Uses the WLS JMX API to invoke the WLDF create cursor operation.
+	 * Uses the WLS JMX API to invoke the WLDF create cursor operation. The 
+	 * cursor covers the records harvested after the oldest of the query 
+	 * watermarks (or the last query window for a query with no watermark 
+	 * yet) up to and including now, but never goes back more than a limited 
+	 * number of query intervals (eg. after a long outage). The begin time of
+	 * each query is kept, to filter the records of each query's MBean types.
 	 * 
 	 * @return The id of the created cursor containing thw query results
 	 * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the data
 	 */
 	private String createCursor() throws WebLogicMBeanException {
 		long currentTime = System.currentTimeMillis();		
-		return (String) conn.invoke(harvesterArchiveRuntime, OPEN_CURSOR_OPERTN,
-				new Object [] {(currentTime - queryIntervalMillis), 
-				currentTime, wldfQuery, queryTimeoutMillis}, OPEN_CURSOR_PARAMTYPES);		
+		long queryWindowMillis = (calibrator != null) ? calibrator.getQueryWindowMillis(serverName, queryIntervalMillis) : queryIntervalMillis;
+		long defaultBeginTime = currentTime - queryWindowMillis;
+		long beginTime = defaultBeginTime;
+
+		if ((watermarks != null) && (!queryNames.isEmpty())) {
+			long earliestBeginTime = currentTime - (MAX_WATERMARK_LOOKBACK_INTERVALS * (long) queryIntervalMillis);
+			beginTime = Long.MAX_VALUE;
+
+			for (String queryName : queryNames) {
+				long watermark = watermarks.getWatermark(serverName, queryName);
+				long queryBeginTime = ((watermark >= 0) && (watermark < currentTime)) ? watermark + 1 : defaultBeginTime;
+				queryBeginTime = Math.max(queryBeginTime, earliestBeginTime);
+				queryBeginTimes.put(queryName, queryBeginTime);
+				beginTime = Math.min(beginTime, queryBeginTime);
+			}
+		}
+
+		// Begin timestamp is inclusive and end timestamp is exclusive
+		long startNanos = PipelineInstrumentation.startTiming();
+
+		try {
+			return (String) conn.invoke(harvesterArchiveRuntime, OPEN_CURSOR_OPERTN,
+					new Object [] {beginTime, 
+					currentTime + 1, wldfQuery, queryTimeoutMillis}, OPEN_CURSOR_PARAMTYPES);
+		} finally {
+			PipelineInstrumentation.recordTiming(PipelineInstrumentation.WLDF_OPEN_CURSOR_STAGE, startNanos);
+		}
 	}
 
 	/**
@@ -122,20 +465,36 @@ public class HarvesterWLDFQueryRunner {
 	 * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the data
 	 */
 	private boolean checkHasMoreData(String cursorId) throws WebLogicMBeanException {
-		return ((Boolean) conn.invoke(harvesterArchiveRuntime, HAS_DATA_OPERTN, 
-				new Object [] {cursorId}, HAS_DATA_PARAMTYPES)).booleanValue();
+		long startNanos = PipelineInstrumentation.startTiming();
+
+		try {
+			return ((Boolean) conn.invoke(harvesterArchiveRuntime, HAS_DATA_OPERTN, 
+					new Object [] {cursorId}, HAS_DATA_PARAMTYPES)).booleanValue();
+		} finally {
+			PipelineInstrumentation.recordTiming(PipelineInstrumentation.WLDF_HAS_MORE_DATA_STAGE, startNanos);
+		}
 	}
 
 	/**
 	 * Uses the WLS JMX API to invoke the WLDF get next set of records operation.
 	 * 
 	 * @param cursorId The id of the current cursor containing the query results
-	 * @return The set of weakly typed result rows 
+	 * @param fetchSize The maximum number of records to fetch
+	 * @return The set of weakly typed result rows (empty if no more left)
 	 * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the data
 	 */
-	private Object[] getNextDataChunk(String cursorId) throws WebLogicMBeanException { 
-		return (Object[]) conn.invoke(harvesterArchiveRuntime, FETCH_OPERTN, 
-				new Object [] {cursorId, MAX_RECORDS_FETCH}, FETCH_PARAMTYPES);
+	private Object[] getNextDataChunk(String cursorId, int fetchSize) throws WebLogicMBeanException { 
+		long startNanos = PipelineInstrumentation.startTiming();
+		Object[] setOfRecords = null;
+
+		try {
+			setOfRecords = (Object[]) conn.invoke(harvesterArchiveRuntime, FETCH_OPERTN, 
+					new Object [] {cursorId, fetchSize}, FETCH_PARAMTYPES);
+		} finally {
+			PipelineInstrumentation.recordTiming(PipelineInstrumentation.WLDF_FETCH_STAGE, startNanos);
+		}
+
+		return (setOfRecords != null) ? setOfRecords : NO_RECORDS;
 	}
 	
 	/**
@@ -145,10 +504,124 @@ public class HarvesterWLDFQueryRunner {
 	 * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the data
 	 */
 	private void closeCursor(String cursorId) throws WebLogicMBeanException {
-		conn.invoke(harvesterArchiveRuntime, CLOSE_CURSOR_OPERTN, 
-				new Object [] {cursorId}, CLOSE_CURSOR_PARAMTYPES);		
+		long startNanos = PipelineInstrumentation.startTiming();
+
+		try {
+			conn.invoke(harvesterArchiveRuntime, CLOSE_CURSOR_OPERTN, 
+					new Object [] {cursorId}, CLOSE_CURSOR_PARAMTYPES);
+		} finally {
+			PipelineInstrumentation.recordTiming(PipelineInstrumentation.WLDF_CLOSE_CURSOR_STAGE, startNanos);
+		}
 	}
 	
+	/**
+	 * Work item fetching the next chunk of records from the cursor, which 
+	 * the decoding thread then waits for.
+	 */
+	private class DataChunkFetchWork extends ContextAwareWork {
+		/**
+		 * Create the work to fetch the next chunk of the given cursor
+		 * 
+		 * @param cursorId The id of the current cursor containing the query results
+		 * @param fetchSize The maximum number of records to fetch
+		 */
+		public DataChunkFetchWork(String cursorId, int fetchSize) {
+			super(WLDF_FETCH_QUEUE_NAME);
+			this.cursorId = cursorId;
+			this.fetchSize = fetchSize;
+		}
+
+		/**
+		 * Fetch the chunk of records, notifying the waiting thread when done.
+		 */
+		public void doRun() {
+			Object[] fetchedRecords = null;
+			WebLogicMBeanException fetchFailure = null;
+
+			try {
+				fetchedRecords = getNextDataChunk(cursorId, fetchSize);
+			} catch (WebLogicMBeanException e) {
+				fetchFailure = e;
+			} catch (RuntimeException e) {
+				fetchFailure = new WebLogicMBeanException(e.toString(), e);
+			}
+
+			synchronized (this) {
+				records = fetchedRecords;
+				failure = fetchFailure;
+				done = true;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Wait for the fetched chunk of records.
+		 * 
+		 * @param timeoutMillis The maximum time to wait
+		 * @return The set of weakly typed result rows (empty if no more left)
+		 * @throws WebLogicMBeanException Indicates the fetch failed or did not complete in time
+		 */
+		public synchronized Object[] waitForRecords(long timeoutMillis) throws WebLogicMBeanException {
+			long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+
+			try {
+				while (!done) {
+					long remainingMillis = deadlineMillis - System.currentTimeMillis();
+
+					if (remainingMillis <= 0) {
+						throw new WebLogicMBeanException("Pipelined WLDF fetch for server '" + serverName + "' did not complete within " + timeoutMillis + " ms");
+					}
+
+					wait(remainingMillis);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new WebLogicMBeanException("Interrupted waiting for pipelined WLDF fetch for server '" + serverName + "'", e);
+			}
+
+			if (failure != null) {
+				throw failure;
+			}
+
+			return records;
+		}
+
+		/**
+		 * Wait for the fetch to finish (successfully or not), ignoring the 
+		 * fetched records, so that its cursor can safely be closed.
+		 * 
+		 * @param timeoutMillis The maximum time to wait
+		 * @return True if the fetch finished; false if still running
+		 */
+		public synchronized boolean waitForFinish(long timeoutMillis) {
+			long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+
+			try {
+				while (!done) {
+					long remainingMillis = deadlineMillis - System.currentTimeMillis();
+
+					if (remainingMillis <= 0) {
+						return false;
+					}
+
+					wait(remainingMillis);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return done;
+			}
+
+			return true;
+		}
+
+		// Members
+		private final String cursorId;
+		private final int fetchSize;
+		private Object[] records = null;
+		private WebLogicMBeanException failure = null;
+		private boolean done = false;
+	}
+
 	// Constants
 	private static final String HARVESTER_ARCHIVE_OBJ_NAME_TEMPLATE = "com.bea:ServerRuntime=%s,Name=HarvestedDataArchive,Type=WLDFDataAccessRuntime,Location=%s,WLDFAccessRuntime=Accessor,WLDFRuntime=WLDFRuntime";
 	private static final String OPEN_CURSOR_OPERTN = "openCursor";
@@ -159,21 +632,38 @@ public class HarvesterWLDFQueryRunner {
 	private static final String[] FETCH_PARAMTYPES = new String [] {String.class.getCanonicalName(), Integer.class.getCanonicalName()};
 	private static final String CLOSE_CURSOR_OPERTN = "closeCursor";
 	private static final String[] CLOSE_CURSOR_PARAMTYPES = new String [] {String.class.getCanonicalName()};	
-	private static final int MAX_RECORDS_FETCH = 200;
+	private static final long ONE_SECOND_MILLIS = 1000;
+	private static final int MIN_RECORDS_FETCH = 200;
+	private static final int MAX_RECORDS_FETCH = 5000;
+	private static final int FETCH_HEADROOM_DIVISOR = 4;
+	private static final Object[] NO_RECORDS = new Object[0];
+	private static final String RESULT_SIZE_KEY_SEPARATOR = "|";
 	private static final int POSTN_TYPE = 4;
 	private static final int POSTN_NAME = 5;
 	private static final int POSTN_TIMESTAMP = 1;
 	private static final int POSTN_ATTRNAME = 6;
 	private static final int POSTN_ATTRVAL = 8;
+	private static final int MAX_WATERMARK_LOOKBACK_INTERVALS = 10;
+	private static final int INITIAL_HARVEST_SECONDS_CAPACITY = 16;
 	
 	// Members
 	private final WebLogicMBeanConnection conn;
 	private final String wldfQuery; 	
 	private final ObjectName harvesterArchiveRuntime;
 	private final int queryIntervalMillis;
-	private final int queryTimeoutMillis;
+	private final int defaultQueryTimeoutMillis;
+	private int queryTimeoutMillis;
+	private HarvestCalibrator calibrator = null;
 	private final String serverName;
+	private final List<String> queryNames;
+	private final HarvesterWLDFQueryWatermarks watermarks;
+	private final Map<String, Long> queryBeginTimes = new HashMap<String, Long>();
+	private Map<String, String> mbeanTypeQueryNames = null;
+	private WorkManager fetchWkMgr = null;
+	private AtomicBoolean cancelledFlag = null;
+	private final static ConcurrentMap<String, Integer> lastResultSizes = new ConcurrentHashMap<String, Integer>();
 	
 	// Constants
 	private static final float QUERY_TIMEOUT_FACTOR = 0.3F;
+	private static final String WLDF_FETCH_QUEUE_NAME = "wldf_fetch";
 }
@@ -0,0 +1,184 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.backend.wldfcapture;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import domainhealth.core.env.AppLog;
+
+/**
+ * Keeps track of the timestamp of the latest WLDF harvester record read, per
+ * server and per query, so that each WLDF query only needs to read the 
+ * records harvested since the previous query (no gaps and no duplicates, 
+ * even when capture cycles are late or skipped). The watermarks are saved 
+ * to a properties file so that, after a restart, reading carries on from 
+ * where it left off.
+ */
+public class HarvesterWLDFQueryWatermarks {
+	/**
+	 * Create the set of watermarks, persisted to the given file.
+	 * 
+	 * @param watermarksFile The properties file to load/save the watermarks from/to
+	 */
+	public HarvesterWLDFQueryWatermarks(File watermarksFile) {
+		this.watermarksFile = watermarksFile;
+	}
+
+	/**
+	 * Load the previously saved watermarks (if any).
+	 */
+	public synchronized void load() {
+		if (!watermarksFile.exists()) {
+			return;
+		}
+
+		Properties props = new Properties();
+		InputStream in = null;
+
+		try {
+			in = new FileInputStream(watermarksFile);
+			props.load(in);
+
+			for (Map.Entry<Object, Object> entry : props.entrySet()) {
+				// Keys saved in an earlier, ambiguous format are dropped (their queries then read from the default window)
+				if (((String) entry.getKey()).indexOf(KEY_SEPARATOR) < 0) {
+					continue;
+				}
+
+				try {
+					watermarks.put((String) entry.getKey(), Long.valueOf((String) entry.getValue()));
+				} catch (NumberFormatException e) {
+					AppLog.getLogger().warning("Ignoring invalid WLDF query watermark '" + entry.getKey() + "=" + entry.getValue() + "' in " + watermarksFile);
+				}
+			}
+
+			AppLog.getLogger().info("Loaded " + watermarks.size() + " WLDF query watermarks from " + watermarksFile);
+		} catch (IOException e) {
+			AppLog.getLogger().warning("Unable to load WLDF query watermarks from " + watermarksFile + ". Reason: " + e.toString());
+		} finally {
+			try { in.close(); } catch (Exception e) {}
+		}
+	}
+
+	/**
+	 * Save the watermarks, if any have changed since last saved. The file is 
+	 * written to a temporary file first and then renamed, so a crash part 
+	 * way through never leaves a truncated file.
+	 */
+	public synchronized void saveIfChanged() {
+		if (!changed) {
+			return;
+		}
+
+		changed = false;
+		Properties props = new Properties();
+
+		for (Map.Entry<String, Long> entry : watermarks.entrySet()) {
+			props.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+
+		File tmpFile = new File(watermarksFile.getPath() + TMP_FILE_SUFFIX);
+		OutputStream out = null;
+
+		try {
+			out = new FileOutputStream(tmpFile);
+			props.store(out, WATERMARKS_FILE_COMMENT);
+			out.close();
+			out = null;
+
+			if ((!tmpFile.renameTo(watermarksFile)) && ((!watermarksFile.delete()) || (!tmpFile.renameTo(watermarksFile)))) {
+				throw new IOException("Unable to rename " + tmpFile + " to " + watermarksFile);
+			}
+		} catch (IOException e) {
+			changed = true;
+			AppLog.getLogger().warning("Unable to save WLDF query watermarks to " + watermarksFile + ". Reason: " + e.toString());
+		} finally {
+			try { if (out != null) out.close(); } catch (Exception e) {}
+		}
+	}
+
+	/**
+	 * Get the timestamp of the latest record read for the server's query.
+	 * 
+	 * @param serverName The name of the server
+	 * @param queryName The name of the query (eg. the resource type queried)
+	 * @return The timestamp in milliseconds since the epoch (-1 if no records read yet)
+	 */
+	public long getWatermark(String serverName, String queryName) {
+		Long watermark = watermarks.get(getKey(serverName, queryName));
+		return (watermark != null) ? watermark.longValue() : -1;
+	}
+
+	/**
+	 * Move the watermark of the server's query forward to the given record 
+	 * timestamp (never backwards).
+	 * 
+	 * @param serverName The name of the server
+	 * @param queryName The name of the query (eg. the resource type queried)
+	 * @param timestamp The timestamp of the latest record read, in milliseconds since the epoch
+	 */
+	public void advanceWatermark(String serverName, String queryName, long timestamp) {
+		String key = getKey(serverName, queryName);
+		Long newWatermark = new Long(timestamp);
+
+		while (true) {
+			Long currentWatermark = watermarks.get(key);
+
+			if (currentWatermark == null) {
+				if (watermarks.putIfAbsent(key, newWatermark) == null) {
+					break;
+				}
+			} else if (currentWatermark.longValue() >= timestamp) {
+				return;
+			} else if (watermarks.replace(key, currentWatermark, newWatermark)) {
+				break;
+			}
+		}
+
+		changed = true;
+	}
+
+	/**
+	 * Returns the watermark key for the server's query, which is unambiguous
+	 * as the separator cannot appear in a server name (server names are used
+	 * as directory names) or in a query name.
+	 * 
+	 * @param serverName The name of the server
+	 * @param queryName The name of the query
+	 * @return The key
+	 */
+	private String getKey(String serverName, String queryName) {
+		return serverName + KEY_SEPARATOR + queryName;
+	}
+
+	// Constants
+	private final static String KEY_SEPARATOR = "/";
+	private final static String TMP_FILE_SUFFIX = ".tmp";
+	private final static String WATERMARKS_FILE_COMMENT = "Timestamp of the latest WLDF harvester record read per <server>/<query>";
+
+	// Members
+	private final File watermarksFile;
+	private final ConcurrentMap<String, Long> watermarks = new ConcurrentHashMap<String, Long>();
+	private volatile boolean changed = false;
+}
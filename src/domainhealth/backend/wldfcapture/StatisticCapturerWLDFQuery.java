@@ -22,6 +22,8 @@ import static domainhealth.core.util.DateUtil.*;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -30,16 +32,20 @@ import java.util.Map;
 import java.util.Properties;
 
 import javax.management.ObjectName;
+import commonj.work.WorkManager;
 
 
 import domainhealth.backend.retriever.DataRetrievalException;
 import domainhealth.backend.retriever.StatisticCapturer;
 import domainhealth.backend.retriever.HeaderLine;
+import domainhealth.backend.retriever.RowEncoder;
 import domainhealth.backend.wldfcapture.data.DataRecordsCollection;
 import domainhealth.backend.wldfcapture.data.InstanceDataRecord;
 import domainhealth.backend.wldfcapture.data.TypeDataRecord;
+import domainhealth.core.instrumentation.PipelineInstrumentation;
 import domainhealth.core.jmx.WebLogicMBeanConnection;
 import domainhealth.core.jmx.WebLogicMBeanException;
+import domainhealth.core.statistics.MetricSchema;
 import domainhealth.core.statistics.StatisticsStorage;
 import domainhealth.core.statistics.ResourceNameNormaliser;
 import domainhealth.core.env.AppLog;
@@ -47,7 +53,11 @@ import domainhealth.core.env.AppLog;
 /**
  * Enables a specific WebLogic server's Core, JDBC and JMS related statistics 
  * to be retrieved from a server's 'HarvestedDataArchive' store using WLDF 
- * queries and then stored in a local statistics CSV file
+ * queries and then stored in a local statistics CSV file.
+ * 
+ * A single WLDF query, combining the queries of all the metric types to be 
+ * captured, is run against the server once per capture, and its records are
+ * then shared out to each metric type's CSV output.
  */
 public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 	/**
@@ -58,11 +68,34 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 	 * @param conn Connection to the server's MBean tree
 	 * @param serverRuntime Handle on the server's main runtime MBean
 	 * @param serverName Name of the server to retrieve statistics for
-	 * @param componentBlacklist Names of web-apps/ejbs than should not haves results collected/shown
 	 * @param wlsVersionNumber The version of the host WebLogic Domain
+	 * @param queryWatermarks The latest harvested record read per server and query, so each query only reads newly harvested records
 	 */
-	public StatisticCapturerWLDFQuery(StatisticsStorage csvStats, WebLogicMBeanConnection conn, ObjectName serverRuntime, String serverName, int queryIntervalMillis, List<String> componentBlacklist, List<String> metricTypeSet, String wlsVersionNumber,String jvmVersion) {
-		super(csvStats, conn, serverRuntime, serverName, queryIntervalMillis, componentBlacklist, metricTypeSet,wlsVersionNumber,jvmVersion);
+	public StatisticCapturerWLDFQuery(StatisticsStorage csvStats, WebLogicMBeanConnection conn, ObjectName serverRuntime, String serverName, int queryIntervalMillis, List<String> metricTypeSet, String wlsVersionNumber,String jvmVersion, HarvesterWLDFQueryWatermarks queryWatermarks) {
+		super(csvStats, conn, serverRuntime, serverName, queryIntervalMillis, metricTypeSet,wlsVersionNumber,jvmVersion);
+		this.queryWatermarks = queryWatermarks;
+		this.metricTypeQueries = getMetricTypeQueries(getMetricSchema());
+		this.mbeanTypeQueryNames = getMBeanTypeQueryNames(getMetricSchema());
+	}
+
+	/**
+	 * Sets the calibrator measuring the server's harvest cadence and WLDF 
+	 * query times, which also decides the query's timeout and window.
+	 * 
+	 * @param harvestCalibrator The harvest calibrator (null to use a fixed timeout and window)
+	 */
+	public void setHarvestCalibrator(HarvestCalibrator harvestCalibrator) {
+		this.harvestCalibrator = harvestCalibrator;
+	}
+
+	/**
+	 * Sets the Work Manager used to fetch the next chunk of harvested records 
+	 * whilst the current chunk is decoded.
+	 * 
+	 * @param fetchWkMgr The Work Manager to fetch on (null to fetch each chunk in turn)
+	 */
+	public void setPipelinedFetch(WorkManager fetchWkMgr) {
+		this.fetchWkMgr = fetchWkMgr;
 	}
 
 	/**
@@ -71,10 +104,12 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 	protected void logCoreStats() throws DataRetrievalException {
 		try {
 			//String headerLine = getCoreStatsHeaderLine();
-			String headerLine = headerList.get("CORE").getString();
-			HarvesterWLDFQueryRunner queryRunner = new HarvesterWLDFQueryRunner(getConn(), getServerName(), coreServerStatsQuery, getQueryIntervalMillis());
-			String contentLine = getCoreStatsLine(queryRunner.retrieveDataRecords()); 
-			getCSVStats().appendToResourceStatisticsCSV(new Date(), getServerName(), CORE_RESOURCE_TYPE, CORE_RSC_DEFAULT_NAME, headerLine, contentLine,getHostName());
+			String headerLine = getHeaderLine("CORE").getString();
+			DataRecordsCollection dataRecords = getDataRecords();
+			long rowStartNanos = PipelineInstrumentation.startTiming();
+			String contentLine = getCoreStatsLine(dataRecords); 
+			PipelineInstrumentation.recordTiming(PipelineInstrumentation.ROW_BUILD_STAGE, CORE_RESOURCE_TYPE, rowStartNanos);
+			getCSVStats().appendToResourceStatisticsCSV(getCycleDate(), getServerName(), CORE_RESOURCE_TYPE, CORE_RSC_DEFAULT_NAME, headerLine, contentLine,getHostName());
 		} catch (Exception e) {
 			throw new DataRetrievalException("Problem logging " + CORE_RESOURCE_TYPE + " resources for server " + getServerName(), e);
 		}		
@@ -82,25 +117,23 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 
 	/**
 	 * Use WLDF queried stats from harvested archive to obtain the core 
-	 * server stats and creates a row of text data
+	 * server stats and creates a row of text data (protected so that the row
+	 * building step can be driven on its own by subclasses, eg. benchmarks)
 	 *   
 	 * @param dataRecords The WLDF query results containing the stats
 	 * @return The text data row (ready to be appended to a CSV)
 	 * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the statistics
 	 */
-	private String getCoreStatsLine(DataRecordsCollection dataRecords) throws IOException, WebLogicMBeanException {
-		StringBuilder line = new StringBuilder(DEFAULT_CONTENT_LINE_LEN);
+	protected String getCoreStatsLine(DataRecordsCollection dataRecords) throws IOException, WebLogicMBeanException {
+		RowEncoder.Row row = null;
 		TypeDataRecord serverTypeRecord = dataRecords.getTypeDataRecord(String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_RUNTIME));
 		
 		if ((serverTypeRecord != null) && (serverTypeRecord.getInstanceNames().hasNext())){
 			// Datetime + Server attributes (use first MBean's date-time for all MBeans for this CSV line)
 			String serverObjectName = serverTypeRecord.getInstanceNames().next();
 			InstanceDataRecord serverObjectRecord = serverTypeRecord.getInstanceDataRecord(serverObjectName);
-			line.append(formatSecondsDateTime(serverObjectRecord.getTimestamp()) + SEPARATOR);
-						
-			for (String attr : SERVER_MBEAN_MONITOR_ATTR_LIST) {
-				line.append(serverObjectRecord.getAttrValue(attr) + SEPARATOR);
-			}
+			row = getHeaderLine("CORE").getRowEncoder().startRow(formatSecondsDateTime(serverObjectRecord.getTimestamp()));
+			appendToStatsLine(row, serverObjectRecord, getMetricSchema().getServerAttrs());
 		
 			// JVM attributes (got to do these separately because changing some figures to MegaBytes and calculate heap size current)
 			TypeDataRecord jvmTypeRecord = dataRecords.getTypeDataRecord(String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JVM_RUNTIME));
@@ -117,29 +150,29 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 			String jvmObjectName = jvmTypeRecord.getInstanceNames().next();
 			InstanceDataRecord jvmObjectRecord = jvmTypeRecord.getInstanceDataRecord(jvmObjectName);
 
-			long heap_size_current = Long.parseLong(jvmObjectRecord.getAttrValue(HEAP_SIZE_CURRENT));
-			long heap_free_current = Long.parseLong(jvmObjectRecord.getAttrValue(HEAP_FREE_CURRENT));
+			long heap_size_current = jvmObjectRecord.getAttrLongValue(HEAP_SIZE_CURRENT);
+			long heap_free_current = jvmObjectRecord.getAttrLongValue(HEAP_FREE_CURRENT);
 	
-			line.append( (heap_size_current / BYTES_IN_MEGABYTE) + SEPARATOR);
-			line.append( (heap_free_current / BYTES_IN_MEGABYTE) + SEPARATOR);
-			line.append( (( heap_size_current - heap_free_current ) / BYTES_IN_MEGABYTE) + SEPARATOR);
-			line.append( jvmObjectRecord.getAttrValue(HEAP_FREE_PERCENT) + SEPARATOR);
+			row.appendNumber(heap_size_current / BYTES_IN_MEGABYTE);
+			row.appendNumber(heap_free_current / BYTES_IN_MEGABYTE);
+			row.appendNumber(( heap_size_current - heap_free_current ) / BYTES_IN_MEGABYTE);
+			jvmObjectRecord.appendAttrValue(row, HEAP_FREE_PERCENT);
 		
 			if(useJRockit) {
-				double jvm_proc_load	=Double.parseDouble(jvmObjectRecord.getAttrValue(JVM_PROCESSOR_LOAD));
+				double jvm_proc_load	=jvmObjectRecord.getAttrDoubleValue(JVM_PROCESSOR_LOAD);
 				String total_gc_count	=jvmObjectRecord.getAttrValue(TOTAL_GC_COUNT);
 				String total_gc_time	=jvmObjectRecord.getAttrValue(TOTAL_GC_TIME);
-				long total_nursery_size	=Long.parseLong(jvmObjectRecord.getAttrValue(TOTAL_NURSERY_SIZE));
-				long heap_max_size	=Long.parseLong(jvmObjectRecord.getAttrValue(HEAP_SIZE_MAX));
+				long total_nursery_size	=jvmObjectRecord.getAttrLongValue(TOTAL_NURSERY_SIZE);
+				long heap_max_size	=jvmObjectRecord.getAttrLongValue(HEAP_SIZE_MAX);
 	
-				line.append( ((double)Math.round(jvm_proc_load * 100 * 100) / 100.0) + SEPARATOR);
-				line.append( total_gc_count + SEPARATOR);
-				line.append( total_gc_time + SEPARATOR);
-				line.append( ( total_nursery_size / BYTES_IN_MEGABYTE) + SEPARATOR);
-				line.append( ( heap_max_size / BYTES_IN_MEGABYTE) + SEPARATOR);
+				row.appendNumber((double)Math.round(jvm_proc_load * 100 * 100) / 100.0);
+				row.appendText(total_gc_count);
+				row.appendText(total_gc_time);
+				row.appendNumber(total_nursery_size / BYTES_IN_MEGABYTE);
+				row.appendNumber(heap_max_size / BYTES_IN_MEGABYTE);
 				
 			} else {
-				for (String attr : JROCKIT_MBEAN_MONITOR_ATTR_LIST) line.append(0 + SEPARATOR);
+				for (String attr : getMetricSchema().getJRockitAttrs()) row.appendNumber(0L);
 			}
 				
 			// Thread Pool attributes - thread pool may not exist if Use81StyleExecuteQueues is enabled
@@ -151,26 +184,28 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 				threadPoolObjectRecord = threadPoolTypeRecord.getInstanceDataRecord(threadPoolObjectName);
 			}
 			
-			for (String attr : THREADPOOL_MBEAN_MONITOR_ATTR_LIST) {
+			for (String attr : getMetricSchema().getThreadPoolAttrs()) {
 				// If thread pool does not exist can only put Zero into CSV as result
 				if (threadPoolObjectRecord == null) {
-					line.append(0 + SEPARATOR);
+					row.appendNumber(0L);
 				} else {
-					line.append(threadPoolObjectRecord.getAttrValue(attr) + SEPARATOR);
+					threadPoolObjectRecord.appendAttrValue(row, attr);
 				}
 			}
+
+			if (threadPoolObjectRecord != null) {
+				recordThreadPoolLoad(getLoadFigure(threadPoolObjectRecord, HOGGING_THREAD_COUNT), getLoadFigure(threadPoolObjectRecord, EXECUTE_THREAD_IDLE_COUNT));
+			}
 			
 			// JTA Transaction Manager attributes
 			TypeDataRecord jtaTypeRecord = dataRecords.getTypeDataRecord(String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JTA_RUNTIME));
 			String jtaObjectName = jtaTypeRecord.getInstanceNames().next();
 			InstanceDataRecord jtaObjectRecord = jtaTypeRecord.getInstanceDataRecord(jtaObjectName);
 			
-			for (String attr : JTA_MBEAN_MONITOR_ATTR_LIST) {
-				line.append(jtaObjectRecord.getAttrValue(attr) + SEPARATOR);
-			}			
+			appendToStatsLine(row, jtaObjectRecord, getMetricSchema().getJtaAttrs());
 		}
 		
-		return line.toString();
+		return (row != null) ? row.finish() : "";
 	}
 
 	/**
@@ -181,7 +216,7 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 	 */
 	protected void logDataSourcesStats() throws DataRetrievalException {
 		//logResourceStats(DATASOURCE_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JDBC_DATASOURCE_RUNTIME), JDBC_MBEAN_MONITOR_ATTR_LIST, jdbcStatsQuery);
-		logResourceStats(DATASOURCE_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JDBC_DATASOURCE_RUNTIME),headerList.get("JDBC").getString(),JDBC_MBEAN_MONITOR_ATTR_LIST, jdbcStatsQuery);
+		logResourceStats(DATASOURCE_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JDBC_DATASOURCE_RUNTIME),getHeaderLine("JDBC"), getMetricSchema().getJdbcAttrs());
 	}
 
 	/**
@@ -192,7 +227,7 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 	 */
 	protected void logDestinationsStats() throws DataRetrievalException {
 		//logResourceStats(DESTINATION_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JMS_DESTINATION_RUNTIME), JMS_DESTINATION_MBEAN_MONITOR_ATTR_LIST, jmsDestinationStatsQuery);
-		logResourceStats(DESTINATION_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JMS_DESTINATION_RUNTIME), headerList.get("JMS").getString(),JMS_DESTINATION_MBEAN_MONITOR_ATTR_LIST, jmsDestinationStatsQuery);
+		logResourceStats(DESTINATION_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JMS_DESTINATION_RUNTIME), getHeaderLine("JMS"), getMetricSchema().getJmsDestinationAttrs());
 
 
 	}
@@ -205,7 +240,7 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 	 */
 	protected void logWebAppStats() throws DataRetrievalException {
 		//logResourceStats(WEBAPP_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WEBAPP_COMPONENT_RUNTIME), WEBAPP_MBEAN_MONITOR_ATTR_LIST, webAppStatsQuery);
-		logResourceStats(WEBAPP_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WEBAPP_COMPONENT_RUNTIME),headerList.get("WEBAPP").getString(),WEBAPP_MBEAN_MONITOR_ATTR_LIST,webAppStatsQuery);
+		logResourceStats(WEBAPP_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WEBAPP_COMPONENT_RUNTIME),getHeaderLine("WEBAPP"), getMetricSchema().getWebAppAttrs());
 	}
 	
 	/**
@@ -224,7 +259,7 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 	 */
 	protected void logHostMachineStats() throws DataRetrievalException {
 		//logResourceStats(HOSTMACHINE_RESOURCE_TYPE, HOST_MACHINE_MBEAN, HOST_MACHINE_STATS_MBEAN_MONITOR_ATTR_LIST, hostMachineStatsQuery);		
-		logResourceStats(HOSTMACHINE_RESOURCE_TYPE, HOST_MACHINE_MBEAN, headerList.get("HOST").getString(),HOST_MACHINE_STATS_MBEAN_MONITOR_ATTR_LIST ,hostMachineStatsQuery);
+		logResourceStats(HOSTMACHINE_RESOURCE_TYPE, HOST_MACHINE_MBEAN, getHeaderLine("HOST"), getMetricSchema().getHostMachineAttrs());
 	}
 
 	/**
@@ -236,9 +271,9 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 	 */
 	protected void logExtendedStats() throws DataRetrievalException, IOException {
 		//logResourceStats(WORKMGR_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WORK_MANAGER_RUNTIME), WKMGR_MBEAN_MONITOR_ATTR_LIST, wkMgrStatsQuery);
-		logResourceStats(WORKMGR_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WORK_MANAGER_RUNTIME),headerList.get("WKMGR").getString(),WKMGR_MBEAN_MONITOR_ATTR_LIST, wkMgrStatsQuery);
+		logResourceStats(WORKMGR_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WORK_MANAGER_RUNTIME),getHeaderLine("WKMGR"), getMetricSchema().getWorkManagerAttrs());
 		//logResourceStats(SVRCHNL_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_CHANNEL_RUNTIME), SVR_CHANNEL_MBEAN_MONITOR_ATTR_LIST, svrChnlStatsQuery);
-		logResourceStats(SVRCHNL_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_CHANNEL_RUNTIME),headerList.get("SRVCHN").getString(),SVR_CHANNEL_MBEAN_MONITOR_ATTR_LIST, svrChnlStatsQuery);
+		logResourceStats(SVRCHNL_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_CHANNEL_RUNTIME),getHeaderLine("SRVCHN"), getMetricSchema().getServerChannelAttrs());
 	}
 
 	/**
@@ -249,33 +284,40 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 	 * 
 	 * @param resourceType The type of resource to retrvreive and store data for
 	 * @param mbeanPropertyName The runtime mbean property name for this resource type
+	 * @param header The CSV header (and row encoder) for this resource type
 	 * @param monitorAttrList The list of properties/attributes which should be extracted into a CSV for these MBean types
-	 * @param wldfQuery The WLDF query to run against the remote server's harvester log
 	 * @throws DataRetrievalException Indicates a problem occurred in retrieving the WLDF data
 	 */
 //	private void logResourceStats(String resourceType, String mbeanPropertyName, String headerLine, String[] monitorAttrList, String wldfQuery) throws DataRetrievalException {
-	private void logResourceStats(String resourceType, String mbeanPropertyName, String headerLine, String[] monitorAttrList, String wldfQuery) throws DataRetrievalException {
+	private void logResourceStats(String resourceType, String mbeanPropertyName, HeaderLine header, String[] monitorAttrList) throws DataRetrievalException {
 		try {
+			String headerLine = header.getString();
+			RowEncoder rowEncoder = header.getRowEncoder();
 			
 			//String headerLine = constructHeaderLine(monitorAttrList);
 			
-			Date nowDate = new Date();
+			Date nowDate = getCycleDate();
 			String now = (new SimpleDateFormat(DATETIME_PARAM_FORMAT)).format(nowDate);
 			Properties artifactList = new Properties();
-			HarvesterWLDFQueryRunner queryRunner = new HarvesterWLDFQueryRunner(getConn(), getServerName(), wldfQuery, getQueryIntervalMillis());
-			DataRecordsCollection dataRecords = queryRunner.retrieveDataRecords();			
+			DataRecordsCollection dataRecords = getDataRecords();			
 			Map<String, InstanceDataRecord> objectRecords = getUniqueObjectRecords(resourceType, mbeanPropertyName, dataRecords);
 			Iterator<String> names = objectRecords.keySet().iterator(); 
 
 			while (names.hasNext()) {
 				String name = (String) names.next();
 			
-				// Skip resources which are on blacklist (unless this is for 
-				// the WLHostMachine resource type in which case allow anyway)
-				if ((resourceType.equals(HOSTMACHINE_RESOURCE_TYPE)) || (!getComponentBlacklist().contains(name))) {										
-					String contentLine = constructStatsLine(objectRecords.get(name), monitorAttrList);
+				// Skip resources which are on blacklist or filtered out (the
+				// blacklist does not apply to the WLHostMachine resource type)
+				if (isResourceCaptured(resourceType, name)) {										
+					long rowStartNanos = PipelineInstrumentation.startTiming();
+					String contentLine = constructStatsLine(rowEncoder, objectRecords.get(name), monitorAttrList);
+					PipelineInstrumentation.recordTiming(PipelineInstrumentation.ROW_BUILD_STAGE, resourceType, rowStartNanos);
 					getCSVStats().appendToResourceStatisticsCSV(nowDate, getServerName(), resourceType, name, headerLine, contentLine,getHostName());
 					artifactList.put(name, now);
+
+					if (resourceType.equals(DATASOURCE_RESOURCE_TYPE)) {
+						recordConnectionDelay(getLoadFigure(objectRecords.get(name), CONNECTION_DELAY_TIME));
+					}
 				}
 			}
 			
@@ -328,12 +370,12 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 		try {
 		
 			//String headerLine = constructHeaderLine(EJB_MBEAN_MONITOR_ATTR_LIST);
-			String headerLine=headerList.get("EJB").getString();
-			Date nowDate = new Date();
+			String headerLine=getHeaderLine("EJB").getString();
+			RowEncoder rowEncoder = getHeaderLine("EJB").getRowEncoder();
+			Date nowDate = getCycleDate();
 			String now = (new SimpleDateFormat(DATETIME_PARAM_FORMAT)).format(nowDate);
 			Properties artifactList = new Properties();
-			HarvesterWLDFQueryRunner queryRunner = new HarvesterWLDFQueryRunner(getConn(), getServerName(), ejbStatsQuery, getQueryIntervalMillis());
-			DataRecordsCollection dataRecords = queryRunner.retrieveDataRecords();					
+			DataRecordsCollection dataRecords = getDataRecords();					
 			Map<String, InstanceDataRecord> poolObjectRecords = getUniqueObjectRecords(EJB_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, EJB_POOL_RUNTIME), dataRecords);
 			Map<String, InstanceDataRecord> txObjectRecords = getUniqueObjectRecords(EJB_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, EJB_TRANSACTION_RUNTIME), dataRecords);
 			Iterator<String> poolObjectNames = poolObjectRecords.keySet().iterator(); 
@@ -341,12 +383,16 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 			while (poolObjectNames.hasNext()) {
 				String name = (String) poolObjectNames.next();
 				
-				if (!getComponentBlacklist().contains(name)) {										
+				if (isResourceCaptured(EJB_RESOURCE_TYPE, name)) {										
 					InstanceDataRecord poolObjRecord = poolObjectRecords.get(name);
 					InstanceDataRecord txObjRecord = txObjectRecords.get(name);
-					StringBuilder contentLine = new StringBuilder(constructStatsLine(poolObjRecord, EJB_POOL_MBEAN_MONITOR_ATTR_LIST));
-					appendToStatsLine(contentLine, txObjRecord, EJB_TRANSACTION_MBEAN_MONITOR_ATTR_LIST);
-					getCSVStats().appendToResourceStatisticsCSV(nowDate, getServerName(), EJB_RESOURCE_TYPE, name, headerLine, contentLine.toString(),getHostName());
+					long rowStartNanos = PipelineInstrumentation.startTiming();
+					RowEncoder.Row row = rowEncoder.startRow(formatSecondsDateTime(poolObjRecord.getTimestamp()));
+					appendToStatsLine(row, poolObjRecord, getMetricSchema().getEjbPoolAttrs());
+					appendToStatsLine(row, txObjRecord, getMetricSchema().getEjbTransactionAttrs());
+					String contentLine = row.finish();
+					PipelineInstrumentation.recordTiming(PipelineInstrumentation.ROW_BUILD_STAGE, EJB_RESOURCE_TYPE, rowStartNanos);
+					getCSVStats().appendToResourceStatisticsCSV(nowDate, getServerName(), EJB_RESOURCE_TYPE, name, headerLine, contentLine,getHostName());
 					artifactList.put(name, now);
 				}
 			}
@@ -357,6 +403,130 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 		} 
 	}
 
+	/**
+	 * Runs the combined WLDF query for all the metric types to be captured, 
+	 * if not already run, so that the capture of each metric type then only 
+	 * takes the time to process its share of the results. Any failure is 
+	 * kept and raised again by the capture of each metric type.
+	 */
+	public void prefetchDataRecords() {
+		try {
+			getDataRecords();
+		} catch (WebLogicMBeanException e) {
+			/*raised again when each metric type is captured*/
+		}
+	}
+
+	/**
+	 * Returns a metric type's share of the time the combined WLDF query took,
+	 * being the query time split evenly across the metric types it served.
+	 * 
+	 * @param type The metric type name
+	 * @return The share of the query time in milliseconds (0 if the query has not been run or did not serve the type)
+	 */
+	public synchronized long getQueryShareMillis(String type) {
+		if ((queriedTypes == null) || (!queriedTypes.contains(type.toLowerCase()))) {
+			return 0;
+		}
+
+		return dataRecordsQueryMillis / queriedTypes.size();
+	}
+
+	/**
+	 * Returns the WLDF data records for all the metric types to be captured, 
+	 * running the combined WLDF query against the server's harvester archive 
+	 * the first time this is called. Metric types captured in parallel wait
+	 * for and then share the same results (or the same failure).
+	 * 
+	 * @return The WLDF query results for all the metric types to be captured
+	 * @throws WebLogicMBeanException Indicates problem accessing the server to retrieve the data
+	 */
+	private synchronized DataRecordsCollection getDataRecords() throws WebLogicMBeanException {
+		if (dataRecordsFailure != null) {
+			throw dataRecordsFailure;
+		}
+
+		if (dataRecords == null) {
+			List<String> queryNames = new ArrayList<String>();
+			StringBuilder wldfQueryBuilder = new StringBuilder(DEFAULT_COMBINED_QUERY_LEN);
+
+			for (String type : getMetricTypeSet()) {
+				String typeQuery = metricTypeQueries.get(type.toLowerCase());
+
+				if (typeQuery != null) {
+					if (wldfQueryBuilder.length() > 0) {
+						wldfQueryBuilder.append(WLDF_QUERY_OR);
+					}
+
+					wldfQueryBuilder.append(typeQuery);
+					queryNames.add(type.toLowerCase());
+				}
+			}
+
+			if (queryNames.isEmpty()) {
+				dataRecords = new DataRecordsCollection();
+			} else {
+				try {
+					HarvesterWLDFQueryRunner queryRunner = new HarvesterWLDFQueryRunner(getConn(), getServerName(), queryNames, wldfQueryBuilder.toString(), getQueryIntervalMillis(), queryWatermarks);
+					queryRunner.setMBeanTypeQueryNames(mbeanTypeQueryNames);
+					queryRunner.setPipelinedFetch(fetchWkMgr);
+					queryRunner.setHarvestCalibrator(harvestCalibrator);
+					queryRunner.setCancelledFlag(getCancelledFlag());
+					long queryStartTime = System.currentTimeMillis();
+					dataRecords = queryRunner.retrieveDataRecords();
+					dataRecordsQueryMillis = System.currentTimeMillis() - queryStartTime;
+					queriedTypes = queryNames;
+				} catch (WebLogicMBeanException e) {
+					dataRecordsFailure = e;
+					throw e;
+				}
+			}
+		}
+
+		return dataRecords;
+	}
+
+	/**
+	 * Returns the WLDF query of each metric type for a metric schema. The 
+	 * queries of the most recently used schema are cached, so they are only
+	 * rebuilt on the first capture after the current schema has been swapped.
+	 * 
+	 * @param schema The metric schema
+	 * @return The WLDF queries keyed by metric type (eg. "datasource")
+	 */
+	static Map<String, String> getMetricTypeQueries(MetricSchema schema) {
+		return getSchemaQueries(schema).metricTypeQueries;
+	}
+
+	/**
+	 * Returns the metric type (and so the watermark query name) of each MBean
+	 * type queried for a metric schema.
+	 * 
+	 * @param schema The metric schema
+	 * @return The metric types keyed by MBean type
+	 */
+	static Map<String, String> getMBeanTypeQueryNames(MetricSchema schema) {
+		return getSchemaQueries(schema).mbeanTypeQueryNames;
+	}
+
+	/**
+	 * Returns the WLDF queries of a metric schema, rebuilding the cached 
+	 * queries if the schema has been swapped.
+	 * 
+	 * @param schema The metric schema
+	 * @return The schema's WLDF queries
+	 */
+	private static SchemaQueries getSchemaQueries(MetricSchema schema) {
+		SchemaQueries cached = schemaQueries;
+
+		if ((cached == null) || (cached.schema != schema)) {
+			cached = new SchemaQueries(schema);
+			schemaQueries = cached;
+		}
+
+		return cached;
+	}
+
 	/**
 	 * Appends a new section of a WLDF query being built up by adding a new 
 	 * section of query text, containing the MBean type to be queried and its 
@@ -393,83 +563,135 @@ public class StatisticCapturerWLDFQuery extends StatisticCapturer {
 	/**
 	 * Construct a single line of statistics to go in a CSV file, by querying 
 	 * an MBean object's data record's fields matching a list of given 
-	 * attribute names.
+	 * attribute names (protected so that the row building step can be driven
+	 * on its own by subclasses, eg. benchmarks).
 	 * 
+	 * @param rowEncoder The encoder for rows of the resource type's CSV header
 	 * @param objectRecord MBean object data record to query the statistics from
 	 * @param attrList List of attributes
 	 * @return The new statistics text line
 	 */
-	private String constructStatsLine(InstanceDataRecord objectRecord, String[] attrList) {
-		StringBuilder line = new StringBuilder(DEFAULT_CONTENT_LINE_LEN);
-		line.append(formatSecondsDateTime(objectRecord.getTimestamp()) + SEPARATOR);
-		appendToStatsLine(line, objectRecord, attrList);
-		return line.toString();
+	protected String constructStatsLine(RowEncoder rowEncoder, InstanceDataRecord objectRecord, String[] attrList) {
+		RowEncoder.Row row = rowEncoder.startRow(formatSecondsDateTime(objectRecord.getTimestamp()));
+		appendToStatsLine(row, objectRecord, attrList);
+		return row.finish();
+	}
+
+	/**
+	 * Returns one of the server load figures held in an MBean object's data 
+	 * record (eg. its hogging thread count), as captured.
+	 * 
+	 * @param objectRecord MBean object data record to query the figure from
+	 * @param attr The attribute holding the figure
+	 * @return The figure (-1 if no value was harvested for the attribute)
+	 */
+	private double getLoadFigure(InstanceDataRecord objectRecord, String attr) {
+		try {
+			return objectRecord.getAttrDoubleValue(attr);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
 	}
 
 	/**
 	 * Adds to a line of statistics based on querying an MBean object's data 
 	 * record's matching a list of given attribute names.
 	 * 
-	 * @param line The string buffer to add content to
+	 * @param row The row to add content to
 	 * @param objectRecord MBean object data record to query the statistics from
 	 * @param attrList List of attributes
 	 */
-	private void appendToStatsLine(StringBuilder line, InstanceDataRecord objectRecord, String[] attrList) {
+	private void appendToStatsLine(RowEncoder.Row row, InstanceDataRecord objectRecord, String[] attrList) {
 		for (String attr : attrList) {
-			line.append(objectRecord.getAttrValue(attr) + SEPARATOR);
+			objectRecord.appendAttrValue(row, attr);
 		}
 	}
 
+	/**
+	 * The WLDF query of each metric type derived from one metric schema.
+	 */
+	private static class SchemaQueries {
+		/**
+		 * Builds the WLDF query of every metric type from the schema.
+		 * 
+		 * @param schema The metric schema
+		 */
+		SchemaQueries(MetricSchema schema) {
+			StringBuilder coreStatsQueryBuilder = new StringBuilder(100);
+			appendQueryPart(coreStatsQueryBuilder, CORE_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_RUNTIME), schema.getServerAttrs());
+			appendQueryPart(coreStatsQueryBuilder, CORE_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JVM_RUNTIME), schema.getJvmAttrs());
+			appendQueryPart(coreStatsQueryBuilder, CORE_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JROCKIT_RUNTIME), schema.getJvmAttrs());
+			appendQueryPart(coreStatsQueryBuilder, CORE_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JROCKIT_RUNTIME), schema.getJRockitAttrs());
+			appendQueryPart(coreStatsQueryBuilder, CORE_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, THREAD_POOL_RUNTIME), schema.getThreadPoolAttrs());
+			// Example of a query for a restricted set of MBean instances
+			//appendWLDFQueryPartWithQueryTemplate(DEF_WKMGR_WLDF_QUERY_PART_TEMPLATE, coreStatsQueryBuilder, WORK_MANAGER_RUNTIME, schema.getWorkManagerAttrs());
+			appendQueryPart(coreStatsQueryBuilder, CORE_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JTA_RUNTIME), schema.getJtaAttrs());
+			StringBuilder jdbcStatsQueryBuilder = new StringBuilder(100);
+			appendQueryPart(jdbcStatsQueryBuilder, DATASOURCE_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JDBC_DATASOURCE_RUNTIME), schema.getJdbcAttrs());
+			StringBuilder jmsDestinationStatsQueryBuilder = new StringBuilder(100);
+			appendQueryPart(jmsDestinationStatsQueryBuilder, JMS_DESTINATION_METRIC_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JMS_DESTINATION_RUNTIME), schema.getJmsDestinationAttrs());
+			StringBuilder webAppStatsQueryBuilder = new StringBuilder(100);
+			appendQueryPart(webAppStatsQueryBuilder, WEBAPP_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WEBAPP_COMPONENT_RUNTIME), schema.getWebAppAttrs());
+			StringBuilder ejbStatsQueryBuilder = new StringBuilder(100);
+			appendQueryPart(ejbStatsQueryBuilder, EJB_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, EJB_POOL_RUNTIME), schema.getEjbPoolAttrs());
+			appendQueryPart(ejbStatsQueryBuilder, EJB_RESOURCE_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, EJB_TRANSACTION_RUNTIME), schema.getEjbTransactionAttrs());
+			StringBuilder wkMgrStatsQueryBuilder = new StringBuilder(100);
+			appendQueryPart(wkMgrStatsQueryBuilder, EXTENDED_METRIC_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WORK_MANAGER_RUNTIME), schema.getWorkManagerAttrs());
+			StringBuilder svrChnlStatsQueryBuilder = new StringBuilder(100);
+			appendQueryPart(svrChnlStatsQueryBuilder, EXTENDED_METRIC_TYPE, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_CHANNEL_RUNTIME), schema.getServerChannelAttrs());
+			StringBuilder hostMachineStatsQueryBuilder = new StringBuilder(100);
+			appendQueryPart(hostMachineStatsQueryBuilder, HOSTMACHINE_RESOURCE_TYPE, HOST_MACHINE_MBEAN, schema.getHostMachineAttrs());
+			Map<String, String> queries = new HashMap<String, String>();
+			queries.put(CORE_RESOURCE_TYPE, coreStatsQueryBuilder.toString());
+			queries.put(DATASOURCE_RESOURCE_TYPE, jdbcStatsQueryBuilder.toString());
+			queries.put(JMS_DESTINATION_METRIC_TYPE, jmsDestinationStatsQueryBuilder.toString());
+			queries.put(WEBAPP_RESOURCE_TYPE, webAppStatsQueryBuilder.toString());
+			queries.put(EJB_RESOURCE_TYPE, ejbStatsQueryBuilder.toString());
+			queries.put(HOSTMACHINE_RESOURCE_TYPE, hostMachineStatsQueryBuilder.toString());
+			queries.put(EXTENDED_METRIC_TYPE, wkMgrStatsQueryBuilder.toString() + WLDF_QUERY_OR + svrChnlStatsQueryBuilder.toString());
+			this.schema = schema;
+			this.metricTypeQueries = Collections.unmodifiableMap(queries);
+			this.mbeanTypeQueryNames = Collections.unmodifiableMap(mbeanTypes);
+		}
+
+		/**
+		 * Appends the query part of an MBean type to a metric type's query, 
+		 * noting the metric type the MBean type's records belong to.
+		 * 
+		 * @param wldfQueryBuilder The metric type's query text being built-up
+		 * @param metricType The metric type (eg. "datasource")
+		 * @param mbeanType The mbean type to include in the query
+		 * @param attributes The attribute names to include in the query
+		 */
+		private void appendQueryPart(StringBuilder wldfQueryBuilder, String metricType, String mbeanType, String[] attributes) {
+			appendWLDFQueryPart(wldfQueryBuilder, mbeanType, attributes);
+			mbeanTypes.put(mbeanType, metricType);
+		}
+
+		// Members
+		final MetricSchema schema;
+		final Map<String, String> metricTypeQueries;
+		final Map<String, String> mbeanTypeQueryNames;
+		private final Map<String, String> mbeanTypes = new HashMap<String, String>();
+	}
+
 	// Constants
 //	private static final int DEFAULT_CONTENT_LINE_LEN = 100;	
 	private final static String WLDF_QUERY_OR = " OR ";
+	private final static int DEFAULT_COMBINED_QUERY_LEN = 4096;
 	private final static String WLDF_QUERY_PART_TEMPLATE = "(TYPE='%s' AND ATTRNAME='%s')";
 	// Example of query restricting on specific mbean instances
 	//private final static String DEF_WKMGR_WLDF_QUERY_PART_TEMPLATE = "(NAME LIKE 'com.bea:Name=weblogic.kernel.Default%%' AND TYPE='" + RUNTIME_MBEAN_TYPE_TEMPLATE + "' AND ATTRNAME='%s')";
 	
 	// Members
-	private final static String coreServerStatsQuery;   
-	private final static String jdbcStatsQuery;   
-	private final static String jmsDestinationStatsQuery;   
-	private final static String webAppStatsQuery;   
-	private final static String ejbStatsQuery;   
-	private final static String wkMgrStatsQuery;   
-	private final static String svrChnlStatsQuery;   
-	private final static String hostMachineStatsQuery;   
-	
-	// Static initialiser
-	static {
-		StringBuilder coreStatsQueryBuilder = new StringBuilder(100);
-		appendWLDFQueryPart(coreStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_RUNTIME), SERVER_MBEAN_MONITOR_ATTR_LIST);
-		appendWLDFQueryPart(coreStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JVM_RUNTIME), JVM_MBEAN_MONITOR_ATTR_LIST);
-		appendWLDFQueryPart(coreStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JROCKIT_RUNTIME), JVM_MBEAN_MONITOR_ATTR_LIST);
-		appendWLDFQueryPart(coreStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JROCKIT_RUNTIME), JROCKIT_MBEAN_MONITOR_ATTR_LIST);
-		appendWLDFQueryPart(coreStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, THREAD_POOL_RUNTIME), THREADPOOL_MBEAN_MONITOR_ATTR_LIST);
-		// Example of a query for a restricted set of MBean instances
-		//appendWLDFQueryPartWithQueryTemplate(DEF_WKMGR_WLDF_QUERY_PART_TEMPLATE, coreStatsQueryBuilder, WORK_MANAGER_RUNTIME, WKMGR_MBEAN_MONITOR_ATTR_LIST);
-		appendWLDFQueryPart(coreStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JTA_RUNTIME), JTA_MBEAN_MONITOR_ATTR_LIST);
-		coreServerStatsQuery = coreStatsQueryBuilder.toString();
-		StringBuilder jdbcStatsQueryBuilder = new StringBuilder(100);
-		appendWLDFQueryPart(jdbcStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JDBC_DATASOURCE_RUNTIME), JDBC_MBEAN_MONITOR_ATTR_LIST);
-		jdbcStatsQuery = jdbcStatsQueryBuilder.toString();
-		StringBuilder jmsDestinationStatsQueryBuilder = new StringBuilder(100);
-		appendWLDFQueryPart(jmsDestinationStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, JMS_DESTINATION_RUNTIME), JMS_DESTINATION_MBEAN_MONITOR_ATTR_LIST);
-		jmsDestinationStatsQuery = jmsDestinationStatsQueryBuilder.toString();
-		StringBuilder webAppStatsQueryBuilder = new StringBuilder(100);
-		appendWLDFQueryPart(webAppStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WEBAPP_COMPONENT_RUNTIME), WEBAPP_MBEAN_MONITOR_ATTR_LIST);
-		webAppStatsQuery = webAppStatsQueryBuilder.toString();
-		StringBuilder ejbStatsQueryBuilder = new StringBuilder(100);
-		appendWLDFQueryPart(ejbStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, EJB_POOL_RUNTIME), EJB_POOL_MBEAN_MONITOR_ATTR_LIST);
-		appendWLDFQueryPart(ejbStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, EJB_TRANSACTION_RUNTIME), EJB_TRANSACTION_MBEAN_MONITOR_ATTR_LIST);
-		ejbStatsQuery = ejbStatsQueryBuilder.toString();
-		StringBuilder wkMgrStatsQueryBuilder = new StringBuilder(100);
-		appendWLDFQueryPart(wkMgrStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, WORK_MANAGER_RUNTIME), WKMGR_MBEAN_MONITOR_ATTR_LIST);
-		wkMgrStatsQuery = wkMgrStatsQueryBuilder.toString();
-		StringBuilder svrChnlStatsQueryBuilder = new StringBuilder(100);
-		appendWLDFQueryPart(svrChnlStatsQueryBuilder, String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, SERVER_CHANNEL_RUNTIME), SVR_CHANNEL_MBEAN_MONITOR_ATTR_LIST);
-		svrChnlStatsQuery = svrChnlStatsQueryBuilder.toString();
-		StringBuilder hostMachineStatsQueryBuilder = new StringBuilder(100);
-		appendWLDFQueryPart(hostMachineStatsQueryBuilder, HOST_MACHINE_MBEAN, HOST_MACHINE_STATS_MBEAN_MONITOR_ATTR_LIST);
-		hostMachineStatsQuery = hostMachineStatsQueryBuilder.toString();				
-	}
+	private final HarvesterWLDFQueryWatermarks queryWatermarks;
+	private WorkManager fetchWkMgr = null;
+	private HarvestCalibrator harvestCalibrator = null;
+	private DataRecordsCollection dataRecords = null;
+	private WebLogicMBeanException dataRecordsFailure = null;
+	private long dataRecordsQueryMillis = 0;
+	private List<String> queriedTypes = null;
+	private final Map<String, String> metricTypeQueries;
+	private final Map<String, String> mbeanTypeQueryNames;
+	private static volatile SchemaQueries schemaQueries = null;
 }
@@ -35,6 +35,20 @@ public class DataRecordsCollection {
 	 * @param attrValue The value of the attribute retrieved
 	 */
 	public void addElement(String mbeanTypeName, String mbeanName, long timestamp, String attrName, String attrValue) {
+		addElement(mbeanTypeName, mbeanName, timestamp, attrName, (Object) attrValue);
+	}
+
+	/**
+	 * Adds a new MBean object attribute key-value pair retrieved statistic,
+	 * keeping numeric attribute values as primitive numbers.
+	 * 
+	 * @param mbeanTypeName The type of the MBean
+	 * @param mbeanName The name of the MBean object instance
+	 * @param timestamp The data-time that the statistic was retrieved
+	 * @param attrName The name of the attribute retrieved
+	 * @param attrValue The value of the attribute retrieved (eg. Long, Double, String)
+	 */
+	public void addElement(String mbeanTypeName, String mbeanName, long timestamp, String attrName, Object attrValue) {
 		TypeDataRecord typeRecord = typeDataRecords.get(mbeanTypeName);
 		
 		if (typeRecord == null) {
@@ -14,25 +14,60 @@
 //POSSIBILITY OF SUCH DAMAGE.
 package domainhealth.backend.wldfcapture.data;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+
+import domainhealth.backend.retriever.RowEncoder;
 
 /**
  * For a specific MBean object name, holds a set of attribute name-value pairs
  * for the retrieved statistics for the object.
+ * 
+ * Values are held in a row of columns indexed by the owning MBean type 
+ * record's attribute index. Integral values are kept as primitive longs and
+ * floating point values as primitive doubles, only text values are kept as
+ * strings. A value is only turned into text when asked for.
  */
 public class InstanceDataRecord {
 	/**
 	 * Creates new instance of MBean object record
 	 * 
+	 * @param typeRecord The MBean type record this object belongs to, holding the attribute index
 	 * @param objectName The MBean object name
 	 * @param timestamp The date-time of the retrieved data record
 	 */
-	public InstanceDataRecord(String objectName, long timestamp) {
+	InstanceDataRecord(TypeDataRecord typeRecord, String objectName, long timestamp) {
+		this.typeRecord = typeRecord;
 		this.objectName = objectName;
 		this.timestamp = timestamp;  // Assume all attributes in object data record have same timestamp (they should be within a second of each other)
 	}
+
+	/**
+	 * Checks whether a retrieved statistic with the given date-time belongs 
+	 * to the harvested sample held by this record, to a newer sample, which 
+	 * then replaces all the values held, or to an older sample, which is 
+	 * ignored. This keeps the timestamp and values of the newest sample 
+	 * together when the records of more than one harvest are retrieved.
+	 * 
+	 * @param sampleTimestamp The date-time of the retrieved statistic
+	 * @return True if the statistic should be added; false if it belongs to an older sample
+	 */
+	boolean acceptSample(long sampleTimestamp) {
+		if (sampleTimestamp > timestamp + SAME_SAMPLE_TOLERANCE_MILLIS) {
+			Arrays.fill(valueKinds, KIND_NONE);
+			
+			if (textValues != null) {
+				Arrays.fill(textValues, null);
+			}
+			
+			timestamp = sampleTimestamp;
+			return true;
+		}
+		
+		return (sampleTimestamp >= timestamp - SAME_SAMPLE_TOLERANCE_MILLIS);
+	}
 	
 	/**
 	 * Add a new attribute key-value pair retrieved statistic.
@@ -41,7 +76,35 @@ public class InstanceDataRecord {
 	 * @param attrValue The attribute value
 	 */
 	public void addElement(String attrName, String attrValue) {
-		attributes.put(attrName, attrValue);
+		addElement(typeRecord.getOrAddAttrIndex(attrName), attrValue);
+	}
+
+	/**
+	 * Add a new attribute value retrieved statistic, in the given column.
+	 * 
+	 * @param attrIndex The attribute's column index in the MBean type record
+	 * @param attrValue The attribute value (eg. Long, Double, String)
+	 */
+	void addElement(int attrIndex, Object attrValue) {
+		ensureCapacity(attrIndex + 1);
+
+		if ((attrValue instanceof Long) || (attrValue instanceof Integer) || (attrValue instanceof Short) || (attrValue instanceof Byte)) {
+			numericValues[attrIndex] = ((Number) attrValue).longValue();
+			valueKinds[attrIndex] = KIND_LONG;
+		} else if (attrValue instanceof Double) {
+			numericValues[attrIndex] = Double.doubleToRawLongBits(((Double) attrValue).doubleValue());
+			valueKinds[attrIndex] = KIND_DOUBLE;
+		} else if (attrValue instanceof Float) {
+			numericValues[attrIndex] = Double.doubleToRawLongBits(((Float) attrValue).doubleValue());
+			valueKinds[attrIndex] = KIND_FLOAT;
+		} else {
+			if (textValues == null) {
+				textValues = new String[numericValues.length];
+			}
+
+			textValues[attrIndex] = String.valueOf(attrValue);
+			valueKinds[attrIndex] = KIND_TEXT;
+		}
 	}
 	
 	/**
@@ -68,7 +131,15 @@ public class InstanceDataRecord {
 	 * @return The list of statistic attribute names
 	 */	
 	public Iterator<String> getAttrNames() {
-		return attributes.keySet().iterator();
+		List<String> attrNames = new ArrayList<String>(valueKinds.length);
+		
+		for (int attrIndex = 0; attrIndex < valueKinds.length; attrIndex++) {
+			if (valueKinds[attrIndex] != KIND_NONE) {
+				attrNames.add(typeRecord.getAttrName(attrIndex));
+			}
+		}
+		
+		return attrNames.iterator();
 	}
 
 	/**
@@ -78,11 +149,164 @@ public class InstanceDataRecord {
 	 * @return THe value of the lookup attribute
 	 */
 	public String getAttrValue(String attrName) {
-		return attributes.get(attrName);
+		int attrIndex = getStoredAttrIndex(attrName);
+		
+		if (attrIndex < 0) {
+			return null;
+		}
+
+		switch (valueKinds[attrIndex]) {
+			case KIND_LONG:
+				return Long.toString(numericValues[attrIndex]);
+			case KIND_DOUBLE:
+				return Double.toString(Double.longBitsToDouble(numericValues[attrIndex]));
+			case KIND_FLOAT:
+				return Float.toString((float) Double.longBitsToDouble(numericValues[attrIndex]));
+			default:
+				return textValues[attrIndex];
+		}
+	}
+
+	/**
+	 * Append the value of a stored attribute by name to a row of statistics 
+	 * text, writing numeric values straight into the row (the text is the 
+	 * same as the text returned by getAttrValue()).
+	 * 
+	 * @param row The row to append the value to
+	 * @param attrName The name of the attribute to lookup
+	 */
+	public void appendAttrValue(RowEncoder.Row row, String attrName) {
+		int attrIndex = getStoredAttrIndex(attrName);
+		
+		if (attrIndex < 0) {
+			row.appendText(null);
+			return;
+		}
+
+		switch (valueKinds[attrIndex]) {
+			case KIND_LONG:
+				row.appendNumber(numericValues[attrIndex]);
+				break;
+			case KIND_DOUBLE:
+				row.appendNumber(Double.longBitsToDouble(numericValues[attrIndex]));
+				break;
+			case KIND_FLOAT:
+				row.appendNumber((float) Double.longBitsToDouble(numericValues[attrIndex]));
+				break;
+			default:
+				row.appendText(textValues[attrIndex]);
+		}
 	}
 
+	/**
+	 * Get the value of a stored numeric attribute by name, as a long.
+	 * 
+	 * @param attrName The name of the attribute to lookup
+	 * @return The value of the lookup attribute (floating point values are truncated)
+	 * @throws NumberFormatException Indicates the attribute has no value or its value is not a number
+	 */
+	public long getAttrLongValue(String attrName) {
+		int attrIndex = getStoredAttrIndex(attrName);
+		
+		if (attrIndex < 0) {
+			throw new NumberFormatException("No value for attribute " + attrName + " of " + objectName);
+		}
+
+		switch (valueKinds[attrIndex]) {
+			case KIND_LONG:
+				return numericValues[attrIndex];
+			case KIND_DOUBLE:
+			case KIND_FLOAT:
+				return (long) Double.longBitsToDouble(numericValues[attrIndex]);
+			default:
+				return Long.parseLong(textValues[attrIndex]);
+		}
+	}
+
+	/**
+	 * Get the value of a stored numeric attribute by name, as a double.
+	 * 
+	 * @param attrName The name of the attribute to lookup
+	 * @return The value of the lookup attribute
+	 * @throws NumberFormatException Indicates the attribute has no value or its value is not a number
+	 */
+	public double getAttrDoubleValue(String attrName) {
+		int attrIndex = getStoredAttrIndex(attrName);
+		
+		if (attrIndex < 0) {
+			throw new NumberFormatException("No value for attribute " + attrName + " of " + objectName);
+		}
+
+		switch (valueKinds[attrIndex]) {
+			case KIND_LONG:
+				return numericValues[attrIndex];
+			case KIND_DOUBLE:
+			case KIND_FLOAT:
+				return Double.longBitsToDouble(numericValues[attrIndex]);
+			default:
+				return Double.parseDouble(textValues[attrIndex]);
+		}
+	}
+
+	/**
+	 * Get the column index of an attribute which has a value stored in this 
+	 * record.
+	 * 
+	 * @param attrName The name of the attribute to lookup
+	 * @return The attribute's column index (-1 if no value stored)
+	 */
+	private int getStoredAttrIndex(String attrName) {
+		int attrIndex = typeRecord.getAttrIndex(attrName);
+		
+		if ((attrIndex < 0) || (attrIndex >= valueKinds.length) || (valueKinds[attrIndex] == KIND_NONE)) {
+			return -1;
+		}
+		
+		return attrIndex;
+	}
+
+	/**
+	 * Grow the row of value columns, if needed, to hold at least the given 
+	 * number of columns (and any other columns already known to the MBean 
+	 * type, to avoid growing again for each of them).
+	 * 
+	 * @param minCapacity The minimum number of columns needed
+	 */
+	private void ensureCapacity(int minCapacity) {
+		if (minCapacity <= valueKinds.length) {
+			return;
+		}
+
+		int newCapacity = Math.max(minCapacity, typeRecord.getAttrCount());
+		long[] newNumericValues = new long[newCapacity];
+		byte[] newValueKinds = new byte[newCapacity];
+		System.arraycopy(numericValues, 0, newNumericValues, 0, numericValues.length);
+		System.arraycopy(valueKinds, 0, newValueKinds, 0, valueKinds.length);
+		numericValues = newNumericValues;
+		valueKinds = newValueKinds;
+
+		if (textValues != null) {
+			String[] newTextValues = new String[newCapacity];
+			System.arraycopy(textValues, 0, newTextValues, 0, textValues.length);
+			textValues = newTextValues;
+		}
+	}
+
+	// Constants
+	private final static byte KIND_NONE = 0;
+	private final static byte KIND_LONG = 1;
+	private final static byte KIND_DOUBLE = 2;
+	private final static byte KIND_FLOAT = 3;
+	private final static byte KIND_TEXT = 4;
+	private final static long SAME_SAMPLE_TOLERANCE_MILLIS = 1000;
+	private final static long[] NO_NUMERIC_VALUES = new long[0];
+	private final static byte[] NO_VALUE_KINDS = new byte[0];
+
 	// Members
-	private final Map<String, String> attributes = new HashMap<String, String>();	
+	private final TypeDataRecord typeRecord;
 	private final String objectName;
-	private final long timestamp;
+	private long timestamp;
+	private long[] numericValues = NO_NUMERIC_VALUES;
+	private byte[] valueKinds = NO_VALUE_KINDS;
+	private String[] textValues = null;
 }
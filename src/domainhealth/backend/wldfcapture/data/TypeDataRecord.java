@@ -14,9 +14,13 @@
 //POSSIBILITY OF SUCH DAMAGE.
 package domainhealth.backend.wldfcapture.data;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,6 +28,10 @@ import java.util.regex.Pattern;
 /**
  * For a specific MBean type, holds a set of MBean object instances which are 
  * of that MBean type.
+ * 
+ * The attribute names of the MBean type are held once, as an index of 
+ * columns shared by all the MBean object instance records of the type, 
+ * rather than as keys of every instance's record.
  */
 public class TypeDataRecord {
 	/**
@@ -44,15 +52,32 @@ public class TypeDataRecord {
 	 * @param attrValue The value of the attribute statistic retrieved
 	 */
 	public void addElement(String mbeanName, long timestamp, String attrName, String attrValue) {
+		addElement(mbeanName, timestamp, attrName, (Object) attrValue);
+	}
+
+	/**
+	 * Adds a new Object name element of this MBean type element, keeping 
+	 * numeric attribute values as primitive numbers. Where the records of 
+	 * more than one harvested sample of an object are added, only the newest
+	 * sample's values are kept.
+	 * 
+	 * @param mbeanName Name of MBean object being added
+	 * @param timestamp Date-time of MBean object data retrieval
+	 * @param attrName The name of the attribute statistic retrieved
+	 * @param attrValue The value of the attribute statistic retrieved (eg. Long, Double, String)
+	 */
+	public void addElement(String mbeanName, long timestamp, String attrName, Object attrValue) {
 		String objectName = extractMBeanObjectName(mbeanName);
 		InstanceDataRecord objectRecord = instanceDataRecords.get(objectName);
 		
 		if (objectRecord == null) {
-			objectRecord = new InstanceDataRecord(objectName, timestamp);
+			objectRecord = new InstanceDataRecord(this, objectName, timestamp);
 			instanceDataRecords.put(objectName, objectRecord);
-		} 
+		} else if (!objectRecord.acceptSample(timestamp)) {
+			return;
+		}
 		
-		objectRecord.addElement(attrName, attrValue);		
+		objectRecord.addElement(getOrAddAttrIndex(attrName), attrValue);		
 	}
 
 	/**
@@ -84,14 +109,75 @@ public class TypeDataRecord {
 		return instanceDataRecords.get(objectName);
 	}
 
+	/**
+	 * Get the column index of an attribute of this MBean type.
+	 * 
+	 * @param attrName The name of the attribute
+	 * @return The attribute's column index (-1 if no values of the attribute have been added)
+	 */
+	int getAttrIndex(String attrName) {
+		Integer attrIndex = attrIndexes.get(attrName);
+		return (attrIndex != null) ? attrIndex.intValue() : -1;
+	}
+
+	/**
+	 * Get the name of the attribute at a column index of this MBean type.
+	 * 
+	 * @param attrIndex The attribute's column index
+	 * @return The name of the attribute
+	 */
+	String getAttrName(int attrIndex) {
+		return attrNames.get(attrIndex);
+	}
+
+	/**
+	 * Get the number of different attributes (columns) of this MBean type.
+	 * 
+	 * @return The number of attributes
+	 */
+	int getAttrCount() {
+		return attrNames.size();
+	}
+
+	/**
+	 * Get the column index of an attribute of this MBean type, adding a new 
+	 * column for the attribute if not seen before.
+	 * 
+	 * @param attrName The name of the attribute
+	 * @return The attribute's column index
+	 */
+	int getOrAddAttrIndex(String attrName) {
+		Integer attrIndex = attrIndexes.get(attrName);
+		
+		if (attrIndex == null) {
+			attrIndex = attrNames.size();
+			attrIndexes.put(attrName, attrIndex);
+			attrNames.add(attrName);
+		}
+		
+		return attrIndex.intValue();
+	}
+
 	/**
 	 * Utility method for extracting the name of an object from its full MBean
-	 * object name.
+	 * object name. As the same MBeans are harvested every capture, extracted 
+	 * names are remembered, so each MBean name is only matched once and all 
+	 * records of an MBean object share the same name string. Names are 
+	 * remembered without their 'ServerRuntime' part, so the same resource 
+	 * deployed to every server of a large domain is remembered once, rather
+	 * than once per server.
 	 *  
 	 * @param mbeanName The MBean name
 	 * @return The name of the object extracted from the MBean
 	 */
 	public static String extractMBeanObjectName(String mbeanName) {
+		String serverIndependentName = getServerIndependentName(mbeanName);
+		String objectName = extractedObjectNames.get(serverIndependentName);
+		
+		if (objectName != null) {
+			return objectName;
+		}
+		
 		Matcher matcher = MBEAN_NAME_EXTRACTOR_PATTERN.matcher(mbeanName);		
 		boolean found = matcher.find();
 		
@@ -99,13 +185,55 @@ public class TypeDataRecord {
 			throw new IllegalStateException("Failed to extact MBean name part from full MBean canonical name of: " + mbeanName);			
 		}
 
-		return matcher.group(1);
+		objectName = matcher.group(1);
+
+		if (extractedObjectNames.size() >= MAX_EXTRACTED_OBJECT_NAMES) {
+			extractedObjectNames.clear();
+		}
+
+		String existingObjectName = extractedObjectNames.putIfAbsent(serverIndependentName, objectName);
+		return (existingObjectName != null) ? existingObjectName : objectName;
+	}
+
+	/**
+	 * Get an MBean name with its 'ServerRuntime' key property (the server 
+	 * the MBean lives in) removed, leaving the other key properties, 
+	 * including 'Name', untouched.
+	 * 
+	 * @param mbeanName The MBean name
+	 * @return The MBean name without its server (or the MBean name unchanged if it has no 'ServerRuntime' key property)
+	 */
+	static String getServerIndependentName(String mbeanName) {
+		int propStart = mbeanName.indexOf(SERVER_RUNTIME_PROPERTY);
+
+		while (propStart > 0) {
+			char precedingChar = mbeanName.charAt(propStart - 1);
+
+			if ((precedingChar == ',') || (precedingChar == ':')) {
+				int propEnd = mbeanName.indexOf(',', propStart);
+
+				if (propEnd < 0) {
+					return mbeanName.substring(0, (precedingChar == ',') ? (propStart - 1) : propStart);
+				}
+
+				return mbeanName.substring(0, propStart) + mbeanName.substring(propEnd + 1);
+			}
+
+			propStart = mbeanName.indexOf(SERVER_RUNTIME_PROPERTY, propStart + 1);
+		}
+
+		return mbeanName;
 	}
 	
 	// Constants
 	private final static Pattern MBEAN_NAME_EXTRACTOR_PATTERN = Pattern.compile(".+[:,][Nn]ame=([^,$]+)");	
+	private final static int MAX_EXTRACTED_OBJECT_NAMES = 20000;
+	private final static String SERVER_RUNTIME_PROPERTY = "ServerRuntime=";
 	
 	// Members
 	private final Map<String, InstanceDataRecord> instanceDataRecords = new HashMap<String, InstanceDataRecord>();
+	private final Map<String, Integer> attrIndexes = new HashMap<String, Integer>();
+	private final List<String> attrNames = new ArrayList<String>();
 	private final String mbeanTypeName;
+	private final static ConcurrentMap<String, String> extractedObjectNames = new ConcurrentHashMap<String, String>();
 }
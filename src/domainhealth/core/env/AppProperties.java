@@ -79,6 +79,86 @@ public class AppProperties extends Properties {
 		 */
 		METRIC_DEEP_SET_PROP { public String toString() { return "dh_metric_deep_set"; } },
 
+		/**
+		 * The attributes to capture per resource type (eg. datasource:NumAvailable|ActiveConnectionsCurrentCount) property name ("dh_metric_attribute_set")
+		 */
+		METRIC_ATTRIBUTE_SET_PROP { public String toString() { return "dh_metric_attribute_set"; } },
+
+		/**
+		 * The glob/regex rules of the resources to capture property name ("dh_resource_include")
+		 */
+		RESOURCE_INCLUDE_PROP { public String toString() { return "dh_resource_include"; } },
+
+		/**
+		 * The glob/regex rules of the resources not to capture property name ("dh_resource_exclude")
+		 */
+		RESOURCE_EXCLUDE_PROP { public String toString() { return "dh_resource_exclude"; } },
+
+		/**
+		 * The glob/regex rules of the servers to capture property name ("dh_server_include")
+		 */
+		SERVER_INCLUDE_PROP { public String toString() { return "dh_server_include"; } },
+
+		/**
+		 * The glob/regex rules of the servers not to capture property name ("dh_server_exclude")
+		 */
+		SERVER_EXCLUDE_PROP { public String toString() { return "dh_server_exclude"; } },
+
+		/**
+		 * The maximum number of resource types of one server to capture in parallel property name ("dh_capture_type_concurrency")
+		 */
+		CAPTURE_TYPE_CONCURRENCY_PROP { public String toString() { return "dh_capture_type_concurrency"; } },
+
+		/**
+		 * The maximum number of seconds to wait for all the resource types of a server to be captured property name ("dh_capture_type_timeout_secs")
+		 */
+		CAPTURE_TYPE_TIMEOUT_SECS_PROP { public String toString() { return "dh_capture_type_timeout_secs"; } },
+
+		/**
+		 * The threads to run capture work on, workmanager or virtual, property name ("dh_capture_executor")
+		 */
+		CAPTURE_EXECUTOR_PROP { public String toString() { return "dh_capture_executor"; } },
+
+		/**
+		 * The adapt each server's polling interval to its load property name ("dh_adaptive_polling")
+		 */
+		ADAPTIVE_POLLING_PROP { public String toString() { return "dh_adaptive_polling"; } },
+
+		/**
+		 * The maximum factor a loaded server's polling interval can be stretched by property name ("dh_adaptive_max_interval_factor")
+		 */
+		ADAPTIVE_MAX_INTERVAL_FACTOR_PROP { public String toString() { return "dh_adaptive_max_interval_factor"; } },
+
+		/**
+		 * The fetch next WLDF records chunk whilst decoding current chunk property name ("dh_wldf_pipelined_fetch")
+		 */
+		WLDF_PIPELINED_FETCH_PROP { public String toString() { return "dh_wldf_pipelined_fetch"; } },
+
+		/**
+		 * The capture mode (wldf, jmx or auto) for each metric type property name ("dh_capture_mode_per_type")
+		 */
+		CAPTURE_MODE_PER_TYPE_PROP { public String toString() { return "dh_capture_mode_per_type"; } },
+
+		/**
+		 * The consecutive failed captures which stop a server being captured property name ("dh_circuit_breaker_failures")
+		 */
+		CIRCUIT_BREAKER_FAILURES_PROP { public String toString() { return "dh_circuit_breaker_failures"; } },
+
+		/**
+		 * The maximum seconds between probes of a server which is not being captured property name ("dh_circuit_breaker_max_backoff_secs")
+		 */
+		CIRCUIT_BREAKER_MAX_BACKOFF_SECS_PROP { public String toString() { return "dh_circuit_breaker_max_backoff_secs"; } },
+
+		/**
+		 * The record the latency of each capture pipeline stage property name ("dh_pipeline_instrumentation")
+		 */
+		PIPELINE_INSTRUMENTATION_PROP { public String toString() { return "dh_pipeline_instrumentation"; } },
+
+		/**
+		 * The publish capture pipeline stage latencies to the configured outputs property name ("dh_pipeline_stats_output")
+		 */
+		PIPELINE_STATS_OUTPUT_PROP { public String toString() { return "dh_pipeline_stats_output"; } },
+
 		/**
 		 * The number of days of CSV files to retain. Use 0 or -1 to disable CSV cleanup ("dh_component_blacklist")
 		 */
@@ -178,7 +258,7 @@ public class AppProperties extends Properties {
 		}
 
 		// Loading config.properies from -Ddh_config_file=<file>
-		String filename=System.getProperty("dh_config_file");
+		String filename=getConfigFilePath();
 
                 if ((filename != null) && (filename.length() > 0)) {
 			try {
@@ -201,6 +281,17 @@ public class AppProperties extends Properties {
 		loadProps(sc, baseProps,configProps);
 	}
 
+	/**
+	 * Gets the path of the global config file, set with the 
+	 * -Ddh_config_file JVM parameter (a file-system path or a classpath 
+	 * resource name).
+	 * 
+	 * @return The config file path (or null if not set)
+	 */
+	public static String getConfigFilePath() {
+		return System.getProperty(CONFIG_FILE_SYSPROP);
+	}
+
 	/**
 	 * Get property value
 	 * 
@@ -296,4 +387,5 @@ public class AppProperties extends Properties {
 	// Constants
 	private static final long serialVersionUID = 1L;
 	private static final String VERSION_PROPS_FILEPATH = "/WEB-INF/version.props";
+	private static final String CONFIG_FILE_SYSPROP = "dh_config_file";
 }
@@ -15,6 +15,7 @@
 package domainhealth.core.env;
 
 import commonj.work.Work;
+import domainhealth.core.instrumentation.PipelineInstrumentation;
 
 /**
  * Base class for work schedule on the work manager which sets the context 
@@ -29,7 +30,20 @@ public abstract class ContextAwareWork implements Work {
 	 * Creates new instance capture the originators context class-loader.
 	 */
 	public ContextAwareWork() {
+		this(null);
+	}
+
+	/**
+	 * Creates new instance capture the originators context class-loader, 
+	 * also recording how long the work then waits in the Work Manager's 
+	 * queue before it is run.
+	 * 
+	 * @param queueName The name of the queue to record the wait against (eg. "capture"), or null to not record
+	 */
+	public ContextAwareWork(String queueName) {
 		contextClassloader = Thread.currentThread().getContextClassLoader();
+		queueWaitStage = (queueName != null) ? (PipelineInstrumentation.QUEUE_WAIT_STAGE_PREFIX + queueName) : null;
+		queuedNanos = (queueName != null) ? PipelineInstrumentation.startTiming() : 0;
 	}
 
 	/**
@@ -57,6 +71,10 @@ public abstract class ContextAwareWork implements Work {
 		ClassLoader originalClassLoader = currentThread.getContextClassLoader();
 		
 		currentThread.setContextClassLoader(contextClassloader);
+
+		if (queueWaitStage != null) {
+			PipelineInstrumentation.recordTiming(queueWaitStage, queuedNanos);
+		}
 		
 		try {
 			doRun();
@@ -76,4 +94,6 @@ public abstract class ContextAwareWork implements Work {
 
 	// Members
 	private final ClassLoader contextClassloader;
+	private final String queueWaitStage;
+	private final long queuedNanos;
 }
@@ -0,0 +1,511 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.env;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkException;
+import commonj.work.WorkItem;
+import commonj.work.WorkListener;
+import commonj.work.WorkManager;
+
+/**
+ * Work Manager implementation which runs each scheduled work on its own JVM
+ * virtual thread, rather than on a thread of a WebLogic Work Manager's 
+ * thread pool. Because blocking JMX calls on a virtual thread do not hold on 
+ * to a platform thread, hundreds of servers (and their resource types) can 
+ * be captured concurrently.
+ * 
+ * Virtual threads are only available on newer JVMs (21+) so they are 
+ * accessed using reflection. Use createIfSupported() to obtain an instance, 
+ * which returns null if the running JVM does not support virtual threads,
+ * in which case the caller should fall back to the normal WebLogic Work 
+ * Manager.
+ * 
+ * Unlike a WebLogic Work Manager, a plain executor does not pass on the 
+ * WebLogic authenticated subject of the scheduling thread, so when running 
+ * in WebLogic the subject is captured when work is scheduled and the work 
+ * is then run as that subject (using WebLogic's security API, also accessed
+ * using reflection). If the subject cannot be passed on, no instance is 
+ * created, so that work is never run without the scheduler's identity.
+ */
+public class VirtualThreadWorkManager implements WorkManager {
+	/**
+	 * Creates a new virtual thread based work manager, if supported by the 
+	 * JVM that DomainHealth is running in.
+	 * 
+	 * @return The new work manager or null if virtual threads are not supported
+	 */
+	public static VirtualThreadWorkManager createIfSupported() {
+		ExecutorService executor = null;
+
+		try {
+			Method factoryMethod = Executors.class.getMethod(VIRTUAL_THREAD_EXECUTOR_FACTORY_METHOD);
+			executor = (ExecutorService) factoryMethod.invoke(null);
+		} catch (Exception e) {
+			AppLog.getLogger().debug("Virtual threads not supported by this JVM (" + System.getProperty("java.version") + "). Reason: " + e.toString());
+			return null;
+		}
+
+		Class<?> securityClass = null;
+
+		try {
+			securityClass = Class.forName(WEBLOGIC_SECURITY_CLASS);
+		} catch (ClassNotFoundException e) {
+			// Not running in WebLogic, so there is no authenticated subject to pass on
+			return new VirtualThreadWorkManager(executor, null, null);
+		}
+
+		try {
+			Method getCurrentSubjectMethod = securityClass.getMethod(GET_CURRENT_SUBJECT_METHOD);
+			Method runAsMethod = securityClass.getMethod(RUN_AS_METHOD, getCurrentSubjectMethod.getReturnType(), PrivilegedAction.class);
+			return new VirtualThreadWorkManager(executor, getCurrentSubjectMethod, runAsMethod);
+		} catch (Exception e) {
+			AppLog.getLogger().warning("Virtual threads not used because the WebLogic authenticated subject cannot be passed on to them. Reason: " + e.toString());
+			executor.shutdown();
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the work manager around the virtual thread per task executor.
+	 * 
+	 * @param executor The virtual thread per task executor
+	 * @param getCurrentSubjectMethod WebLogic's method returning the current thread's authenticated subject (null if not in WebLogic)
+	 * @param runAsMethod WebLogic's method running an action as a subject (null if not in WebLogic)
+	 */
+	private VirtualThreadWorkManager(ExecutorService executor, Method getCurrentSubjectMethod, Method runAsMethod) {
+		this.executor = executor;
+		this.getCurrentSubjectMethod = getCurrentSubjectMethod;
+		this.runAsMethod = runAsMethod;
+	}
+
+	/**
+	 * Schedule the work to run on a new virtual thread.
+	 * 
+	 * @param work The work to run
+	 * @return The handle on the scheduled work
+	 * @throws WorkException Indicates the work could not be scheduled
+	 */
+	public WorkItem schedule(Work work) throws WorkException {
+		return schedule(work, null);
+	}
+
+	/**
+	 * Schedule the work to run on a new virtual thread, notifying the 
+	 * listener (if any) of the work's progress.
+	 * 
+	 * @param work The work to run
+	 * @param listener The listener to notify (may be null)
+	 * @return The handle on the scheduled work
+	 * @throws WorkException Indicates the work could not be scheduled
+	 */
+	public WorkItem schedule(Work work, WorkListener listener) throws WorkException {
+		final VirtualThreadWorkItem workItem = new VirtualThreadWorkItem(work, listener, getCurrentSubject());
+		workItem.accepted();
+
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					workItem.run();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			workItem.rejected();
+			throw new WorkException("Virtual thread work manager unable to schedule work: " + e.getMessage());
+		}
+
+		return workItem;
+	}
+
+	/**
+	 * Wait for all the given work items to complete, or the timeout to 
+	 * expire.
+	 * 
+	 * @param workItems The work items to wait for
+	 * @param timeoutMillis The maximum time to wait (IMMEDIATE or INDEFINITE are also allowed)
+	 * @return True if all work items completed
+	 * @throws InterruptedException Indicates the waiting thread was interrupted
+	 */
+	@SuppressWarnings("rawtypes")
+	public boolean waitForAll(Collection workItems, long timeoutMillis) throws InterruptedException {
+		long deadlineMillis = getDeadlineMillis(timeoutMillis);
+
+		for (Object workItem : workItems) {
+			if (!((VirtualThreadWorkItem) workItem).awaitCompleted(deadlineMillis - System.currentTimeMillis())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Wait for at least one of the given work items to complete, or the 
+	 * timeout to expire.
+	 * 
+	 * @param workItems The work items to wait for
+	 * @param timeoutMillis The maximum time to wait (IMMEDIATE or INDEFINITE are also allowed)
+	 * @return The work items which have completed (empty if none)
+	 * @throws InterruptedException Indicates the waiting thread was interrupted
+	 */
+	@SuppressWarnings("rawtypes")
+	public Collection waitForAny(Collection workItems, long timeoutMillis) throws InterruptedException {
+		long deadlineMillis = getDeadlineMillis(timeoutMillis);
+		CountDownLatch anyCompletedLatch = new CountDownLatch(1);
+
+		try {
+			for (Object workItem : workItems) {
+				if (!((VirtualThreadWorkItem) workItem).addCompletionWaiter(anyCompletedLatch)) {
+					anyCompletedLatch.countDown();
+					break;
+				}
+			}
+
+			if (!workItems.isEmpty()) {
+				anyCompletedLatch.await(deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			for (Object workItem : workItems) {
+				((VirtualThreadWorkItem) workItem).removeCompletionWaiter(anyCompletedLatch);
+			}
+		}
+
+		return getCompleted(workItems);
+	}
+
+	/**
+	 * Stop accepting new work. Work already running is allowed to finish.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the WebLogic authenticated subject of the current thread.
+	 * 
+	 * @return The subject (null if not running in WebLogic)
+	 * @throws WorkException Indicates the subject could not be obtained, so work cannot be run as it
+	 */
+	private Object getCurrentSubject() throws WorkException {
+		if (getCurrentSubjectMethod == null) {
+			return null;
+		}
+
+		try {
+			return getCurrentSubjectMethod.invoke(null);
+		} catch (Exception e) {
+			throw new WorkException("Virtual thread work manager unable to obtain the authenticated subject to run work as: " + e.toString());
+		}
+	}
+
+	/**
+	 * Returns the subset of the given work items which have completed.
+	 * 
+	 * @param workItems The work items to check
+	 * @return The completed work items
+	 */
+	@SuppressWarnings("rawtypes")
+	private List<WorkItem> getCompleted(Collection workItems) {
+		List<WorkItem> completed = new ArrayList<WorkItem>();
+
+		for (Object workItem : workItems) {
+			if (((WorkItem) workItem).getStatus() == WorkEvent.WORK_COMPLETED) {
+				completed.add((WorkItem) workItem);
+			}
+		}
+
+		return completed;
+	}
+
+	/**
+	 * Converts a Work Manager style timeout into an absolute deadline.
+	 * 
+	 * @param timeoutMillis The timeout (IMMEDIATE or INDEFINITE are also allowed)
+	 * @return The deadline in milliseconds since the epoch
+	 */
+	private long getDeadlineMillis(long timeoutMillis) {
+		if (timeoutMillis == INDEFINITE) {
+			return Long.MAX_VALUE;
+		}
+
+		return System.currentTimeMillis() + Math.max(timeoutMillis, IMMEDIATE);
+	}
+
+	/**
+	 * Handle on a single work running on a virtual thread, tracking its 
+	 * status and notifying waiters and any listener as it changes. Each work
+	 * item has its own completion latch, so waiting for some work items is 
+	 * not woken up by the completion of any other work.
+	 */
+	private class VirtualThreadWorkItem implements WorkItem {
+		/**
+		 * Create the handle for the given work
+		 * 
+		 * @param work The work to be run
+		 * @param listener The listener to notify (may be null)
+		 * @param subject The WebLogic authenticated subject to run the work as (null if not in WebLogic)
+		 */
+		public VirtualThreadWorkItem(Work work, WorkListener listener, Object subject) {
+			this.work = work;
+			this.listener = listener;
+			this.subject = subject;
+			this.sequence = workSequence.incrementAndGet();
+		}
+
+		/**
+		 * Run the work on the current (virtual) thread, as the subject which
+		 * scheduled it (if any).
+		 */
+		public void run() {
+			setStatus(WorkEvent.WORK_STARTED, null);
+
+			try {
+				if ((runAsMethod != null) && (subject != null)) {
+					runAsSubject();
+				} else {
+					work.run();
+				}
+
+				setStatus(WorkEvent.WORK_COMPLETED, null);
+			} catch (Throwable t) {
+				setStatus(WorkEvent.WORK_COMPLETED, new WorkException("Work failed: " + t.toString()));
+			}
+		}
+
+		/**
+		 * Run the work using WebLogic's security API, as the subject which 
+		 * scheduled it.
+		 * 
+		 * @throws Throwable Indicates the work failed or could not be run as the subject
+		 */
+		private void runAsSubject() throws Throwable {
+			try {
+				runAsMethod.invoke(null, subject, new PrivilegedAction<Object>() {
+					public Object run() {
+						work.run();
+						return null;
+					}
+				});
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		/**
+		 * Flag that the work has been accepted for running.
+		 */
+		public void accepted() {
+			setStatus(WorkEvent.WORK_ACCEPTED, null);
+		}
+
+		/**
+		 * Flag that the work could not be accepted for running.
+		 */
+		public void rejected() {
+			setStatus(WorkEvent.WORK_REJECTED, null);
+		}
+
+		/**
+		 * Returns the work once complete.
+		 * 
+		 * @return The completed work
+		 * @throws WorkException Indicates the work failed with an exception
+		 */
+		public Work getResult() throws WorkException {
+			if (exception != null) {
+				throw exception;
+			}
+
+			return work;
+		}
+
+		/**
+		 * Returns the current status of the work (a WorkEvent type).
+		 * 
+		 * @return The status
+		 */
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * Wait for the work to complete, or the timeout to expire.
+		 * 
+		 * @param timeoutMillis The maximum time to wait (zero or less to not wait)
+		 * @return True if the work completed
+		 * @throws InterruptedException Indicates the waiting thread was interrupted
+		 */
+		boolean awaitCompleted(long timeoutMillis) throws InterruptedException {
+			return completedLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * Adds a latch to count down when the work completes, unless it has 
+		 * completed already.
+		 * 
+		 * @param waiterLatch The latch to count down
+		 * @return True if added; false if the work has already completed
+		 */
+		synchronized boolean addCompletionWaiter(CountDownLatch waiterLatch) {
+			if (status == WorkEvent.WORK_COMPLETED) {
+				return false;
+			}
+
+			completionWaiters.add(waiterLatch);
+			return true;
+		}
+
+		/**
+		 * Removes a latch added to count down when the work completes.
+		 * 
+		 * @param waiterLatch The latch to remove
+		 */
+		synchronized void removeCompletionWaiter(CountDownLatch waiterLatch) {
+			completionWaiters.remove(waiterLatch);
+		}
+
+		/**
+		 * Orders work items by the sequence they were scheduled in.
+		 * 
+		 * @param other The other work item
+		 * @return Negative, zero or positive if this was scheduled before, same as or after the other
+		 */
+		public int compareTo(Object other) {
+			long otherSequence = ((VirtualThreadWorkItem) other).sequence;
+			return (sequence < otherSequence) ? -1 : ((sequence == otherSequence) ? 0 : 1);
+		}
+
+		/**
+		 * Change the status of the work, waking up any waiting threads and 
+		 * notifying the listener.
+		 * 
+		 * @param newStatus The new status (a WorkEvent type)
+		 * @param workException The exception the work failed with (if any)
+		 */
+		private void setStatus(int newStatus, WorkException workException) {
+			synchronized (this) {
+				exception = workException;
+				status = newStatus;
+
+				if (newStatus == WorkEvent.WORK_COMPLETED) {
+					completedLatch.countDown();
+
+					for (CountDownLatch waiterLatch : completionWaiters) {
+						waiterLatch.countDown();
+					}
+
+					completionWaiters.clear();
+				}
+			}
+
+			if (listener != null) {
+				WorkEvent event = new VirtualThreadWorkEvent(newStatus, this, workException);
+
+				switch (newStatus) {
+					case WorkEvent.WORK_ACCEPTED: listener.workAccepted(event); break;
+					case WorkEvent.WORK_REJECTED: listener.workRejected(event); break;
+					case WorkEvent.WORK_STARTED: listener.workStarted(event); break;
+					default: listener.workCompleted(event);
+				}
+			}
+		}
+
+		// Members
+		private final Work work;
+		private final WorkListener listener;
+		private final Object subject;
+		private final long sequence;
+		private volatile int status = 0;
+		private volatile WorkException exception = null;
+		private final CountDownLatch completedLatch = new CountDownLatch(1);
+		private final List<CountDownLatch> completionWaiters = new ArrayList<CountDownLatch>(1);
+	}
+
+	/**
+	 * Simple immutable work event passed to work listeners.
+	 */
+	private static class VirtualThreadWorkEvent implements WorkEvent {
+		/**
+		 * Create the event
+		 * 
+		 * @param type The event type
+		 * @param workItem The work item the event is for
+		 * @param exception The exception the work failed with (if any)
+		 */
+		public VirtualThreadWorkEvent(int type, WorkItem workItem, WorkException exception) {
+			this.type = type;
+			this.workItem = workItem;
+			this.exception = exception;
+		}
+
+		/**
+		 * Returns the event type
+		 * 
+		 * @return The event type
+		 */
+		public int getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the work item the event is for
+		 * 
+		 * @return The work item
+		 */
+		public WorkItem getWorkItem() {
+			return workItem;
+		}
+
+		/**
+		 * Returns the exception the work failed with (if any)
+		 * 
+		 * @return The exception or null
+		 */
+		public WorkException getException() {
+			return exception;
+		}
+
+		// Members
+		private final int type;
+		private final WorkItem workItem;
+		private final WorkException exception;
+	}
+
+	// Constants
+	private final static String VIRTUAL_THREAD_EXECUTOR_FACTORY_METHOD = "newVirtualThreadPerTaskExecutor";
+	private final static String WEBLOGIC_SECURITY_CLASS = "weblogic.security.Security";
+	private final static String GET_CURRENT_SUBJECT_METHOD = "getCurrentSubject";
+	private final static String RUN_AS_METHOD = "runAs";
+
+	// Members
+	private final ExecutorService executor;
+	private final Method getCurrentSubjectMethod;
+	private final Method runAsMethod;
+	private final AtomicLong workSequence = new AtomicLong(0);
+}
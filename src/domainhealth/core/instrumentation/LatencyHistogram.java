@@ -0,0 +1,262 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in microseconds, in the style of an HDR 
+ * histogram: values are counted in buckets whose width doubles with each 
+ * power of two, with each power of two split into a fixed number of sub-
+ * buckets, so that any recorded value is known to within about 6% whilst 
+ * the histogram stays a small, fixed size. Recording is a handful of atomic
+ * increments, so it can be done on every call in the capture hot path from 
+ * any number of threads.
+ */
+public class LatencyHistogram {
+	/**
+	 * Record a latency.
+	 * 
+	 * @param micros The latency in microseconds
+	 */
+	public void record(long micros) {
+		long value = Math.max(micros, 0);
+		counts.incrementAndGet(getBucketIndex(value));
+		totalCount.incrementAndGet();
+		totalMicros.addAndGet(value);
+		long currentMax = maxMicros.get();
+
+		while ((value > currentMax) && (!maxMicros.compareAndSet(currentMax, value))) {
+			currentMax = maxMicros.get();
+		}
+	}
+
+	/**
+	 * Take a copy of the histogram's current counts. Values being recorded 
+	 * concurrently may or may not be included.
+	 * 
+	 * @return The snapshot
+	 */
+	public Snapshot snapshot() {
+		long[] bucketCounts = new long[BUCKET_COUNT];
+		long count = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			bucketCounts[i] = counts.get(i);
+			count += bucketCounts[i];
+		}
+
+		return new Snapshot(bucketCounts, count, totalMicros.get(), maxMicros.get());
+	}
+
+	/**
+	 * Clear all the recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+
+		totalCount.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+
+	/**
+	 * Returns the number of values recorded
+	 * 
+	 * @return The count
+	 */
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * Returns the bucket a value is counted in
+	 * 
+	 * @param value The value (not negative)
+	 * @return The bucket index
+	 */
+	static int getBucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+		if (exponent > MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+
+		int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+		return ((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT) + subBucket;
+	}
+
+	/**
+	 * Returns the highest value counted in a bucket
+	 * 
+	 * @param index The bucket index
+	 * @return The highest value in the bucket
+	 */
+	static long getBucketHighestValue(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+
+		int exponent = (index / SUB_BUCKET_COUNT) + SUB_BUCKET_BITS - 1;
+		long lowestValue = ((long) (SUB_BUCKET_COUNT + (index % SUB_BUCKET_COUNT))) << (exponent - SUB_BUCKET_BITS);
+		return lowestValue + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	/**
+	 * An immutable copy of a histogram's counts at a point in time.
+	 */
+	public static class Snapshot {
+		/**
+		 * Create a snapshot
+		 * 
+		 * @param bucketCounts The count of each bucket
+		 * @param count The total count
+		 * @param totalMicros The sum of all values
+		 * @param maxMicros The highest value
+		 */
+		Snapshot(long[] bucketCounts, long count, long totalMicros, long maxMicros) {
+			this.bucketCounts = bucketCounts;
+			this.count = count;
+			this.totalMicros = totalMicros;
+			this.maxMicros = maxMicros;
+		}
+
+		/**
+		 * Returns the values recorded since an earlier snapshot of the same 
+		 * histogram. As only the overall maximum is kept, the maximum of the 
+		 * interval is the highest value of its highest non-empty bucket.
+		 * 
+		 * @param earlier The earlier snapshot (null for all values)
+		 * @return The snapshot of the interval
+		 */
+		public Snapshot minus(Snapshot earlier) {
+			if (earlier == null) {
+				return this;
+			}
+
+			long[] intervalCounts = new long[BUCKET_COUNT];
+			long intervalCount = 0;
+			long intervalMaxMicros = 0;
+
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				intervalCounts[i] = Math.max(bucketCounts[i] - earlier.bucketCounts[i], 0);
+				intervalCount += intervalCounts[i];
+
+				if (intervalCounts[i] > 0) {
+					intervalMaxMicros = Math.min(getBucketHighestValue(i), maxMicros);
+				}
+			}
+
+			return new Snapshot(intervalCounts, intervalCount, Math.max(totalMicros - earlier.totalMicros, 0), intervalMaxMicros);
+		}
+
+		/**
+		 * Returns the number of values
+		 * 
+		 * @return The count
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the sum of all the values
+		 * 
+		 * @return The total in microseconds
+		 */
+		public long getTotalMicros() {
+			return totalMicros;
+		}
+
+		/**
+		 * Returns the mean value
+		 * 
+		 * @return The mean in microseconds (0 if no values)
+		 */
+		public long getMeanMicros() {
+			return (count > 0) ? (totalMicros / count) : 0;
+		}
+
+		/**
+		 * Returns the highest value
+		 * 
+		 * @return The maximum in microseconds
+		 */
+		public long getMaxMicros() {
+			return maxMicros;
+		}
+
+		/**
+		 * Returns the value which the given percentage of values are at or 
+		 * below (to within the accuracy of the buckets).
+		 * 
+		 * @param percentile The percentile (eg. 99.0)
+		 * @return The value in microseconds (0 if no values)
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (count <= 0) {
+				return 0;
+			}
+
+			long targetCount = Math.max((long) Math.ceil((percentile / 100.0) * count), 1);
+			long runningCount = 0;
+
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				runningCount += bucketCounts[i];
+
+				if (runningCount >= targetCount) {
+					return Math.min(getBucketHighestValue(i), maxMicros);
+				}
+			}
+
+			return maxMicros;
+		}
+
+		/**
+		 * Returns a one line summary of the values
+		 * 
+		 * @return The summary text
+		 */
+		public String toString() {
+			return "count=" + count + " mean=" + getMeanMicros() + "us p50=" + getValueAtPercentile(50) + "us p90=" + getValueAtPercentile(90) 
+				+ "us p99=" + getValueAtPercentile(99) + "us max=" + maxMicros + "us";
+		}
+
+		// Members
+		private final long[] bucketCounts;
+		private final long count;
+		private final long totalMicros;
+		private final long maxMicros;
+	}
+
+	// Constants
+	private final static int SUB_BUCKET_BITS = 4;
+	private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private final static int MAX_EXPONENT = 40;
+	private final static int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+	// Members
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+}
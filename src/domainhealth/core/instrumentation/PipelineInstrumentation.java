@@ -0,0 +1,302 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.instrumentation;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records how long each stage of the statistics capture pipeline takes 
+ * (eg. each JMX call, each WLDF cursor operation, building each CSV row, 
+ * writing to each output, waiting in each Work Manager queue), in a latency
+ * histogram per stage, so that it can be seen where the time of each 
+ * capture cycle actually goes.
+ * 
+ * Stages are recorded by taking a start time with startTiming() and then 
+ * passing it to recordTiming() when the stage is done. Stages may also have
+ * a detail (eg. the JMX attribute name of a JMX call stage) which is kept 
+ * in a finer-grained histogram of its own, for inspection via the 
+ * instrumentation MBean, whilst the stage's histogram holds every detail's
+ * timings combined. Stage names never contain '.', as they are published 
+ * as Graphite path items.
+ */
+public final class PipelineInstrumentation {
+	/**
+	 * JMX call stage name prefix, suffixed with the MBean's type
+	 */
+	public final static String JMX_STAGE_PREFIX = "jmx_";
+
+	/**
+	 * WLDF open cursor stage name
+	 */
+	public final static String WLDF_OPEN_CURSOR_STAGE = "wldf_open_cursor";
+
+	/**
+	 * WLDF fetch records stage name
+	 */
+	public final static String WLDF_FETCH_STAGE = "wldf_fetch";
+
+	/**
+	 * WLDF wait for pipelined fetch of records stage name
+	 */
+	public final static String WLDF_FETCH_WAIT_STAGE = "wldf_fetch_wait";
+
+	/**
+	 * WLDF decode fetched records stage name
+	 */
+	public final static String WLDF_DECODE_STAGE = "wldf_decode";
+
+	/**
+	 * WLDF check for more records stage name
+	 */
+	public final static String WLDF_HAS_MORE_DATA_STAGE = "wldf_has_more_data";
+
+	/**
+	 * WLDF close cursor stage name
+	 */
+	public final static String WLDF_CLOSE_CURSOR_STAGE = "wldf_close_cursor";
+
+	/**
+	 * WLDF harvest lag (age of the newest harvested record when queried) 
+	 * pseudo stage name, detailed per server
+	 */
+	public final static String WLDF_HARVEST_LAG_STAGE = "wldf_harvest_lag";
+
+	/**
+	 * Build a CSV statistics row stage name
+	 */
+	public final static String ROW_BUILD_STAGE = "row_build";
+
+	/**
+	 * Write a row to a CSV file stage name
+	 */
+	public final static String CSV_WRITE_STAGE = "csv_write";
+
+	/**
+	 * Encode a row into Graphite metric lines stage name
+	 */
+	public final static String GRAPHITE_ENCODE_STAGE = "graphite_encode";
+
+	/**
+	 * Write Graphite metric lines to the channel stage name
+	 */
+	public final static String GRAPHITE_WRITE_STAGE = "graphite_write";
+
+	/**
+	 * Work Manager queue wait stage name prefix, suffixed with the kind of work
+	 */
+	public final static String QUEUE_WAIT_STAGE_PREFIX = "queue_";
+
+	/**
+	 * Private constructor - static methods only
+	 */
+	private PipelineInstrumentation() {
+	}
+
+	/**
+	 * Returns the time to pass to recordTiming() once a stage is done.
+	 * 
+	 * @return The start time in nanoseconds (0 if instrumentation is disabled)
+	 */
+	public static long startTiming() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Record the time taken by a stage since its start time.
+	 * 
+	 * @param stage The stage name
+	 * @param startNanos The start time from startTiming()
+	 */
+	public static void recordTiming(String stage, long startNanos) {
+		if ((enabled) && (startNanos != 0)) {
+			getHistogram(stageHistograms, stage).record((System.nanoTime() - startNanos) / NANOS_IN_MICRO);
+		}
+	}
+
+	/**
+	 * Record the time taken by a stage since its start time, against both 
+	 * the stage and the stage's detail.
+	 * 
+	 * @param stage The stage name
+	 * @param detail The detail within the stage (eg. JMX attribute name)
+	 * @param startNanos The start time from startTiming()
+	 */
+	public static void recordTiming(String stage, String detail, long startNanos) {
+		if ((enabled) && (startNanos != 0)) {
+			long micros = (System.nanoTime() - startNanos) / NANOS_IN_MICRO;
+			getHistogram(stageHistograms, stage).record(micros);
+			getHistogram(getDetailHistograms(stage), detail).record(micros);
+		}
+	}
+
+	/**
+	 * Record a time already measured for a stage.
+	 * 
+	 * @param stage The stage name
+	 * @param micros The time taken in microseconds
+	 */
+	public static void recordMicros(String stage, long micros) {
+		if (enabled) {
+			getHistogram(stageHistograms, stage).record(micros);
+		}
+	}
+
+	/**
+	 * Record a time already measured for a stage, against both the stage 
+	 * and the stage's detail.
+	 * 
+	 * @param stage The stage name
+	 * @param detail The detail within the stage (eg. server name)
+	 * @param micros The time taken in microseconds
+	 */
+	public static void recordMicros(String stage, String detail, long micros) {
+		if (enabled) {
+			getHistogram(stageHistograms, stage).record(micros);
+			getHistogram(getDetailHistograms(stage), detail).record(micros);
+		}
+	}
+
+	/**
+	 * Take snapshots of every stage's histogram.
+	 * 
+	 * @return The snapshots keyed and ordered by stage name
+	 */
+	public static SortedMap<String, LatencyHistogram.Snapshot> snapshotStages() {
+		return snapshot(stageHistograms);
+	}
+
+	/**
+	 * Take snapshots of every stage detail's histogram.
+	 * 
+	 * @return The snapshots keyed and ordered by stage and detail name
+	 */
+	public static SortedMap<String, LatencyHistogram.Snapshot> snapshotDetails() {
+		SortedMap<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<String, LatencyHistogram.Snapshot>();
+
+		for (Map.Entry<String, ConcurrentMap<String, LatencyHistogram>> stageEntry : detailHistograms.entrySet()) {
+			for (Map.Entry<String, LatencyHistogram> entry : stageEntry.getValue().entrySet()) {
+				snapshots.put(stageEntry.getKey() + DETAIL_SEPARATOR + entry.getKey(), entry.getValue().snapshot());
+			}
+		}
+
+		return snapshots;
+	}
+
+	/**
+	 * Clear every stage's (and stage detail's) recorded timings.
+	 */
+	public static void reset() {
+		for (LatencyHistogram histogram : stageHistograms.values()) {
+			histogram.reset();
+		}
+
+		for (ConcurrentMap<String, LatencyHistogram> stageDetailHistograms : detailHistograms.values()) {
+			for (LatencyHistogram histogram : stageDetailHistograms.values()) {
+				histogram.reset();
+			}
+		}
+	}
+
+	/**
+	 * Turn instrumentation on or off. When off, recording a timing costs 
+	 * nothing but a flag check.
+	 * 
+	 * @param isEnabled True to record timings
+	 */
+	public static void setEnabled(boolean isEnabled) {
+		enabled = isEnabled;
+	}
+
+	/**
+	 * Indicates whether timings are being recorded
+	 * 
+	 * @return True if enabled
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns the existing histogram for a name, or a new one.
+	 * 
+	 * @param histograms The histograms to look in
+	 * @param name The stage (or stage detail) name
+	 * @return The histogram
+	 */
+	private static LatencyHistogram getHistogram(ConcurrentMap<String, LatencyHistogram> histograms, String name) {
+		LatencyHistogram histogram = histograms.get(name);
+
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			LatencyHistogram existingHistogram = histograms.putIfAbsent(name, histogram);
+
+			if (existingHistogram != null) {
+				histogram = existingHistogram;
+			}
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * Returns the existing histograms of a stage's details, or new ones.
+	 * 
+	 * @param stage The stage name
+	 * @return The stage's detail histograms keyed by detail name
+	 */
+	private static ConcurrentMap<String, LatencyHistogram> getDetailHistograms(String stage) {
+		ConcurrentMap<String, LatencyHistogram> histograms = detailHistograms.get(stage);
+
+		if (histograms == null) {
+			histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+			ConcurrentMap<String, LatencyHistogram> existingHistograms = detailHistograms.putIfAbsent(stage, histograms);
+
+			if (existingHistograms != null) {
+				histograms = existingHistograms;
+			}
+		}
+
+		return histograms;
+	}
+
+	/**
+	 * Take snapshots of the given histograms
+	 * 
+	 * @param histograms The histograms
+	 * @return The snapshots keyed and ordered by name
+	 */
+	private static SortedMap<String, LatencyHistogram.Snapshot> snapshot(Map<String, LatencyHistogram> histograms) {
+		SortedMap<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<String, LatencyHistogram.Snapshot>();
+
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			snapshots.put(entry.getKey(), entry.getValue().snapshot());
+		}
+
+		return snapshots;
+	}
+
+	// Constants
+	private final static long NANOS_IN_MICRO = 1000;
+	private final static String DETAIL_SEPARATOR = "/";
+
+	// Members
+	private static volatile boolean enabled = true;
+	private final static ConcurrentMap<String, LatencyHistogram> stageHistograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final static ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> detailHistograms = new ConcurrentHashMap<String, ConcurrentMap<String, LatencyHistogram>>();
+}
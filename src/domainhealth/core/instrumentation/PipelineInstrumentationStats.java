@@ -0,0 +1,183 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.instrumentation;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import domainhealth.core.env.AppLog;
+
+/**
+ * The DomainHealth capture pipeline instrumentation MBean, registered in the
+ * host server's runtime MBean tree so that the latency of each stage of the
+ * capture pipeline can be inspected with any JMX client (eg. WLST, 
+ * JConsole).
+ */
+public class PipelineInstrumentationStats implements PipelineInstrumentationStatsMBean {
+	/**
+	 * Registers the instrumentation MBean in the host server's runtime MBean
+	 * server (or the JVM's platform MBean server when not running in 
+	 * WebLogic). Any failure is logged but otherwise ignored, as capture can 
+	 * carry on without the MBean.
+	 */
+	public static void register() {
+		try {
+			MBeanServer mbeanServer = getMBeanServer();
+			ObjectName objectName = new ObjectName(OBJECT_NAME);
+
+			if (!mbeanServer.isRegistered(objectName)) {
+				mbeanServer.registerMBean(new PipelineInstrumentationStats(), objectName);
+			}
+
+			AppLog.getLogger().info("Registered capture pipeline instrumentation MBean: " + OBJECT_NAME);
+		} catch (Exception e) {
+			AppLog.getLogger().warning("Unable to register capture pipeline instrumentation MBean '" + OBJECT_NAME + "'. Reason: " + e.toString());
+		}
+	}
+
+	/**
+	 * Unregisters the instrumentation MBean, if registered.
+	 */
+	public static void unregister() {
+		try {
+			MBeanServer mbeanServer = getMBeanServer();
+			ObjectName objectName = new ObjectName(OBJECT_NAME);
+
+			if (mbeanServer.isRegistered(objectName)) {
+				mbeanServer.unregisterMBean(objectName);
+			}
+		} catch (Exception e) {
+			AppLog.getLogger().warning("Unable to unregister capture pipeline instrumentation MBean '" + OBJECT_NAME + "'. Reason: " + e.toString());
+		}
+	}
+
+	/**
+	 * Indicates whether timings are being recorded
+	 * 
+	 * @return True if enabled
+	 */
+	public boolean isEnabled() {
+		return PipelineInstrumentation.isEnabled();
+	}
+
+	/**
+	 * Turn recording of timings on or off
+	 * 
+	 * @param enabled True to record timings
+	 */
+	public void setEnabled(boolean enabled) {
+		PipelineInstrumentation.setEnabled(enabled);
+	}
+
+	/**
+	 * Returns the names of the stages timed so far
+	 * 
+	 * @return The stage names
+	 */
+	public String[] getStageNames() {
+		return PipelineInstrumentation.snapshotStages().keySet().toArray(new String[0]);
+	}
+
+	/**
+	 * Returns a summary line (count, mean, p50, p90, p99, max) per stage
+	 * 
+	 * @return The stage summaries
+	 */
+	public String[] getStageSummaries() {
+		return getSummaries(PipelineInstrumentation.snapshotStages());
+	}
+
+	/**
+	 * Returns a summary line (count, mean, p50, p90, p99, max) per stage 
+	 * detail (eg. per JMX attribute of each MBean type)
+	 * 
+	 * @return The stage detail summaries
+	 */
+	public String[] getDetailSummaries() {
+		return getSummaries(PipelineInstrumentation.snapshotDetails());
+	}
+
+	/**
+	 * Returns the summary of one stage
+	 * 
+	 * @param stage The stage name
+	 * @return The stage summary (or null if the stage has not been timed)
+	 */
+	public String getStageSummary(String stage) {
+		LatencyHistogram.Snapshot snapshot = PipelineInstrumentation.snapshotStages().get(stage);
+		return (snapshot != null) ? (stage + ": " + snapshot) : null;
+	}
+
+	/**
+	 * Returns the latency of a stage at the given percentile
+	 * 
+	 * @param stage The stage name
+	 * @param percentile The percentile (eg. 99.0)
+	 * @return The latency in microseconds (0 if the stage has not been timed)
+	 */
+	public long getStageLatencyAtPercentile(String stage, double percentile) {
+		LatencyHistogram.Snapshot snapshot = PipelineInstrumentation.snapshotStages().get(stage);
+		return (snapshot != null) ? snapshot.getValueAtPercentile(percentile) : 0;
+	}
+
+	/**
+	 * Clear every stage's recorded timings
+	 */
+	public void reset() {
+		PipelineInstrumentation.reset();
+	}
+
+	/**
+	 * Format a summary line per histogram snapshot
+	 * 
+	 * @param snapshots The snapshots keyed by name
+	 * @return The summary lines
+	 */
+	private String[] getSummaries(SortedMap<String, LatencyHistogram.Snapshot> snapshots) {
+		List<String> summaries = new ArrayList<String>(snapshots.size());
+
+		for (Map.Entry<String, LatencyHistogram.Snapshot> entry : snapshots.entrySet()) {
+			summaries.add(entry.getKey() + ": " + entry.getValue());
+		}
+
+		return summaries.toArray(new String[summaries.size()]);
+	}
+
+	/**
+	 * Returns the host server's runtime MBean server, or the platform MBean 
+	 * server if not running in WebLogic.
+	 * 
+	 * @return The MBean server to register in
+	 */
+	private static MBeanServer getMBeanServer() {
+		try {
+			return (MBeanServer) (new InitialContext()).lookup(RUNTIME_MBEAN_SERVER_JNDI);
+		} catch (NamingException e) {
+			return ManagementFactory.getPlatformMBeanServer();
+		}
+	}
+
+	// Constants
+	private final static String OBJECT_NAME = "domainhealth:Type=PipelineInstrumentation,Name=DomainHealth";
+	private final static String RUNTIME_MBEAN_SERVER_JNDI = "java:comp/env/jmx/runtime";
+}
@@ -0,0 +1,80 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.instrumentation;
+
+/**
+ * Management interface of the DomainHealth capture pipeline instrumentation
+ * MBean, exposing the latency histograms of each stage of the pipeline.
+ * Latencies are in microseconds.
+ */
+public interface PipelineInstrumentationStatsMBean {
+	/**
+	 * Indicates whether timings are being recorded
+	 * 
+	 * @return True if enabled
+	 */
+	public boolean isEnabled();
+
+	/**
+	 * Turn recording of timings on or off
+	 * 
+	 * @param enabled True to record timings
+	 */
+	public void setEnabled(boolean enabled);
+
+	/**
+	 * Returns the names of the stages timed so far
+	 * 
+	 * @return The stage names
+	 */
+	public String[] getStageNames();
+
+	/**
+	 * Returns a summary line (count, mean, p50, p90, p99, max) per stage
+	 * 
+	 * @return The stage summaries
+	 */
+	public String[] getStageSummaries();
+
+	/**
+	 * Returns a summary line (count, mean, p50, p90, p99, max) per stage 
+	 * detail (eg. per JMX attribute of each MBean type)
+	 * 
+	 * @return The stage detail summaries
+	 */
+	public String[] getDetailSummaries();
+
+	/**
+	 * Returns the summary of one stage
+	 * 
+	 * @param stage The stage name
+	 * @return The stage summary (or null if the stage has not been timed)
+	 */
+	public String getStageSummary(String stage);
+
+	/**
+	 * Returns the latency of a stage at the given percentile
+	 * 
+	 * @param stage The stage name
+	 * @param percentile The percentile (eg. 99.0)
+	 * @return The latency in microseconds (0 if the stage has not been timed)
+	 */
+	public long getStageLatencyAtPercentile(String stage, double percentile);
+
+	/**
+	 * Clear every stage's recorded timings
+	 */
+	public void reset();
+}
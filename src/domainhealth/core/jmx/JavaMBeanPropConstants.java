@@ -68,5 +68,16 @@ public interface JavaMBeanPropConstants {
 	public final static String J_CUR_TOTAL_THREAD_COUNT 	= "Thread.TotalCurCount";
 	public final static String J_TOTAL_STARTED_THREAD_COUNT ="Thread.TotalStartedCount";
 
+	/*
+	 * Metric ID's of the per garbage collector and per memory pool JVM
+	 * sub-resources (memory sizes in whole KiloBytes).
+	 */
+	public final static String J_GC_COLLECTION_COUNT	= "GC.CollectionCount";
+	public final static String J_GC_COLLECTION_TIME	= "GC.CollectionTime";
+
+	public final static String J_MEMPOOL_COMMITTED_KB	= "MemPool.CommittedKB";
+	public final static String J_MEMPOOL_MAX_KB		= "MemPool.MaxKB";
+	public final static String J_MEMPOOL_USED_KB		= "MemPool.UsedKB";
+
 
 }
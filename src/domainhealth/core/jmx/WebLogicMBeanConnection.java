@@ -17,8 +17,10 @@ package domainhealth.core.jmx;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.MBeanServer;
 import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
@@ -32,6 +34,7 @@ import javax.naming.NamingException;
 
 import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
 import domainhealth.core.env.AppLog;
+import domainhealth.core.instrumentation.PipelineInstrumentation;
 
 
 /**
@@ -108,12 +111,22 @@ public class WebLogicMBeanConnection {
 	 * access method relies on the calling Java application code thread having 
 	 * already authenticated with the underlying container (eg. using a 
 	 * WebLogic servlet authentication API, WebLogic's doAs() security API or
-	 * a Servlet's run-as or init-as deployment descriptor setting).
+	 * a Servlet's run-as or init-as deployment descriptor setting). If an 
+	 * in-process MBean server has been set, that is used instead.
 	 * 
 	 * @param serviceName The particular MBean Tree service to lookup (eg. ServerService, DomainService, EditService) 
 	 * @throws WebLogicMBeanException Indicates that a JMX connection to server could not be made
 	 */
 	protected WebLogicMBeanConnection(String serviceName) throws WebLogicMBeanException {
+		MBeanServerConnection inProcessConn = inProcessMBeanServer;
+
+		if (inProcessConn != null) {
+			jmxConnector = null;
+			conn = inProcessConn;
+			connectionDescription = CONN_IN_PROCESS_DESC;
+			return;
+		}
+
 		try {
 			MBeanServerConnection localConn = getCachedLocalConn();
 			ObjectName serverRuntime = (ObjectName) localConn.getAttribute(serverRuntimeServiceMBean, SERVER_RUNTIME);
@@ -139,7 +152,7 @@ public class WebLogicMBeanConnection {
 	 */
 	public static boolean isThisTheAdminServer() throws WebLogicMBeanException {		
 		try {
-			MBeanServerConnection localConn = getCachedLocalConn();
+			MBeanServerConnection localConn = (inProcessMBeanServer != null) ? inProcessMBeanServer : getCachedLocalConn();
 			ObjectName serverRuntime = (ObjectName) localConn.getAttribute(serverRuntimeServiceMBean, SERVER_RUNTIME);
 			return ((Boolean) localConn.getAttribute(serverRuntime, IS_ADMIN_SERVER)).booleanValue();
 		} catch (Exception e) {
@@ -147,6 +160,18 @@ public class WebLogicMBeanConnection {
 		}
 	}
 
+	/**
+	 * Makes every connection created from the local server's runtime 
+	 * settings use the given in-process MBean server instead of connecting 
+	 * remotely to the admin server (eg. a simulated WebLogic domain, to load
+	 * test the statistics capture without a real domain).
+	 * 
+	 * @param mbeanServer The in-process MBean server (null to connect to the admin server again)
+	 */
+	public static void setInProcessMBeanServer(MBeanServerConnection mbeanServer) {
+		inProcessMBeanServer = mbeanServer;
+	}
+
 	/**
 	 * Locate the server runtime mbean from the local jndi tree and cache it 
 	 * for future use. Unfortunately, there are two different JNDI mappings
@@ -231,7 +256,37 @@ public class WebLogicMBeanConnection {
 	 */
 	public Object getObjectAttr(ObjectName mBean, String attr) throws WebLogicMBeanException {
 		try {
-			return conn.getAttribute(mBean, attr);		
+			return getAttribute(mBean, attr);		
+		} catch (Exception e) {
+			throw new WebLogicMBeanException(e.toString(), e);
+		}
+	}
+
+	/**
+	 * Gets a set of named properties from the given MBean in one JMX call.
+	 * 
+	 * @param mBean The MBean to query the properties from
+	 * @param attrs The properties of the MBean to retrieve the values from
+	 * @return The values of the properties, in the same order as the property names (null for any property which could not be retrieved)
+	 * @throws WebLogicMBeanException Indicates that a JMX connection error occurred
+	 */
+	public Object[] getAttrs(ObjectName mBean, String[] attrs) throws WebLogicMBeanException {
+		try {
+			AttributeList attrList = getAttributes(mBean, attrs);
+			Object[] values = new Object[attrs.length];
+			
+			for (Object item : attrList) {
+				Attribute attribute = (Attribute) item;
+				
+				for (int i = 0; i < attrs.length; i++) {
+					if (attrs[i].equals(attribute.getName())) {
+						values[i] = attribute.getValue();
+						break;
+					}
+				}
+			}
+			
+			return values;
 		} catch (Exception e) {
 			throw new WebLogicMBeanException(e.toString(), e);
 		}
@@ -263,7 +318,7 @@ public class WebLogicMBeanConnection {
 	 */
 	public String getTextAttr(ObjectName mBean, String attr) throws WebLogicMBeanException {
 		try {
-			return (String) conn.getAttribute(mBean, attr);		
+			return (String) getAttribute(mBean, attr);		
 		} catch (Exception e) {
 			throw new WebLogicMBeanException(e.toString(), e);
 		}
@@ -295,7 +350,7 @@ public class WebLogicMBeanConnection {
 	 */
 	public double getNumberAttr(ObjectName mBean, String attr) throws WebLogicMBeanException {
 		try {
-			Object number = conn.getAttribute(mBean, attr);
+			Object number = getAttribute(mBean, attr);
 			
 			if (number instanceof Double) {
 				return ((Double)number).doubleValue();				
@@ -351,7 +406,7 @@ public class WebLogicMBeanConnection {
 	 */
 	public boolean getBooleanAttr(ObjectName mBean, String attr) throws WebLogicMBeanException {
 		try {
-			return (Boolean) conn.getAttribute(mBean, attr);		
+			return (Boolean) getAttribute(mBean, attr);		
 		} catch (Exception e) {
 			throw new WebLogicMBeanException(e.toString(), e);
 		}
@@ -383,7 +438,7 @@ public class WebLogicMBeanConnection {
 	 */
 	public ObjectName getChild(ObjectName mBean, String attr) throws WebLogicMBeanException {
 		try {
-			return (ObjectName) conn.getAttribute(mBean, attr);		
+			return (ObjectName) getAttribute(mBean, attr);		
 		} catch (Exception e) {
 			throw new WebLogicMBeanException(e.toString(), e);
 		}
@@ -399,7 +454,7 @@ public class WebLogicMBeanConnection {
 	 */	
 	public ObjectName[] getChildren(ObjectName mBean, String attr) throws WebLogicMBeanException {
 		try {
-			return (ObjectName[]) conn.getAttribute(mBean, attr);		
+			return (ObjectName[]) getAttribute(mBean, attr);		
 		} catch (Exception e) {
 			throw new WebLogicMBeanException(e.toString(), e);
 		}
@@ -435,7 +490,7 @@ public class WebLogicMBeanConnection {
 	 */
 	public Object invoke(ObjectName mBean, String operationName, Object[] params, String[] signature) throws WebLogicMBeanException {
 		try {
-			return conn.invoke(mBean, operationName, params, signature);		
+			return invokeOperation(mBean, operationName, params, signature);		
 		} catch (Exception e) {
 			throw new WebLogicMBeanException(e.toString(), e);
 		}		
@@ -452,13 +507,111 @@ public class WebLogicMBeanConnection {
 	 */
 	public Object invoke(ObjectName mBean, String operationName) throws WebLogicMBeanException {
 		try {
-			return conn.invoke(mBean, operationName, null ,null);		
+			return invokeOperation(mBean, operationName, null, null);		
 		} catch (Exception e) {
 			throw new WebLogicMBeanException(e.toString(), e);
 		}		
 	}
 
 
+	/**
+	 * Gets a property from the given MBean, timing the call against the 
+	 * MBean's type and the property name.
+	 * 
+	 * @param mBean The MBean to query the property from
+	 * @param attr The property of the MBean to retrieve the value from
+	 * @return The value of the property
+	 * @throws Exception Indicates that a JMX connection error occurred
+	 */
+	private Object getAttribute(ObjectName mBean, String attr) throws Exception {
+		long startNanos = PipelineInstrumentation.startTiming();
+
+		try {
+			return conn.getAttribute(mBean, attr);
+		} finally {
+			recordJMXTiming(mBean, attr, startNanos);
+		}
+	}
+
+	/**
+	 * Gets a set of properties from the given MBean, timing the call against 
+	 * the MBean's type.
+	 * 
+	 * @param mBean The MBean to query the properties from
+	 * @param attrs The properties of the MBean to retrieve the values from
+	 * @return The retrieved property values
+	 * @throws Exception Indicates that a JMX connection error occurred
+	 */
+	private AttributeList getAttributes(ObjectName mBean, String[] attrs) throws Exception {
+		long startNanos = PipelineInstrumentation.startTiming();
+
+		try {
+			return conn.getAttributes(mBean, attrs);
+		} finally {
+			recordJMXTiming(mBean, BULK_ATTRS_TIMING_NAME, startNanos);
+		}
+	}
+
+	/**
+	 * Invokes a named operation on the given MBean, timing the call against 
+	 * the MBean's type and the operation name.
+	 * 
+	 * @param mBean The MBean to invoke the operation on
+	 * @param operationName The name of the operation to invoke
+	 * @param params The parameters to pass to the operation
+	 * @param signature The signature of the parameters
+	 * @return The result returned by the mbean operation
+	 * @throws Exception Indicates that a JMX connection error occurred
+	 */
+	private Object invokeOperation(ObjectName mBean, String operationName, Object[] params, String[] signature) throws Exception {
+		long startNanos = PipelineInstrumentation.startTiming();
+
+		try {
+			return conn.invoke(mBean, operationName, params, signature);
+		} finally {
+			recordJMXTiming(mBean, operationName, startNanos);
+		}
+	}
+
+	/**
+	 * Records the time taken by a call to the given MBean against the MBean's
+	 * type and the call's detail, if instrumentation was enabled when the 
+	 * call started (so no stage name is looked up otherwise).
+	 * 
+	 * @param mBean The MBean called
+	 * @param detail The property or operation name called
+	 * @param startNanos The start time from PipelineInstrumentation.startTiming()
+	 */
+	private void recordJMXTiming(ObjectName mBean, String detail, long startNanos) {
+		if (startNanos != 0) {
+			PipelineInstrumentation.recordTiming(getJMXStage(mBean), detail, startNanos);
+		}
+	}
+
+	/**
+	 * Returns the instrumentation stage name of calls to the given MBean, 
+	 * which is built once per MBean type.
+	 * 
+	 * @param mBean The MBean being called
+	 * @return The stage name (eg. "jmx_ServerRuntime")
+	 */
+	private String getJMXStage(ObjectName mBean) {
+		String type = mBean.getKeyProperty(TYPE_KEY);
+
+		if (type == null) {
+			type = UNKNOWN_MBEAN_TYPE;
+		}
+
+		String stage = jmxStages.get(type);
+
+		if (stage == null) {
+			stage = PipelineInstrumentation.JMX_STAGE_PREFIX + type.replace('.', '_');
+			jmxStages.put(type, stage);
+		}
+
+		return stage;
+	}
+
 	/**
 	 * See if the JMX server has a MBean with a given them and if so return 
 	 * its object name.
@@ -485,6 +638,10 @@ public class WebLogicMBeanConnection {
 	 * Close the JMX Connector and associated JMX MBeanServer connection
 	 */
 	public void close() {
+		if (jmxConnector == null) {
+			return;
+		}
+
 		try {
 			jmxConnector.close();
 		} catch (Exception e) {
@@ -524,11 +681,17 @@ public class WebLogicMBeanConnection {
 	private static final String CONN_URL_TMPLTE = CONNECTION_DESC_PREFIX + "()";
 	private static final String CONN_DESC_TMPLTE = CONNECTION_DESC_PREFIX + "(%s://%s:%s)";
 	private static final String CONN_USR_DESC_TMPLTE = CONN_DESC_TMPLTE + ";username=%s)";
+	private static final String CONN_IN_PROCESS_DESC = CONNECTION_DESC_PREFIX + "(in-process)";
 	private static final String WEBLOGIC_PROVIDER_PACKAGES = "weblogic.management.remote";
 	private static final String WEBLOGIC_INSECURE_REMOTE_PROTOCOL = "t3";
 	private static final String WEBLOGIC_SECURE_REMOTE_PROTOCOL = "t3s";
 	private static final String[] LOCAL_SERVER_RUNTIME_MBEAN_JNDI_LOOKUPS = {"java:comp/env/jmx/runtime", "java:comp/jmx/runtime"};
+	private static final String TYPE_KEY = "Type";
+	private static final String UNKNOWN_MBEAN_TYPE = "Unknown";
+	private static final String BULK_ATTRS_TIMING_NAME = "Attributes";
 	private static volatile MBeanServerConnection cachedLocalConn = null;
+	private static final Map<String, String> jmxStages = new ConcurrentHashMap<String, String>();
+	private static volatile MBeanServerConnection inProcessMBeanServer = null;
 	private static final ObjectName serverRuntimeServiceMBean;
 
 	static {
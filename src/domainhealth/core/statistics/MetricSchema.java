@@ -0,0 +1,636 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import domainhealth.core.env.AppLog;
+import domainhealth.core.env.AppProperties.PropKey;
+
+import static domainhealth.core.jmx.JavaMBeanPropConstants.*;
+import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+/**
+ * An immutable, versioned set of the MBean attribute lists which should be 
+ * captured for each resource type, derived from a metric deep set ("basic",
+ * "extended" or "full") optionally narrowed to selected attributes per 
+ * resource type, along with the filter deciding which servers and resources
+ * are captured. The schema in use can be swapped at runtime (eg. 
+ * when the DomainHealth config file changes) without redeploying: each 
+ * capture takes the current schema when it starts and uses that same schema
+ * until it finishes, so a swap takes effect from the next capture cycle and
+ * never mixes two schemas' columns in one row. Anything derived from a 
+ * schema (CSV header lines, WLDF queries, etc) should be cached against the 
+ * schema it was derived from, and rebuilt when the current schema changes.
+ * 
+ * The attribute list arrays returned are shared and must not be modified.
+ */
+public final class MetricSchema {
+	/**
+	 * Creates a new schema, with a new version number, for a metric deep set.
+	 * 
+	 * @param metricDeepSet The metric deep set ("basic", "extended" or "full")
+	 * @return The new schema (not yet installed as the current schema)
+	 */
+	public static MetricSchema create(String metricDeepSet) {
+		return create(metricDeepSet, null, new ResourceFilter());
+	}
+
+	/**
+	 * Creates a new schema, with a new version number, for a metric deep set
+	 * narrowed to the attributes selected per resource type, with a filter
+	 * of the servers and resources to capture.
+	 * 
+	 * @param metricDeepSet The metric deep set ("basic", "extended" or "full")
+	 * @param attributeSetText The attributes selected per resource type (eg. "datasource:NumAvailable|ActiveConnectionsCurrentCount"), or null for all
+	 * @param resourceFilter The filter of the servers and resources to capture
+	 * @return The new schema (not yet installed as the current schema)
+	 */
+	public static MetricSchema create(String metricDeepSet, String attributeSetText, ResourceFilter resourceFilter) {
+		return new MetricSchema(VERSION_SEQUENCE.incrementAndGet(), metricDeepSet, attributeSetText, resourceFilter);
+	}
+
+	/**
+	 * Creates a new schema, with a new version number, from the metric 
+	 * settings of a set of DomainHealth properties (deep set, attribute set,
+	 * component blacklist and the resource and server include/exclude rules).
+	 * 
+	 * @param metricProps The properties holding the metric settings
+	 * @return The new schema (not yet installed as the current schema)
+	 */
+	public static MetricSchema create(Properties metricProps) {
+		ResourceFilter resourceFilter = new ResourceFilter(metricProps.getProperty(PropKey.COMPONENT_BLACKLIST_PROP.toString()), 
+				metricProps.getProperty(PropKey.RESOURCE_INCLUDE_PROP.toString()), metricProps.getProperty(PropKey.RESOURCE_EXCLUDE_PROP.toString()), 
+				metricProps.getProperty(PropKey.SERVER_INCLUDE_PROP.toString()), metricProps.getProperty(PropKey.SERVER_EXCLUDE_PROP.toString()));
+		return create(metricProps.getProperty(PropKey.METRIC_DEEP_SET_PROP.toString()), metricProps.getProperty(PropKey.METRIC_ATTRIBUTE_SET_PROP.toString()), resourceFilter);
+	}
+
+	/**
+	 * Gets the schema currently in use.
+	 * 
+	 * @return The current schema (the "full" set if none has been installed yet)
+	 */
+	public static MetricSchema getCurrent() {
+		MetricSchema schema = currentSchema.get();
+
+		if (schema == null) {
+			currentSchema.compareAndSet(null, create(DEFAULT_METRIC_DEEP_SET));
+			schema = currentSchema.get();
+		}
+
+		return schema;
+	}
+
+	/**
+	 * Atomically makes a schema the current schema. Captures already running
+	 * carry on with the schema they started with.
+	 * 
+	 * @param schema The schema to install
+	 * @return The schema which was current until now (or null if none)
+	 */
+	public static MetricSchema install(MetricSchema schema) {
+		if (schema == null) {
+			throw new IllegalArgumentException("Metric schema must not be null");
+		}
+
+		return currentSchema.getAndSet(schema);
+	}
+
+	/**
+	 * Private constructor which derives every attribute list from the metric
+	 * deep set.
+	 * 
+	 * @param version The schema version number
+	 * @param metricDeepSet The metric deep set ("basic", "extended" or "full")
+	 * @param attributeSetText The attributes selected per resource type, or null for all
+	 * @param resourceFilter The filter of the servers and resources to capture
+	 */
+	private MetricSchema(int version, String metricDeepSet, String attributeSetText, ResourceFilter resourceFilter) {
+		this.version = version;
+		this.metricDeepSet = ((metricDeepSet != null) && (metricDeepSet.trim().length() > 0)) ? metricDeepSet.trim() : DEFAULT_METRIC_DEEP_SET;
+		this.attributeSetText = (attributeSetText != null) ? attributeSetText.trim() : "";
+		this.resourceFilter = (resourceFilter != null) ? resourceFilter : new ResourceFilter();
+		
+		if ((this.metricDeepSet.equalsIgnoreCase("basic")) || (this.metricDeepSet.equalsIgnoreCase("extended"))) {
+			//jvm
+			classLoadingAttrs	= new String[] {J_CURRENT_LOADED_CLASS_COUNT,J_TOTAL_LOADED_CLASS_COUNT,J_TOTAL_UNLOADED_CLASS_COUNT};
+			compilationAttrs	= new String[] {J_TOTAL_COMPILATION_TIME_CLASS};
+			garbageCollectorAttrs	= new String[] {J_OLD_COLLECTION_COUNT,J_OLD_COLLECTION_TIME,J_YOUNG_COLLECTION_COUNT,J_YOUNG_COLLECTION_TIME};
+			memoryAttrs		= new String[] {J_HEAP_COMMITTED,J_HEAP_INIT,J_HEAP_MAX,J_HEAP_USED,J_NOT_HEAP_COMMITTED,J_NOT_HEAP_INIT,J_NOT_HEAP_MAX,J_NOT_HEAP_USED };
+			memoryPoolAttrs		= new String[] {J_MEMPOOL_CM_COMMITTED,J_MEMPOOL_CM_INIT,J_MEMPOOL_CM_MAX,J_MEMPOOL_CM_USED,J_MEMPOOL_CB_COMMITTED,J_MEMPOOL_CB_INIT,J_MEMPOOL_CB_MAX,J_MEMPOOL_CB_USED,J_MEMPOOL_NURSERY_COMMITTED,J_MEMPOOL_NURSERY_INIT,J_MEMPOOL_NURSERY_MAX,J_MEMPOOL_NURSERY_USED,J_MEMPOOL_OLD_COMMITTED,J_MEMPOOL_OLD_INIT,J_MEMPOOL_OLD_MAX,J_MEMPOOL_OLD_USED };
+			threadAttrs		= new String[] {J_CUR_DAEMON_THREAD_COUNT,J_CUR_NON_DAEMON_THREAD_COUNT,J_CUR_TOTAL_THREAD_COUNT,J_TOTAL_STARTED_THREAD_COUNT };
+			//core
+			serverAttrs		= new String[] {SERVER_STATE,OPEN_SOCKETS};
+			jvmAttrs		= new String[] {HEAP_SIZE_CURRENT, HEAP_FREE_CURRENT,HEAP_FREE_PERCENT}; //can not change this !!
+			jvmHeaderAttrs		= new String[] {HEAP_SIZE_CURRENT, HEAP_FREE_CURRENT,HEAP_USED_CURRENT,HEAP_FREE_PERCENT}; //can not change this !!
+			jrockitAttrs		= new String[] {JVM_PROCESSOR_LOAD,TOTAL_GC_COUNT,TOTAL_GC_TIME,TOTAL_NURSERY_SIZE,HEAP_SIZE_MAX};
+			threadPoolAttrs		= new String[] {EXECUTE_THREAD_TOTAL_COUNT,HOGGING_THREAD_COUNT,EXECUTE_THREAD_IDLE_COUNT,STANDBY_THREAD_COUNT,THROUGHPUT};
+			jtaAttrs		= new String[] {TRANSACTION_TOTAL_COUNT, TRANSACTION_ROLLEDBACK_COUNT};
+			//jdbc
+			jdbcAttrs		= new String[] {NUM_AVAILABLE,ACTIVE_CONNECTONS_CURRENT_COUNT, CONNECTION_DELAY_TIME,WAITING_FOR_CONNECTION_CURRENT_COUNT};
+			//jms
+			jmsDestinationAttrs	= new String[] {MESSAGES_CURRENT_COUNT, MESSAGES_PENDING_COUNT, CONSUMERS_CURRENT_COUNT};
+			//webapp
+			webAppAttrs		= new String[] {SESSIONS_TOTAL_COUNT};
+			//ejb 
+			ejbPoolAttrs		= new String[] {BEAN_ACCESS_TOTAL_COUNT, BEANS_INUSE_CURRENT_COUNT, BEAN_WAITING_TOTAL_COUNT};
+			ejbTransactionAttrs	= new String[] {BEAN_TRANSACTIONS_ROLLEDBACK_TOTAL_COUNT};
+			//wkmgr
+			workManagerAttrs	= new String[] {COMPLETED_REQUESTS, PENDING_REQUESTS};
+			//srvch_list	
+			serverChannelAttrs	= new String[] {CONNECTIONS_COUNT, CHNL_MESSAGES_RECEIVED_COUNT};
+			//host
+			hostMachineAttrs	= new String[] {NETWORK_RX_ERRORS, NETWORK_RX_MEGABYTES, NETWORK_TX_MEGABYTES, NETWORK_TX_ERRORS, PHYSICAL_MEMORY_USED_PERCENT, PHYSICAL_SWAP_USED_PERCENT, PROCESSOR_LAST_MINUTE_WORKLOAD_AVERAGE, PROCESSOR_USAGE_PERCENT};
+		} else {
+			//jvm
+			classLoadingAttrs	= new String[] {J_CURRENT_LOADED_CLASS_COUNT,J_TOTAL_LOADED_CLASS_COUNT,J_TOTAL_UNLOADED_CLASS_COUNT};
+			compilationAttrs	= new String[] {J_TOTAL_COMPILATION_TIME_CLASS};
+			garbageCollectorAttrs	= new String[] {J_OLD_COLLECTION_COUNT,J_OLD_COLLECTION_TIME,J_YOUNG_COLLECTION_COUNT,J_YOUNG_COLLECTION_TIME};
+			memoryAttrs		= new String[] {J_HEAP_COMMITTED,J_HEAP_INIT,J_HEAP_MAX,J_HEAP_USED,J_NOT_HEAP_COMMITTED,J_NOT_HEAP_INIT,J_NOT_HEAP_MAX,J_NOT_HEAP_USED };
+			memoryPoolAttrs		= new String[] {J_MEMPOOL_CM_COMMITTED,J_MEMPOOL_CM_INIT,J_MEMPOOL_CM_MAX,J_MEMPOOL_CM_USED,J_MEMPOOL_CB_COMMITTED,J_MEMPOOL_CB_INIT,J_MEMPOOL_CB_MAX,J_MEMPOOL_CB_USED,J_MEMPOOL_NURSERY_COMMITTED,J_MEMPOOL_NURSERY_INIT,J_MEMPOOL_NURSERY_MAX,J_MEMPOOL_NURSERY_USED,J_MEMPOOL_OLD_COMMITTED,J_MEMPOOL_OLD_INIT,J_MEMPOOL_OLD_MAX,J_MEMPOOL_OLD_USED };
+			threadAttrs		= new String[] {J_CUR_DAEMON_THREAD_COUNT,J_CUR_NON_DAEMON_THREAD_COUNT,J_CUR_TOTAL_THREAD_COUNT,J_TOTAL_STARTED_THREAD_COUNT };
+			//core
+			serverAttrs		= new String[] {SERVER_STATE, OPEN_SOCKETS};
+			//jvm has diferent atributes for WLDF harvester module and for final header line becouse of we are generating HEAP_USED_CURRENT 
+			jvmAttrs		= new String[] {HEAP_SIZE_CURRENT, HEAP_FREE_CURRENT, HEAP_FREE_PERCENT};
+			jvmHeaderAttrs		= new String[] {HEAP_SIZE_CURRENT, HEAP_FREE_CURRENT,HEAP_USED_CURRENT, HEAP_FREE_PERCENT};
+			jrockitAttrs		= new String[] {JVM_PROCESSOR_LOAD,TOTAL_GC_COUNT,TOTAL_GC_TIME,TOTAL_NURSERY_SIZE,HEAP_SIZE_MAX};	
+			threadPoolAttrs		= new String[] {EXECUTE_THREAD_TOTAL_COUNT, HOGGING_THREAD_COUNT, PENDING_USER_REQUEST_COUNT, THREAD_POOL_QUEUE_LENGTH, COMPLETED_REQUEST_COUNT, EXECUTE_THREAD_IDLE_COUNT, MIN_THREADS_CONSTRAINT_COMPLETED, MIN_THREADS_CONSTRAINT_PENDING, STANDBY_THREAD_COUNT, THROUGHPUT};
+			jtaAttrs		= new String[] {TRANSACTION_TOTAL_COUNT, TRANSACTION_COMMITTED_COUNT, TRANSACTION_ROLLEDBACK_COUNT, TRANSACTION_HEURISTICS_TOTAL_COUNT, TRANSACTION_ABANDONED_TOTAL_COUNT, TRANSACTIONS_ACTIVE_TOTAL_COUNT};
+			//jdbc
+			jdbcAttrs		= new String[] { NUM_AVAILABLE, NUM_UNAVAILABLE, ACTIVE_CONNECTONS_CURRENT_COUNT, CONNECTION_DELAY_TIME, FAILED_RESERIVE_REQUEST_COUNT, FAILURES_TO_RECONNECT_COUNT, LEAKED_CONNECTION_COUNT, WAITING_FOR_CONNECTION_CURRENT_COUNT, WAITING_FOR_CONNECTION_FAILURES_TOTAL, WAITING_SECONDS_HIGH_COUNT};
+			//jms
+			jmsDestinationAttrs	= new String[] {MESSAGES_CURRENT_COUNT, MESSAGES_PENDING_COUNT, MESSAGES_RECEIVED_COUNT, MESSAGES_HIGH_COUNT, CONSUMERS_CURRENT_COUNT, CONSUMERS_HIGH_COUNT, CONSUMERS_TOTAL_COUNT};
+			//webapp
+			webAppAttrs		= new String[] {SESSIONS_CURRENT_COUNT, SESSIONS_HIGH_COUNT, SESSIONS_TOTAL_COUNT};
+			//ejb
+			ejbPoolAttrs		= new String[] {BEANS_POOLED_CURRENT_COUNT, BEAN_ACCESS_TOTAL_COUNT, BEANS_INUSE_CURRENT_COUNT, BEAN_WAITING_CURRENT_COUNT, BEAN_WAITING_TOTAL_COUNT};
+			ejbTransactionAttrs	= new String[] {BEAN_TRANSACTIONS_COMMITTED_TOTAL_COUNT, BEAN_TRANSACTIONS_ROLLEDBACK_TOTAL_COUNT, BEAN_TRANSACTIONS_TIMEDOUT_TOTAL_COUNT};
+			//wkmgr
+			workManagerAttrs	= new String[] {COMPLETED_REQUESTS, PENDING_REQUESTS, STUCK_THREAD_COUNT};
+			//srvch_list
+			serverChannelAttrs	= new String[] {ACCEPT_COUNT, CONNECTIONS_COUNT, CHNL_MESSAGES_RECEIVED_COUNT, CHNL_MESSAGES_SENT_COUNT};
+			//host_list
+			hostMachineAttrs	= new String[] {JVM_INSTANCE_CORES_USED, JVM_INSTANCE_PHYSICAL_MEMORY_USED_MEGABYTES, NATIVE_PROCESSES_COUNT, NETWORK_RX_MEGABYTES, NETWORK_RX_DROPPED, NETWORK_RX_ERRORS, NETWORK_RX_FRAME, NETWORK_RX_OVERRUNS, NETWORK_MILLIONS_RX_PACKETS, NETWORK_TX_MEGABYTES, NETWORK_TX_CARRIER, NETWORK_TX_COLLISIONS,NETWORK_TX_DROPPED, NETWORK_TX_ERRORS, NETWORK_TX_OVERRUNS, NETWORK_MILLIONS_TX_PACKETS, PHYSICAL_MEMORY_USED_PERCENT, PHYSICAL_SWAP_USED_PERCENT, PROCESSOR_LAST_MINUTE_WORKLOAD_AVERAGE, PROCESSOR_USAGE_PERCENT, ROOT_FILESYSTEM_USED_PERCENT, TCP_CLOSE_WAIT_COUNT, TCP_ESTABLISHED_COUNT, TCP_LISTEN_COUNT, TCP_TIME_WAIT_COUNT};
+		}
+
+		//narrow the resource type lists to any attributes selected for them
+		Map<String, List<String>> attributeSelections = parseAttributeSetText(this.attributeSetText);
+		List<String> selectedTypes = new ArrayList<String>();
+		jdbcAttrs = selectAttrs(DATASOURCE_RESOURCE_TYPE, jdbcAttrs, attributeSelections, selectedTypes);
+		jmsDestinationAttrs = selectAttrs(DESTINATION_RESOURCE_TYPE, jmsDestinationAttrs, attributeSelections, selectedTypes);
+		webAppAttrs = selectAttrs(WEBAPP_RESOURCE_TYPE, webAppAttrs, attributeSelections, selectedTypes);
+		ejbPoolAttrs = selectAttrs(EJB_RESOURCE_TYPE, ejbPoolAttrs, attributeSelections, selectedTypes);
+		ejbTransactionAttrs = selectAttrs(EJB_RESOURCE_TYPE, ejbTransactionAttrs, attributeSelections, selectedTypes);
+		workManagerAttrs = selectAttrs(WORKMGR_RESOURCE_TYPE, workManagerAttrs, attributeSelections, selectedTypes);
+		serverChannelAttrs = selectAttrs(SVRCHNL_RESOURCE_TYPE, serverChannelAttrs, attributeSelections, selectedTypes);
+		hostMachineAttrs = selectAttrs(HOSTMACHINE_RESOURCE_TYPE, hostMachineAttrs, attributeSelections, selectedTypes);
+
+		for (Map.Entry<String, List<String>> selection : attributeSelections.entrySet()) {
+			if (!selectedTypes.contains(selection.getKey())) {
+				AppLog.getLogger().warning("None of the attributes selected for resource type '" + selection.getKey() + "' " + selection.getValue() + " are captured by the '" + this.metricDeepSet + "' metric deep set - capturing them all");
+			}
+		}
+
+		jvmAllAttrs = MonitorProperties.ArrayConcatAll(classLoadingAttrs, compilationAttrs, garbageCollectorAttrs, memoryAttrs, memoryPoolAttrs, threadAttrs);
+		//jvm sub-resources (one per garbage collector and per memory pool)
+		gcResourceAttrs = new String[] {J_GC_COLLECTION_COUNT, J_GC_COLLECTION_TIME};
+		memPoolResourceAttrs = new String[] {J_MEMPOOL_USED_KB, J_MEMPOOL_COMMITTED_KB, J_MEMPOOL_MAX_KB};
+		//used only to create header line on csv files
+		coreAllAttrs = MonitorProperties.ArrayConcatAll(serverAttrs, jvmHeaderAttrs, jrockitAttrs, threadPoolAttrs, jtaAttrs);
+		//needed for harvester
+		jrockitFullAttrs = MonitorProperties.ArrayConcat(jvmAttrs, jrockitAttrs);
+		ejbAttrs = MonitorProperties.ArrayConcat(ejbPoolAttrs, ejbTransactionAttrs);
+	}
+
+	/**
+	 * Parses the attributes selected per resource type, from a comma 
+	 * separated list of resource types, each suffixed with ':' and a '|' 
+	 * separated list of attribute names (eg. "datasource:NumAvailable|
+	 * ActiveConnectionsCurrentCount,webapp:SessionsCurrentCount"). Only the
+	 * datasource, destination, webapp, ejb, workmgr, svrchnl and hostmachine
+	 * resource types can be narrowed, as the other types' columns are fixed.
+	 * 
+	 * @param attributeSetText The attribute set text
+	 * @return The lower-cased attribute names selected, keyed by resource type
+	 */
+	private static Map<String, List<String>> parseAttributeSetText(String attributeSetText) {
+		Map<String, List<String>> attributeSelections = new HashMap<String, List<String>>();
+
+		for (String typeEntry : attributeSetText.split(TYPE_TOKENIZER_PATTERN)) {
+			if (typeEntry.trim().length() <= 0) {
+				continue;
+			}
+
+			int separatorPos = typeEntry.indexOf(ATTRS_SEPARATOR);
+			String type = (separatorPos >= 0) ? typeEntry.substring(0, separatorPos).trim().toLowerCase() : "";
+			type = type.equals(JMS_DESTINATION_METRIC_TYPE) ? DESTINATION_RESOURCE_TYPE : type;
+
+			if (!SELECTABLE_RESOURCE_TYPES.contains(type)) {
+				AppLog.getLogger().warning("Ignoring attribute selection '" + typeEntry + "' - must be <type>:<attribute>|<attribute>... where type is one of " + SELECTABLE_RESOURCE_TYPES);
+				continue;
+			}
+
+			List<String> attrs = new ArrayList<String>();
+
+			for (String attr : typeEntry.substring(separatorPos + 1).split(ATTR_TOKENIZER_PATTERN)) {
+				if (attr.trim().length() > 0) {
+					attrs.add(attr.trim().toLowerCase());
+				}
+			}
+
+			attributeSelections.put(type, attrs);
+		}
+
+		return attributeSelections;
+	}
+
+	/**
+	 * Narrows a resource type's attribute list to the attributes selected for
+	 * the type, keeping the list's own order. If no attributes are selected 
+	 * for the type, or none of those selected are in the list, the whole list
+	 * is kept (an MBean type must have at least one attribute to harvest).
+	 * 
+	 * @param resourceType The resource type
+	 * @param attrs The type's attribute list for the metric deep set
+	 * @param attributeSelections The attributes selected, keyed by resource type
+	 * @param selectedTypes The resource types whose lists have been narrowed so far, added to if this list is narrowed
+	 * @return The selected attributes
+	 */
+	private static String[] selectAttrs(String resourceType, String[] attrs, Map<String, List<String>> attributeSelections, List<String> selectedTypes) {
+		List<String> selection = attributeSelections.get(resourceType);
+
+		if (selection == null) {
+			return attrs;
+		}
+
+		List<String> selectedAttrs = new ArrayList<String>();
+
+		for (String attr : attrs) {
+			if (selection.contains(attr.toLowerCase())) {
+				selectedAttrs.add(attr);
+			}
+		}
+
+		if (selectedAttrs.isEmpty()) {
+			return attrs;
+		}
+
+		selectedTypes.add(resourceType);
+		return selectedAttrs.toArray(new String[selectedAttrs.size()]);
+	}
+
+	/**
+	 * Gets the version number of the schema, unique to each schema created 
+	 * by this application instance.
+	 * 
+	 * @return The schema version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the metric deep set the schema was derived from.
+	 * 
+	 * @return The metric deep set
+	 */
+	public String getMetricDeepSet() {
+		return metricDeepSet;
+	}
+
+	/**
+	 * Gets the attributes selected per resource type that the schema was 
+	 * derived from.
+	 * 
+	 * @return The attribute set text (empty if all attributes are captured)
+	 */
+	public String getAttributeSetText() {
+		return attributeSetText;
+	}
+
+	/**
+	 * Gets the filter deciding which servers and resources are captured.
+	 * 
+	 * @return The resource filter
+	 */
+	public ResourceFilter getResourceFilter() {
+		return resourceFilter;
+	}
+
+	/**
+	 * Determines whether another schema captures exactly the same attributes
+	 * of the same servers and resources as this one (eg. the "basic" and 
+	 * "extended" sets), in which case swapping one for the other would make 
+	 * no difference.
+	 * 
+	 * @param other The other schema
+	 * @return True if both schemas capture the same metrics; otherwise false
+	 */
+	public boolean hasSameMetricsAs(MetricSchema other) {
+		return (other != null) && (resourceFilter.hasSameRulesAs(other.resourceFilter)) && (Arrays.equals(jvmAllAttrs, other.jvmAllAttrs)) && (Arrays.equals(coreAllAttrs, other.coreAllAttrs)) && 
+			(Arrays.equals(jrockitFullAttrs, other.jrockitFullAttrs)) && (Arrays.equals(jdbcAttrs, other.jdbcAttrs)) && 
+			(Arrays.equals(jmsDestinationAttrs, other.jmsDestinationAttrs)) && (Arrays.equals(webAppAttrs, other.webAppAttrs)) && 
+			(Arrays.equals(ejbPoolAttrs, other.ejbPoolAttrs)) && (Arrays.equals(ejbTransactionAttrs, other.ejbTransactionAttrs)) && 
+			(Arrays.equals(workManagerAttrs, other.workManagerAttrs)) && (Arrays.equals(serverChannelAttrs, other.serverChannelAttrs)) && 
+			(Arrays.equals(hostMachineAttrs, other.hostMachineAttrs));
+	}
+
+	/**
+	 * Gets the java.lang ClassLoading MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getClassLoadingAttrs() {
+		return classLoadingAttrs;
+	}
+
+	/**
+	 * Gets the java.lang Compilation MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getCompilationAttrs() {
+		return compilationAttrs;
+	}
+
+	/**
+	 * Gets the java.lang GarbageCollector MBean attributes (old and young 
+	 * collectors)
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getGarbageCollectorAttrs() {
+		return garbageCollectorAttrs;
+	}
+
+	/**
+	 * Gets the java.lang Memory MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getMemoryAttrs() {
+		return memoryAttrs;
+	}
+
+	/**
+	 * Gets the java.lang MemoryPool MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getMemoryPoolAttrs() {
+		return memoryPoolAttrs;
+	}
+
+	/**
+	 * Gets the java.lang Threading MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getThreadAttrs() {
+		return threadAttrs;
+	}
+
+	/**
+	 * Gets every "jvm" resource type column, in CSV column order
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getJvmAllAttrs() {
+		return jvmAllAttrs;
+	}
+
+	/**
+	 * Gets the columns of each garbage collector "jvm" sub-resource
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getGCResourceAttrs() {
+		return gcResourceAttrs;
+	}
+
+	/**
+	 * Gets the columns of each memory pool "jvm" sub-resource
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getMemPoolResourceAttrs() {
+		return memPoolResourceAttrs;
+	}
+
+	/**
+	 * Gets the ServerRuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getServerAttrs() {
+		return serverAttrs;
+	}
+
+	/**
+	 * Gets the JVMRuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getJvmAttrs() {
+		return jvmAttrs;
+	}
+
+	/**
+	 * Gets the JRockitRuntime MBean attributes (excluding those in common 
+	 * with the JVMRuntime MBean)
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getJRockitAttrs() {
+		return jrockitAttrs;
+	}
+
+	/**
+	 * Gets all the JRockitRuntime MBean attributes to harvest
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getJRockitFullAttrs() {
+		return jrockitFullAttrs;
+	}
+
+	/**
+	 * Gets the ThreadPoolRuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getThreadPoolAttrs() {
+		return threadPoolAttrs;
+	}
+
+	/**
+	 * Gets the JTARuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getJtaAttrs() {
+		return jtaAttrs;
+	}
+
+	/**
+	 * Gets every "core" resource type column, in CSV column order
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getCoreAllAttrs() {
+		return coreAllAttrs;
+	}
+
+	/**
+	 * Gets the JDBCDataSourceRuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getJdbcAttrs() {
+		return jdbcAttrs;
+	}
+
+	/**
+	 * Gets the JMSDestinationRuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getJmsDestinationAttrs() {
+		return jmsDestinationAttrs;
+	}
+
+	/**
+	 * Gets the WebAppComponentRuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getWebAppAttrs() {
+		return webAppAttrs;
+	}
+
+	/**
+	 * Gets the EJBPoolRuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getEjbPoolAttrs() {
+		return ejbPoolAttrs;
+	}
+
+	/**
+	 * Gets the EJBTransactionRuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getEjbTransactionAttrs() {
+		return ejbTransactionAttrs;
+	}
+
+	/**
+	 * Gets every "ejb" resource type column, in CSV column order
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getEjbAttrs() {
+		return ejbAttrs;
+	}
+
+	/**
+	 * Gets the WorkManagerRuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getWorkManagerAttrs() {
+		return workManagerAttrs;
+	}
+
+	/**
+	 * Gets the ServerChannelRuntime MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getServerChannelAttrs() {
+		return serverChannelAttrs;
+	}
+
+	/**
+	 * Gets the WLHostMachineStats MBean attributes
+	 * 
+	 * @return The attribute names
+	 */
+	public String[] getHostMachineAttrs() {
+		return hostMachineAttrs;
+	}
+
+	/**
+	 * Returns a short description of the schema for logging.
+	 * 
+	 * @return The version and metric deep set
+	 */
+	public String toString() {
+		return "v" + version + " (" + metricDeepSet + ")";
+	}
+
+	// Members
+	private final int version;
+	private final String metricDeepSet;
+	private final String attributeSetText;
+	private final ResourceFilter resourceFilter;
+	private final String[] classLoadingAttrs;
+	private final String[] compilationAttrs;
+	private final String[] garbageCollectorAttrs;
+	private final String[] memoryAttrs;
+	private final String[] memoryPoolAttrs;
+	private final String[] threadAttrs;
+	private final String[] jvmAllAttrs;
+	private final String[] gcResourceAttrs;
+	private final String[] memPoolResourceAttrs;
+	private final String[] serverAttrs;
+	private final String[] jvmAttrs;
+	private final String[] jvmHeaderAttrs;
+	private final String[] jrockitAttrs;
+	private final String[] jrockitFullAttrs;
+	private final String[] threadPoolAttrs;
+	private final String[] jtaAttrs;
+	private final String[] coreAllAttrs;
+	private String[] jdbcAttrs;
+	private String[] jmsDestinationAttrs;
+	private String[] webAppAttrs;
+	private String[] ejbPoolAttrs;
+	private String[] ejbTransactionAttrs;
+	private final String[] ejbAttrs;
+	private String[] workManagerAttrs;
+	private String[] serverChannelAttrs;
+	private String[] hostMachineAttrs;
+
+	// Constants
+	private final static String DEFAULT_METRIC_DEEP_SET = "full";
+	private final static List<String> SELECTABLE_RESOURCE_TYPES = Arrays.asList(DATASOURCE_RESOURCE_TYPE, DESTINATION_RESOURCE_TYPE, WEBAPP_RESOURCE_TYPE, 
+			EJB_RESOURCE_TYPE, WORKMGR_RESOURCE_TYPE, SVRCHNL_RESOURCE_TYPE, HOSTMACHINE_RESOURCE_TYPE);
+	private final static String TYPE_TOKENIZER_PATTERN = ",\\s*";
+	private final static String ATTRS_SEPARATOR = ":";
+	private final static String ATTR_TOKENIZER_PATTERN = "\\|";
+	private final static AtomicInteger VERSION_SEQUENCE = new AtomicInteger(0);
+	private final static AtomicReference<MetricSchema> currentSchema = new AtomicReference<MetricSchema>();
+}
@@ -0,0 +1,151 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.statistics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import domainhealth.core.env.AppLog;
+
+/**
+ * The DomainHealth metric schema MBean, registered in the host server's 
+ * runtime MBean tree so that the metrics captured can be inspected and 
+ * changed with any JMX client (eg. WLST, JConsole).
+ */
+public class MetricSchemaAdmin implements MetricSchemaAdminMBean {
+	/**
+	 * Registers the metric schema MBean in the host server's runtime MBean
+	 * server (or the JVM's platform MBean server when not running in 
+	 * WebLogic). An MBean left registered by a previous deployment of the 
+	 * application (eg. after a redeploy where unregistering failed) is 
+	 * replaced, as it would hold the old deployment's reloader. Any failure
+	 * is logged but otherwise ignored, as capture can carry on without the 
+	 * MBean.
+	 * 
+	 * @param reloader The reloader to swap the metric schema with
+	 */
+	public static void register(MetricSchemaReloader reloader) {
+		try {
+			MBeanServer mbeanServer = getMBeanServer();
+			ObjectName objectName = new ObjectName(OBJECT_NAME);
+
+			if (mbeanServer.isRegistered(objectName)) {
+				AppLog.getLogger().notice("Replacing metric schema MBean left registered by a previous deployment: " + OBJECT_NAME);
+				mbeanServer.unregisterMBean(objectName);
+			}
+
+			mbeanServer.registerMBean(new MetricSchemaAdmin(reloader), objectName);
+			AppLog.getLogger().info("Registered metric schema MBean: " + OBJECT_NAME);
+		} catch (Exception e) {
+			AppLog.getLogger().warning("Unable to register metric schema MBean '" + OBJECT_NAME + "'. Reason: " + e.toString());
+		}
+	}
+
+	/**
+	 * Unregisters the metric schema MBean, if registered.
+	 */
+	public static void unregister() {
+		try {
+			MBeanServer mbeanServer = getMBeanServer();
+			ObjectName objectName = new ObjectName(OBJECT_NAME);
+
+			if (mbeanServer.isRegistered(objectName)) {
+				mbeanServer.unregisterMBean(objectName);
+			}
+		} catch (Exception e) {
+			AppLog.getLogger().warning("Unable to unregister metric schema MBean '" + OBJECT_NAME + "'. Reason: " + e.toString());
+		}
+	}
+
+	/**
+	 * Creates the MBean.
+	 * 
+	 * @param reloader The reloader to swap the metric schema with
+	 */
+	private MetricSchemaAdmin(MetricSchemaReloader reloader) {
+		this.reloader = reloader;
+	}
+
+	/**
+	 * Returns the version number of the current metric schema
+	 * 
+	 * @return The schema version
+	 */
+	public int getSchemaVersion() {
+		return MetricSchema.getCurrent().getVersion();
+	}
+
+	/**
+	 * Returns the metric deep set of the current metric schema
+	 * 
+	 * @return The metric deep set
+	 */
+	public String getMetricDeepSet() {
+		return MetricSchema.getCurrent().getMetricDeepSet();
+	}
+
+	/**
+	 * Changes the metric deep set, installing a new metric schema which takes
+	 * effect from the next capture cycle
+	 * 
+	 * @param metricDeepSet The metric deep set ("basic", "extended" or "full")
+	 */
+	public void setMetricDeepSet(String metricDeepSet) {
+		reloader.applyMetricDeepSet(metricDeepSet);
+	}
+
+	/**
+	 * Returns the path of the DomainHealth config file watched for changes
+	 * 
+	 * @return The config file path (or null if none)
+	 */
+	public String getConfigFile() {
+		return reloader.getConfigFilePath();
+	}
+
+	/**
+	 * Reloads the metric settings from the DomainHealth config file now
+	 * 
+	 * @return True if a new metric schema was installed
+	 */
+	public boolean reloadConfigFile() {
+		return reloader.reloadConfigFile();
+	}
+
+	/**
+	 * Returns the host server's runtime MBean server, or the platform MBean 
+	 * server if not running in WebLogic.
+	 * 
+	 * @return The MBean server to register in
+	 */
+	private static MBeanServer getMBeanServer() {
+		try {
+			return (MBeanServer) (new InitialContext()).lookup(RUNTIME_MBEAN_SERVER_JNDI);
+		} catch (NamingException e) {
+			return ManagementFactory.getPlatformMBeanServer();
+		}
+	}
+
+	// Members
+	private final MetricSchemaReloader reloader;
+
+	// Constants
+	private final static String OBJECT_NAME = "domainhealth:Type=MetricSchema,Name=DomainHealth";
+	private final static String RUNTIME_MBEAN_SERVER_JNDI = "java:comp/env/jmx/runtime";
+}
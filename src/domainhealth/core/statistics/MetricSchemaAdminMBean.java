@@ -0,0 +1,57 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.statistics;
+
+/**
+ * Management interface of the DomainHealth metric schema MBean, allowing 
+ * the metrics captured to be changed at runtime without a redeploy.
+ */
+public interface MetricSchemaAdminMBean {
+	/**
+	 * Returns the version number of the current metric schema
+	 * 
+	 * @return The schema version
+	 */
+	public int getSchemaVersion();
+
+	/**
+	 * Returns the metric deep set of the current metric schema
+	 * 
+	 * @return The metric deep set
+	 */
+	public String getMetricDeepSet();
+
+	/**
+	 * Changes the metric deep set, installing a new metric schema which takes
+	 * effect from the next capture cycle
+	 * 
+	 * @param metricDeepSet The metric deep set ("basic", "extended" or "full")
+	 */
+	public void setMetricDeepSet(String metricDeepSet);
+
+	/**
+	 * Returns the path of the DomainHealth config file watched for changes
+	 * 
+	 * @return The config file path (or null if none)
+	 */
+	public String getConfigFile();
+
+	/**
+	 * Reloads the metric settings from the DomainHealth config file now
+	 * 
+	 * @return True if a new metric schema was installed
+	 */
+	public boolean reloadConfigFile();
+}
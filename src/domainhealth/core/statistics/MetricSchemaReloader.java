@@ -0,0 +1,193 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.statistics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import domainhealth.core.env.AppLog;
+import domainhealth.core.env.AppProperties.PropKey;
+
+/**
+ * Swaps the current metric schema at runtime, either when the DomainHealth
+ * config file (-Ddh_config_file) is changed or when asked to directly (eg. 
+ * by the metric schema admin MBean). The metric settings are the metric 
+ * deep set, attribute set, component blacklist and the resource and server
+ * include/exclude rules. A new schema is only installed if it captures 
+ * different metrics to the current one, so touching the config file without
+ * changing the metric settings does not cause any churn. 
+ * 
+ * Only a config file on the file-system is watched, as a config file loaded
+ * from the classpath can't change without a redeploy.
+ */
+public class MetricSchemaReloader {
+	/**
+	 * Creates a new reloader, noting the current state of the config file so
+	 * that only later changes to it trigger a reload.
+	 * 
+	 * @param configFilePath The path of the config file to watch (or null if none)
+	 * @param startupProps The properties DomainHealth started with, whose metric settings apply where the config file never set them (eg. -D parameters)
+	 */
+	public MetricSchemaReloader(String configFilePath, Properties startupProps) {
+		this.configFile = ((configFilePath != null) && (configFilePath.length() > 0)) ? new File(configFilePath) : null;
+		this.startupProps = startupProps;
+		this.configFileLastModified = (configFile != null) ? configFile.lastModified() : 0L;
+		Properties configProps = loadConfigFile();
+		this.startupConfigProps = (configProps != null) ? configProps : new Properties();
+	}
+
+	/**
+	 * Gets the path of the config file being watched.
+	 * 
+	 * @return The config file path (or null if none)
+	 */
+	public String getConfigFilePath() {
+		return (configFile != null) ? configFile.getPath() : null;
+	}
+
+	/**
+	 * Reloads the metric settings from the config file if the file has been
+	 * modified since it was last read. Cheap enough to call every capture 
+	 * cycle, as it only looks at the file's modified time.
+	 * 
+	 * @return True if a new metric schema was installed; otherwise false
+	 */
+	public synchronized boolean reloadIfConfigFileChanged() {
+		if ((configFile == null) || (!configFile.isFile())) {
+			return false;
+		}
+
+		long lastModified = configFile.lastModified();
+
+		if (lastModified == configFileLastModified) {
+			return false;
+		}
+
+		configFileLastModified = lastModified;
+		AppLog.getLogger().info("DomainHealth config file '" + configFile.getPath() + "' has changed - reloading metric settings");
+		return reloadConfigFile();
+	}
+
+	/**
+	 * Reloads the metric settings from the config file, whether or not it has
+	 * been modified.
+	 * 
+	 * @return True if a new metric schema was installed; otherwise false
+	 */
+	public synchronized boolean reloadConfigFile() {
+		if ((configFile == null) || (!configFile.isFile())) {
+			AppLog.getLogger().warning("Unable to reload metric settings - no DomainHealth config file found at: " + getConfigFilePath());
+			return false;
+		}
+
+		Properties configProps = loadConfigFile();
+
+		if (configProps == null) {
+			return false;
+		}
+
+		Properties metricProps = new Properties();
+
+		for (PropKey key : METRIC_SETTINGS_PROPS) {
+			String value = configProps.getProperty(key.toString());
+
+			// Settings the config file never had keep their start-up value
+			// (eg. from a -D parameter), but settings removed from it don't
+			if ((value == null) && (!startupConfigProps.containsKey(key.toString())) && (startupProps != null)) {
+				value = startupProps.getProperty(key.toString());
+			}
+
+			if (value != null) {
+				metricProps.setProperty(key.toString(), value);
+			}
+		}
+
+		return applyMetricSchema(MetricSchema.create(metricProps));
+	}
+
+	/**
+	 * Installs a new metric schema for a metric deep set, unless it would 
+	 * capture the same attributes as the current schema. Takes effect from 
+	 * the next capture cycle.
+	 * 
+	 * @param metricDeepSet The metric deep set ("basic", "extended" or "full")
+	 * @return True if a new metric schema was installed; otherwise false
+	 */
+	public synchronized boolean applyMetricDeepSet(String metricDeepSet) {
+		MetricSchema currentSchema = MetricSchema.getCurrent();
+		return applyMetricSchema(MetricSchema.create(metricDeepSet, currentSchema.getAttributeSetText(), currentSchema.getResourceFilter()));
+	}
+
+	/**
+	 * Installs a new metric schema, unless it would capture the same metrics
+	 * as the current schema. Takes effect from the next capture cycle.
+	 * 
+	 * @param newSchema The new metric schema
+	 * @return True if the new metric schema was installed; otherwise false
+	 */
+	private synchronized boolean applyMetricSchema(MetricSchema newSchema) {
+		MetricSchema currentSchema = MetricSchema.getCurrent();
+
+		if (newSchema.hasSameMetricsAs(currentSchema)) {
+			AppLog.getLogger().info("Metric settings unchanged - keeping metric schema " + currentSchema);
+			return false;
+		}
+
+		MonitorProperties.installMetricSchema(newSchema);
+		AppLog.getLogger().notice("Installed metric schema " + newSchema + " in place of " + currentSchema + " - takes effect from the next capture cycle");
+		return true;
+	}
+
+	/**
+	 * Loads the properties in the config file.
+	 * 
+	 * @return The config file properties (or null if there is no config file or it can't be read)
+	 */
+	private Properties loadConfigFile() {
+		if ((configFile == null) || (!configFile.isFile())) {
+			return null;
+		}
+
+		Properties configProps = new Properties();
+		InputStream in = null;
+
+		try {
+			in = new FileInputStream(configFile);
+			configProps.load(in);
+		} catch (IOException e) {
+			AppLog.getLogger().warning("Unable to load metric settings from DomainHealth config file '" + configFile.getPath() + "'. Reason: " + e.toString());
+			return null;
+		} finally {
+			if (in != null) {
+				try { in.close(); } catch (Exception e) { e.printStackTrace(); }
+			}
+		}
+
+		return configProps;
+	}
+
+	// Constants
+	private final static PropKey[] METRIC_SETTINGS_PROPS = {PropKey.METRIC_DEEP_SET_PROP, PropKey.METRIC_ATTRIBUTE_SET_PROP, PropKey.COMPONENT_BLACKLIST_PROP, 
+			PropKey.RESOURCE_INCLUDE_PROP, PropKey.RESOURCE_EXCLUDE_PROP, PropKey.SERVER_INCLUDE_PROP, PropKey.SERVER_EXCLUDE_PROP};
+
+	// Members
+	private final File configFile;
+	private final Properties startupProps;
+	private final Properties startupConfigProps;
+	private long configFileLastModified;
+}
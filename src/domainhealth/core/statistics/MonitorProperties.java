@@ -63,147 +63,60 @@ public class MonitorProperties {
 	
 
 	/**
-	 * Set the deep   for a property in the list
+	 * Creates a new metric schema for a metric deep set and installs it as 
+	 * the current schema
 	 * 
-	 * @param mode The metric set mode
-	 * @return The property key
+	 * @param mode The metric deep set ("basic", "extended" or "full")
 	 */
 	public static void setMetricDeep(String mode) {
-		//jvm
-		String[] j_cl=null; //classLoading
-		String[] j_comp=null; //compilation
-		String[] j_gc=null; //Garbage Collector
-		String[] j_mem=null; //Memory Manager
-		String[] j_memp=null; //Memory pool
-		String[] j_thread=null;
-		//core
-		String[] server_list=null;
-		String[] jvm_list=null;
-		String[] jvm_list_header=null;
-		String[] jrockit_list=null;
-		String[] threadpool_list=null;
-		String[] jta_list=null;
-		//datasource
-		String[] jdbc_list=null;
-		//jms destinations
-		String[] jms_list=null;
-		//webapp
-		String[] webapp_list=null;
-		//ejb 
-		String[] ejbpool_list=null;
-		String[] ejbtrans_list=null;
-		//wkmgr
-		String[] wkmgr_list=null;
-		//srvch
-		String[] srvch_list=null;
-		//host
-		String[] host_list=null;
-
-		
-		if((mode.equalsIgnoreCase("basic") | mode.equalsIgnoreCase("extended"))) {
-			//jvm
-			j_cl		= new String[] {J_CURRENT_LOADED_CLASS_COUNT,J_TOTAL_LOADED_CLASS_COUNT,J_TOTAL_UNLOADED_CLASS_COUNT};
-			j_comp		= new String[] {J_TOTAL_COMPILATION_TIME_CLASS};
-			j_gc		= new String[] {J_OLD_COLLECTION_COUNT,J_OLD_COLLECTION_TIME,J_YOUNG_COLLECTION_COUNT,J_YOUNG_COLLECTION_TIME};
-			j_mem		= new String[] {J_HEAP_COMMITTED,J_HEAP_INIT,J_HEAP_MAX,J_HEAP_USED,J_NOT_HEAP_COMMITTED,J_NOT_HEAP_INIT,J_NOT_HEAP_MAX,J_NOT_HEAP_USED };
-			j_memp		= new String[] {J_MEMPOOL_CM_COMMITTED,J_MEMPOOL_CM_INIT,J_MEMPOOL_CM_MAX,J_MEMPOOL_CM_USED,J_MEMPOOL_CB_COMMITTED,J_MEMPOOL_CB_INIT,J_MEMPOOL_CB_MAX,J_MEMPOOL_CB_USED,J_MEMPOOL_NURSERY_COMMITTED,J_MEMPOOL_NURSERY_INIT,J_MEMPOOL_NURSERY_MAX,J_MEMPOOL_NURSERY_USED,J_MEMPOOL_OLD_COMMITTED,J_MEMPOOL_OLD_INIT,J_MEMPOOL_OLD_MAX,J_MEMPOOL_OLD_USED };
-			j_thread	= new String[] {J_CUR_DAEMON_THREAD_COUNT,J_CUR_NON_DAEMON_THREAD_COUNT,J_CUR_TOTAL_THREAD_COUNT,J_TOTAL_STARTED_THREAD_COUNT };
-			//core
-			server_list 	= new String[] {SERVER_STATE,OPEN_SOCKETS};
-			jvm_list	= new String[] {HEAP_SIZE_CURRENT, HEAP_FREE_CURRENT,HEAP_FREE_PERCENT}; //can not change this !!
-			jvm_list_header = new String[] {HEAP_SIZE_CURRENT, HEAP_FREE_CURRENT,HEAP_USED_CURRENT,HEAP_FREE_PERCENT}; //can not change this !!
-			jrockit_list	= new String[] {JVM_PROCESSOR_LOAD,TOTAL_GC_COUNT,TOTAL_GC_TIME,TOTAL_NURSERY_SIZE,HEAP_SIZE_MAX};
-			threadpool_list = new String[] {EXECUTE_THREAD_TOTAL_COUNT,HOGGING_THREAD_COUNT,EXECUTE_THREAD_IDLE_COUNT,STANDBY_THREAD_COUNT,THROUGHPUT};
-			jta_list	= new String[] {TRANSACTION_TOTAL_COUNT, TRANSACTION_ROLLEDBACK_COUNT};
-			//jdbc
-			jdbc_list       = new String[] {NUM_AVAILABLE,ACTIVE_CONNECTONS_CURRENT_COUNT, CONNECTION_DELAY_TIME,WAITING_FOR_CONNECTION_CURRENT_COUNT};
-			//jms
-			jms_list        = new String[] {MESSAGES_CURRENT_COUNT, MESSAGES_PENDING_COUNT, CONSUMERS_CURRENT_COUNT};
-			//webapp
-			webapp_list	= new String[] {SESSIONS_TOTAL_COUNT};
-			//ejb 
-			ejbpool_list	= new String[] {BEAN_ACCESS_TOTAL_COUNT, BEANS_INUSE_CURRENT_COUNT, BEAN_WAITING_TOTAL_COUNT};
-			ejbtrans_list	= new String[] {BEAN_TRANSACTIONS_ROLLEDBACK_TOTAL_COUNT};
-			//wkmgr
-			wkmgr_list 	= new String[] {COMPLETED_REQUESTS, PENDING_REQUESTS};
-			//srvch_list	
-			srvch_list	= new String[] {CONNECTIONS_COUNT, CHNL_MESSAGES_RECEIVED_COUNT};
-			//host
-			host_list	= new String[] {NETWORK_RX_ERRORS, NETWORK_RX_MEGABYTES, NETWORK_TX_MEGABYTES, NETWORK_TX_ERRORS, PHYSICAL_MEMORY_USED_PERCENT, PHYSICAL_SWAP_USED_PERCENT, PROCESSOR_LAST_MINUTE_WORKLOAD_AVERAGE, PROCESSOR_USAGE_PERCENT};
-			
-		} else  {
-			//jvm
-			j_cl		= new String[] {J_CURRENT_LOADED_CLASS_COUNT,J_TOTAL_LOADED_CLASS_COUNT,J_TOTAL_UNLOADED_CLASS_COUNT};
-			j_comp		= new String[] {J_TOTAL_COMPILATION_TIME_CLASS};
-			j_gc		= new String[] {J_OLD_COLLECTION_COUNT,J_OLD_COLLECTION_TIME,J_YOUNG_COLLECTION_COUNT,J_YOUNG_COLLECTION_TIME};
-			j_mem		= new String[] {J_HEAP_COMMITTED,J_HEAP_INIT,J_HEAP_MAX,J_HEAP_USED,J_NOT_HEAP_COMMITTED,J_NOT_HEAP_INIT,J_NOT_HEAP_MAX,J_NOT_HEAP_USED };
-			j_memp		= new String[] {J_MEMPOOL_CM_COMMITTED,J_MEMPOOL_CM_INIT,J_MEMPOOL_CM_MAX,J_MEMPOOL_CM_USED,J_MEMPOOL_CB_COMMITTED,J_MEMPOOL_CB_INIT,J_MEMPOOL_CB_MAX,J_MEMPOOL_CB_USED,J_MEMPOOL_NURSERY_COMMITTED,J_MEMPOOL_NURSERY_INIT,J_MEMPOOL_NURSERY_MAX,J_MEMPOOL_NURSERY_USED,J_MEMPOOL_OLD_COMMITTED,J_MEMPOOL_OLD_INIT,J_MEMPOOL_OLD_MAX,J_MEMPOOL_OLD_USED };
-			j_thread	= new String[] {J_CUR_DAEMON_THREAD_COUNT,J_CUR_NON_DAEMON_THREAD_COUNT,J_CUR_TOTAL_THREAD_COUNT,J_TOTAL_STARTED_THREAD_COUNT };
-
-			//core
-			server_list 	= new String[] {SERVER_STATE, OPEN_SOCKETS};
-			//jvm has diferent atributes for WLDF harvester module and for final header line becouse of we are generating HEAP_USED_CURRENT 
-			jvm_list	= new String[] {HEAP_SIZE_CURRENT, HEAP_FREE_CURRENT, HEAP_FREE_PERCENT};
-			jvm_list_header	= new String[] {HEAP_SIZE_CURRENT, HEAP_FREE_CURRENT,HEAP_USED_CURRENT, HEAP_FREE_PERCENT};
-
-			jrockit_list    = new String[] {JVM_PROCESSOR_LOAD,TOTAL_GC_COUNT,TOTAL_GC_TIME,TOTAL_NURSERY_SIZE,HEAP_SIZE_MAX};	
-			threadpool_list	= new String[] {EXECUTE_THREAD_TOTAL_COUNT, HOGGING_THREAD_COUNT, PENDING_USER_REQUEST_COUNT, THREAD_POOL_QUEUE_LENGTH, COMPLETED_REQUEST_COUNT, EXECUTE_THREAD_IDLE_COUNT, MIN_THREADS_CONSTRAINT_COMPLETED, MIN_THREADS_CONSTRAINT_PENDING, STANDBY_THREAD_COUNT, THROUGHPUT};
-			jta_list	= new String[] {TRANSACTION_TOTAL_COUNT, TRANSACTION_COMMITTED_COUNT, TRANSACTION_ROLLEDBACK_COUNT, TRANSACTION_HEURISTICS_TOTAL_COUNT, TRANSACTION_ABANDONED_TOTAL_COUNT, TRANSACTIONS_ACTIVE_TOTAL_COUNT};
-			//jdbc
-			jdbc_list 	= new String[] { NUM_AVAILABLE, NUM_UNAVAILABLE, ACTIVE_CONNECTONS_CURRENT_COUNT, CONNECTION_DELAY_TIME, FAILED_RESERIVE_REQUEST_COUNT, FAILURES_TO_RECONNECT_COUNT, LEAKED_CONNECTION_COUNT, WAITING_FOR_CONNECTION_CURRENT_COUNT, WAITING_FOR_CONNECTION_FAILURES_TOTAL, WAITING_SECONDS_HIGH_COUNT};
-			//jms
-			jms_list	= new String[] {MESSAGES_CURRENT_COUNT, MESSAGES_PENDING_COUNT, MESSAGES_RECEIVED_COUNT, MESSAGES_HIGH_COUNT, CONSUMERS_CURRENT_COUNT, CONSUMERS_HIGH_COUNT, CONSUMERS_TOTAL_COUNT};
-			//webapp
-			webapp_list	= new String[] {SESSIONS_CURRENT_COUNT, SESSIONS_HIGH_COUNT, SESSIONS_TOTAL_COUNT};
-			//ejb
-			ejbpool_list	= new String[] {BEANS_POOLED_CURRENT_COUNT, BEAN_ACCESS_TOTAL_COUNT, BEANS_INUSE_CURRENT_COUNT, BEAN_WAITING_CURRENT_COUNT, BEAN_WAITING_TOTAL_COUNT};
-			ejbtrans_list	= new String[] {BEAN_TRANSACTIONS_COMMITTED_TOTAL_COUNT, BEAN_TRANSACTIONS_ROLLEDBACK_TOTAL_COUNT, BEAN_TRANSACTIONS_TIMEDOUT_TOTAL_COUNT};
-			//wkmgr
-			wkmgr_list	= new String[] {COMPLETED_REQUESTS, PENDING_REQUESTS, STUCK_THREAD_COUNT};
-			//srvch_list
-			srvch_list	= new String[] {ACCEPT_COUNT, CONNECTIONS_COUNT, CHNL_MESSAGES_RECEIVED_COUNT, CHNL_MESSAGES_SENT_COUNT};
-			//host_list
-			host_list	= new String[] {JVM_INSTANCE_CORES_USED, JVM_INSTANCE_PHYSICAL_MEMORY_USED_MEGABYTES, NATIVE_PROCESSES_COUNT, NETWORK_RX_MEGABYTES, NETWORK_RX_DROPPED, NETWORK_RX_ERRORS, NETWORK_RX_FRAME, NETWORK_RX_OVERRUNS, NETWORK_MILLIONS_RX_PACKETS, NETWORK_TX_MEGABYTES, NETWORK_TX_CARRIER, NETWORK_TX_COLLISIONS,NETWORK_TX_DROPPED, NETWORK_TX_ERRORS, NETWORK_TX_OVERRUNS, NETWORK_MILLIONS_TX_PACKETS, PHYSICAL_MEMORY_USED_PERCENT, PHYSICAL_SWAP_USED_PERCENT, PROCESSOR_LAST_MINUTE_WORKLOAD_AVERAGE, PROCESSOR_USAGE_PERCENT, ROOT_FILESYSTEM_USED_PERCENT, TCP_CLOSE_WAIT_COUNT, TCP_ESTABLISHED_COUNT, TCP_LISTEN_COUNT, TCP_TIME_WAIT_COUNT};
-
-		}
-		//setting list
-		J_CLASSLOADING_MBEAN_ATTR_LIST		=j_cl;
-		J_COMPILATION_MBEAN_ATTR_LIST		=j_comp;
-		J_GARBAGECOLLECTOR_MBEAN_ATTR_LIST	=j_gc;
-		J_MEMORY_MBEAN_ATTR_LIST		=j_mem;
-		J_MEMORYPOOL_MBEAN_ATTR_LIST		=j_memp;
-		J_TREAD_MBEAN_ATTR_LIST			=j_thread;
-		J_MBEAN_ALL				=ArrayConcatAll(j_cl,j_comp,j_gc,j_mem,j_memp,j_thread);
+		installMetricSchema(MetricSchema.create(mode));
+	}
 
+	/**
+	 * Installs a metric schema as the current schema, also copying its 
+	 * attribute lists to the static lists below, for code which reads those
+	 * rather than a schema. The static lists are not swapped atomically 
+	 * together, so capture code should use a MetricSchema instead.
+	 * 
+	 * @param schema The metric schema to install
+	 * @return The schema which was current until now (or null if none)
+	 */
+	public static synchronized MetricSchema installMetricSchema(MetricSchema schema) {
+		//jvm
+		J_CLASSLOADING_MBEAN_ATTR_LIST		=schema.getClassLoadingAttrs();
+		J_COMPILATION_MBEAN_ATTR_LIST		=schema.getCompilationAttrs();
+		J_GARBAGECOLLECTOR_MBEAN_ATTR_LIST	=schema.getGarbageCollectorAttrs();
+		J_MEMORY_MBEAN_ATTR_LIST		=schema.getMemoryAttrs();
+		J_MEMORYPOOL_MBEAN_ATTR_LIST		=schema.getMemoryPoolAttrs();
+		J_TREAD_MBEAN_ATTR_LIST			=schema.getThreadAttrs();
+		J_MBEAN_ALL				=schema.getJvmAllAttrs();
+		J_GC_RESOURCE_ATTR_LIST			=schema.getGCResourceAttrs();
+		J_MEMPOOL_RESOURCE_ATTR_LIST		=schema.getMemPoolResourceAttrs();
 		//core list
-		SERVER_MBEAN_MONITOR_ATTR_LIST		=server_list;
-		JVM_MBEAN_MONITOR_ATTR_LIST		=jvm_list; //can not be changed beacause of hardcoded parameters over 
-		
-		JROCKIT_MBEAN_MONITOR_ATTR_LIST		=jrockit_list;
-		THREADPOOL_MBEAN_MONITOR_ATTR_LIST	=threadpool_list;
-		JTA_MBEAN_MONITOR_ATTR_LIST		=jta_list;
-
-		//used only to create header line on csv files
-		J_CORE_ALL				=ArrayConcatAll(server_list,jvm_list_header,jrockit_list,threadpool_list,jta_list);
-		//needed for harvester
-		JROCKIT_FULL_MBEAN_MONITOR_ATTR_LIST	= ArrayConcat(jvm_list,jrockit_list);
+		SERVER_MBEAN_MONITOR_ATTR_LIST		=schema.getServerAttrs();
+		JVM_MBEAN_MONITOR_ATTR_LIST		=schema.getJvmAttrs();
+		JROCKIT_MBEAN_MONITOR_ATTR_LIST		=schema.getJRockitAttrs();
+		THREADPOOL_MBEAN_MONITOR_ATTR_LIST	=schema.getThreadPoolAttrs();
+		JTA_MBEAN_MONITOR_ATTR_LIST		=schema.getJtaAttrs();
+		J_CORE_ALL				=schema.getCoreAllAttrs();
+		JROCKIT_FULL_MBEAN_MONITOR_ATTR_LIST	=schema.getJRockitFullAttrs();
 		//jdbc
-		JDBC_MBEAN_MONITOR_ATTR_LIST		=jdbc_list;
+		JDBC_MBEAN_MONITOR_ATTR_LIST		=schema.getJdbcAttrs();
 		//jms
-		JMS_DESTINATION_MBEAN_MONITOR_ATTR_LIST	=jms_list;
+		JMS_DESTINATION_MBEAN_MONITOR_ATTR_LIST	=schema.getJmsDestinationAttrs();
 		//webapp
-		WEBAPP_MBEAN_MONITOR_ATTR_LIST 		=webapp_list;
+		WEBAPP_MBEAN_MONITOR_ATTR_LIST 		=schema.getWebAppAttrs();
 		//ejb
-		EJB_POOL_MBEAN_MONITOR_ATTR_LIST	=ejbpool_list;
-		EJB_TRANSACTION_MBEAN_MONITOR_ATTR_LIST =ejbtrans_list;
-
-		EJB_MBEAN_MONITOR_ATTR_LIST 		= ArrayConcat(ejbpool_list,ejbtrans_list);	
+		EJB_POOL_MBEAN_MONITOR_ATTR_LIST	=schema.getEjbPoolAttrs();
+		EJB_TRANSACTION_MBEAN_MONITOR_ATTR_LIST =schema.getEjbTransactionAttrs();
+		EJB_MBEAN_MONITOR_ATTR_LIST 		=schema.getEjbAttrs();
 		//wkmgr
-		WKMGR_MBEAN_MONITOR_ATTR_LIST 		=wkmgr_list;
+		WKMGR_MBEAN_MONITOR_ATTR_LIST 		=schema.getWorkManagerAttrs();
 		//srvchannel
-		SVR_CHANNEL_MBEAN_MONITOR_ATTR_LIST 	=srvch_list;
+		SVR_CHANNEL_MBEAN_MONITOR_ATTR_LIST 	=schema.getServerChannelAttrs();
 		//host
-		HOST_MACHINE_STATS_MBEAN_MONITOR_ATTR_LIST = host_list;
+		HOST_MACHINE_STATS_MBEAN_MONITOR_ATTR_LIST =schema.getHostMachineAttrs();
+		return MetricSchema.install(schema);
 	}
 
 
@@ -285,6 +198,16 @@ public class MonitorProperties {
 	 */
 	public final static String JVM_RESOURCE_TYPE = "jvm";
 
+	/**
+	 * Name prefix of the 'jvm' sub-resources for each garbage collector
+	 */
+	public final static String JVM_GC_RSC_PREFIX = "gc_";
+
+	/**
+	 * Name prefix of the 'jvm' sub-resources for each memory pool
+	 */
+	public final static String JVM_MEMPOOL_RSC_PREFIX = "pool_";
+
 	/**
 	 * Name of the 'core' category of resource for core server statistics
 	 */
@@ -325,6 +248,16 @@ public class MonitorProperties {
 	 */
 	public final static String HOSTMACHINE_RESOURCE_TYPE = "hostmachine";	
 
+	/**
+	 * Name of the 'jmsdestination' metric type, capturing the 'destination' category of resource
+	 */
+	public final static String JMS_DESTINATION_METRIC_TYPE = "jmsdestination";
+
+	/**
+	 * Name of the 'extended' metric type, capturing the 'workmgr' and 'svrchnl' categories of resource
+	 */
+	public final static String EXTENDED_METRIC_TYPE = "extended";
+
 	/**
 	 * List of names or allowable resource types (eg. core, datasource)
 	 */
@@ -340,6 +273,16 @@ public class MonitorProperties {
 
 	public static String[]	J_MBEAN_ALL;
 
+	/**
+	 * List of attributes of each garbage collector JVM sub-resource
+	 */
+	public static String[]	J_GC_RESOURCE_ATTR_LIST;
+
+	/**
+	 * List of attributes of each memory pool JVM sub-resource
+	 */
+	public static String[]	J_MEMPOOL_RESOURCE_ATTR_LIST;
+
 
 	/**
 	 * List of Server MBean Attributes to be monitored
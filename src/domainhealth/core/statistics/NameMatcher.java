@@ -0,0 +1,244 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.statistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import domainhealth.core.env.AppLog;
+
+/**
+ * Matches names (eg. of resources or servers) against a set of patterns, 
+ * compiled once when created so that matching a name costs time in 
+ * proportion to the length of the name, rather than to the number of 
+ * patterns. Each pattern is either:
+ * 
+ *   - a glob, where '*' matches any run of characters and '?' any single 
+ *     character (a name without either is matched exactly), or
+ *   - a regular expression, prefixed with '~' (eg. "~^Test.*DS$").
+ * 
+ * All the globs are compiled into one trie, with a node per pattern prefix,
+ * which is walked as an automaton one character of the name at a time. As 
+ * patterns sharing a prefix share nodes, a set of plain names is walked 
+ * along a single path, and only wildcards can make more than one node 
+ * active at once. All the regular expressions are compiled into one 
+ * alternation. Instances are immutable and thread-safe.
+ */
+public final class NameMatcher {
+	/**
+	 * Compiles a set of patterns into a matcher. Invalid regular expressions
+	 * are logged and ignored.
+	 * 
+	 * @param patterns The glob and regular expression patterns
+	 */
+	public NameMatcher(List<String> patterns) {
+		StringBuilder regexAlternation = new StringBuilder();
+		int globCount = 0;
+
+		for (String pattern : patterns) {
+			if ((pattern == null) || (pattern.length() <= 0)) {
+				continue;
+			} else if (pattern.startsWith(REGEX_PREFIX)) {
+				String regex = pattern.substring(REGEX_PREFIX.length());
+
+				try {
+					Pattern.compile(regex);
+				} catch (PatternSyntaxException e) {
+					AppLog.getLogger().warning("Ignoring invalid regular expression name pattern '" + pattern + "'. Reason: " + e.getDescription());
+					continue;
+				}
+
+				regexAlternation.append((regexAlternation.length() > 0) ? "|" : "").append("(?:").append(regex).append(")");
+			} else {
+				addGlob(pattern);
+				globCount++;
+			}
+		}
+
+		this.hasGlobs = (globCount > 0);
+		this.regexes = (regexAlternation.length() > 0) ? Pattern.compile(regexAlternation.toString()) : null;
+	}
+
+	/**
+	 * Determines whether the matcher has no patterns, and so matches nothing.
+	 * 
+	 * @return True if there are no patterns; otherwise false
+	 */
+	public boolean isEmpty() {
+		return (!hasGlobs) && (regexes == null);
+	}
+
+	/**
+	 * Determines whether a name matches any of the patterns.
+	 * 
+	 * @param name The name
+	 * @return True if the name matches a pattern; otherwise false
+	 */
+	public boolean matches(String name) {
+		if (name == null) {
+			return false;
+		}
+
+		return ((hasGlobs) && (matchesGlobs(name))) || ((regexes != null) && (regexes.matcher(name).find()));
+	}
+
+	/**
+	 * Adds a glob pattern to the trie, one node per character. A '*' node 
+	 * loops back to itself, so that it can consume any run of characters.
+	 * 
+	 * @param glob The glob pattern
+	 */
+	private void addGlob(String glob) {
+		Node node = root;
+
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+
+			if (c == ANY_RUN) {
+				if (node.anyRunChild == null) {
+					node.anyRunChild = new Node(true);
+				}
+
+				node = node.anyRunChild;
+			} else if (c == ANY_CHAR) {
+				if (node.anyCharChild == null) {
+					node.anyCharChild = new Node();
+				}
+
+				node = node.anyCharChild;
+			} else {
+				Node child = node.children.get(c);
+
+				if (child == null) {
+					child = new Node();
+					node.children.put(c, child);
+				}
+
+				node = child;
+			}
+		}
+
+		node.isPatternEnd = true;
+	}
+
+	/**
+	 * Walks the trie of globs with the name, tracking every node reachable
+	 * by the characters read so far. For plain names only one node is ever
+	 * active, so this is a simple trie lookup.
+	 * 
+	 * @param name The name
+	 * @return True if the whole name takes the walk to the end of a glob
+	 */
+	private boolean matchesGlobs(String name) {
+		List<Node> active = new ArrayList<Node>(INITIAL_ACTIVE_NODES);
+		List<Node> next = new ArrayList<Node>(INITIAL_ACTIVE_NODES);
+		addActive(active, root);
+
+		for (int i = 0; (i < name.length()) && (!active.isEmpty()); i++) {
+			char c = name.charAt(i);
+			next.clear();
+
+			for (int j = 0; j < active.size(); j++) {
+				Node node = active.get(j);
+
+				if (node.isAnyRun) {
+					addActive(next, node);
+				}
+
+				if (node.anyCharChild != null) {
+					addActive(next, node.anyCharChild);
+				}
+
+				Node child = node.children.get(c);
+
+				if (child != null) {
+					addActive(next, child);
+				}
+			}
+
+			List<Node> swap = active;
+			active = next;
+			next = swap;
+		}
+
+		for (int j = 0; j < active.size(); j++) {
+			if (active.get(j).isPatternEnd) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Makes a node active, along with any '*' nodes following it (as '*' 
+	 * can match no characters at all).
+	 * 
+	 * @param active The active nodes
+	 * @param node The node to make active
+	 */
+	private static void addActive(List<Node> active, Node node) {
+		while (node != null) {
+			if (!active.contains(node)) {
+				active.add(node);
+			}
+
+			node = node.anyRunChild;
+		}
+	}
+
+	/**
+	 * A node of the glob trie, reached by one character of a pattern.
+	 */
+	private static class Node {
+		/**
+		 * Creates a node for a literal or '?' character of a pattern.
+		 */
+		Node() {
+			this(false);
+		}
+
+		/**
+		 * Creates a node.
+		 * 
+		 * @param isAnyRun True if the node is reached by a '*'
+		 */
+		Node(boolean isAnyRun) {
+			this.isAnyRun = isAnyRun;
+		}
+
+		// Members
+		final Map<Character, Node> children = new HashMap<Character, Node>();
+		final boolean isAnyRun;
+		Node anyCharChild;
+		Node anyRunChild;
+		boolean isPatternEnd;
+	}
+
+	// Constants
+	private final static String REGEX_PREFIX = "~";
+	private final static char ANY_RUN = '*';
+	private final static char ANY_CHAR = '?';
+	private final static int INITIAL_ACTIVE_NODES = 4;
+
+	// Members
+	private final Node root = new Node();
+	private final boolean hasGlobs;
+	private final Pattern regexes;
+}
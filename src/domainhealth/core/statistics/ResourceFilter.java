@@ -0,0 +1,221 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.core.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import domainhealth.core.env.AppLog;
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+/**
+ * Decides which servers and which resources (datasources, destinations, 
+ * web-apps, etc) have statistics captured, from include and exclude rules 
+ * compiled once when the filter is created. Each set of rules is a comma 
+ * separated list of name patterns (see NameMatcher), each optionally 
+ * prefixed with a resource type and ':' to only apply to resources of that
+ * type (eg. "datasource:Test*,webapp:~^/internal.*"). 
+ * 
+ * A resource is captured if it is not on the component blacklist (which 
+ * does not apply to host machines), does not match an exclude rule and, if
+ * there are include rules for all types or for its type, matches one of 
+ * them. Servers are filtered the same way, with their own include and 
+ * exclude rules. Instances are immutable and thread-safe.
+ */
+public final class ResourceFilter {
+	/**
+	 * Creates a filter which captures every server and resource.
+	 */
+	public ResourceFilter() {
+		this(null, null, null, null, null);
+	}
+
+	/**
+	 * Compiles the filter rules.
+	 * 
+	 * @param componentBlacklistText Comma separated names of web-apps/ejbs etc than should not have results collected/shown
+	 * @param resourceIncludeText The resource include rules (null or empty to include all)
+	 * @param resourceExcludeText The resource exclude rules (null or empty to exclude none)
+	 * @param serverIncludeText The server include rules (null or empty to include all)
+	 * @param serverExcludeText The server exclude rules (null or empty to exclude none)
+	 */
+	public ResourceFilter(String componentBlacklistText, String resourceIncludeText, String resourceExcludeText, String serverIncludeText, String serverExcludeText) {
+		this.ruleTexts = Arrays.asList(normaliseText(componentBlacklistText), normaliseText(resourceIncludeText), normaliseText(resourceExcludeText), 
+				normaliseText(serverIncludeText), normaliseText(serverExcludeText));
+		this.componentBlacklist = new NameMatcher(tokenizeRulesText(componentBlacklistText));
+		this.resourceIncludes = compileTypedRules(resourceIncludeText);
+		this.resourceExcludes = compileTypedRules(resourceExcludeText);
+		this.serverIncludes = new NameMatcher(tokenizeRulesText(serverIncludeText));
+		this.serverExcludes = new NameMatcher(tokenizeRulesText(serverExcludeText));
+	}
+
+	/**
+	 * Determines whether a server should have its statistics captured.
+	 * 
+	 * @param serverName The name of the server
+	 * @return True if the server is captured; otherwise false
+	 */
+	public boolean isServerCaptured(String serverName) {
+		return ((serverIncludes.isEmpty()) || (serverIncludes.matches(serverName))) && (!serverExcludes.matches(serverName));
+	}
+
+	/**
+	 * Determines whether a resource should have its statistics captured.
+	 * 
+	 * @param resourceType The type of resource (eg. "datasource")
+	 * @param name The (normalised) name of the resource
+	 * @return True if the resource is captured; otherwise false
+	 */
+	public boolean isResourceCaptured(String resourceType, String name) {
+		if ((!resourceType.equals(HOSTMACHINE_RESOURCE_TYPE)) && (componentBlacklist.matches(name))) {
+			return false;
+		}
+
+		if ((matchesRules(resourceExcludes.get(ALL_TYPES), name)) || (matchesRules(resourceExcludes.get(resourceType), name))) {
+			return false;
+		}
+
+		NameMatcher allTypesIncludes = resourceIncludes.get(ALL_TYPES);
+		NameMatcher typeIncludes = resourceIncludes.get(resourceType);
+		return ((allTypesIncludes == null) && (typeIncludes == null)) || (matchesRules(allTypesIncludes, name)) || (matchesRules(typeIncludes, name));
+	}
+
+	/**
+	 * Determines whether another filter was compiled from exactly the same 
+	 * rules as this one.
+	 * 
+	 * @param other The other filter
+	 * @return True if both filters have the same rules; otherwise false
+	 */
+	public boolean hasSameRulesAs(ResourceFilter other) {
+		return (other != null) && (ruleTexts.equals(other.ruleTexts));
+	}
+
+	/**
+	 * Checks a name against a (possibly missing) set of compiled rules.
+	 * 
+	 * @param rules The compiled rules, or null if there are none
+	 * @param name The name
+	 * @return True if there are rules and the name matches one; otherwise false
+	 */
+	private static boolean matchesRules(NameMatcher rules, String name) {
+		return (rules != null) && (rules.matches(name));
+	}
+
+	/**
+	 * Compiles the rules text into one matcher per resource type the rules 
+	 * apply to, with rules which apply to all types keyed by ALL_TYPES.
+	 * 
+	 * @param rulesText The comma separated rules
+	 * @return The matchers keyed by resource type
+	 */
+	private static Map<String, NameMatcher> compileTypedRules(String rulesText) {
+		Map<String, List<String>> typePatterns = new HashMap<String, List<String>>();
+
+		for (String rule : tokenizeRulesText(rulesText)) {
+			int separatorPos = rule.indexOf(TYPE_SEPARATOR);
+			String type = (separatorPos > 0) ? getResourceType(rule.substring(0, separatorPos).trim()) : null;
+			String pattern = (type != null) ? rule.substring(separatorPos + 1).trim() : rule;
+
+			if (type == null) {
+				type = ALL_TYPES;
+			}
+
+			List<String> patterns = typePatterns.get(type);
+
+			if (patterns == null) {
+				patterns = new ArrayList<String>();
+				typePatterns.put(type, patterns);
+			}
+
+			patterns.add(pattern);
+			AppLog.getLogger().debug("Resource filter rule for " + type + " resources: " + pattern);
+		}
+
+		Map<String, NameMatcher> typeMatchers = new HashMap<String, NameMatcher>();
+
+		for (Map.Entry<String, List<String>> entry : typePatterns.entrySet()) {
+			typeMatchers.put(entry.getKey(), new NameMatcher(entry.getValue()));
+		}
+
+		return Collections.unmodifiableMap(typeMatchers);
+	}
+
+	/**
+	 * Gets the resource type named by a rule's type prefix, accepting the 
+	 * metric type name "jmsdestination" for destinations.
+	 * 
+	 * @param typeName The type prefix of a rule
+	 * @return The resource type, or null if the prefix does not name one (in which case it is part of the pattern)
+	 */
+	private static String getResourceType(String typeName) {
+		String type = typeName.toLowerCase();
+
+		if (type.equals(JMS_DESTINATION_METRIC_TYPE)) {
+			return DESTINATION_RESOURCE_TYPE;
+		}
+
+		return (FILTERED_RESOURCE_TYPES.contains(type)) ? type : null;
+	}
+
+	/**
+	 * Splits a comma separated rules text into its (trimmed, non-empty) rules.
+	 * 
+	 * @param rulesText The rules text
+	 * @return The rules
+	 */
+	private static List<String> tokenizeRulesText(String rulesText) {
+		List<String> rules = new ArrayList<String>();
+
+		if (rulesText != null) {
+			for (String rule : rulesText.split(RULES_TOKENIZER_PATTERN)) {
+				if (rule.trim().length() > 0) {
+					rules.add(rule.trim());
+				}
+			}
+		}
+
+		return rules;
+	}
+
+	/**
+	 * Normalises a rules text for comparison, treating null as empty.
+	 * 
+	 * @param rulesText The rules text
+	 * @return The trimmed rules text
+	 */
+	private static String normaliseText(String rulesText) {
+		return (rulesText != null) ? rulesText.trim() : "";
+	}
+
+	// Constants
+	private final static String ALL_TYPES = "*";
+	private final static List<String> FILTERED_RESOURCE_TYPES = Arrays.asList(DATASOURCE_RESOURCE_TYPE, DESTINATION_RESOURCE_TYPE, WEBAPP_RESOURCE_TYPE, 
+			EJB_RESOURCE_TYPE, WORKMGR_RESOURCE_TYPE, SVRCHNL_RESOURCE_TYPE, HOSTMACHINE_RESOURCE_TYPE);
+	private final static String RULES_TOKENIZER_PATTERN = ",";
+	private final static char TYPE_SEPARATOR = ':';
+
+	// Members
+	private final List<String> ruleTexts;
+	private final NameMatcher componentBlacklist;
+	private final Map<String, NameMatcher> resourceIncludes;
+	private final Map<String, NameMatcher> resourceExcludes;
+	private final NameMatcher serverIncludes;
+	private final NameMatcher serverExcludes;
+}
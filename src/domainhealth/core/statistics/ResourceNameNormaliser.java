@@ -14,6 +14,9 @@
 //POSSIBILITY OF SUCH DAMAGE.
 package domainhealth.core.statistics;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import static domainhealth.core.statistics.MonitorProperties.*;
 
 /**
@@ -22,16 +25,51 @@ import static domainhealth.core.statistics.MonitorProperties.*;
  * to be stored in CSV files and used in HTTP links, etc.. Also performs
  * some resource type specific logic (eg. picking out a Distributed 
  * Destination's real name from a physical destination compound name.
+ * 
+ * As the same resources are captured every cycle, each normalised name is
+ * cached against its raw name and resource type, so that normalising a name
+ * seen before costs a single hash lookup and creates no new objects. The 
+ * cache is bounded, being emptied if it ever grows too large (eg. because 
+ * of constant redeployments with changing names).
  */
 public class ResourceNameNormaliser {
 	/**
-	 * Remove bad characters from a resource name. 
+	 * Remove bad characters from a resource name, returning the same 
+	 * (cached) normalised name instance each time for the same resource.
 	 * 
 	 * @param resourceType The type of resource
 	 * @param resourceName The resource's name 
 	 * @return The normalised name
 	 */
 	public static String normalise(String resourceType, String resourceName) {
+		CachedName firstCachedName = cachedNames.get(resourceName);
+
+		// Resource types are usually the same constant instances, so identity is checked before equality
+		for (CachedName cachedName = firstCachedName; cachedName != null; cachedName = cachedName.next) {
+			if ((cachedName.resourceType == resourceType) || (cachedName.resourceType.equals(resourceType))) {
+				return cachedName.normalisedName;
+			}
+		}
+
+		String normalisedName = normaliseName(resourceType, resourceName);
+
+		if (cachedNames.size() >= MAX_CACHED_NAMES) {
+			cachedNames.clear();
+			firstCachedName = null;
+		}
+
+		cachedNames.put(resourceName, new CachedName(resourceType, normalisedName, firstCachedName));
+		return normalisedName;
+	}
+
+	/**
+	 * Remove bad characters from a resource name, without using the cache. 
+	 * 
+	 * @param resourceType The type of resource
+	 * @param resourceName The resource's name 
+	 * @return The normalised name
+	 */
+	private static String normaliseName(String resourceType, String resourceName) {
 		String normalisedName = resourceName;
 		
 		if (resourceType == DESTINATION_RESOURCE_TYPE) {		
@@ -63,6 +101,30 @@ public class ResourceNameNormaliser {
 		return normalisedName.trim();
 	}
 
+	/**
+	 * The normalised name of a raw resource name for one resource type, 
+	 * linked to those for any other resource types with the same raw name.
+	 */
+	private final static class CachedName {
+		/**
+		 * Creates a cached name.
+		 * 
+		 * @param resourceType The type of resource
+		 * @param normalisedName The normalised name
+		 * @param next The cached name for another resource type with the same raw name (or null)
+		 */
+		CachedName(String resourceType, String normalisedName, CachedName next) {
+			this.resourceType = resourceType;
+			this.normalisedName = normalisedName;
+			this.next = next;
+		}
+
+		// Members
+		final String resourceType;
+		final String normalisedName;
+		final CachedName next;
+	}
+
 	// Constants
 	private final static char DEST_MODULE_PHYSICAL_SEPERATOR = '@';
 	private final static char DEST_SERVER_MODULE_SEPARATOR = '!';
@@ -72,4 +134,6 @@ public class ResourceNameNormaliser {
 	private final static char BAD_CHAR_3 = ']';
 	private final static char GOOD_CHAR = '_';
 	private final static String REDUNDANT_GOOD_STR = "" + GOOD_CHAR;
+	private final static int MAX_CACHED_NAMES = 20000;
+	private final static ConcurrentMap<String, CachedName> cachedNames = new ConcurrentHashMap<String, CachedName>();
 }
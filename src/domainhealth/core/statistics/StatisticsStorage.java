@@ -39,10 +39,13 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.management.ObjectName;
 
 import domainhealth.core.env.AppLog;
+import domainhealth.core.instrumentation.PipelineInstrumentation;
 import domainhealth.core.jmx.DomainRuntimeServiceMBeanConnection;
 import domainhealth.core.jmx.WebLogicMBeanException;
 import domainhealth.core.jmx.WebLogicMBeanPropConstants;
@@ -163,6 +166,7 @@ public class StatisticsStorage {
 		
 	   if(useOutputCSVFile) { 
 
+		long startNanos = PipelineInstrumentation.startTiming();
 		FileUtil.createOrRetrieveDir(getDayServerResourceDirectoryPath(dateTime, serverName, resourceType));
 		String filepath = getDayServerResourceCSVPath(dateTime, serverName, resourceType, resourceName);
 		PrintWriter out = null;
@@ -171,6 +175,7 @@ public class StatisticsStorage {
 			File file = FileUtil.createOrRetrieveFile(filepath);
 			
 			if ((contentLine != null) && (contentLine.length() > 0)) {
+				file = moveAsideIfHeaderChanged(file, filepath, headerLine);
 				out = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
 			
 				if (file.length() <= 0) {
@@ -184,11 +189,66 @@ public class StatisticsStorage {
 			if (out != null) {
 				try { out.close(); } catch (Exception e) { e.printStackTrace(); }									
 			}
+
+			PipelineInstrumentation.recordTiming(PipelineInstrumentation.CSV_WRITE_STAGE, startNanos);
 		}
 
 	   }
 	}
 	
+	/**
+	 * Checks that a CSV file's header row matches the header of the rows 
+	 * about to be appended, which may not be the case if the metric schema 
+	 * has been swapped since the file was started. If not, the existing file
+	 * is renamed out of the way (keeping its earlier rows) so that a new CSV
+	 * file is started with the new header, rather than appending rows with
+	 * different columns. Each file's header is only read once per header 
+	 * line, so the cost of the check is a map lookup for every row after.
+	 * 
+	 * @param file The CSV file
+	 * @param filepath The path of the CSV file
+	 * @param headerLine The header of the rows about to be appended
+	 * @return The CSV file to append to (empty if the existing file was moved aside)
+	 * @throws IOException Indicates problem reading or renaming the CSV file
+	 */
+	private File moveAsideIfHeaderChanged(File file, String filepath, String headerLine) throws IOException {
+		if (headerLine.equals(checkedCSVHeaderLines.get(filepath))) {
+			return file;
+		}
+
+		if (file.length() > 0) {
+			String existingHeaderLine = null;
+			BufferedReader in = null;
+
+			try {
+				in = new BufferedReader(new FileReader(file));
+				existingHeaderLine = in.readLine();
+			} finally {
+				if (in != null) {
+					try { in.close(); } catch (Exception e) { e.printStackTrace(); }
+				}
+			}
+
+			if (!headerLine.equals(existingHeaderLine)) {
+				File movedFile = new File(filepath + "." + System.currentTimeMillis() + MOVED_ASIDE_SUFFIX);
+
+				if (file.renameTo(movedFile)) {
+					AppLog.getLogger().notice("Statistics columns have changed - moved earlier rows of '" + filepath + "' to '" + movedFile.getName() + "'");
+					file = FileUtil.createOrRetrieveFile(filepath);
+				} else {
+					AppLog.getLogger().warning("Statistics columns have changed but unable to move aside CSV file: " + filepath);
+				}
+			}
+		}
+
+		if (checkedCSVHeaderLines.size() >= MAX_CHECKED_CSV_FILES) {
+			checkedCSVHeaderLines.clear();
+		}
+
+		checkedCSVHeaderLines.put(filepath, headerLine);
+		return file;
+	}
+
 	/**
 	 * Find the earliest recorded time in the Core statistics CSV file, for the 
 	 * earliest Core statistics CSV file that has been captured
@@ -587,10 +647,13 @@ public class StatisticsStorage {
 	private final static String RESOURCE_LIST_FILENAME_SUFFIX = "list";
 	private final static String PROP_LIST_CMNT_PREFIX = "List of intances available on the server to monitor for resource type: ";
 	private final static Map<String, Object> resourceMonitorObjects = new HashMap<String, Object>();
+	private final static String MOVED_ASIDE_SUFFIX = ".old";
+	private final static int MAX_CHECKED_CSV_FILES = 20000;
 
 	// Members
 	private final String rootDirectoryPath;
 	private final String backendOutput;
 	private final boolean useOutputGraphite;
 	private final boolean useOutputCSVFile;
+	private final ConcurrentMap<String, String> checkedCSVHeaderLines = new ConcurrentHashMap<String, String>();
 }
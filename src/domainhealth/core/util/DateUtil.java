@@ -215,6 +215,21 @@ public class DateUtil {
 		
 		return date;
 	}
+
+	/**
+	 * Get the first time, at or after the given time, which falls exactly on
+	 * a whole multiple of the interval since the epoch (eg. for a 30 second 
+	 * interval, hh:mm:00 or hh:mm:30), so that periodic work started at these
+	 * times stays aligned to the wall-clock rather than drifting.
+	 * 
+	 * @param timeMillis The time in milliseconds since the epoch
+	 * @param intervalMillis The interval in milliseconds to align to
+	 * @return The aligned time in milliseconds since the epoch
+	 */
+	public static long getNextAlignedTimeMillis(long timeMillis, long intervalMillis) {
+		long remainderMillis = timeMillis % intervalMillis;
+		return (remainderMillis == 0) ? timeMillis : (timeMillis + intervalMillis - remainderMillis);
+	}
 	
 	// Constants
 	private final static int MAX_MINS_IN_DAY = 60 * 24;
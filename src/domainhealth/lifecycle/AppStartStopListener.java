@@ -24,8 +24,13 @@ import javax.servlet.ServletResponse;
 import domainhealth.core.env.AppLog;
 import domainhealth.core.env.AppProperties;
 import domainhealth.core.env.AppProperties.PropKey;
+import domainhealth.core.instrumentation.PipelineInstrumentation;
+import domainhealth.core.instrumentation.PipelineInstrumentationStats;
 import domainhealth.backend.retriever.RetrieverBackgroundService;
 import domainhealth.backend.sender.GraphiteBackgroundSender;
+import domainhealth.core.statistics.MetricSchema;
+import domainhealth.core.statistics.MetricSchemaAdmin;
+import domainhealth.core.statistics.MetricSchemaReloader;
 import domainhealth.core.statistics.MonitorProperties;
 
 /**
@@ -73,13 +78,18 @@ public class AppStartStopListener extends GenericServlet {
 
 		AppLog.getLogger().notice("Starting DomainHealth application");
 
+		PipelineInstrumentation.setEnabled(appProps.getBoolProperty(PropKey.PIPELINE_INSTRUMENTATION_PROP, true));
+		PipelineInstrumentationStats.register();
+
 		String outputPath 	=appProps.getProperty(PropKey.STATS_OUTPUT_PATH_PROP);		
                	String metricDeepSet	=appProps.getProperty(PropKey.METRIC_DEEP_SET_PROP);
                 AppLog.getLogger().notice("initialized Statistic DEEP TO : " + metricDeepSet.toString());
 
 		//Setting Metric Set
 
-                MonitorProperties.setMetricDeep(metricDeepSet);
+                MonitorProperties.installMetricSchema(MetricSchema.create(appProps));
+		metricSchemaReloader = new MetricSchemaReloader(AppProperties.getConfigFilePath(), appProps);
+		MetricSchemaAdmin.register(metricSchemaReloader);
 
 		
 		if (outputPath == null) {
@@ -93,6 +103,7 @@ public class AppStartStopListener extends GenericServlet {
 		use_graphite=(backend_output.equals("graphite") | backend_output.equals("both"));
 
 		retrieverBackgroundService = new RetrieverBackgroundService(appProps);
+		retrieverBackgroundService.setMetricSchemaReloader(metricSchemaReloader);
 
 
 		if(use_graphite) {
@@ -121,12 +132,15 @@ public class AppStartStopListener extends GenericServlet {
 		AppLog.getLogger().notice("Stopping DomainHealth application");
 		retrieverBackgroundService.shutdown();
 		if(use_graphite)  graphiteBackgroundSender.shutdown();
+		PipelineInstrumentationStats.unregister();
+		MetricSchemaAdmin.unregister();
 	}
 	
 	// Members
 	private RetrieverBackgroundService retrieverBackgroundService = null;
 	private GraphiteBackgroundSender graphiteBackgroundSender=null;
 	private boolean use_graphite;
+	private MetricSchemaReloader metricSchemaReloader = null;
 	
 	// Constants
 	private static final long serialVersionUID = 1L;	
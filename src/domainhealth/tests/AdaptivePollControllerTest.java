@@ -0,0 +1,110 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import java.util.Arrays;
+import java.util.List;
+
+import domainhealth.backend.retriever.AdaptivePollController;
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.backend.retriever.AdaptivePollController
+ * 
+ * @see domainhealth.backend.retriever.AdaptivePollController
+ */
+public class AdaptivePollControllerTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testStressDoublesIntervalUpToMaximum() {
+    	AdaptivePollController controller = new AdaptivePollController(true, BASE_INTERVAL_MILLIS, 4);
+    	controller.recordCapture(SERVER_NAME, 2, 5, -1, 100, MAX_CAPTURE_MILLIS);
+    	assertEquals(2, controller.getIntervalFactor(SERVER_NAME));
+    	assertEquals(2L * BASE_INTERVAL_MILLIS, controller.getEffectiveIntervalMillis(SERVER_NAME));
+    	controller.recordCapture(SERVER_NAME, 2, 5, -1, 100, MAX_CAPTURE_MILLIS);
+    	controller.recordCapture(SERVER_NAME, 2, 5, -1, 100, MAX_CAPTURE_MILLIS);
+    	assertEquals(4, controller.getIntervalFactor(SERVER_NAME));
+    	controller.recordCapture(SERVER_NAME, 0, 5, -1, 100, MAX_CAPTURE_MILLIS);
+    	assertEquals(2, controller.getIntervalFactor(SERVER_NAME));
+    	controller.recordCapture(SERVER_NAME, 0, 5, -1, 100, MAX_CAPTURE_MILLIS);
+    	assertEquals(1, controller.getIntervalFactor(SERVER_NAME));
+    	assertEquals(1, controller.getIntervalFactor("OtherServer"));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testSaturationEntryAndExit() {
+    	AdaptivePollController controller = new AdaptivePollController(true, BASE_INTERVAL_MILLIS, 4);
+    	assertEquals(ALL_TYPES, controller.filterDueTypes(SERVER_NAME, ALL_TYPES));
+    	controller.recordCapture(SERVER_NAME, 3, 0, -1, 100, MAX_CAPTURE_MILLIS);
+    	assertEquals(Arrays.asList(CORE_RESOURCE_TYPE), controller.filterDueTypes(SERVER_NAME, ALL_TYPES));
+    	controller.recordCapture(SERVER_NAME, 0, 5, -1, 100, MAX_CAPTURE_MILLIS);
+    	assertEquals(ALL_TYPES, controller.filterDueTypes(SERVER_NAME, ALL_TYPES));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testTimedOutCaptureSaturates() {
+    	AdaptivePollController controller = new AdaptivePollController(true, BASE_INTERVAL_MILLIS, 4);
+    	controller.recordTimedOutCapture(SERVER_NAME, MAX_CAPTURE_MILLIS + 10, MAX_CAPTURE_MILLIS);
+    	assertEquals(2, controller.getIntervalFactor(SERVER_NAME));
+    	assertEquals(Arrays.asList(CORE_RESOURCE_TYPE), controller.filterDueTypes(SERVER_NAME, ALL_TYPES));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testSaturatedServerWithoutCoreTypeNotStarved() {
+    	AdaptivePollController controller = new AdaptivePollController(true, BASE_INTERVAL_MILLIS, 4);
+    	List<String> nonCoreTypes = Arrays.asList(JVM_RESOURCE_TYPE, DATASOURCE_RESOURCE_TYPE);
+    	controller.recordTimedOutCapture(SERVER_NAME, MAX_CAPTURE_MILLIS, MAX_CAPTURE_MILLIS);
+    	assertEquals(nonCoreTypes, controller.filterDueTypes(SERVER_NAME, nonCoreTypes));
+    	controller.recordCapture(SERVER_NAME, -1, -1, -1, 100, MAX_CAPTURE_MILLIS);
+    	assertEquals(ALL_TYPES, controller.filterDueTypes(SERVER_NAME, ALL_TYPES));
+    	assertEquals(2, controller.getIntervalFactor(SERVER_NAME));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testRisingConnectionDelayIsStress() {
+    	AdaptivePollController controller = new AdaptivePollController(true, BASE_INTERVAL_MILLIS, 4);
+    	controller.recordCapture(SERVER_NAME, 0, 5, 200, 100, MAX_CAPTURE_MILLIS);
+    	assertEquals(1, controller.getIntervalFactor(SERVER_NAME));
+    	controller.recordCapture(SERVER_NAME, 0, 5, 400, 100, MAX_CAPTURE_MILLIS);
+    	assertEquals(2, controller.getIntervalFactor(SERVER_NAME));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testDisabledNeverAdapts() {
+    	AdaptivePollController controller = new AdaptivePollController(false, BASE_INTERVAL_MILLIS, 4);
+    	controller.recordCapture(SERVER_NAME, 3, 0, -1, MAX_CAPTURE_MILLIS, MAX_CAPTURE_MILLIS);
+    	assertEquals(1, controller.getIntervalFactor(SERVER_NAME));
+    	assertEquals(ALL_TYPES, controller.filterDueTypes(SERVER_NAME, ALL_TYPES));
+    }
+
+	// Constants
+	private final static int BASE_INTERVAL_MILLIS = 30000;
+	private final static long MAX_CAPTURE_MILLIS = 20000;
+	private final static String SERVER_NAME = "ms1";
+	private final static List<String> ALL_TYPES = Arrays.asList(CORE_RESOURCE_TYPE, JVM_RESOURCE_TYPE, DATASOURCE_RESOURCE_TYPE);
+}
@@ -0,0 +1,89 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import java.util.Arrays;
+
+import domainhealth.backend.retriever.CaptureModeRouter;
+import static domainhealth.backend.retriever.CaptureModeRouter.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.backend.retriever.CaptureModeRouter
+ * 
+ * @see domainhealth.backend.retriever.CaptureModeRouter
+ */
+public class CaptureModeRouterTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testFixedModes() {
+    	CaptureModeRouter router = new CaptureModeRouter("core:jmx, JVM:WLDF, ejb:bogus");
+    	assertTrue(router.isHybrid());
+    	assertEquals(JMX_MODE, router.chooseMode(SERVER_NAME, "core"));
+    	assertEquals(WLDF_MODE, router.chooseMode(SERVER_NAME, "jvm"));
+    	assertEquals(WLDF_MODE, router.chooseMode(SERVER_NAME, "ejb"));
+    	assertEquals(WLDF_MODE, router.chooseMode(SERVER_NAME, "webapp"));
+    	assertEquals(Arrays.asList("jvm", "ejb"), router.getHarvestedTypes(Arrays.asList("core", "jvm", "ejb")));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testWLDFOnly() {
+    	assertFalse(new CaptureModeRouter(null).isHybrid());
+    	assertFalse(new CaptureModeRouter("core:wldf").isHybrid());
+    	assertEquals(Arrays.asList("core", "jvm"), new CaptureModeRouter("").getHarvestedTypes(Arrays.asList("core", "jvm")));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testAutoModeMeasuresBothThenPicksCheaper() {
+    	CaptureModeRouter router = new CaptureModeRouter("core:auto");
+    	assertTrue(router.isHybrid());
+    	assertEquals(Arrays.asList("core"), router.getHarvestedTypes(Arrays.asList("core")));
+    	assertEquals(WLDF_MODE, router.chooseMode(SERVER_NAME, "core"));
+    	router.recordCost(SERVER_NAME, "core", WLDF_MODE, 500);
+    	assertEquals(JMX_MODE, router.chooseMode(SERVER_NAME, "core"));
+    	router.recordCost(SERVER_NAME, "core", JMX_MODE, 100);
+    	int wldfChoices = 0;
+
+    	for (int i = 0; i < 20; i++) {
+    		if (router.chooseMode(SERVER_NAME, "core").equals(WLDF_MODE)) {
+    			wldfChoices++;
+    		}
+    	}
+
+    	assertEquals(2, wldfChoices);
+    	assertEquals(WLDF_MODE, router.chooseMode("OtherServer", "core"));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testAutoModeFollowsSmoothedCost() {
+    	CaptureModeRouter router = new CaptureModeRouter("core:auto");
+    	router.recordCost(SERVER_NAME, "core", WLDF_MODE, 100);
+    	router.recordCost(SERVER_NAME, "core", JMX_MODE, 200);
+    	assertEquals(WLDF_MODE, router.chooseMode(SERVER_NAME, "core"));
+    	router.recordCost(SERVER_NAME, "core", WLDF_MODE, 1000);
+    	assertEquals(JMX_MODE, router.chooseMode(SERVER_NAME, "core"));
+    }
+
+	// Constants
+	private final static String SERVER_NAME = "ms1";
+}
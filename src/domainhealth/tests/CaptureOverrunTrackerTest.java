@@ -0,0 +1,75 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import domainhealth.backend.retriever.CaptureOverrunTracker;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.backend.retriever.CaptureOverrunTracker
+ * 
+ * @see domainhealth.backend.retriever.CaptureOverrunTracker
+ */
+public class CaptureOverrunTrackerTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testRunningCaptureSkipsServer() {
+    	CaptureOverrunTracker tracker = new CaptureOverrunTracker();
+    	assertFalse(tracker.checkStillRunning(SERVER_NAME, 0));
+    	tracker.start(SERVER_NAME, 0);
+    	assertTrue(tracker.checkStillRunning(SERVER_NAME, 1000));
+    	assertFalse(tracker.checkStillRunning("OtherServer", 1000));
+    	tracker.finish(SERVER_NAME, 2000);
+    	assertFalse(tracker.checkStillRunning(SERVER_NAME, 3000));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testEachOverrunningCaptureCountedOnce() {
+    	CaptureOverrunTracker tracker = new CaptureOverrunTracker();
+    	assertEquals(0, tracker.getOverrunCount(SERVER_NAME));
+    	tracker.start(SERVER_NAME, 0);
+    	tracker.recordOverrun(SERVER_NAME);
+    	tracker.recordOverrun(SERVER_NAME);
+    	assertEquals(1, tracker.getOverrunCount(SERVER_NAME));
+    	tracker.finish(SERVER_NAME, 45000);
+    	tracker.start(SERVER_NAME, 60000);
+    	tracker.finish(SERVER_NAME, 61000);
+    	assertEquals(1, tracker.getOverrunCount(SERVER_NAME));
+    	tracker.start(SERVER_NAME, 90000);
+    	tracker.recordOverrun(SERVER_NAME);
+    	assertEquals(2, tracker.getOverrunCount(SERVER_NAME));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testOverrunAfterFinishNotCounted() {
+    	CaptureOverrunTracker tracker = new CaptureOverrunTracker();
+    	tracker.recordOverrun(SERVER_NAME);
+    	tracker.finish(SERVER_NAME, 0);
+    	tracker.start(SERVER_NAME, 0);
+    	tracker.finish(SERVER_NAME, 1000);
+    	tracker.recordOverrun(SERVER_NAME);
+    	assertEquals(0, tracker.getOverrunCount(SERVER_NAME));
+    	assertFalse(tracker.checkStillRunning(SERVER_NAME, 2000));
+    }
+
+	// Constants
+	private final static String SERVER_NAME = "ms1";
+}
@@ -0,0 +1,58 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import domainhealth.backend.wldfcapture.data.DataRecordsCollection;
+import domainhealth.backend.wldfcapture.data.InstanceDataRecord;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.backend.wldfcapture.data.DataRecordsCollection
+ * 
+ * @see domainhealth.backend.wldfcapture.data.DataRecordsCollection
+ */
+public class DataRecordsCollectionTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testNewestSampleKeptWithItsTimestamp() {
+    	DataRecordsCollection records = new DataRecordsCollection();
+    	records.addElement(MBEAN_TYPE, MBEAN_NAME, 10000L, "ActiveConnectionsCurrentCount", Long.valueOf(1));
+    	records.addElement(MBEAN_TYPE, MBEAN_NAME, 10200L, "WaitingForConnectionCurrentCount", Long.valueOf(2));
+    	records.addElement(MBEAN_TYPE, MBEAN_NAME, 40000L, "ActiveConnectionsCurrentCount", Long.valueOf(5));
+    	records.addElement(MBEAN_TYPE, MBEAN_NAME, 10000L, "ActiveConnectionsCurrentCount", Long.valueOf(9));
+    	InstanceDataRecord objectRecord = records.getTypeDataRecord(MBEAN_TYPE).getInstanceDataRecord("MyDS");
+    	assertEquals(40000L, objectRecord.getTimestamp());
+    	assertEquals(5L, objectRecord.getAttrLongValue("ActiveConnectionsCurrentCount"));
+    	assertNull(objectRecord.getAttrValue("WaitingForConnectionCurrentCount"));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testAttributesOfOneSampleKeptTogether() {
+    	DataRecordsCollection records = new DataRecordsCollection();
+    	records.addElement(MBEAN_TYPE, MBEAN_NAME, 10000L, "ActiveConnectionsCurrentCount", Long.valueOf(1));
+    	records.addElement(MBEAN_TYPE, MBEAN_NAME, 10400L, "WaitingForConnectionCurrentCount", Long.valueOf(2));
+    	InstanceDataRecord objectRecord = records.getTypeDataRecord(MBEAN_TYPE).getInstanceDataRecord("MyDS");
+    	assertEquals(1L, objectRecord.getAttrLongValue("ActiveConnectionsCurrentCount"));
+    	assertEquals(2L, objectRecord.getAttrLongValue("WaitingForConnectionCurrentCount"));
+    }
+
+    // Constants
+    private final static String MBEAN_TYPE = "weblogic.management.runtime.JDBCDataSourceRuntimeMBean";
+    private final static String MBEAN_NAME = "com.bea:Name=MyDS,ServerRuntime=ms1,Type=JDBCDataSourceRuntime";
+}
@@ -158,6 +158,16 @@ public class DateUtilTest extends TestCase {
 		assertTrue(time.compareTo(now) > 0);
     }
 
+	/**
+	 * Test method
+	 */	
+    public void testGetNextAlignedTimeMillis() {
+		assertEquals(60000L, DateUtil.getNextAlignedTimeMillis(1L, 60000L));
+		assertEquals(60000L, DateUtil.getNextAlignedTimeMillis(60000L, 60000L));
+		assertEquals(120000L, DateUtil.getNextAlignedTimeMillis(60001L, 60000L));
+		assertEquals(0L, DateUtil.getNextAlignedTimeMillis(System.currentTimeMillis(), 30000L) % 30000L);
+    }
+
     // Constants
     private final static DateFormat format = new SimpleDateFormat(DateUtil.DATETIME_PARAM_FORMAT);
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import domainhealth.backend.wldfcapture.HarvestCalibrator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.backend.wldfcapture.HarvestCalibrator
+ * 
+ * @see domainhealth.backend.wldfcapture.HarvestCalibrator
+ */
+public class HarvestCalibratorTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testPeriodAndLagMeasured() {
+    	HarvestCalibrator calibrator = new HarvestCalibrator(SAMPLE_PERIOD_MILLIS);
+    	assertEquals(-1, calibrator.getHarvestPeriodMillis(SERVER_NAME));
+    	assertEquals(-1, calibrator.getHarvestLagMillis(SERVER_NAME));
+    	recordHarvests(calibrator, SERVER_NAME, 100, 30);
+    	assertEquals(30000, calibrator.getHarvestPeriodMillis(SERVER_NAME));
+    	assertEquals(QUERY_DELAY_MILLIS, calibrator.getHarvestLagMillis(SERVER_NAME));
+    	assertFalse(calibrator.isHarvestCadenceOff());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testQueryTimeoutAndWindow() {
+    	HarvestCalibrator calibrator = new HarvestCalibrator(SAMPLE_PERIOD_MILLIS);
+    	assertEquals(15000, calibrator.getQueryTimeoutMillis(SERVER_NAME, 15000, SAMPLE_PERIOD_MILLIS));
+    	assertEquals(SAMPLE_PERIOD_MILLIS, calibrator.getQueryWindowMillis(SERVER_NAME, SAMPLE_PERIOD_MILLIS));
+    	recordHarvests(calibrator, SERVER_NAME, 100, 60);
+    	assertEquals(4 * QUERY_DURATION_MILLIS, calibrator.getQueryTimeoutMillis(SERVER_NAME, 15000, SAMPLE_PERIOD_MILLIS));
+    	assertEquals(10000, calibrator.getQueryTimeoutMillis(SERVER_NAME, 15000, 100000));
+    	assertEquals(3600, calibrator.getQueryTimeoutMillis(SERVER_NAME, 15000, 4000));
+    	assertEquals(60000 + QUERY_DELAY_MILLIS, calibrator.getQueryWindowMillis(SERVER_NAME, SAMPLE_PERIOD_MILLIS));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testUnderHarvestingStretchesSamplePeriod() {
+    	HarvestCalibrator calibrator = new HarvestCalibrator(SAMPLE_PERIOD_MILLIS);
+    	recordHarvests(calibrator, "ms1", 100, 60);
+    	recordHarvests(calibrator, "ms2", 100, 62);
+    	recordHarvests(calibrator, "ms3", 100, 30);
+    	assertTrue(calibrator.isHarvestCadenceOff());
+    	assertEquals(SAMPLE_PERIOD_MILLIS, calibrator.calibrateSamplePeriod());
+    	assertEquals(62000, calibrator.calibrateSamplePeriod());
+    	assertEquals(62000, calibrator.getSamplePeriodMillis());
+    	assertFalse(calibrator.isHarvestCadenceOff());
+    	assertEquals(SAMPLE_PERIOD_MILLIS, calibrator.calibrateSamplePeriod());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testStretchedSamplePeriodLimited() {
+    	HarvestCalibrator calibrator = new HarvestCalibrator(SAMPLE_PERIOD_MILLIS);
+    	recordHarvests(calibrator, SERVER_NAME, 1000, 600);
+    	calibrator.calibrateSamplePeriod();
+    	assertEquals(4 * SAMPLE_PERIOD_MILLIS, calibrator.calibrateSamplePeriod());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testOverHarvestingLeavesSamplePeriod() {
+    	HarvestCalibrator calibrator = new HarvestCalibrator(SAMPLE_PERIOD_MILLIS);
+    	recordHarvests(calibrator, SERVER_NAME, 100, 10);
+    	assertTrue(calibrator.isHarvestCadenceOff());
+    	assertEquals(SAMPLE_PERIOD_MILLIS, calibrator.calibrateSamplePeriod());
+    	assertEquals(SAMPLE_PERIOD_MILLIS, calibrator.calibrateSamplePeriod());
+    }
+
+	/**
+	 * Records a query returning three harvests, each of two records, a 
+	 * fixed gap apart.
+	 * 
+	 * @param calibrator The calibrator to record the query with
+	 * @param serverName The name of the server queried
+	 * @param firstHarvestSecs The time of the first harvest in seconds
+	 * @param harvestGapSecs The time between each harvest in seconds
+	 */
+	private void recordHarvests(HarvestCalibrator calibrator, String serverName, long firstHarvestSecs, long harvestGapSecs) {
+		long lastHarvestSecs = firstHarvestSecs + (2 * harvestGapSecs);
+		long[] harvestSeconds = {firstHarvestSecs, firstHarvestSecs, firstHarvestSecs + harvestGapSecs, firstHarvestSecs + harvestGapSecs, lastHarvestSecs, lastHarvestSecs};
+		calibrator.recordQuery(serverName, (lastHarvestSecs * 1000) + QUERY_DELAY_MILLIS, QUERY_DURATION_MILLIS, lastHarvestSecs * 1000, harvestSeconds, harvestSeconds.length);
+	}
+
+	// Constants
+	private final static int SAMPLE_PERIOD_MILLIS = 30000;
+	private final static long QUERY_DELAY_MILLIS = 4000;
+	private final static int QUERY_DURATION_MILLIS = 1000;
+	private final static String SERVER_NAME = "ms1";
+}
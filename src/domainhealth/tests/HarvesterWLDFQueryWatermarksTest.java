@@ -0,0 +1,122 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import domainhealth.backend.wldfcapture.HarvesterWLDFQueryWatermarks;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.backend.wldfcapture.HarvesterWLDFQueryWatermarks
+ * 
+ * @see domainhealth.backend.wldfcapture.HarvesterWLDFQueryWatermarks
+ */
+public class HarvesterWLDFQueryWatermarksTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testWatermarkOnlyAdvances() {
+    	HarvesterWLDFQueryWatermarks watermarks = new HarvesterWLDFQueryWatermarks(watermarksFile);
+    	assertEquals(-1, watermarks.getWatermark("ms1", "core"));
+    	watermarks.advanceWatermark("ms1", "core", 1000);
+    	assertEquals(1000, watermarks.getWatermark("ms1", "core"));
+    	watermarks.advanceWatermark("ms1", "core", 500);
+    	assertEquals(1000, watermarks.getWatermark("ms1", "core"));
+    	watermarks.advanceWatermark("ms1", "core", 2000);
+    	assertEquals(2000, watermarks.getWatermark("ms1", "core"));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testWatermarksKeptPerServerAndQuery() {
+    	HarvesterWLDFQueryWatermarks watermarks = new HarvesterWLDFQueryWatermarks(watermarksFile);
+    	watermarks.advanceWatermark("ms1", "core", 1000);
+    	watermarks.advanceWatermark("ms1", "jvm", 3000);
+    	watermarks.advanceWatermark("ms1.core", "x", 5000);
+    	assertEquals(1000, watermarks.getWatermark("ms1", "core"));
+    	assertEquals(3000, watermarks.getWatermark("ms1", "jvm"));
+    	assertEquals(-1, watermarks.getWatermark("ms2", "core"));
+    	assertEquals(5000, watermarks.getWatermark("ms1.core", "x"));
+    	assertEquals(-1, watermarks.getWatermark("ms1", "core.x"));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testSavedWatermarksReloaded() {
+    	HarvesterWLDFQueryWatermarks watermarks = new HarvesterWLDFQueryWatermarks(watermarksFile);
+    	watermarks.advanceWatermark("ms1", "core", 1000);
+    	watermarks.advanceWatermark("ms2", "jvm", 2000);
+    	watermarks.saveIfChanged();
+    	assertTrue(watermarksFile.exists());
+    	assertFalse(new File(watermarksFile.getPath() + ".tmp").exists());
+    	HarvesterWLDFQueryWatermarks reloadedWatermarks = new HarvesterWLDFQueryWatermarks(watermarksFile);
+    	reloadedWatermarks.load();
+    	assertEquals(1000, reloadedWatermarks.getWatermark("ms1", "core"));
+    	assertEquals(2000, reloadedWatermarks.getWatermark("ms2", "jvm"));
+    }
+
+	/**
+	 * Test method
+	 * 
+	 * @throws IOException Indicates problem writing the watermarks file
+	 */	
+    public void testOldFormatAndInvalidWatermarksIgnored() throws IOException {
+    	Properties props = new Properties();
+    	props.setProperty("ms1.core", "1000");
+    	props.setProperty("ms1/jvm", "oops");
+    	props.setProperty("ms1/datasource", "3000");
+    	OutputStream out = new FileOutputStream(watermarksFile);
+
+    	try {
+    		props.store(out, null);
+    	} finally {
+    		out.close();
+    	}
+
+    	HarvesterWLDFQueryWatermarks watermarks = new HarvesterWLDFQueryWatermarks(watermarksFile);
+    	watermarks.load();
+    	assertEquals(-1, watermarks.getWatermark("ms1", "core"));
+    	assertEquals(-1, watermarks.getWatermark("ms1", "jvm"));
+    	assertEquals(3000, watermarks.getWatermark("ms1", "datasource"));
+    }
+
+	/**
+	 * Create a watermarks file name not yet in use.
+	 */
+	protected void setUp() {
+		watermarksFile = new File(JAVA_TEMP_DIR, "dh_watermarks_test_" + System.nanoTime() + ".properties");
+	}
+
+	/**
+	 * Remove the watermarks file.
+	 */
+	protected void tearDown() {
+		watermarksFile.delete();
+	}
+
+	// Constants
+	private final static String JAVA_TEMP_DIR = System.getProperty("java.io.tmpdir");
+
+	// Members
+	private File watermarksFile;
+}
@@ -0,0 +1,105 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import domainhealth.backend.retriever.JvmPlatformMBeans;
+import domainhealth.core.jmx.DomainRuntimeServiceMBeanConnection;
+import domainhealth.core.jmx.WebLogicMBeanException;
+import domainhealth.tests.simulation.SimulatedDomain;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.backend.retriever.JvmPlatformMBeans
+ * 
+ * @see domainhealth.backend.retriever.JvmPlatformMBeans
+ */
+public class JvmPlatformMBeansTest extends TestCase {
+	/**
+	 * Test setup
+	 */	
+	protected void setUp() {
+		domain = new SimulatedDomain("jvmdomain" + (++domainCount), 1, 1, 0);
+		domain.install();
+	}
+
+	/**
+	 * Test teardown
+	 */	
+	protected void tearDown() {
+		for (String serverName : domain.getServerNames()) {
+			JvmPlatformMBeans.forgetServer(serverName);
+		}
+
+		domain.uninstall();
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testLookedUpOncePerServer() {
+		try {
+			String serverName = domain.getServerNames().get(0);
+			DomainRuntimeServiceMBeanConnection conn = new DomainRuntimeServiceMBeanConnection();
+			JvmPlatformMBeans mbeans = JvmPlatformMBeans.getForServer(conn, serverName);
+			assertEquals(2, mbeans.getCollectors().size());
+			assertEquals(3, mbeans.getMemoryPools().size());
+			
+			for (JvmPlatformMBeans.Collector collector : mbeans.getCollectors()) {
+				JvmPlatformMBeans.CollectorKind expectedKind = collector.getName().contains("Old") ? 
+						JvmPlatformMBeans.CollectorKind.OLD : JvmPlatformMBeans.CollectorKind.YOUNG;
+				assertEquals(expectedKind, collector.getKind());
+				assertEquals("gc_" + collector.getName().replace(' ', '_'), collector.getResourceName());
+			}
+			
+			for (JvmPlatformMBeans.MemoryPool pool : mbeans.getMemoryPools()) {
+				JvmPlatformMBeans.PoolKind expectedKind = pool.getName().contains("Old") ? 
+						JvmPlatformMBeans.PoolKind.OLD : JvmPlatformMBeans.PoolKind.OTHER;
+				assertEquals(expectedKind, pool.getKind());
+				assertEquals("pool_" + pool.getName().replace(' ', '_'), pool.getResourceName());
+			}
+			
+			assertSame(mbeans, JvmPlatformMBeans.getForServer(conn, serverName));
+			JvmPlatformMBeans.forgetServer(serverName);
+			assertNotSame(mbeans, JvmPlatformMBeans.getForServer(conn, serverName));
+			conn.close();
+		} catch (WebLogicMBeanException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testAttributesReadInOneCall() {
+		try {
+			DomainRuntimeServiceMBeanConnection conn = new DomainRuntimeServiceMBeanConnection();
+			JvmPlatformMBeans mbeans = JvmPlatformMBeans.getForServer(conn, domain.getServerNames().get(0));
+			long callCount = domain.getCallCount();
+			Object[] values = conn.getAttrs(mbeans.getThreading(), new String[] {"DaemonThreadCount", "ThreadCount"});
+			assertEquals(callCount + 1, domain.getCallCount());
+			assertEquals(2, values.length);
+			assertTrue(values[0] instanceof Number);
+			assertTrue(values[1] instanceof Number);
+			conn.close();
+		} catch (WebLogicMBeanException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	// Members
+	private static int domainCount = 0;
+	private SimulatedDomain domain;
+}
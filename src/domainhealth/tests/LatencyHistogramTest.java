@@ -0,0 +1,75 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import domainhealth.core.instrumentation.LatencyHistogram;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.core.instrumentation.LatencyHistogram
+ * 
+ * @see domainhealth.core.instrumentation.LatencyHistogram
+ */
+public class LatencyHistogramTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testSmallValuesExact() {
+    	LatencyHistogram histogram = new LatencyHistogram();
+    	
+    	for (int i = 1; i <= 10; i++) {
+    		histogram.record(i);
+    	}
+    	
+    	LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    	assertEquals(10, snapshot.getCount());
+    	assertEquals(5, snapshot.getValueAtPercentile(50));
+    	assertEquals(10, snapshot.getValueAtPercentile(100));
+    	assertEquals(10, snapshot.getMaxMicros());
+    	assertEquals(5, snapshot.getMeanMicros());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testLargeValuesWithinAccuracy() {
+    	LatencyHistogram histogram = new LatencyHistogram();
+    	
+    	for (int i = 1; i <= 1000; i++) {
+    		histogram.record(i * 1000L);
+    	}
+    	
+    	LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    	assertTrue(Math.abs(snapshot.getValueAtPercentile(50) - 500000) <= 500000 / 16);
+    	assertTrue(Math.abs(snapshot.getValueAtPercentile(99) - 990000) <= 990000 / 16);
+    	assertEquals(1000000, snapshot.getMaxMicros());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testIntervalSnapshot() {
+    	LatencyHistogram histogram = new LatencyHistogram();
+    	histogram.record(100);
+    	LatencyHistogram.Snapshot earlier = histogram.snapshot();
+    	histogram.record(7);
+    	histogram.record(9);
+    	LatencyHistogram.Snapshot interval = histogram.snapshot().minus(earlier);
+    	assertEquals(2, interval.getCount());
+    	assertEquals(16, interval.getTotalMicros());
+    	assertEquals(9, interval.getMaxMicros());
+    }
+}
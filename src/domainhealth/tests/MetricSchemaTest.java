@@ -0,0 +1,87 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import domainhealth.backend.retriever.HeaderLine;
+import domainhealth.backend.retriever.StatisticCapturer;
+import domainhealth.core.statistics.MetricSchema;
+import domainhealth.core.statistics.MonitorProperties;
+import domainhealth.core.statistics.ResourceFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.core.statistics.MetricSchema
+ * 
+ * @see domainhealth.core.statistics.MetricSchema
+ */
+public class MetricSchemaTest extends TestCase {
+	/**
+	 * Test teardown
+	 */	
+	protected void tearDown() {
+		MonitorProperties.setMetricDeep("full");
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testVersionsAndMetricSets() {
+		MetricSchema basic = MetricSchema.create("basic");
+		MetricSchema extended = MetricSchema.create("extended");
+		MetricSchema full = MetricSchema.create("full");
+		assertTrue(extended.getVersion() > basic.getVersion());
+		assertTrue(full.getVersion() > extended.getVersion());
+		assertTrue(basic.hasSameMetricsAs(extended));
+		assertFalse(basic.hasSameMetricsAs(full));
+		assertTrue(full.getCoreAllAttrs().length > basic.getCoreAllAttrs().length);
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testAttributeSelection() {
+		MetricSchema full = MetricSchema.create("full");
+		MetricSchema selected = MetricSchema.create("full", "datasource:numavailable|ActiveConnectionsCurrentCount|NoSuchAttr, ejb:AccessTotalCount, webapp:NoSuchAttr, core:ServerState", null);
+		assertEquals(Arrays.asList("NumAvailable", "ActiveConnectionsCurrentCount"), Arrays.asList(selected.getJdbcAttrs()));
+		assertEquals(Arrays.asList("AccessTotalCount"), Arrays.asList(selected.getEjbPoolAttrs()));
+		assertEquals(Arrays.asList(full.getEjbTransactionAttrs()), Arrays.asList(selected.getEjbTransactionAttrs()));
+		assertEquals(Arrays.asList(full.getWebAppAttrs()), Arrays.asList(selected.getWebAppAttrs()));
+		assertEquals(Arrays.asList(full.getCoreAllAttrs()), Arrays.asList(selected.getCoreAllAttrs()));
+		assertFalse(selected.hasSameMetricsAs(full));
+		assertFalse(full.hasSameMetricsAs(MetricSchema.create("full", null, new ResourceFilter(null, null, "Test*", null, null))));
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testInstallSwapsHeaderLines() {
+		MetricSchema full = MetricSchema.create("full");
+		MonitorProperties.installMetricSchema(full);
+		assertSame(full, MetricSchema.getCurrent());
+		Map<String, HeaderLine> fullHeaderLines = StatisticCapturer.getHeaderLines(full);
+		assertSame(fullHeaderLines, StatisticCapturer.getHeaderLines(full));
+		
+		MetricSchema basic = MetricSchema.create("basic");
+		MetricSchema previous = MonitorProperties.installMetricSchema(basic);
+		assertSame(full, previous);
+		assertSame(basic, MetricSchema.getCurrent());
+		assertTrue(StatisticCapturer.getHeaderLines(basic).get("CORE").getString().length() < fullHeaderLines.get("CORE").getString().length());
+		assertSame(basic.getJdbcAttrs(), MonitorProperties.JDBC_MBEAN_MONITOR_ATTR_LIST);
+	}
+}
@@ -14,8 +14,12 @@
 //POSSIBILITY OF SUCH DAMAGE.
 package domainhealth.tests;
 
+import java.util.Arrays;
+
 import domainhealth.backend.wldfcapture.HarvesterWLDFModuleCreator;
 import domainhealth.backend.wldfcapture.data.TypeDataRecord;
+import domainhealth.core.statistics.MetricSchema;
+import domainhealth.core.statistics.MonitorProperties;
 import domainhealth.core.util.ProductVersionUtil;
 import junit.framework.TestCase;
 
@@ -45,6 +49,19 @@ public class RegExpTest extends TestCase {
     	assertEquals(TypeDataRecord.extractMBeanObjectName("com.bea:ApplicationRuntime=DomainHealth_WLDFHarvesterModule,Name=weblogic.wsee.mdb.DispatchPolicy,ServerRuntime=WLS103MultiSvrServer2,Type=WorkManagerRuntime"), 
     			"weblogic.wsee.mdb.DispatchPolicy");
     }
+
+	/**
+	 * Test method
+	 */	
+    public void testMBeanObjectNameSharedAcrossServers() {
+    	String server1Name = TypeDataRecord.extractMBeanObjectName("com.bea:Name=SharedDS,ServerRuntime=WLS103MultiSvrServer1,Type=JDBCDataSourceRuntime");
+    	String server2Name = TypeDataRecord.extractMBeanObjectName("com.bea:Name=SharedDS,ServerRuntime=WLS103MultiSvrServer2,Type=JDBCDataSourceRuntime");
+    	assertEquals("SharedDS", server1Name);
+    	assertSame(server1Name, server2Name);
+    	assertEquals("SharedQueue", TypeDataRecord.extractMBeanObjectName("com.bea:JMSServerRuntime=WLS103MultiSvrServer1_JMSServer,Name=SharedQueue,ServerRuntime=WLS103MultiSvrServer1"));
+    	assertEquals("WLS103MultiSvrServer1", TypeDataRecord.extractMBeanObjectName("com.bea:Name=WLS103MultiSvrServer1,ServerRuntime=WLS103MultiSvrServer1,Type=JVMRuntime"));
+    	assertEquals("WLS103MultiSvrServer2", TypeDataRecord.extractMBeanObjectName("com.bea:Name=WLS103MultiSvrServer2,ServerRuntime=WLS103MultiSvrServer2,Type=JVMRuntime"));
+    }
     
 	/**
 	 * Test method
@@ -57,6 +74,32 @@ public class RegExpTest extends TestCase {
     	HarvesterWLDFModuleCreator harvesterWLDFModuleCreator2 = new HarvesterWLDFModuleCreator(60*1000, "0.9b3", "10.3.5");
     	assertTrue(harvesterWLDFModuleCreator2.doesModuleDescriptionContainCurrentModuleVersion(". v0.9b3."));
     }
+
+	/**
+	 * Test method
+	 */	
+    public void testWLDFModuleHarvestedMetricsText() {
+    	MetricSchema previousSchema = MetricSchema.getCurrent();
+
+    	try {
+    		MonitorProperties.setMetricDeep("basic");
+    		HarvesterWLDFModuleCreator harvesterWLDFModuleCreator = new HarvesterWLDFModuleCreator(60*1000, "0.9.0b3", "10.3.5", Arrays.asList("core", "datasource"));
+    		assertTrue(harvesterWLDFModuleCreator.doesModuleDescriptionContainCurrentModuleVersion("WLDF Module for DH. Harvested metrics #1a2b3c. v0.9.0b3."));
+    		assertFalse(harvesterWLDFModuleCreator.doesModuleDescriptionContainCurrentHarvestedMetrics("WLDF Module for DH. Harvested metrics #1a2b3c. v0.9.0b3."));
+    		assertFalse(harvesterWLDFModuleCreator.doesModuleDescriptionContainCurrentHarvestedMetrics("WLDF Module for DH. v0.9.0b3."));
+
+    		// An unchanged configuration matches; changed metric types or sample period do not
+    		HarvesterWLDFModuleCreator sameCreator = new HarvesterWLDFModuleCreator(60*1000, "0.9.0b3", "10.3.5", Arrays.asList("core", "datasource"));
+    		HarvesterWLDFModuleCreator otherTypesCreator = new HarvesterWLDFModuleCreator(60*1000, "0.9.0b3", "10.3.5", Arrays.asList("core"));
+    		HarvesterWLDFModuleCreator otherPeriodCreator = new HarvesterWLDFModuleCreator(30*1000, "0.9.0b3", "10.3.5", Arrays.asList("core", "datasource"));
+    		assertTrue(harvesterWLDFModuleCreator.doesModuleDescriptionContainCurrentHarvestedMetrics(harvesterWLDFModuleCreator.getModuleDescription()));
+    		assertTrue(harvesterWLDFModuleCreator.doesModuleDescriptionContainCurrentHarvestedMetrics(sameCreator.getModuleDescription()));
+    		assertFalse(harvesterWLDFModuleCreator.doesModuleDescriptionContainCurrentHarvestedMetrics(otherTypesCreator.getModuleDescription()));
+    		assertFalse(harvesterWLDFModuleCreator.doesModuleDescriptionContainCurrentHarvestedMetrics(otherPeriodCreator.getModuleDescription()));
+    	} finally {
+    		MonitorProperties.installMetricSchema(previousSchema);
+    	}
+    }
     
 	/**
 	 * Test method
@@ -0,0 +1,94 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import java.util.Arrays;
+
+import domainhealth.core.statistics.NameMatcher;
+import domainhealth.core.statistics.ResourceFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.core.statistics.ResourceFilter
+ * 
+ * @see domainhealth.core.statistics.ResourceFilter
+ * @see domainhealth.core.statistics.NameMatcher
+ */
+public class ResourceFilterTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+	public void testNameMatcherGlobs() {
+		NameMatcher matcher = new NameMatcher(Arrays.asList("MyDS", "MyDS2", "Test*", "*Queue", "App?", "a*b*c"));
+		assertTrue(matcher.matches("MyDS"));
+		assertTrue(matcher.matches("MyDS2"));
+		assertFalse(matcher.matches("MyD"));
+		assertFalse(matcher.matches("MyDS3"));
+		assertTrue(matcher.matches("Test"));
+		assertTrue(matcher.matches("TestDataSource"));
+		assertTrue(matcher.matches("OrderQueue"));
+		assertFalse(matcher.matches("OrderQueue1"));
+		assertTrue(matcher.matches("App1"));
+		assertFalse(matcher.matches("App12"));
+		assertTrue(matcher.matches("abc"));
+		assertTrue(matcher.matches("axxbyyc"));
+		assertFalse(matcher.matches("axxcyyb"));
+		assertFalse(matcher.isEmpty());
+		assertTrue(new NameMatcher(Arrays.<String>asList()).isEmpty());
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testNameMatcherRegexes() {
+		NameMatcher matcher = new NameMatcher(Arrays.asList("~^jms/.*Topic$", "~[0-9]{3}", "~(invalid"));
+		assertTrue(matcher.matches("jms/OrderTopic"));
+		assertFalse(matcher.matches("jms/OrderQueue"));
+		assertTrue(matcher.matches("app123"));
+		assertFalse(matcher.matches("app12"));
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testResourceRules() {
+		ResourceFilter filter = new ResourceFilter("myapp1, myotherappB", "datasource:Prod*,datasource:~^Batch", "webapp:/internal*,*Test*", null, null);
+		assertTrue(filter.isResourceCaptured("datasource", "ProdDS"));
+		assertTrue(filter.isResourceCaptured("datasource", "BatchDS"));
+		assertFalse(filter.isResourceCaptured("datasource", "OtherDS"));
+		assertFalse(filter.isResourceCaptured("datasource", "ProdTestDS"));
+		assertFalse(filter.isResourceCaptured("webapp", "/internal/admin"));
+		assertTrue(filter.isResourceCaptured("webapp", "/shop"));
+		assertFalse(filter.isResourceCaptured("webapp", "myapp1"));
+		assertFalse(filter.isResourceCaptured("ejb", "myotherappB"));
+		assertTrue(filter.isResourceCaptured("hostmachine", "myapp1"));
+		assertTrue(filter.isServerCaptured("AdminServer"));
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testServerRules() {
+		ResourceFilter filter = new ResourceFilter(null, null, null, "ms*,AdminServer", "ms9*");
+		assertTrue(filter.isServerCaptured("AdminServer"));
+		assertTrue(filter.isServerCaptured("ms1"));
+		assertFalse(filter.isServerCaptured("ms91"));
+		assertFalse(filter.isServerCaptured("other1"));
+		assertTrue(filter.isResourceCaptured("datasource", "AnyDS"));
+		assertTrue(filter.hasSameRulesAs(new ResourceFilter("", null, " ", "ms*,AdminServer", "ms9*")));
+		assertFalse(filter.hasSameRulesAs(new ResourceFilter()));
+	}
+}
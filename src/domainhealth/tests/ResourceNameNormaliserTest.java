@@ -0,0 +1,52 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+import domainhealth.core.statistics.ResourceNameNormaliser;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.core.statistics.ResourceNameNormaliser
+ * 
+ * @see domainhealth.core.statistics.ResourceNameNormaliser
+ */
+public class ResourceNameNormaliserTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+	public void testNormalise() {
+		assertEquals("Dist_Queue1", ResourceNameNormaliser.normalise(DESTINATION_RESOURCE_TYPE, "SystemModule1!JMSServer1@Dist/Queue1"));
+		assertEquals("Queue2", ResourceNameNormaliser.normalise(DESTINATION_RESOURCE_TYPE, "SystemModule1!Queue2"));
+		assertEquals("app_context", ResourceNameNormaliser.normalise(WEBAPP_RESOURCE_TYPE, "ManagedServer1_/app/context"));
+		assertEquals("MyDS_1", ResourceNameNormaliser.normalise(DATASOURCE_RESOURCE_TYPE, "MyDS[1]"));
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testCachedPerResourceType() {
+		String rawName = new String("Module!Server_/x");
+		String destinationName = ResourceNameNormaliser.normalise(DESTINATION_RESOURCE_TYPE, rawName);
+		String webAppName = ResourceNameNormaliser.normalise(WEBAPP_RESOURCE_TYPE, rawName);
+		assertEquals("Server__x", destinationName);
+		assertEquals("x", webAppName);
+		assertSame(destinationName, ResourceNameNormaliser.normalise(DESTINATION_RESOURCE_TYPE, new String(rawName)));
+		assertSame(webAppName, ResourceNameNormaliser.normalise(WEBAPP_RESOURCE_TYPE, new String(rawName)));
+		assertSame(webAppName, ResourceNameNormaliser.normalise(new String(WEBAPP_RESOURCE_TYPE), new String(rawName)));
+	}
+}
@@ -0,0 +1,106 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import java.util.Arrays;
+import java.util.List;
+
+import domainhealth.backend.retriever.ResourceTypeSchedule;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.backend.retriever.ResourceTypeSchedule
+ * 
+ * @see domainhealth.backend.retriever.ResourceTypeSchedule
+ */
+public class ResourceTypeScheduleTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testTickIsGreatestCommonDivisorOfIntervals() {
+    	ResourceTypeSchedule schedule = new ResourceTypeSchedule("jvm:300,core:30,datasource:45", DEFAULT_INTERVAL_MILLIS);
+    	assertEquals(Arrays.asList("jvm", "core", "datasource"), schedule.getMetricTypeSet());
+    	assertEquals(300000, schedule.getIntervalMillis("jvm"));
+    	assertEquals(15000, schedule.getTickIntervalMillis());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testTickIgnoresDefaultIntervalWhenUnused() {
+    	ResourceTypeSchedule schedule = new ResourceTypeSchedule("jvm:120,core:60", 25000);
+    	assertEquals(60000, schedule.getTickIntervalMillis());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testTickIncludesDefaultIntervalWhenUsed() {
+    	ResourceTypeSchedule schedule = new ResourceTypeSchedule("jvm:120,core", 25000);
+    	assertEquals(25000, schedule.getIntervalMillis("core"));
+    	assertEquals(5000, schedule.getTickIntervalMillis());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testIntervalsRoundedToMinimum() {
+    	ResourceTypeSchedule schedule = new ResourceTypeSchedule("jvm:62,core:1,webapp:oops", DEFAULT_INTERVAL_MILLIS);
+    	assertEquals(60000, schedule.getIntervalMillis("jvm"));
+    	assertEquals(5000, schedule.getIntervalMillis("core"));
+    	assertEquals(DEFAULT_INTERVAL_MILLIS, schedule.getIntervalMillis("webapp"));
+    	assertEquals(5000, schedule.getTickIntervalMillis());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testTypesDueOnTheirOwnInterval() {
+    	ResourceTypeSchedule schedule = new ResourceTypeSchedule("jvm:60,core:30", DEFAULT_INTERVAL_MILLIS);
+    	List<String> dueTypes = schedule.getDueTypes(SERVER_NAME, 60000, 1);
+    	assertEquals(Arrays.asList("jvm", "core"), dueTypes);
+    	schedule.markCaptured(SERVER_NAME, dueTypes, 60000);
+    	assertEquals(Arrays.asList("core"), schedule.getDueTypes(SERVER_NAME, 90000, 1));
+    	schedule.markCaptured(SERVER_NAME, Arrays.asList("core"), 90000);
+    	assertEquals(Arrays.asList("jvm", "core"), schedule.getDueTypes(SERVER_NAME, 120000, 1));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testSkippedTypeDueOnNextCycle() {
+    	ResourceTypeSchedule schedule = new ResourceTypeSchedule("jvm:60,core:30", DEFAULT_INTERVAL_MILLIS);
+    	schedule.markCaptured(SERVER_NAME, Arrays.asList("jvm", "core"), 60000);
+    	schedule.markCaptured(SERVER_NAME, Arrays.asList("core"), 90000);
+    	schedule.markCaptured(SERVER_NAME, Arrays.asList("core"), 120000);
+    	assertEquals(Arrays.asList("jvm", "core"), schedule.getDueTypes(SERVER_NAME, 150000, 1));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testStretchedIntervals() {
+    	ResourceTypeSchedule schedule = new ResourceTypeSchedule("core:30", DEFAULT_INTERVAL_MILLIS);
+    	schedule.markCaptured(SERVER_NAME, Arrays.asList("core"), 60000);
+    	assertTrue(schedule.getDueTypes(SERVER_NAME, 90000, 2).isEmpty());
+    	assertEquals(Arrays.asList("core"), schedule.getDueTypes(SERVER_NAME, 120000, 2));
+    	assertEquals(Arrays.asList("core"), schedule.getDueTypes("OtherServer", 90000, 2));
+    }
+
+	// Constants
+	private final static int DEFAULT_INTERVAL_MILLIS = 30000;
+	private final static String SERVER_NAME = "ms1";
+}
@@ -0,0 +1,109 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import static domainhealth.core.statistics.StatisticsStorage.SEPARATOR;
+
+import domainhealth.backend.retriever.RowEncoder;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.backend.retriever.RowEncoder
+ * 
+ * @see domainhealth.backend.retriever.RowEncoder
+ */
+public class RowEncoderTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testSameTextAsConcatenation() {
+    	long longValue = 3 * 1024 * 1024 + 7;
+    	double doubleValue = 12.5;
+    	float floatValue = 0.1f;
+    	String nullText = null;
+    	RowEncoder encoder = new RowEncoder(6, 10);
+    	RowEncoder.Row row = encoder.startRow("2013/01/02 03:04:05");
+    	row.appendText("RUNNING");
+    	row.appendNumber(longValue);
+    	row.appendNumber(doubleValue);
+    	row.appendNumber(floatValue);
+    	row.appendText(nullText);
+    	String expected = "2013/01/02 03:04:05" + SEPARATOR + "RUNNING" + SEPARATOR + longValue + SEPARATOR + 
+    			doubleValue + SEPARATOR + floatValue + SEPARATOR + nullText + SEPARATOR;
+    	assertEquals(expected, row.finish());
+    	assertEquals(6, encoder.getColumnCount());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testRowReusedAcrossEncoders() {
+    	RowEncoder first = new RowEncoder(3, 10);
+    	RowEncoder second = new RowEncoder(2, 10);
+    	RowEncoder.Row row = first.startRow("a");
+    	row.appendNumber(1L);
+    	row.appendNumber(2L);
+    	assertEquals("a,1,2,", row.finish());
+    	RowEncoder.Row nextRow = second.startRow("b");
+    	nextRow.appendNumber(3.0);
+    	assertSame(row, nextRow);
+    	assertEquals("b,3.0,", nextRow.finish());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testColumnCountChecked() {
+    	RowEncoder encoder = new RowEncoder(3, 10);
+    	RowEncoder.Row row = encoder.startRow("a");
+    	row.appendNumber(1L);
+
+    	try {
+    		row.finish();
+    		fail("Row with missing columns should not be finished");
+    	} catch (IllegalStateException e) {
+    		// Expected
+    	}
+
+    	RowEncoder.Row nextRow = encoder.startRow("b");
+    	nextRow.appendNumber(1L);
+    	nextRow.appendNumber(2L);
+    	assertEquals("b,1,2,", nextRow.finish());
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testRowsReusedAcrossThreads() throws InterruptedException {
+    	final RowEncoder encoder = new RowEncoder(2, 10);
+    	final RowEncoder.Row[] rows = new RowEncoder.Row[2];
+
+    	for (int i = 0; i < rows.length; i++) {
+    		final int rowIndex = i;
+    		Thread thread = new Thread() {
+    			public void run() {
+    				rows[rowIndex] = encoder.startRow("a");
+    				rows[rowIndex].appendNumber(1L);
+    				rows[rowIndex].finish();
+    			}
+    		};
+    		thread.start();
+    		thread.join();
+    	}
+
+    	assertSame(rows[0], rows[1]);
+    }
+}
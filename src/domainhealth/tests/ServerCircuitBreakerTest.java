@@ -0,0 +1,142 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import domainhealth.backend.retriever.ServerCircuitBreaker;
+import static domainhealth.backend.retriever.ServerCircuitBreaker.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.backend.retriever.ServerCircuitBreaker
+ * 
+ * @see domainhealth.backend.retriever.ServerCircuitBreaker
+ */
+public class ServerCircuitBreakerTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testOpensAfterConsecutiveFailures() {
+    	ServerCircuitBreaker breaker = newBreaker();
+    	breaker.recordFailure(SERVER_NAME, "timeout", 0);
+    	breaker.recordFailure(SERVER_NAME, "timeout", 0);
+    	breaker.recordSuccess(SERVER_NAME);
+    	breaker.recordFailure(SERVER_NAME, "timeout", 0);
+    	breaker.recordFailure(SERVER_NAME, "timeout", 0);
+    	assertEquals(CLOSED_STATE, breaker.getState(SERVER_NAME));
+    	assertTrue(breaker.isCaptureAllowed(SERVER_NAME));
+    	breaker.recordFailure(SERVER_NAME, "timeout", 0);
+    	assertEquals(OPEN_STATE, breaker.getState(SERVER_NAME));
+    	assertFalse(breaker.isCaptureAllowed(SERVER_NAME));
+    	assertTrue(breaker.isCaptureAllowed("OtherServer"));
+    	assertEquals(NO_PROBE, breaker.startProbeIfDue("OtherServer", 0));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testProbeBacksOffExponentially() {
+    	ServerCircuitBreaker breaker = openBreaker(0);
+    	assertEquals(NO_PROBE, breaker.startProbeIfDue(SERVER_NAME, 999));
+    	long probeNumber = breaker.startProbeIfDue(SERVER_NAME, 1000);
+    	assertTrue(probeNumber != NO_PROBE);
+    	assertEquals(NO_PROBE, breaker.startProbeIfDue(SERVER_NAME, 1100));
+    	breaker.recordProbeResult(SERVER_NAME, probeNumber, null, 1100);
+    	assertEquals(NO_PROBE, breaker.startProbeIfDue(SERVER_NAME, 3099));
+    	probeNumber = breaker.startProbeIfDue(SERVER_NAME, 3100);
+    	assertTrue(probeNumber != NO_PROBE);
+    	breaker.recordProbeResult(SERVER_NAME, probeNumber, "SHUTDOWN", 3100);
+    	probeNumber = breaker.startProbeIfDue(SERVER_NAME, 7100);
+    	assertTrue(probeNumber != NO_PROBE);
+    	breaker.recordProbeResult(SERVER_NAME, probeNumber, null, 7100);
+    	assertEquals(NO_PROBE, breaker.startProbeIfDue(SERVER_NAME, 11099));
+    	assertTrue(breaker.startProbeIfDue(SERVER_NAME, 11100) != NO_PROBE);
+    	assertEquals(OPEN_STATE, breaker.getState(SERVER_NAME));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testSuccessfulProbeHalfOpensThenCaptureCloses() {
+    	ServerCircuitBreaker breaker = openBreaker(0);
+    	long probeNumber = breaker.startProbeIfDue(SERVER_NAME, 1000);
+    	breaker.recordProbeResult(SERVER_NAME, probeNumber, "RUNNING", 1100);
+    	assertEquals(HALF_OPEN_STATE, breaker.getState(SERVER_NAME));
+    	assertTrue(breaker.isCaptureAllowed(SERVER_NAME));
+    	breaker.recordSuccess(SERVER_NAME);
+    	assertEquals(CLOSED_STATE, breaker.getState(SERVER_NAME));
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testHalfOpenFailureReopensWithDoubledBackoff() {
+    	ServerCircuitBreaker breaker = openBreaker(0);
+    	breaker.recordProbeResult(SERVER_NAME, breaker.startProbeIfDue(SERVER_NAME, 1000), null, 1000);
+    	breaker.recordProbeResult(SERVER_NAME, breaker.startProbeIfDue(SERVER_NAME, 3000), "RUNNING", 3000);
+    	breaker.recordFailure(SERVER_NAME, "timeout", 3000);
+    	assertEquals(OPEN_STATE, breaker.getState(SERVER_NAME));
+    	assertEquals(NO_PROBE, breaker.startProbeIfDue(SERVER_NAME, 6999));
+    	assertTrue(breaker.startProbeIfDue(SERVER_NAME, 7000) != NO_PROBE);
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testTimedOutProbeAbandonedAndLateResultIgnored() {
+    	ServerCircuitBreaker breaker = openBreaker(0);
+    	long hungProbeNumber = breaker.startProbeIfDue(SERVER_NAME, 1000);
+    	assertEquals(NO_PROBE, breaker.startProbeIfDue(SERVER_NAME, 1499));
+    	assertEquals(NO_PROBE, breaker.startProbeIfDue(SERVER_NAME, 1500));
+    	breaker.recordProbeResult(SERVER_NAME, hungProbeNumber, "RUNNING", 1600);
+    	assertEquals(OPEN_STATE, breaker.getState(SERVER_NAME));
+    	long probeNumber = breaker.startProbeIfDue(SERVER_NAME, 3500);
+    	assertTrue(probeNumber != hungProbeNumber);
+    	breaker.recordProbeResult(SERVER_NAME, probeNumber, "RUNNING", 3600);
+    	assertEquals(HALF_OPEN_STATE, breaker.getState(SERVER_NAME));
+    }
+
+	/**
+	 * Creates a breaker for tests
+	 * 
+	 * @return The new breaker
+	 */
+	private ServerCircuitBreaker newBreaker() {
+		return new ServerCircuitBreaker(FAILURE_THRESHOLD, INITIAL_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS, PROBE_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Creates a breaker for tests with the test server's circuit opened
+	 * 
+	 * @param nowMillis The time the circuit is opened
+	 * @return The new breaker
+	 */
+	private ServerCircuitBreaker openBreaker(long nowMillis) {
+		ServerCircuitBreaker breaker = newBreaker();
+
+		for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+			breaker.recordFailure(SERVER_NAME, "timeout", nowMillis);
+		}
+
+		return breaker;
+	}
+
+	// Constants
+	private final static int FAILURE_THRESHOLD = 3;
+	private final static long INITIAL_BACKOFF_MILLIS = 1000;
+	private final static long MAX_BACKOFF_MILLIS = 4000;
+	private final static long PROBE_TIMEOUT_MILLIS = 500;
+	private final static String SERVER_NAME = "ms1";
+}
@@ -0,0 +1,191 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import domainhealth.backend.sender.GraphiteBackgroundSender;
+import domainhealth.core.env.AppProperties;
+import domainhealth.core.env.AppProperties.PropKey;
+import domainhealth.tests.simulation.SimulatedAppProperties;
+import domainhealth.tests.simulation.SimulatedCarbonServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.tests.simulation.SimulatedCarbonServer
+ * 
+ * @see domainhealth.tests.simulation.SimulatedCarbonServer
+ */
+public class SimulatedCarbonServerTest extends TestCase {
+	/**
+	 * Test setup
+	 */	
+	protected void setUp() {
+		server = new SimulatedCarbonServer(0);
+		server.start();
+	}
+
+	/**
+	 * Test teardown
+	 */	
+	protected void tearDown() {
+		server.stop();
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testCountsAndValidatesLines() {
+		long now = System.currentTimeMillis() / 1000;
+		
+		try {
+			Socket socket = new Socket("127.0.0.1", server.getPort());
+			OutputStream out = socket.getOutputStream();
+			out.write(("dom.AdminServer.core.OpenSocketsCurrentCount 12 " + now + "\n" +
+					"dom.AdminServer.core.HeapFreeCurrent 1.5E7 " + now + "\n" +
+					"dom.AdminServer.core.State RUNNING " + now + "\n" +
+					"dom.AdminServer.core.HeapSizeCurrent 1024 " + now + "\r\n").getBytes("US-ASCII"));
+			out.flush();
+			waitForLines(4);
+			socket.close();
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+
+		assertEquals(3, server.getStats().getValidLineCount());
+		assertEquals(1, server.getStats().getInvalidLineCount());
+		assertEquals(1, server.getStats().getConnectionCount());
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testSenderReconnectsAfterDisconnect() {
+		AppProperties appProps = SimulatedAppProperties.create();
+		appProps.setProperty(PropKey.GRAPHITE_CARBON_HOST_PROP.toString(), "127.0.0.1");
+		appProps.setProperty(PropKey.GRAPHITE_CARBON_PORT_PROP.toString(), Integer.toString(server.getPort()));
+		appProps.setProperty(PropKey.GRAPHITE_RECONNECT_TIMEOUT_PROP.toString(), "1");
+		GraphiteBackgroundSender gSender = new GraphiteBackgroundSender(appProps);
+		gSender.startup();
+		
+		try {
+			waitForConnections(1);
+			waitForSenderConnected(gSender);
+			gSender.resetCounter("AdminServer");
+			gSender.sendDHData("servers", "AdminServer", "retrieve_time", "12");
+			waitForLines(2);
+			server.disconnectAll();
+			waitForConnections(2);
+			waitForSenderConnected(gSender);
+			gSender.sendDHData("servers", "AdminServer", "retrieve_time", "14");
+			waitForLines(4);
+			assertEquals(4, server.getStats().getValidLineCount());
+			assertEquals(0, server.getStats().getInvalidLineCount());
+		} finally {
+			gSender.shutdown();
+		}
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testDropsConnectionAfterLines() {
+		server.setDisconnectAfterLines(2);
+		long now = System.currentTimeMillis() / 1000;
+
+		try {
+			Socket socket = new Socket("127.0.0.1", server.getPort());
+			OutputStream out = socket.getOutputStream();
+			out.write(("a.b 1 " + now + "\na.b 2 " + now + "\n").getBytes("US-ASCII"));
+			out.flush();
+			assertEquals(-1, socket.getInputStream().read());
+			socket.close();
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+
+		assertEquals(2, server.getStats().getValidLineCount());
+	}
+
+	/**
+	 * Waits until the server has received a number of lines (valid or not).
+	 * 
+	 * @param lineCount The number of lines
+	 */
+	private void waitForLines(long lineCount) {
+		long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+		
+		while ((server.getStats().getValidLineCount() + server.getStats().getInvalidLineCount() < lineCount) && (System.currentTimeMillis() < deadline)) {
+			pause();
+		}
+	}
+
+	/**
+	 * Waits until the server has accepted a number of connections in total,
+	 * with just the latest still open.
+	 * 
+	 * @param connectionCount The number of connections
+	 */
+	private void waitForConnections(long connectionCount) {
+		long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+		
+		while (((server.getStats().getConnectionCount() < connectionCount) || (server.getOpenConnectionCount() != 1)) && (System.currentTimeMillis() < deadline)) {
+			pause();
+		}
+
+		assertEquals(connectionCount, server.getStats().getConnectionCount());
+		assertEquals(1, server.getOpenConnectionCount());
+	}
+
+	/**
+	 * Waits until the sender's end of its current connection is connected.
+	 * 
+	 * @param gSender The sender
+	 */
+	private void waitForSenderConnected(GraphiteBackgroundSender gSender) {
+		long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+		
+		try {
+			while ((!gSender.gpf.getCurrentPipeline().getChannel().isConnected()) && (System.currentTimeMillis() < deadline)) {
+				pause();
+			}
+
+			assertTrue(gSender.gpf.getCurrentPipeline().getChannel().isConnected());
+		} catch (Exception e) {
+			fail(e.toString());
+		}
+	}
+
+	/**
+	 * Pauses briefly whilst waiting for the server.
+	 */
+	private void pause() {
+		try {
+			Thread.sleep(POLL_MILLIS);
+		} catch (InterruptedException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	// Constants
+	private final static long WAIT_MILLIS = 5000;
+	private final static long POLL_MILLIS = 20;
+
+	// Members
+	private SimulatedCarbonServer server;
+}
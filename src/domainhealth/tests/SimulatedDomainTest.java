@@ -0,0 +1,115 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
+
+import javax.management.ObjectName;
+
+import domainhealth.backend.wldfcapture.HarvesterWLDFQueryRunner;
+import domainhealth.backend.wldfcapture.data.DataRecordsCollection;
+import domainhealth.core.jmx.DomainRuntimeServiceMBeanConnection;
+import domainhealth.core.jmx.WebLogicMBeanConnection;
+import domainhealth.core.jmx.WebLogicMBeanException;
+import domainhealth.tests.simulation.SimulatedDomain;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.tests.simulation.SimulatedDomain
+ * 
+ * @see domainhealth.tests.simulation.SimulatedDomain
+ */
+public class SimulatedDomainTest extends TestCase {
+	/**
+	 * Test setup
+	 */	
+	protected void setUp() {
+		domain = new SimulatedDomain("simdomain" + (++domainCount), SERVER_COUNT, RESOURCE_COUNT, 0);
+		domain.install();
+	}
+
+	/**
+	 * Test teardown
+	 */	
+	protected void tearDown() {
+		domain.uninstall();
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testConnectionUsesSimulatedDomain() {
+		try {
+			DomainRuntimeServiceMBeanConnection conn = new DomainRuntimeServiceMBeanConnection();
+			ObjectName[] serverRuntimes = conn.getAllServerRuntimes();
+			assertEquals(SERVER_COUNT, serverRuntimes.length);
+			assertEquals(domain.getServerNames().get(1), conn.getTextAttr(serverRuntimes[1], NAME));
+			assertTrue(WebLogicMBeanConnection.isThisTheAdminServer());
+			conn.close();
+		} catch (WebLogicMBeanException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testResourceAttributes() {
+		try {
+			DomainRuntimeServiceMBeanConnection conn = new DomainRuntimeServiceMBeanConnection();
+			ObjectName serverRuntime = conn.getAllServerRuntimes()[0];
+			ObjectName jdbcService = conn.getChild(serverRuntime, JDBC_SERVICE_RUNTIME);
+			ObjectName[] dataSources = conn.getChildren(jdbcService, JDBC_DATA_SOURCE_RUNTIMES);
+			assertEquals(RESOURCE_COUNT, dataSources.length);
+			long callCount = domain.getCallCount();
+			double value = conn.getNumberAttr(dataSources[0], "ActiveConnectionsCurrentCount");
+			assertEquals(value, conn.getNumberAttr(dataSources[0], "ActiveConnectionsCurrentCount"));
+			assertEquals(callCount + 2, domain.getCallCount());
+			assertEquals(domain.getServerNames().get(0), conn.getTextAttr(conn.getChild(serverRuntime, JVM_RUNTIME), NAME));
+		} catch (WebLogicMBeanException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Test method
+	 */	
+	public void testHarvestedDataArchiveCursor() {
+		try {
+			String serverName = domain.getServerNames().get(2);
+			DomainRuntimeServiceMBeanConnection conn = new DomainRuntimeServiceMBeanConnection();
+			String query = "(TYPE='weblogic.management.runtime.JDBCDataSourceRuntimeMBean' AND ATTRNAME='ActiveConnectionsCurrentCount') OR " +
+					"(TYPE='weblogic.management.runtime.JDBCDataSourceRuntimeMBean' AND ATTRNAME='WaitingForConnectionCurrentCount')";
+			HarvesterWLDFQueryRunner queryRunner = new HarvesterWLDFQueryRunner(conn, serverName, query, QUERY_INTERVAL_MILLIS);
+			DataRecordsCollection records = queryRunner.retrieveDataRecords();
+			int recordsPerHarvest = RESOURCE_COUNT * 2;
+			assertTrue(records.getTotalNumberReocrds() >= recordsPerHarvest * (QUERY_INTERVAL_MILLIS / domain.getHarvestPeriodMillis()));
+			assertEquals(0, records.getTotalNumberReocrds() % recordsPerHarvest);
+			assertEquals(0, domain.getHarvestedDataArchive(serverName).getOpenCursorCount());
+		} catch (WebLogicMBeanException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	// Constants
+	private final static int SERVER_COUNT = 3;
+	private final static int RESOURCE_COUNT = 5;
+	private final static int QUERY_INTERVAL_MILLIS = 60000;
+
+	// Members
+	private static int domainCount = 0;
+	private SimulatedDomain domain;
+}
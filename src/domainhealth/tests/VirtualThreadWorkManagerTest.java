@@ -0,0 +1,257 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import commonj.work.Work;
+import commonj.work.WorkEvent;
+import commonj.work.WorkException;
+import commonj.work.WorkItem;
+import commonj.work.WorkManager;
+import domainhealth.core.env.VirtualThreadWorkManager;
+
+import junit.framework.TestCase;
+
+/**
+ * Test-case class for: domainhealth.core.env.VirtualThreadWorkManager
+ * 
+ * As virtual threads are not available on every JVM the tests run on, the 
+ * work manager is created around a plain thread pool executor (through its
+ * private constructor), exercising the same scheduling and waiting logic.
+ * 
+ * @see domainhealth.core.env.VirtualThreadWorkManager
+ */
+public class VirtualThreadWorkManagerTest extends TestCase {
+	/**
+	 * Test method
+	 */	
+    public void testCreatedOnlyIfSupported() {
+    	VirtualThreadWorkManager supportedWorkManager = VirtualThreadWorkManager.createIfSupported();
+    	boolean supported = false;
+
+    	try {
+    		Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    		supported = true;
+    	} catch (NoSuchMethodException e) {
+    		// Older JVM without virtual threads
+    	}
+
+    	assertEquals(supported, supportedWorkManager != null);
+
+    	if (supportedWorkManager != null) {
+    		supportedWorkManager.shutdown();
+    	}
+    }
+
+	/**
+	 * Test method
+	 * 
+	 * @throws Exception Indicates the work could not be scheduled or waited for
+	 */	
+    public void testWaitForAllCompletes() throws Exception {
+    	List<WorkItem> workItems = new ArrayList<WorkItem>();
+    	TestWork[] works = new TestWork[5];
+
+    	for (int i = 0; i < works.length; i++) {
+    		works[i] = new TestWork(null, false);
+    		workItems.add(workManager.schedule(works[i]));
+    	}
+
+    	assertTrue(workManager.waitForAll(workItems, WorkManager.INDEFINITE));
+
+    	for (int i = 0; i < works.length; i++) {
+    		assertTrue(works[i].hasRun());
+    		assertEquals(WorkEvent.WORK_COMPLETED, workItems.get(i).getStatus());
+    		assertSame(works[i], workItems.get(i).getResult());
+    	}
+    }
+
+	/**
+	 * Test method
+	 * 
+	 * @throws Exception Indicates the work could not be scheduled or waited for
+	 */	
+    public void testWaitForAllTimesOutOnBlockedWork() throws Exception {
+    	CountDownLatch releaseLatch = new CountDownLatch(1);
+    	WorkItem blockedItem = workManager.schedule(new TestWork(releaseLatch, false));
+    	WorkItem quickItem = workManager.schedule(new TestWork(null, false));
+
+    	try {
+    		assertFalse(workManager.waitForAll(Arrays.asList(quickItem, blockedItem), 100));
+    		assertFalse(workManager.waitForAll(Arrays.asList(blockedItem), WorkManager.IMMEDIATE));
+    		assertTrue(workManager.waitForAll(Arrays.asList(quickItem), WorkManager.INDEFINITE));
+    	} finally {
+    		releaseLatch.countDown();
+    	}
+
+    	assertTrue(workManager.waitForAll(Arrays.asList(blockedItem), WAIT_MILLIS));
+    }
+
+	/**
+	 * Test method
+	 * 
+	 * @throws Exception Indicates the work could not be scheduled or waited for
+	 */	
+    @SuppressWarnings("rawtypes")
+    public void testWaitForAnyReturnsCompletedOnly() throws Exception {
+    	CountDownLatch releaseLatch = new CountDownLatch(1);
+    	WorkItem blockedItem = workManager.schedule(new TestWork(releaseLatch, false));
+    	WorkItem quickItem = workManager.schedule(new TestWork(null, false));
+
+    	try {
+    		Collection completed = workManager.waitForAny(Arrays.asList(blockedItem, quickItem), WAIT_MILLIS);
+    		assertEquals(1, completed.size());
+    		assertTrue(completed.contains(quickItem));
+    		assertTrue(workManager.waitForAny(Arrays.asList(blockedItem), 50).isEmpty());
+    	} finally {
+    		releaseLatch.countDown();
+    	}
+    }
+
+	/**
+	 * Test method
+	 * 
+	 * @throws Exception Indicates the work could not be scheduled or waited for
+	 */	
+    public void testFailedWorkCompletesWithException() throws Exception {
+    	WorkItem failedItem = workManager.schedule(new TestWork(null, true));
+    	assertTrue(workManager.waitForAll(Arrays.asList(failedItem), WAIT_MILLIS));
+    	assertEquals(WorkEvent.WORK_COMPLETED, failedItem.getStatus());
+
+    	try {
+    		failedItem.getResult();
+    		fail("Expected the work's failure to be reported");
+    	} catch (WorkException e) {
+    		assertTrue(e.getMessage().indexOf("work failed on purpose") >= 0);
+    	}
+    }
+
+	/**
+	 * Test method
+	 */	
+    public void testShutdownRejectsWork() {
+    	workManager.shutdown();
+
+    	try {
+    		workManager.schedule(new TestWork(null, false));
+    		fail("Expected work to be rejected after shutdown");
+    	} catch (WorkException e) {
+    		// Expected
+    	}
+    }
+
+	/**
+	 * Create a work manager around a plain thread pool executor.
+	 * 
+	 * @throws Exception Indicates the work manager could not be created
+	 */
+	protected void setUp() throws Exception {
+		executor = Executors.newCachedThreadPool();
+		Constructor<VirtualThreadWorkManager> constructor = VirtualThreadWorkManager.class.getDeclaredConstructor(ExecutorService.class, Method.class, Method.class);
+		constructor.setAccessible(true);
+		workManager = constructor.newInstance(executor, null, null);
+	}
+
+	/**
+	 * Stop the executor's threads.
+	 * 
+	 * @throws Exception Indicates the executor's threads did not stop
+	 */
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+		executor.awaitTermination(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Work which optionally waits to be released and optionally fails.
+	 */
+	private static class TestWork implements Work {
+		/**
+		 * Create the work
+		 * 
+		 * @param releaseLatch The latch to wait on before finishing (null to not wait)
+		 * @param fail True to fail with an exception
+		 */
+		public TestWork(CountDownLatch releaseLatch, boolean fail) {
+			this.releaseLatch = releaseLatch;
+			this.fail = fail;
+		}
+
+		/**
+		 * Run the work
+		 */
+		public void run() {
+			run = true;
+
+			if (releaseLatch != null) {
+				try {
+					releaseLatch.await(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			if (fail) {
+				throw new IllegalStateException("work failed on purpose");
+			}
+		}
+
+		/**
+		 * Indicates whether the work has run
+		 * 
+		 * @return True if run
+		 */
+		public boolean hasRun() {
+			return run;
+		}
+
+		/**
+		 * Not daemon work
+		 * 
+		 * @return False
+		 */
+		public boolean isDaemon() {
+			return false;
+		}
+
+		/**
+		 * Nothing to release
+		 */
+		public void release() {
+		}
+
+		// Members
+		private final CountDownLatch releaseLatch;
+		private final boolean fail;
+		private volatile boolean run = false;
+	}
+
+	// Constants
+	private final static long WAIT_MILLIS = 10000;
+
+	// Members
+	private ExecutorService executor;
+	private VirtualThreadWorkManager workManager;
+}
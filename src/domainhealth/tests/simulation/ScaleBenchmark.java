@@ -0,0 +1,448 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests.simulation;
+
+import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.ObjectName;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.string.StringEncoder;
+
+import domainhealth.backend.jmxpoll.StatisticCapturerJMXPoll;
+import domainhealth.backend.retriever.StatisticCapturer;
+import domainhealth.backend.sender.GraphiteBackgroundSender;
+import domainhealth.backend.sender.GraphiteClientPipelineFactory;
+import domainhealth.backend.wldfcapture.StatisticCapturerWLDFQuery;
+import domainhealth.core.env.AppLog;
+import domainhealth.core.env.AppProperties;
+import domainhealth.core.env.AppProperties.PropKey;
+import domainhealth.core.jmx.DomainRuntimeServiceMBeanConnection;
+import domainhealth.core.statistics.MonitorProperties;
+import domainhealth.core.statistics.StatisticsStorage;
+
+/**
+ * Scale benchmark driver, running capture cycles equivalent to those of the
+ * Statistics Retriever Background Service against a simulated domain, for 
+ * every combination of a sweep of domain sizes, per-call latencies, capture
+ * modes and output modes. For each combination it reports the cycle time 
+ * (50th and 99th percentiles), and per cycle the JMX calls made, the bytes
+ * of statistics written (CSV files and/or Graphite metric lines) and the 
+ * heap allocated, as one CSV line, so the results of different builds can 
+ * be compared to catch regressions.
+ * 
+ * Usage (each parameter is optional, lists are comma separated):
+ * 
+ *   java domainhealth.tests.simulation.ScaleBenchmark servers=1,10 resources=10,100 
+ *        latencyMicros=0,500 capture=jmxpoll,wldf output=csvfile,graphite,both 
+ *        types=core,datasource cycles=20 warmup=3 out=results.csv
+ * 
+ * A cycle opens a domain runtime connection, looks up every server, and 
+ * captures every server's statistics in parallel (each server's resource 
+ * types in turn), waiting for all servers to complete. Graphite metric 
+ * lines are encoded into memory rather than sent to a Carbon server.
+ */
+public class ScaleBenchmark {
+	/**
+	 * Runs the parameter sweep, writing the results to the 'out' file (or 
+	 * to standard output if no file is given).
+	 * 
+	 * @param args The parameters, each as name=value
+	 * @throws Exception Indicates the benchmark could not be run
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> params = new HashMap<String, String>(DEFAULT_PARAMS);
+		
+		for (String arg : args) {
+			int separatorPos = arg.indexOf('=');
+			
+			if (separatorPos <= 0) {
+				throw new IllegalArgumentException("Parameter '" + arg + "' is not in the form name=value");
+			}
+
+			params.put(arg.substring(0, separatorPos), arg.substring(separatorPos + 1));
+		}
+
+		String outFileName = params.get(OUT_PARAM);
+		PrintWriter out = ((outFileName == null) || (outFileName.length() == 0)) ? new PrintWriter(System.out, true) : new PrintWriter(new FileWriter(outFileName), true);
+		ScaleBenchmark benchmark = new ScaleBenchmark(splitList(params.get(TYPES_PARAM)), Integer.parseInt(params.get(CYCLES_PARAM)), Integer.parseInt(params.get(WARMUP_PARAM)));
+		out.println(RESULT_HEADER_LINE);
+		
+		try {
+			for (String servers : splitList(params.get(SERVERS_PARAM))) {
+				for (String resources : splitList(params.get(RESOURCES_PARAM))) {
+					for (String latencyMicros : splitList(params.get(LATENCY_PARAM))) {
+						for (String capture : splitList(params.get(CAPTURE_PARAM))) {
+							for (String output : splitList(params.get(OUTPUT_PARAM))) {
+								out.println(benchmark.run(Integer.parseInt(servers), Integer.parseInt(resources), Long.parseLong(latencyMicros), capture, output));
+							}
+						}
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Creates a new driver capturing the given metric types in each cycle.
+	 * 
+	 * @param metricTypes The metric types to capture (eg. core, datasource)
+	 * @param cycles The number of measured cycles per combination of parameters
+	 * @param warmupCycles The number of unmeasured cycles run first
+	 */
+	public ScaleBenchmark(List<String> metricTypes, int cycles, int warmupCycles) {
+		MonitorProperties.setMetricDeep(METRIC_DEEP);
+		this.metricTypes = metricTypes;
+		this.cycles = cycles;
+		this.warmupCycles = warmupCycles;
+	}
+
+	/**
+	 * Runs the cycles for one combination of parameters.
+	 * 
+	 * @param serverCount The number of servers in the domain
+	 * @param resourceCount The number of resources of each type per server
+	 * @param latencyMicros The latency of each JMX call
+	 * @param capture The capture mode (jmxpoll or wldf)
+	 * @param output The output mode (csvfile, graphite or both)
+	 * @return The CSV result line
+	 * @throws Exception Indicates the cycles could not be run
+	 */
+	public String run(int serverCount, int resourceCount, long latencyMicros, String capture, String output) throws Exception {
+		File outputDir = createTempDir();
+		AppLog.getLogger().setConfig(new File(outputDir, LOG_FILENAME).getAbsolutePath(), LOG_LEVEL);
+		SimulatedDomain domain = new SimulatedDomain(DOMAIN_NAME_PREFIX + (++runCount), serverCount, resourceCount, latencyMicros);
+		domain.setHarvestPeriodMillis(QUERY_INTERVAL_MILLIS);
+		domain.install();
+		ExecutorService captureThreads = Executors.newFixedThreadPool(serverCount);
+		StatisticsStorage statisticsStorage = new StatisticsStorage(outputDir.getAbsolutePath(), output);
+		GraphiteBackgroundSender gSender = newMemorySender(domain.getDomainName());
+		statisticsStorage.setSender(gSender);
+		long[] cycleNanos = new long[cycles];
+		long calls = 0;
+		long bytes = 0;
+		long allocatedBytes = 0;
+		
+		try {
+			for (int i = -warmupCycles; i < cycles; i++) {
+				long startCalls = domain.getCallCount();
+				long startBytes = getDirSize(outputDir);
+				long startAllocatedBytes = getAllocatedBytes();
+				long startNanos = System.nanoTime();
+				runCycle(statisticsStorage, gSender, capture, captureThreads);
+				long elapsedNanos = System.nanoTime() - startNanos;
+				long endAllocatedBytes = getAllocatedBytes();
+				long cycleBytes = (getDirSize(outputDir) - startBytes) + drainMemorySender();
+
+				if (i >= 0) {
+					cycleNanos[i] = elapsedNanos;
+					calls += domain.getCallCount() - startCalls;
+					bytes += cycleBytes;
+					allocatedBytes += endAllocatedBytes - startAllocatedBytes;
+				}
+			}
+		} finally {
+			captureThreads.shutdown();
+			domain.uninstall();
+			deleteDir(outputDir);
+		}
+
+		Arrays.sort(cycleNanos);
+		return String.format(RESULT_LINE_TEMPLATE, serverCount, resourceCount, latencyMicros, capture, output, cycles, 
+				getPercentileMillis(cycleNanos, P50), getPercentileMillis(cycleNanos, P99), 
+				calls / cycles, bytes / cycles, (isAllocatedBytesSupported()) ? (allocatedBytes / cycles) : -1);
+	}
+
+	/**
+	 * Runs one capture cycle, capturing every server of the domain in 
+	 * parallel and waiting for all to complete.
+	 * 
+	 * @param statisticsStorage The statistics storage to write to
+	 * @param gSender The Graphite sender
+	 * @param capture The capture mode (jmxpoll or wldf)
+	 * @param captureThreads The threads to capture the servers with
+	 * @throws Exception Indicates the cycle failed
+	 */
+	private void runCycle(StatisticsStorage statisticsStorage, GraphiteBackgroundSender gSender, String capture, ExecutorService captureThreads) throws Exception {
+		DomainRuntimeServiceMBeanConnection conn = new DomainRuntimeServiceMBeanConnection();
+		long cycleTimeMillis = System.currentTimeMillis();
+
+		try {
+			if (wlsVersionNumber == null) {
+				wlsVersionNumber = conn.getTextAttr(conn.getDomainConfiguration(), DOMAIN_VERSION);
+			}
+
+			ObjectName[] serverRuntimes = conn.getAllServerRuntimes();
+			List<Future<Object>> captures = new ArrayList<Future<Object>>(serverRuntimes.length);
+			
+			for (ObjectName serverRuntime : serverRuntimes) {
+				String serverName = serverRuntime.getKeyProperty(NAME);
+				gSender.resetCounter(serverName);
+				final StatisticCapturer capturer = (WLDF_CAPTURE.equals(capture)) ? 
+						new StatisticCapturerWLDFQuery(statisticsStorage, conn, serverRuntime, serverName, QUERY_INTERVAL_MILLIS, metricTypes, wlsVersionNumber, JVM_VERSION, null) :
+						new StatisticCapturerJMXPoll(statisticsStorage, conn, serverRuntime, serverName, QUERY_INTERVAL_MILLIS, metricTypes, wlsVersionNumber, JVM_VERSION);
+				capturer.setHost(conn.getTextAttr(serverRuntime, CURRENT_MACHINE));
+				capturer.setCycleTimeMillis(cycleTimeMillis);
+				captures.add(captureThreads.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						capturer.captureAndLogServerStats();
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Object> serverCapture : captures) {
+				serverCapture.get();
+			}
+		} finally {
+			conn.close();
+		}
+	}
+
+	/**
+	 * Creates a Graphite sender which encodes metric lines into memory 
+	 * buffers (one set per writing thread) rather than sending them.
+	 * 
+	 * @param domainName The domain name to prefix metrics with
+	 * @return The Graphite sender
+	 */
+	private GraphiteBackgroundSender newMemorySender(String domainName) {
+		AppProperties appProps = SimulatedAppProperties.create();
+		appProps.setProperty(PropKey.GRAPHITE_METRIC_FORCE_DOMAIN_NAME_PROP.toString(), domainName);
+		GraphiteBackgroundSender gSender = new GraphiteBackgroundSender(appProps);
+		gSender.gpf = new GraphiteClientPipelineFactory(null, null) {
+			public ChannelPipeline getCurrentPipeline() {
+				return threadEmbedder.get().getPipeline();
+			}
+		};
+		return gSender;
+	}
+
+	/**
+	 * Removes the metric lines encoded into memory by every thread (only 
+	 * called between cycles, once every capture has completed).
+	 * 
+	 * @return The total bytes of the removed metric lines
+	 */
+	private long drainMemorySender() {
+		long bytes = 0;
+		
+		synchronized (embedders) {
+			for (EncoderEmbedder<ChannelBuffer> embedder : embedders) {
+				ChannelBuffer buffer;
+				
+				while ((buffer = embedder.poll()) != null) {
+					bytes += buffer.readableBytes();
+				}
+			}
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Gets the total heap allocated so far by all live threads.
+	 * 
+	 * @return The allocated bytes (0 if not supported by the JVM)
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		
+		if (!isAllocatedBytesSupported()) {
+			return 0;
+		}
+
+		long total = 0;
+		
+		for (long allocated : ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+			if (allocated > 0) {
+				total += allocated;
+			}
+		}
+
+		return total;
+	}
+
+	/**
+	 * Checks whether the JVM can report heap allocated per thread.
+	 * 
+	 * @return True if supported; otherwise false
+	 */
+	private static boolean isAllocatedBytesSupported() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		return (threadMXBean instanceof com.sun.management.ThreadMXBean) && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled();
+	}
+
+	/**
+	 * Gets a percentile of the sorted cycle times, by the nearest rank.
+	 * 
+	 * @param sortedNanos The sorted cycle times
+	 * @param percentile The percentile (eg. 99)
+	 * @return The cycle time at the percentile in milliseconds
+	 */
+	private static double getPercentileMillis(long[] sortedNanos, int percentile) {
+		int rank = (int) Math.ceil((percentile / 100.0) * sortedNanos.length);
+		return sortedNanos[Math.max(rank - 1, 0)] / NANOS_IN_MILLI;
+	}
+
+	/**
+	 * Gets the total size of the files in a directory and its descendants.
+	 * 
+	 * @param dir The directory
+	 * @return The total size in bytes
+	 */
+	private static long getDirSize(File dir) {
+		long size = 0;
+		File[] files = dir.listFiles();
+		
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					size += getDirSize(file);
+				} else if (!file.getName().equals(LOG_FILENAME)) {
+					size += file.length();
+				}
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Creates a new empty temporary directory.
+	 * 
+	 * @return The directory
+	 * @throws IOException Indicates the directory could not be created
+	 */
+	private static File createTempDir() throws IOException {
+		File dir = File.createTempFile(TEMP_DIR_PREFIX, "");
+		
+		if ((!dir.delete()) || (!dir.mkdirs())) {
+			throw new IOException("Unable to create temporary directory " + dir);
+		}
+
+		return dir;
+	}
+
+	/**
+	 * Deletes a directory and its descendants.
+	 * 
+	 * @param dir The directory
+	 */
+	private static void deleteDir(File dir) {
+		File[] files = dir.listFiles();
+		
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					deleteDir(file);
+				} else {
+					file.delete();
+				}
+			}
+		}
+
+		dir.delete();
+	}
+
+	/**
+	 * Splits a comma separated list.
+	 * 
+	 * @param listText The list text
+	 * @return The list items
+	 */
+	private static List<String> splitList(String listText) {
+		return Arrays.asList(listText.trim().split(LIST_SEPARATOR_PATTERN));
+	}
+
+	// Constants
+	private final static String SERVERS_PARAM = "servers";
+	private final static String RESOURCES_PARAM = "resources";
+	private final static String LATENCY_PARAM = "latencyMicros";
+	private final static String CAPTURE_PARAM = "capture";
+	private final static String OUTPUT_PARAM = "output";
+	private final static String TYPES_PARAM = "types";
+	private final static String CYCLES_PARAM = "cycles";
+	private final static String WARMUP_PARAM = "warmup";
+	private final static String OUT_PARAM = "out";
+	private final static Map<String, String> DEFAULT_PARAMS = new HashMap<String, String>();
+	private final static String LIST_SEPARATOR_PATTERN = "\\s*,\\s*";
+	private final static String WLDF_CAPTURE = "wldf";
+	private final static String METRIC_DEEP = "extended";
+	private final static String JVM_VERSION = "7";
+	private final static String CURRENT_MACHINE = "CurrentMachine";
+	private final static int QUERY_INTERVAL_MILLIS = 30000;
+	private final static String DOMAIN_NAME_PREFIX = "scaledomain";
+	private final static String TEMP_DIR_PREFIX = "dh_scale";
+	private final static String LOG_FILENAME = "scale-benchmark.log";
+	private final static String LOG_LEVEL = "WARN";
+	private final static int P50 = 50;
+	private final static int P99 = 99;
+	private final static double NANOS_IN_MILLI = 1000000.0;
+	private final static String RESULT_HEADER_LINE = "servers,resources,latency_micros,capture,output,cycles,cycle_p50_millis,cycle_p99_millis,jmx_calls_per_cycle,bytes_per_cycle,alloc_bytes_per_cycle";
+	private final static String RESULT_LINE_TEMPLATE = "%d,%d,%d,%s,%s,%d,%.3f,%.3f,%d,%d,%d";
+
+	// Members
+	private final List<String> metricTypes;
+	private final int cycles;
+	private final int warmupCycles;
+	private final List<EncoderEmbedder<ChannelBuffer>> embedders = new ArrayList<EncoderEmbedder<ChannelBuffer>>();
+	private final ThreadLocal<EncoderEmbedder<ChannelBuffer>> threadEmbedder = new ThreadLocal<EncoderEmbedder<ChannelBuffer>>() {
+		protected EncoderEmbedder<ChannelBuffer> initialValue() {
+			EncoderEmbedder<ChannelBuffer> embedder = new EncoderEmbedder<ChannelBuffer>(new StringEncoder());
+			
+			synchronized (embedders) {
+				embedders.add(embedder);
+			}
+
+			return embedder;
+		}
+	};
+	private String wlsVersionNumber = null;
+	private int runCount = 0;
+
+	// Static initialiser
+	static {
+		DEFAULT_PARAMS.put(SERVERS_PARAM, "1,10");
+		DEFAULT_PARAMS.put(RESOURCES_PARAM, "10,100");
+		DEFAULT_PARAMS.put(LATENCY_PARAM, "0,500");
+		DEFAULT_PARAMS.put(CAPTURE_PARAM, "jmxpoll,wldf");
+		DEFAULT_PARAMS.put(OUTPUT_PARAM, "csvfile,graphite,both");
+		DEFAULT_PARAMS.put(TYPES_PARAM, "core,jvm,datasource,jmsdestination,webapp,ejb,extended");
+		DEFAULT_PARAMS.put(CYCLES_PARAM, "20");
+		DEFAULT_PARAMS.put(WARMUP_PARAM, "3");
+		DEFAULT_PARAMS.put(OUT_PARAM, "");
+	}
+}
@@ -0,0 +1,60 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests.simulation;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.ServletContext;
+
+import domainhealth.core.env.AppProperties;
+
+/**
+ * Creates application properties outside of a web container, for running 
+ * the application's backend services against a simulated domain or 
+ * Carbon server.
+ */
+public final class SimulatedAppProperties {
+	/**
+	 * Creates application properties from a servlet context holding no 
+	 * context-params, so that only the defaults and any values set on the
+	 * returned properties apply.
+	 * 
+	 * @return The application properties
+	 */
+	public static AppProperties create() {
+		ServletContext context = (ServletContext) Proxy.newProxyInstance(SimulatedAppProperties.class.getClassLoader(), new Class<?>[] {ServletContext.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals(GET_RESOURCE_AS_STREAM_METHOD)) {
+					return new ByteArrayInputStream(new byte[0]);
+				}
+				
+				return null;
+			}
+		});
+		return new AppProperties(context);
+	}
+
+	/**
+	 * Not instantiable.
+	 */
+	private SimulatedAppProperties() {
+	}
+
+	// Constants
+	private final static String GET_RESOURCE_AS_STREAM_METHOD = "getResourceAsStream";
+}
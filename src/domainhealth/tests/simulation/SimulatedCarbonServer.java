@@ -0,0 +1,467 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests.simulation;
+
+import java.net.InetSocketAddress;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.Delimiters;
+import org.jboss.netty.handler.codec.string.StringDecoder;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import domainhealth.core.instrumentation.LatencyHistogram;
+
+/**
+ * A local stand-in for a Graphite Carbon server, receiving metric lines in
+ * the Carbon plaintext protocol ("path value timestamp"), to throughput 
+ * test the Graphite sender without a real Carbon. Every line received is 
+ * counted and validated, and the latency from each metric's timestamp to 
+ * its receipt is recorded (to within the one second resolution of metric 
+ * timestamps).
+ * 
+ * Misbehaving Carbon servers can be simulated: reads can be slowed (so the
+ * sender sees TCP backpressure), all reading can be stalled for a period, 
+ * and connections can be dropped, either on demand or after every given 
+ * number of lines (so the sender's reconnection is exercised).
+ * 
+ * Run from the command line, the server listens until killed, printing a 
+ * CSV line of statistics at the end of every reporting period:
+ * 
+ *   java domainhealth.tests.simulation.SimulatedCarbonServer port=2003 readDelayMicros=0 
+ *        disconnectAfterLines=0 reportSecs=1
+ */
+public class SimulatedCarbonServer {
+	/**
+	 * Runs the server until killed, reporting its statistics periodically.
+	 * 
+	 * @param args The parameters, each as name=value (port, readDelayMicros, disconnectAfterLines, reportSecs)
+	 * @throws Exception Indicates the server could not be run
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = DEFAULT_PORT;
+		long readDelayMicros = 0;
+		long disconnectAfterLines = 0;
+		int reportSecs = 1;
+		
+		for (String arg : args) {
+			String[] param = arg.split("=", 2);
+			
+			if (param.length != 2) {
+				throw new IllegalArgumentException("Parameter '" + arg + "' is not in the form name=value");
+			} else if (param[0].equals("port")) {
+				port = Integer.parseInt(param[1]);
+			} else if (param[0].equals("readDelayMicros")) {
+				readDelayMicros = Long.parseLong(param[1]);
+			} else if (param[0].equals("disconnectAfterLines")) {
+				disconnectAfterLines = Long.parseLong(param[1]);
+			} else if (param[0].equals("reportSecs")) {
+				reportSecs = Integer.parseInt(param[1]);
+			} else {
+				throw new IllegalArgumentException("Unknown parameter '" + param[0] + "'");
+			}
+		}
+
+		SimulatedCarbonServer server = new SimulatedCarbonServer(port);
+		server.setReadDelayMicros(readDelayMicros);
+		server.setDisconnectAfterLines(disconnectAfterLines);
+		server.start();
+		System.out.println(STATS_HEADER_LINE);
+		Stats lastStats = server.getStats();
+		
+		while (true) {
+			Thread.sleep(reportSecs * ONE_SECOND_MILLIS);
+			Stats stats = server.getStats();
+			System.out.println(stats.minus(lastStats).toCSVLine());
+			lastStats = stats;
+		}
+	}
+
+	/**
+	 * Creates a new (not yet started) server.
+	 * 
+	 * @param port The port to listen on (0 for any free port)
+	 */
+	public SimulatedCarbonServer(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Starts listening for connections.
+	 */
+	public synchronized void start() {
+		bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+		bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+			public ChannelPipeline getPipeline() {
+				ChannelPipeline pipeline = Channels.pipeline();
+				pipeline.addLast("throttle", new ReadThrottleHandler());
+				pipeline.addLast("framer", new DelimiterBasedFrameDecoder(MAX_LINE_LENGTH, Delimiters.lineDelimiter()));
+				pipeline.addLast("decoder", new StringDecoder());
+				pipeline.addLast("handler", new MetricLineHandler());
+				return pipeline;
+			}
+		});
+		timer = new HashedWheelTimer();
+		Channel serverChannel = bootstrap.bind(new InetSocketAddress(LOCALHOST, port));
+		boundPort = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+		channels.add(serverChannel);
+	}
+
+	/**
+	 * Closes every connection and stops listening.
+	 */
+	public synchronized void stop() {
+		if (bootstrap != null) {
+			channels.close().awaitUninterruptibly();
+			timer.stop();
+			bootstrap.releaseExternalResources();
+			bootstrap = null;
+		}
+	}
+
+	/**
+	 * Gets the port being listened on.
+	 * 
+	 * @return The port (only known once started)
+	 */
+	public int getPort() {
+		return boundPort;
+	}
+
+	/**
+	 * Sets the delay before each chunk of data read from a connection is 
+	 * processed, to simulate a slow Carbon server.
+	 * 
+	 * @param readDelayMicros The delay per read (0 for no delay)
+	 */
+	public void setReadDelayMicros(long readDelayMicros) {
+		this.readDelayMicros = readDelayMicros;
+	}
+
+	/**
+	 * Sets the number of lines after which each connection is dropped, to 
+	 * simulate an unreliable Carbon server.
+	 * 
+	 * @param disconnectAfterLines The lines per connection (0 to never drop connections)
+	 */
+	public void setDisconnectAfterLines(long disconnectAfterLines) {
+		this.disconnectAfterLines = disconnectAfterLines;
+	}
+
+	/**
+	 * Stops reading from every open connection for a period, to simulate a 
+	 * stalled Carbon server.
+	 * 
+	 * @param stallMillis The period to stop reading for
+	 */
+	public void stall(long stallMillis) {
+		for (final Channel channel : channels) {
+			if (channel.getParent() != null) {
+				channel.setReadable(false);
+				timer.newTimeout(new TimerTask() {
+					public void run(Timeout timeout) {
+						channel.setReadable(true);
+					}
+				}, stallMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Drops every open connection (but carries on listening for new ones).
+	 */
+	public void disconnectAll() {
+		for (Channel channel : channels) {
+			if (channel.getParent() != null) {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of connections currently open.
+	 * 
+	 * @return The number of open connections
+	 */
+	public int getOpenConnectionCount() {
+		return channels.size() - 1;
+	}
+
+	/**
+	 * Gets the statistics of everything received since the server started.
+	 * 
+	 * @return The statistics
+	 */
+	public Stats getStats() {
+		return new Stats(System.currentTimeMillis(), connectionCount.get(), validLineCount.get(), invalidLineCount.get(), byteCount.get(), latencies.snapshot());
+	}
+
+	/**
+	 * Checks whether a line is a valid Carbon plaintext protocol metric line
+	 * (a metric path with no spaces, a numeric value and a timestamp in 
+	 * seconds since the epoch, separated by single spaces).
+	 * 
+	 * @param line The line (without its line terminator)
+	 * @return The line's timestamp in seconds if valid; otherwise -1
+	 */
+	static long parseMetricLine(String line) {
+		int valuePos = line.indexOf(' ') + 1;
+		int timestampPos = line.indexOf(' ', valuePos) + 1;
+
+		if ((valuePos <= 1) || (timestampPos <= valuePos + 1) || (line.indexOf(' ', timestampPos) >= 0)) {
+			return -1;
+		}
+
+		try {
+			Double.parseDouble(line.substring(valuePos, timestampPos - 1));
+			long timestamp = Long.parseLong(line.substring(timestampPos));
+			return (timestamp >= 0) ? timestamp : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Delays each chunk of data read from a connection by the read delay, 
+	 * holding up the connection's I/O thread so that reading falls behind.
+	 */
+	private class ReadThrottleHandler extends SimpleChannelUpstreamHandler {
+		/**
+		 * Counts, delays and then passes on the data read.
+		 * 
+		 * @param ctx The handler context
+		 * @param e The read data event
+		 * @throws Exception Indicates a later handler failed
+		 */
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+			byteCount.addAndGet(((ChannelBuffer) e.getMessage()).readableBytes());
+			long delayMicros = readDelayMicros;
+			
+			if (delayMicros > 0) {
+				Thread.sleep(delayMicros / MICROS_IN_MILLI, (int) ((delayMicros % MICROS_IN_MILLI) * NANOS_IN_MICRO));
+			}
+
+			super.messageReceived(ctx, e);
+		}
+	}
+
+	/**
+	 * Counts and validates each metric line received on a connection, 
+	 * dropping the connection after the configured number of lines.
+	 */
+	private class MetricLineHandler extends SimpleChannelUpstreamHandler {
+		/**
+		 * Tracks the newly opened connection.
+		 * 
+		 * @param ctx The handler context
+		 * @param e The channel open event
+		 */
+		public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
+			channels.add(e.getChannel());
+			connectionCount.incrementAndGet();
+		}
+
+		/**
+		 * Counts and validates a received metric line.
+		 * 
+		 * @param ctx The handler context
+		 * @param e The received line event
+		 */
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+			long timestamp = parseMetricLine((String) e.getMessage());
+
+			if (timestamp < 0) {
+				invalidLineCount.incrementAndGet();
+			} else {
+				validLineCount.incrementAndGet();
+				latencies.record((System.currentTimeMillis() - (timestamp * ONE_SECOND_MILLIS)) * MICROS_IN_MILLI);
+			}
+
+			if ((disconnectAfterLines > 0) && (++connectionLineCount >= disconnectAfterLines)) {
+				e.getChannel().close();
+			}
+		}
+
+		/**
+		 * Drops a connection on which an error occurred (eg. the sender 
+		 * reset the connection).
+		 * 
+		 * @param ctx The handler context
+		 * @param e The error event
+		 */
+		public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+			e.getChannel().close();
+		}
+
+		// Members
+		private long connectionLineCount = 0;
+	}
+
+	/**
+	 * The totals of what the server has received up to a point in time, 
+	 * or, as the difference between two such totals, over a period.
+	 */
+	public static class Stats {
+		/**
+		 * Creates new statistics.
+		 * 
+		 * @param timeMillis The time the statistics were taken (or the length of the period)
+		 * @param connectionCount The number of connections accepted
+		 * @param validLineCount The number of valid metric lines received
+		 * @param invalidLineCount The number of invalid lines received
+		 * @param byteCount The number of bytes received
+		 * @param latencies The latencies from metric timestamp to receipt
+		 */
+		Stats(long timeMillis, long connectionCount, long validLineCount, long invalidLineCount, long byteCount, LatencyHistogram.Snapshot latencies) {
+			this.timeMillis = timeMillis;
+			this.connectionCount = connectionCount;
+			this.validLineCount = validLineCount;
+			this.invalidLineCount = invalidLineCount;
+			this.byteCount = byteCount;
+			this.latencies = latencies;
+		}
+
+		/**
+		 * Gets the statistics of the period from earlier statistics to these.
+		 * 
+		 * @param earlier The earlier statistics
+		 * @return The statistics of the period
+		 */
+		public Stats minus(Stats earlier) {
+			return new Stats(timeMillis - earlier.timeMillis, connectionCount - earlier.connectionCount, validLineCount - earlier.validLineCount, 
+					invalidLineCount - earlier.invalidLineCount, byteCount - earlier.byteCount, latencies.minus(earlier.latencies));
+		}
+
+		/**
+		 * Gets the number of connections accepted.
+		 * 
+		 * @return The number of connections
+		 */
+		public long getConnectionCount() {
+			return connectionCount;
+		}
+
+		/**
+		 * Gets the number of valid metric lines received.
+		 * 
+		 * @return The number of valid lines
+		 */
+		public long getValidLineCount() {
+			return validLineCount;
+		}
+
+		/**
+		 * Gets the number of invalid lines received.
+		 * 
+		 * @return The number of invalid lines
+		 */
+		public long getInvalidLineCount() {
+			return invalidLineCount;
+		}
+
+		/**
+		 * Gets the number of bytes received.
+		 * 
+		 * @return The number of bytes
+		 */
+		public long getByteCount() {
+			return byteCount;
+		}
+
+		/**
+		 * Gets the latencies from metric timestamp to receipt.
+		 * 
+		 * @return The latencies
+		 */
+		public LatencyHistogram.Snapshot getLatencies() {
+			return latencies;
+		}
+
+		/**
+		 * Gets the valid metric lines received per second, for statistics 
+		 * of a period.
+		 * 
+		 * @return The metrics per second
+		 */
+		public double getMetricsPerSecond() {
+			return (timeMillis > 0) ? ((validLineCount * (double) ONE_SECOND_MILLIS) / timeMillis) : 0;
+		}
+
+		/**
+		 * Formats statistics of a period as a CSV line (with the columns of 
+		 * the statistics header line).
+		 * 
+		 * @return The CSV line
+		 */
+		public String toCSVLine() {
+			return String.format(STATS_LINE_TEMPLATE, new Date(), getMetricsPerSecond(), validLineCount, invalidLineCount, byteCount, connectionCount, 
+					latencies.getValueAtPercentile(P50) / MICROS_IN_MILLI, latencies.getValueAtPercentile(P99) / MICROS_IN_MILLI, latencies.getMaxMicros() / MICROS_IN_MILLI);
+		}
+
+		// Members
+		private final long timeMillis;
+		private final long connectionCount;
+		private final long validLineCount;
+		private final long invalidLineCount;
+		private final long byteCount;
+		private final LatencyHistogram.Snapshot latencies;
+	}
+
+	// Constants
+	private final static int DEFAULT_PORT = 2003;
+	private final static String LOCALHOST = "127.0.0.1";
+	private final static int MAX_LINE_LENGTH = 8192;
+	private final static long ONE_SECOND_MILLIS = 1000;
+	private final static long MICROS_IN_MILLI = 1000;
+	private final static long NANOS_IN_MICRO = 1000;
+	private final static double P50 = 50;
+	private final static double P99 = 99;
+	private final static String STATS_HEADER_LINE = "time,metrics_per_sec,valid_lines,invalid_lines,bytes,connections,latency_p50_millis,latency_p99_millis,latency_max_millis";
+	private final static String STATS_LINE_TEMPLATE = "%1$tY/%1$tm/%1$td %1$tH:%1$tM:%1$tS,%2$.1f,%3$d,%4$d,%5$d,%6$d,%7$d,%8$d,%9$d";
+
+	// Members
+	private final int port;
+	private final ChannelGroup channels = new DefaultChannelGroup();
+	private final AtomicLong connectionCount = new AtomicLong();
+	private final AtomicLong validLineCount = new AtomicLong();
+	private final AtomicLong invalidLineCount = new AtomicLong();
+	private final AtomicLong byteCount = new AtomicLong();
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private volatile long readDelayMicros = 0;
+	private volatile long disconnectAfterLines = 0;
+	private volatile int boundPort = -1;
+	private ServerBootstrap bootstrap = null;
+	private Timer timer = null;
+}
@@ -0,0 +1,528 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests.simulation;
+
+import static domainhealth.core.jmx.WebLogicMBeanPropConstants.*;
+import static domainhealth.core.statistics.MonitorProperties.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+import domainhealth.core.jmx.WebLogicMBeanConnection;
+
+/**
+ * An in-process stand-in for a WebLogic domain's Domain Runtime MBean 
+ * tree, to load and scale test the statistics capture without a real 
+ * domain. A separate MBean server is populated with synthetic MBeans for
+ * a configurable number of servers, each with a configurable number of 
+ * datasources, JMS destinations, web-apps, EJBs, work managers and server
+ * channels, plus a JVM's platform MBeans and a WLDF harvested data archive
+ * per server. Each call to an MBean can be given an injected latency, to 
+ * simulate the round trip to a remote server.
+ * 
+ * Once installed, connections created by WebLogicMBeanConnection from the 
+ * local server's runtime settings (eg. by the Statistics Retriever 
+ * Background Service) use the simulated domain rather than connecting to 
+ * an admin server.
+ */
+public class SimulatedDomain {
+	/**
+	 * Creates a new simulated domain, with one admin server and the rest 
+	 * managed servers.
+	 * 
+	 * @param domainName The name of the domain
+	 * @param serverCount The number of servers (including the admin server)
+	 * @param resourceCount The number of resources of each resource type per server (eg. datasources)
+	 * @param callLatencyMicros The latency added to each MBean call
+	 */
+	public SimulatedDomain(String domainName, int serverCount, int resourceCount, long callLatencyMicros) {
+		this.domainName = domainName;
+		this.resourceCount = resourceCount;
+		this.callLatencyNanos = callLatencyMicros * NANOS_IN_MICRO;
+		this.mbeanServer = MBeanServerFactory.newMBeanServer(domainName);
+		List<String> newServerNames = new ArrayList<String>(serverCount);
+		
+		for (int i = 0; i < serverCount; i++) {
+			newServerNames.add((i == 0) ? ADMIN_SERVER_NAME_VALUE : (MANAGED_SERVER_NAME_PREFIX + i));
+		}
+		
+		this.serverNames = Collections.unmodifiableList(newServerNames);
+		
+		try {
+			registerDomain();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to populate simulated domain " + domainName, e);
+		}
+	}
+
+	/**
+	 * Makes connections created from the local server's runtime settings use
+	 * this simulated domain.
+	 */
+	public void install() {
+		WebLogicMBeanConnection.setInProcessMBeanServer(mbeanServer);
+	}
+
+	/**
+	 * Makes connections created from the local server's runtime settings 
+	 * connect to the admin server again.
+	 */
+	public void uninstall() {
+		WebLogicMBeanConnection.setInProcessMBeanServer(null);
+	}
+
+	/**
+	 * Gets the MBean server holding the simulated domain's MBeans.
+	 * 
+	 * @return The MBean server
+	 */
+	public MBeanServer getMBeanServer() {
+		return mbeanServer;
+	}
+
+	/**
+	 * Gets the name of the domain.
+	 * 
+	 * @return The domain name
+	 */
+	public String getDomainName() {
+		return domainName;
+	}
+
+	/**
+	 * Gets the names of the servers in the domain (the admin server first).
+	 * 
+	 * @return The server names
+	 */
+	public List<String> getServerNames() {
+		return serverNames;
+	}
+
+	/**
+	 * Gets the number of resources of each resource type per server.
+	 * 
+	 * @return The number of resources
+	 */
+	public int getResourceCount() {
+		return resourceCount;
+	}
+
+	/**
+	 * Sets the latency added to each MBean call.
+	 * 
+	 * @param callLatencyMicros The latency of each call
+	 */
+	public void setCallLatencyMicros(long callLatencyMicros) {
+		this.callLatencyNanos = callLatencyMicros * NANOS_IN_MICRO;
+	}
+
+	/**
+	 * Gets the period at which every server's MBeans are harvested into its
+	 * harvested data archive.
+	 * 
+	 * @return The harvest period
+	 */
+	public long getHarvestPeriodMillis() {
+		return harvestPeriodMillis;
+	}
+
+	/**
+	 * Sets the period at which every server's MBeans are harvested into its
+	 * harvested data archive.
+	 * 
+	 * @param harvestPeriodMillis The harvest period
+	 */
+	public void setHarvestPeriodMillis(long harvestPeriodMillis) {
+		this.harvestPeriodMillis = harvestPeriodMillis;
+	}
+
+	/**
+	 * Gets the number of MBean calls (attribute reads and operations) made 
+	 * against the domain so far.
+	 * 
+	 * @return The number of calls
+	 */
+	public long getCallCount() {
+		return callCount.get();
+	}
+
+	/**
+	 * Gets a server's harvested data archive.
+	 * 
+	 * @param serverName The name of the server
+	 * @return The server's archive (null if no such server)
+	 */
+	public SimulatedHarvestedDataArchive getHarvestedDataArchive(String serverName) {
+		return archives.get(serverName);
+	}
+
+	/**
+	 * Counts an MBean call, and waits for the injected call latency.
+	 */
+	void simulateCall() {
+		callCount.incrementAndGet();
+		long latencyNanos = callLatencyNanos;
+		
+		if (latencyNanos > 0) {
+			long deadlineNanos = System.nanoTime() + latencyNanos;
+			
+			while ((latencyNanos = deadlineNanos - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(latencyNanos);
+			}
+		}
+	}
+
+	/**
+	 * Gets the MBeans of a server which are of the given harvested MBean 
+	 * type.
+	 * 
+	 * @param serverName The name of the server
+	 * @param harvestedType The harvested MBean type (eg. weblogic.management.runtime.JDBCDataSourceRuntimeMBean)
+	 * @return The server's MBeans of the type
+	 */
+	List<SimulatedMBean> getHarvestedMBeans(String serverName, String harvestedType) {
+		Map<String, List<SimulatedMBean>> serverMBeans = harvestedMBeans.get(serverName);
+		List<SimulatedMBean> mbeans = (serverMBeans != null) ? serverMBeans.get(harvestedType) : null;
+		return (mbeans != null) ? mbeans : Collections.<SimulatedMBean>emptyList();
+	}
+
+	/**
+	 * Registers the domain level MBeans and the MBeans of every server.
+	 * 
+	 * @throws Exception Indicates an MBean could not be registered
+	 */
+	private void registerDomain() throws Exception {
+		ObjectName[] serverRuntimes = new ObjectName[serverNames.size()];
+		ObjectName[] serverConfigs = new ObjectName[serverNames.size()];
+		
+		for (int i = 0; i < serverRuntimes.length; i++) {
+			serverRuntimes[i] = registerServer(serverNames.get(i), (i == 0));
+			serverConfigs[i] = register(null, String.format(CONFIG_MBEAN_TEMPLATE, serverNames.get(i), SERVER_CONFIG_TYPE), SERVER_CONFIG_TYPE, serverNames.get(i)).getObjectName();
+		}
+
+		SimulatedMBean domainConfig = register(null, String.format(CONFIG_MBEAN_TEMPLATE, domainName, DOMAIN_CONFIG_TYPE), DOMAIN_CONFIG_TYPE, domainName);
+		domainConfig.putAttr(DOMAIN_VERSION, WLS_VERSION);
+		domainConfig.putAttr(ADMIN_SERVER_NAME, serverNames.get(0));
+		domainConfig.putAttr(SERVERS, serverConfigs);
+		domainConfig.putAttr(WLDF_SYS_RESOURCES, new ObjectName[0]);
+		SimulatedMBean domainRuntime = register(null, String.format(CONFIG_MBEAN_TEMPLATE, domainName, DOMAIN_RUNTIME), DOMAIN_RUNTIME, domainName);
+		SimulatedMBean domainRuntimeService = register(null, DOMAIN_RUNTIME_SERVICE_MBEAN, DOMAIN_RUNTIME_SERVICE_TYPE, null);
+		domainRuntimeService.putAttr(DOMAIN_RUNTIME, domainRuntime.getObjectName());
+		domainRuntimeService.putAttr(DOMAIN_CONFIGURATION, domainConfig.getObjectName());
+		domainRuntimeService.putAttr(SERVER_RUNTIMES, serverRuntimes);
+		SimulatedMBean runtimeService = register(null, RUNTIME_SERVICE_MBEAN, RUNTIME_SERVICE_TYPE, null);
+		runtimeService.putAttr(SERVER_RUNTIME, serverRuntimes[0]);
+	}
+
+	/**
+	 * Registers a server's runtime MBeans, platform MBeans and harvested 
+	 * data archive.
+	 * 
+	 * @param serverName The name of the server
+	 * @param isAdminServer Whether the server is the admin server
+	 * @return The object name of the server's runtime MBean
+	 * @throws Exception Indicates an MBean could not be registered
+	 */
+	private ObjectName registerServer(String serverName, boolean isAdminServer) throws Exception {
+		SimulatedMBean serverRuntime = register(serverName, String.format(SERVER_RUNTIME_MBEAN_TEMPLATE, serverName, serverName), SERVER_RUNTIME, serverName);
+		serverRuntime.putAttr(SERVER_STATE, RUNNING_STATE);
+		serverRuntime.putAttr(CURRENT_MACHINE, MACHINE_NAME_PREFIX + serverName);
+		serverRuntime.putAttr(IS_ADMIN_SERVER, Boolean.valueOf(isAdminServer));
+		serverRuntime.putAttr(JVM_RUNTIME, registerJVM(serverName).getObjectName());
+		serverRuntime.putAttr(THREAD_POOL_RUNTIME, registerChild(serverName, THREAD_POOL_RUNTIME, THREAD_POOL_RUNTIME).getObjectName());
+		serverRuntime.putAttr(JTA_RUNTIME, registerChild(serverName, JTA_RUNTIME, JTA_RUNTIME).getObjectName());
+		
+		// Datasources
+		SimulatedMBean jdbcServiceRuntime = registerChild(serverName, JDBC_SERVICE_RUNTIME, serverName);
+		ObjectName[] dataSources = new ObjectName[resourceCount];
+		
+		for (int i = 0; i < resourceCount; i++) {
+			dataSources[i] = registerChild(serverName, JDBC_DATASOURCE_RUNTIME, DATASOURCE_NAME_PREFIX + i).getObjectName();
+		}
+
+		jdbcServiceRuntime.putAttr(JDBC_DATA_SOURCE_RUNTIMES, dataSources);
+		serverRuntime.putAttr(JDBC_SERVICE_RUNTIME, jdbcServiceRuntime.getObjectName());
+		
+		// JMS destinations (all on the one JMS server)
+		SimulatedMBean jmsRuntime = registerChild(serverName, JMS_RUNTIME, serverName + JMS_RUNTIME_NAME_SUFFIX);
+		SimulatedMBean jmsServer = registerChild(serverName, JMS_SERVER_RUNTIME, JMS_SERVER_NAME_PREFIX + serverName);
+		ObjectName[] destinations = new ObjectName[resourceCount];
+		
+		for (int i = 0; i < resourceCount; i++) {
+			destinations[i] = registerChild(serverName, JMS_DESTINATION_RUNTIME, String.format(DESTINATION_NAME_TEMPLATE, serverName, i)).getObjectName();
+		}
+
+		jmsServer.putAttr(DESTINATIONS, destinations);
+		jmsRuntime.putAttr(JMS_SERVERS, new ObjectName[] {jmsServer.getObjectName()});
+		serverRuntime.putAttr(JMS_RUNTIME, jmsRuntime.getObjectName());
+		
+		// Applications, each with a web-app and an EJB module
+		ObjectName[] appRuntimes = new ObjectName[resourceCount];
+		
+		for (int i = 0; i < resourceCount; i++) {
+			String appName = APP_NAME_PREFIX + i;
+			SimulatedMBean appRuntime = registerChild(serverName, APPLICATION_RUNTIME, appName);
+			SimulatedMBean webAppRuntime = registerChild(serverName, WEBAPP_COMPONENT_RUNTIME, serverName + WEBAPP_NAME_SEPARATOR + appName);
+			SimulatedMBean ejbComponentRuntime = registerChild(serverName, EJB_COMPONENT_RUNTIME, appName + EJB_MODULE_NAME_SUFFIX);
+			String ejbName = EJB_NAME_PREFIX + i;
+			SimulatedMBean ejbRuntime = registerChild(serverName, STATELESS_EJB_RUNTIME, ejbName);
+			ejbRuntime.putAttr(POOL_RUNTIME, registerChild(serverName, EJB_POOL_RUNTIME, ejbName).getObjectName());
+			ejbRuntime.putAttr(TRANSACTION_RUNTIME, registerChild(serverName, EJB_TRANSACTION_RUNTIME, ejbName).getObjectName());
+			ejbComponentRuntime.putAttr(EJB_RUNTIMES, new ObjectName[] {ejbRuntime.getObjectName()});
+			appRuntime.putAttr(COMPONENT_RUNTIMES, new ObjectName[] {webAppRuntime.getObjectName(), ejbComponentRuntime.getObjectName()});
+			appRuntimes[i] = appRuntime.getObjectName();
+		}
+
+		serverRuntime.putAttr(APPLICATION_RUNTIMES, appRuntimes);
+
+		// Work managers (plus the default work manager) and server channels
+		ObjectName[] workManagers = new ObjectName[resourceCount + 1];
+		ObjectName[] channels = new ObjectName[resourceCount];
+		workManagers[0] = registerChild(serverName, WORK_MANAGER_RUNTIME, DEFAULT_WKMGR_NAME).getObjectName();
+		
+		for (int i = 0; i < resourceCount; i++) {
+			workManagers[i + 1] = registerChild(serverName, WORK_MANAGER_RUNTIME, WORK_MANAGER_NAME_PREFIX + i).getObjectName();
+			channels[i] = registerChild(serverName, SERVER_CHANNEL_RUNTIME, CHANNEL_NAME_PREFIX + i).getObjectName();
+		}
+
+		serverRuntime.putAttr(WORK_MANAGER_RUNTIMES, workManagers);
+		serverRuntime.putAttr(SERVER_CHANNEL_RUNTIMES, channels);
+
+		// Platform MBeans and harvested data archive
+		registerPlatformMBeans(serverName);
+		ObjectName archiveName = new ObjectName(String.format(HARVESTED_DATA_ARCHIVE_TEMPLATE, serverName, serverName));
+		SimulatedHarvestedDataArchive archive = new SimulatedHarvestedDataArchive(this, archiveName, serverName);
+		mbeanServer.registerMBean(archive, archiveName);
+		archives.put(serverName, archive);
+		return serverRuntime.getObjectName();
+	}
+
+	/**
+	 * Registers a server's (Hotspot) JVM runtime MBean.
+	 * 
+	 * @param serverName The name of the server
+	 * @return The JVM runtime MBean
+	 * @throws Exception Indicates the MBean could not be registered
+	 */
+	private SimulatedMBean registerJVM(String serverName) throws Exception {
+		SimulatedMBean jvmRuntime = registerChild(serverName, JVM_RUNTIME, serverName);
+		jvmRuntime.putAttr(HEAP_SIZE_CURRENT, new Long(HEAP_SIZE_BYTES));
+		jvmRuntime.putAttr(HEAP_SIZE_MAX, new Long(HEAP_SIZE_BYTES));
+		jvmRuntime.putAttr(JAVA_VENDOR, JAVA_VENDOR_VALUE);
+		jvmRuntime.putAttr(JAVA_VM_VENDOR, JAVA_VENDOR_VALUE);
+		jvmRuntime.putAttr(JAVA_VERSION, JAVA_VERSION_VALUE);
+		return jvmRuntime;
+	}
+
+	/**
+	 * Registers the platform MBeans (eg. memory, garbage collectors) of a 
+	 * server's JVM, as found in the Domain Runtime MBean tree.
+	 * 
+	 * @param serverName The name of the server
+	 * @throws Exception Indicates an MBean could not be registered
+	 */
+	private void registerPlatformMBeans(String serverName) throws Exception {
+		CompositeData heapUsage = newMemoryUsage(HEAP_SIZE_BYTES / 2, HEAP_SIZE_BYTES);
+		registerPlatformMBean(serverName, PLATFORM_CLASSLOADING_TYPE, null);
+		registerPlatformMBean(serverName, PLATFORM_COMPILATION_TYPE, null);
+		registerPlatformMBean(serverName, PLATFORM_THREADING_TYPE, null);
+		SimulatedMBean memory = registerPlatformMBean(serverName, PLATFORM_MEMORY_TYPE, null);
+		memory.putAttr(HEAP_MEMORY_USAGE, heapUsage);
+		memory.putAttr(NON_HEAP_MEMORY_USAGE, newMemoryUsage(NON_HEAP_SIZE_BYTES / 2, NON_HEAP_SIZE_BYTES));
+		
+		for (String collector : GARBAGE_COLLECTOR_NAMES) {
+			registerPlatformMBean(serverName, PLATFORM_GARBAGE_COLLECTOR_TYPE, collector);
+		}
+		
+		for (String pool : MEMORY_POOL_NAMES) {
+			registerPlatformMBean(serverName, PLATFORM_MEMORY_POOL_TYPE, pool).putAttr(USAGE, heapUsage);
+		}
+	}
+
+	/**
+	 * Registers one of the platform MBeans of a server's JVM.
+	 * 
+	 * @param serverName The name of the server
+	 * @param type The platform MBean type (eg. Memory)
+	 * @param name The name of the MBean, for types with many MBeans (eg. a memory pool name), otherwise null
+	 * @return The MBean
+	 * @throws Exception Indicates the MBean could not be registered
+	 */
+	private SimulatedMBean registerPlatformMBean(String serverName, String type, String name) throws Exception {
+		String objectName = String.format(PLATFORM_MBEAN_TEMPLATE, serverName, type) + ((name != null) ? (PLATFORM_MBEAN_NAME_KEY + name) : "");
+		return register(null, objectName, type, name);
+	}
+
+	/**
+	 * Registers a runtime MBean of a server, below its server runtime MBean.
+	 * 
+	 * @param serverName The name of the server
+	 * @param type The runtime MBean type (eg. JDBCDataSourceRuntime)
+	 * @param name The name of the MBean
+	 * @return The MBean
+	 * @throws Exception Indicates the MBean could not be registered
+	 */
+	private SimulatedMBean registerChild(String serverName, String type, String name) throws Exception {
+		return register(serverName, String.format(CHILD_RUNTIME_MBEAN_TEMPLATE, name, serverName, serverName, type), type, name);
+	}
+
+	/**
+	 * Registers an MBean in the MBean server, and if it belongs to a server 
+	 * makes it available to the server's harvested data archive.
+	 * 
+	 * @param serverName The name of the server the MBean belongs to (null if not a server's MBean)
+	 * @param objectName The object name of the MBean
+	 * @param type The MBean type
+	 * @param name The value of the MBean's Name attribute (null if none)
+	 * @return The MBean
+	 * @throws Exception Indicates the MBean could not be registered
+	 */
+	private SimulatedMBean register(String serverName, String objectName, String type, String name) throws Exception {
+		SimulatedMBean mbean = new SimulatedMBean(this, new ObjectName(objectName), type);
+		mbean.putAttr(TYPE, type);
+		
+		if (name != null) {
+			mbean.putAttr(NAME, name);
+		}
+
+		mbeanServer.registerMBean(mbean, mbean.getObjectName());
+
+		if (serverName != null) {
+			Map<String, List<SimulatedMBean>> serverMBeans = harvestedMBeans.get(serverName);
+			
+			if (serverMBeans == null) {
+				serverMBeans = new HashMap<String, List<SimulatedMBean>>();
+				harvestedMBeans.put(serverName, serverMBeans);
+			}
+
+			String harvestedType = String.format(RUNTIME_MBEAN_TYPE_TEMPLATE, type);
+			List<SimulatedMBean> mbeans = serverMBeans.get(harvestedType);
+			
+			if (mbeans == null) {
+				mbeans = new ArrayList<SimulatedMBean>();
+				serverMBeans.put(harvestedType, mbeans);
+			}
+
+			mbeans.add(mbean);
+		}
+		
+		return mbean;
+	}
+
+	/**
+	 * Creates the open data form of a memory usage, as returned by the 
+	 * platform memory MBeans.
+	 * 
+	 * @param used The bytes used
+	 * @param max The maximum bytes
+	 * @return The memory usage
+	 * @throws Exception Indicates the memory usage could not be created
+	 */
+	private static CompositeData newMemoryUsage(long used, long max) throws Exception {
+		return new CompositeDataSupport(MEMORY_USAGE_TYPE, MEMORY_USAGE_ITEMS, new Object[] {new Long(max), new Long(max), new Long(max), new Long(used)});
+	}
+
+	// Constants
+	private final static long NANOS_IN_MICRO = 1000;
+	private final static long DEFAULT_HARVEST_PERIOD_MILLIS = 30000;
+	private final static String ADMIN_SERVER_NAME_VALUE = "AdminServer";
+	private final static String MANAGED_SERVER_NAME_PREFIX = "ManagedServer";
+	private final static String MACHINE_NAME_PREFIX = "machine_";
+	private final static String DATASOURCE_NAME_PREFIX = "DataSource_";
+	private final static String JMS_RUNTIME_NAME_SUFFIX = ".jms";
+	private final static String JMS_SERVER_RUNTIME = "JMSServerRuntime";
+	private final static String JMS_SERVER_NAME_PREFIX = "JMSServer_";
+	private final static String DESTINATION_NAME_TEMPLATE = "SystemModule!JMSServer_%s@Queue_%d";
+	private final static String APPLICATION_RUNTIME = "ApplicationRuntime";
+	private final static String APP_NAME_PREFIX = "app_";
+	private final static String WEBAPP_NAME_SEPARATOR = "_/";
+	private final static String EJB_MODULE_NAME_SUFFIX = "_ejb";
+	private final static String STATELESS_EJB_RUNTIME = "StatelessEJBRuntime";
+	private final static String EJB_NAME_PREFIX = "Bean_";
+	private final static String WORK_MANAGER_NAME_PREFIX = "WorkManager_";
+	private final static String SERVER_CHANNEL_RUNTIMES = "ServerChannelRuntimes";
+	private final static String CHANNEL_NAME_PREFIX = "Channel_";
+	private final static String CURRENT_MACHINE = "CurrentMachine";
+	private final static String RUNNING_STATE = "RUNNING";
+	private final static String WLS_VERSION = "12.1.3.0.0";
+	private final static String JAVA_VENDOR = "JavaVendor";
+	private final static String JAVA_VM_VENDOR = "JavaVMVendor";
+	private final static String JAVA_VERSION = "JavaVersion";
+	private final static String JAVA_VENDOR_VALUE = "Oracle Corporation";
+	private final static String JAVA_VERSION_VALUE = "1.7.0_80";
+	private final static long HEAP_SIZE_BYTES = 1024L * 1024 * 1024;
+	private final static long NON_HEAP_SIZE_BYTES = 256L * 1024 * 1024;
+	private final static String SERVER_CONFIG_TYPE = "Server";
+	private final static String DOMAIN_CONFIG_TYPE = "Domain";
+	private final static String CONFIG_MBEAN_TEMPLATE = "com.bea:Name=%s,Type=%s";
+	private final static String SERVER_RUNTIME_MBEAN_TEMPLATE = "com.bea:Name=%s,Location=%s,Type=ServerRuntime";
+	private final static String CHILD_RUNTIME_MBEAN_TEMPLATE = "com.bea:Name=%s,ServerRuntime=%s,Location=%s,Type=%s";
+	private final static String HARVESTED_DATA_ARCHIVE_TEMPLATE = "com.bea:ServerRuntime=%s,Name=HarvestedDataArchive,Type=WLDFDataAccessRuntime,Location=%s,WLDFAccessRuntime=Accessor,WLDFRuntime=WLDFRuntime";
+	private final static String DOMAIN_RUNTIME_SERVICE_MBEAN = "com.bea:Name=DomainRuntimeService,Type=weblogic.management.mbeanservers.domainruntime.DomainRuntimeServiceMBean";
+	private final static String DOMAIN_RUNTIME_SERVICE_TYPE = "DomainRuntimeService";
+	private final static String RUNTIME_SERVICE_MBEAN = "com.bea:Name=RuntimeService,Type=weblogic.management.mbeanservers.runtime.RuntimeServiceMBean";
+	private final static String RUNTIME_SERVICE_TYPE = "RuntimeService";
+	private final static String PLATFORM_MBEAN_TEMPLATE = "java.lang:Location=%s,type=%s";
+	private final static String PLATFORM_MBEAN_NAME_KEY = ",name=";
+	private final static String PLATFORM_CLASSLOADING_TYPE = "ClassLoading";
+	private final static String PLATFORM_COMPILATION_TYPE = "Compilation";
+	private final static String PLATFORM_THREADING_TYPE = "Threading";
+	private final static String PLATFORM_MEMORY_TYPE = "Memory";
+	private final static String PLATFORM_GARBAGE_COLLECTOR_TYPE = "GarbageCollector";
+	private final static String PLATFORM_MEMORY_POOL_TYPE = "MemoryPool";
+	private final static String HEAP_MEMORY_USAGE = "HeapMemoryUsage";
+	private final static String NON_HEAP_MEMORY_USAGE = "NonHeapMemoryUsage";
+	private final static String USAGE = "Usage";
+	private final static String[] GARBAGE_COLLECTOR_NAMES = {"PS Scavenge Young", "PS MarkSweep Old"};
+	private final static String[] MEMORY_POOL_NAMES = {"PS Eden Space", "PS Survivor Space", "PS Old Gen"};
+	private final static String[] MEMORY_USAGE_ITEMS = {"committed", "init", "max", "used"};
+	private final static CompositeType MEMORY_USAGE_TYPE;
+
+	// Members
+	private final String domainName;
+	private final int resourceCount;
+	private final List<String> serverNames;
+	private final MBeanServer mbeanServer;
+	private final Map<String, Map<String, List<SimulatedMBean>>> harvestedMBeans = new HashMap<String, Map<String, List<SimulatedMBean>>>();
+	private final Map<String, SimulatedHarvestedDataArchive> archives = new ConcurrentHashMap<String, SimulatedHarvestedDataArchive>();
+	private final AtomicLong callCount = new AtomicLong();
+	private volatile long callLatencyNanos;
+	private volatile long harvestPeriodMillis = DEFAULT_HARVEST_PERIOD_MILLIS;
+
+	// Static initialiser
+	static {
+		try {
+			MEMORY_USAGE_TYPE = new CompositeType("java.lang.management.MemoryUsage", "MemoryUsage", MEMORY_USAGE_ITEMS, MEMORY_USAGE_ITEMS, 
+					new OpenType<?>[] {SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG});
+		} catch (Exception e) {
+			throw new AssertionError(e.toString());
+		}
+	}
+}
@@ -0,0 +1,224 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests.simulation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * A simulated WLDF 'HarvestedDataArchive' of a server of a simulated 
+ * domain, implementing the archive's cursor operations (openCursor, fetch,
+ * hasMoreData and closeCursor). The archive behaves as if every MBean of 
+ * the server had all its attributes harvested at the end of every harvest
+ * period, and answers WLDF queries made up of (TYPE='...' AND 
+ * ATTRNAME='...') terms joined by ORs, returning rows in the same columns
+ * as WebLogic (RECORDID, TIMESTAMP, DOMAIN, SERVER, TYPE, NAME, ATTRNAME, 
+ * ATTRTYPE, ATTRVALUE).
+ */
+public class SimulatedHarvestedDataArchive extends SimulatedMBean {
+	/**
+	 * Creates a new simulated harvested data archive for a server.
+	 * 
+	 * @param domain The simulated domain the server belongs to
+	 * @param objectName The archive's object name
+	 * @param serverName The name of the server
+	 */
+	public SimulatedHarvestedDataArchive(SimulatedDomain domain, ObjectName objectName, String serverName) {
+		super(domain, objectName, ARCHIVE_TYPE);
+		this.serverName = serverName;
+	}
+
+	/**
+	 * Invokes one of the archive's cursor operations.
+	 * 
+	 * @param operationName The name of the operation
+	 * @param params The parameters of the operation
+	 * @param signature The parameter types of the operation
+	 * @return The result of the operation
+	 * @throws MBeanException Indicates the operation failed (eg. unknown cursor)
+	 * @throws ReflectionException Indicates the archive has no such operation
+	 */
+	public Object invoke(String operationName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+		if (operationName.equals(OPEN_CURSOR_OPERTN)) {
+			getDomain().simulateCall();
+			return openCursor(((Number) params[0]).longValue(), ((Number) params[1]).longValue(), (String) params[2]);
+		} else if (operationName.equals(FETCH_OPERTN)) {
+			getDomain().simulateCall();
+			return getCursor((String) params[0]).fetch(((Number) params[1]).intValue());
+		} else if (operationName.equals(HAS_DATA_OPERTN)) {
+			getDomain().simulateCall();
+			return Boolean.valueOf(getCursor((String) params[0]).hasMoreData());
+		} else if (operationName.equals(CLOSE_CURSOR_OPERTN)) {
+			getDomain().simulateCall();
+			cursors.remove((String) params[0]);
+			return null;
+		}
+
+		return super.invoke(operationName, params, signature);
+	}
+
+	/**
+	 * Gets the number of cursors opened and not yet closed.
+	 * 
+	 * @return The number of open cursors
+	 */
+	public int getOpenCursorCount() {
+		return cursors.size();
+	}
+
+	/**
+	 * Opens a cursor over the records harvested from the begin time 
+	 * (inclusive) to the end time (exclusive) matching the WLDF query.
+	 * 
+	 * @param beginTime The begin time of the records
+	 * @param endTime The end time of the records
+	 * @param wldfQuery The WLDF query
+	 * @return The id of the cursor
+	 */
+	private String openCursor(long beginTime, long endTime, String wldfQuery) {
+		Map<String, Set<String>> typeAttrs = parseQuery(wldfQuery);
+		List<Object[]> records = new ArrayList<Object[]>();
+		long harvestPeriodMillis = getDomain().getHarvestPeriodMillis();
+		long firstHarvestTime = ((beginTime + harvestPeriodMillis - 1) / harvestPeriodMillis) * harvestPeriodMillis;
+
+		for (long harvestTime = firstHarvestTime; harvestTime < endTime; harvestTime += harvestPeriodMillis) {
+			for (Map.Entry<String, Set<String>> typeAttr : typeAttrs.entrySet()) {
+				for (SimulatedMBean mbean : getDomain().getHarvestedMBeans(serverName, typeAttr.getKey())) {
+					String mbeanName = mbean.getObjectName().getCanonicalName();
+					
+					for (String attr : typeAttr.getValue()) {
+						records.add(new Object[] {new Long(nextRecordId.incrementAndGet()), new Long(harvestTime), 
+								getDomain().getDomainName(), serverName, typeAttr.getKey(), mbeanName, attr, 
+								ATTR_TYPE, mbean.getAttrValue(attr, harvestTime)});
+					}
+				}
+			}
+		}
+
+		String cursorId = CURSOR_ID_PREFIX + nextCursorId.incrementAndGet();
+		cursors.put(cursorId, new Cursor(records));
+		return cursorId;
+	}
+
+	/**
+	 * Gets an open cursor.
+	 * 
+	 * @param cursorId The id of the cursor
+	 * @return The cursor
+	 * @throws MBeanException Indicates there is no open cursor with the id
+	 */
+	private Cursor getCursor(String cursorId) throws MBeanException {
+		Cursor cursor = cursors.get(cursorId);
+		
+		if (cursor == null) {
+			throw new MBeanException(new IllegalArgumentException("Unknown cursor: " + cursorId), "Unknown cursor: " + cursorId);
+		}
+
+		return cursor;
+	}
+
+	/**
+	 * Parses the harvested MBean types, and the attributes of each type, 
+	 * asked for by a WLDF query.
+	 * 
+	 * @param wldfQuery The WLDF query
+	 * @return The attribute names by harvested MBean type
+	 */
+	private static Map<String, Set<String>> parseQuery(String wldfQuery) {
+		Map<String, Set<String>> typeAttrs = new LinkedHashMap<String, Set<String>>();
+		Matcher matcher = QUERY_TERM_PATTERN.matcher(wldfQuery);
+
+		while (matcher.find()) {
+			Set<String> attrs = typeAttrs.get(matcher.group(1));
+			
+			if (attrs == null) {
+				attrs = new LinkedHashSet<String>();
+				typeAttrs.put(matcher.group(1), attrs);
+			}
+
+			attrs.add(matcher.group(2));
+		}
+
+		return typeAttrs;
+	}
+
+	/**
+	 * The records of an open cursor, and how many have been fetched.
+	 */
+	private static class Cursor {
+		/**
+		 * Creates a new cursor over the given records.
+		 * 
+		 * @param records The records
+		 */
+		public Cursor(List<Object[]> records) {
+			this.records = records;
+		}
+
+		/**
+		 * Fetches the next records.
+		 * 
+		 * @param fetchSize The maximum number of records to fetch
+		 * @return The next records (empty if none left)
+		 */
+		public synchronized Object[] fetch(int fetchSize) {
+			int end = Math.min(position + fetchSize, records.size());
+			Object[] chunk = records.subList(position, end).toArray();
+			position = end;
+			return chunk;
+		}
+
+		/**
+		 * Checks if there are records left to fetch.
+		 * 
+		 * @return True if there are records left; otherwise false
+		 */
+		public synchronized boolean hasMoreData() {
+			return (position < records.size());
+		}
+
+		// Members
+		private final List<Object[]> records;
+		private int position = 0;
+	}
+
+	// Constants
+	private final static String ARCHIVE_TYPE = "WLDFDataAccessRuntime";
+	private final static String OPEN_CURSOR_OPERTN = "openCursor";
+	private final static String FETCH_OPERTN = "fetch";
+	private final static String HAS_DATA_OPERTN = "hasMoreData";
+	private final static String CLOSE_CURSOR_OPERTN = "closeCursor";
+	private final static String CURSOR_ID_PREFIX = "SimulatedCursor-";
+	private final static Integer ATTR_TYPE = new Integer(0);
+	private final static Pattern QUERY_TERM_PATTERN = Pattern.compile("TYPE\\s*=\\s*'([^']+)'\\s+AND\\s+ATTRNAME\\s*=\\s*'([^']+)'");
+
+	// Members
+	private final String serverName;
+	private final Map<String, Cursor> cursors = new ConcurrentHashMap<String, Cursor>();
+	private final AtomicLong nextCursorId = new AtomicLong();
+	private final AtomicLong nextRecordId = new AtomicLong();
+}
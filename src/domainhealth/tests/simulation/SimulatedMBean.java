@@ -0,0 +1,201 @@
+//Copyright (C) 2008-2013 Paul Done . All rights reserved.
+//This file is part of the DomainHealth software distribution. Refer to the  
+//file LICENSE in the root of the DomainHealth distribution.
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+//POSSIBILITY OF SUCH DAMAGE.
+package domainhealth.tests.simulation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * A synthetic WebLogic runtime MBean of a simulated domain. Attributes 
+ * which have been set (eg. names, states and child MBean object names) are 
+ * returned as is, and any other attribute is treated as a numeric 
+ * statistic whose value drifts over time. Every attribute read and 
+ * operation invoked is a call against the simulated domain, which counts 
+ * the call and adds the domain's injected latency.
+ */
+public class SimulatedMBean implements DynamicMBean {
+	/**
+	 * Creates a new simulated MBean.
+	 * 
+	 * @param domain The simulated domain the MBean belongs to
+	 * @param objectName The MBean's object name
+	 * @param type The MBean's WebLogic runtime type (eg. JDBCDataSourceRuntime)
+	 */
+	public SimulatedMBean(SimulatedDomain domain, ObjectName objectName, String type) {
+		this.domain = domain;
+		this.objectName = objectName;
+		this.type = type;
+		this.valueSeed = objectName.hashCode() & VALUE_SEED_MASK;
+	}
+
+	/**
+	 * Gets the MBean's object name.
+	 * 
+	 * @return The object name
+	 */
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * Gets the MBean's WebLogic runtime type.
+	 * 
+	 * @return The type (eg. JDBCDataSourceRuntime)
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Sets the fixed value of an attribute (eg. its name or a child MBean's
+	 * object name), overriding its synthetic numeric value.
+	 * 
+	 * @param attr The attribute name
+	 * @param value The attribute value
+	 */
+	public void putAttr(String attr, Object value) {
+		fixedAttrs.put(attr, value);
+	}
+
+	/**
+	 * Gets the value of an attribute at the given time, without counting as
+	 * a call against the domain (eg. for records of the harvested data 
+	 * archive).
+	 * 
+	 * @param attr The attribute name
+	 * @param timeMillis The time to get the value for
+	 * @return The fixed value of the attribute, or otherwise its synthetic numeric value at the time
+	 */
+	public Object getAttrValue(String attr, long timeMillis) {
+		Object value = fixedAttrs.get(attr);
+		
+		if (value != null) {
+			return value;
+		}
+
+		long base = (valueSeed ^ attr.hashCode()) & VALUE_SEED_MASK;
+		return new Long(base + ((timeMillis / VALUE_STEP_MILLIS) % VALUE_DRIFT_RANGE));
+	}
+
+	/**
+	 * Gets the current value of an attribute.
+	 * 
+	 * @param attr The attribute name
+	 * @return The attribute value
+	 * @throws AttributeNotFoundException Never thrown (every attribute has a synthetic value)
+	 */
+	public Object getAttribute(String attr) throws AttributeNotFoundException {
+		domain.simulateCall();
+		return getAttrValue(attr, System.currentTimeMillis());
+	}
+
+	/**
+	 * Gets the current values of a list of attributes.
+	 * 
+	 * @param attrs The attribute names
+	 * @return The attribute values
+	 */
+	public AttributeList getAttributes(String[] attrs) {
+		domain.simulateCall();
+		long now = System.currentTimeMillis();
+		AttributeList values = new AttributeList();
+
+		for (String attr : attrs) {
+			values.add(new Attribute(attr, getAttrValue(attr, now)));
+		}
+
+		return values;
+	}
+
+	/**
+	 * Sets the fixed value of an attribute.
+	 * 
+	 * @param attribute The attribute name and value
+	 */
+	public void setAttribute(Attribute attribute) {
+		domain.simulateCall();
+		putAttr(attribute.getName(), attribute.getValue());
+	}
+
+	/**
+	 * Sets the fixed values of a list of attributes.
+	 * 
+	 * @param attributes The attribute names and values
+	 * @return The attributes set
+	 */
+	public AttributeList setAttributes(AttributeList attributes) {
+		domain.simulateCall();
+
+		for (Object attribute : attributes) {
+			putAttr(((Attribute) attribute).getName(), ((Attribute) attribute).getValue());
+		}
+
+		return attributes;
+	}
+
+	/**
+	 * Invokes an operation, which by default the MBean does not have.
+	 * 
+	 * @param operationName The name of the operation
+	 * @param params The parameters of the operation
+	 * @param signature The parameter types of the operation
+	 * @return The result of the operation
+	 * @throws MBeanException Indicates the operation failed
+	 * @throws ReflectionException Indicates the MBean has no such operation
+	 */
+	public Object invoke(String operationName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+		domain.simulateCall();
+		throw new ReflectionException(new NoSuchMethodException(operationName), "Simulated " + type + " MBean has no operation " + operationName);
+	}
+
+	/**
+	 * Gets the MBean's (minimal) meta-data.
+	 * 
+	 * @return The MBean info
+	 */
+	public MBeanInfo getMBeanInfo() {
+		return new MBeanInfo(getClass().getName(), type, null, null, null, null);
+	}
+
+	/**
+	 * Gets the simulated domain the MBean belongs to.
+	 * 
+	 * @return The simulated domain
+	 */
+	protected SimulatedDomain getDomain() {
+		return domain;
+	}
+
+	// Constants
+	private final static int VALUE_SEED_MASK = 0x3ff;
+	private final static long VALUE_STEP_MILLIS = 1000;
+	private final static long VALUE_DRIFT_RANGE = 100;
+
+	// Members
+	private final SimulatedDomain domain;
+	private final ObjectName objectName;
+	private final String type;
+	private final int valueSeed;
+	private final Map<String, Object> fixedAttrs = new ConcurrentHashMap<String, Object>();
+}